@@ -17,6 +17,7 @@
 import java.io.Serializable;
 
 import org.htmlunit.cssparser.parser.AbstractLocatable;
+import org.w3c.dom.DOMException;
 
 /**
  * <p>Abstract AbstractCSSRuleImpl class.</p>
@@ -28,6 +29,10 @@ public abstract class AbstractCSSRuleImpl extends AbstractLocatable implements S
 
     private CSSStyleSheetImpl parentStyleSheet_;
     private AbstractCSSRuleImpl parentRule_;
+    private int sourceStart_ = -1;
+    private int sourceEnd_ = -1;
+    private boolean modified_;
+    private transient boolean frozen_;
 
     /**
      * Ctor.
@@ -59,6 +64,7 @@ public AbstractCSSRuleImpl(final CSSStyleSheetImpl parentStyleSheet, final Abstr
      * @param parentStyleSheet the new parent style sheet
      */
     public void setParentStyleSheet(final CSSStyleSheetImpl parentStyleSheet) {
+        checkNotFrozen();
         parentStyleSheet_ = parentStyleSheet;
     }
 
@@ -67,6 +73,7 @@ public void setParentStyleSheet(final CSSStyleSheetImpl parentStyleSheet) {
      * @param parentRule the new parent rule
      */
     public void setParentRule(final AbstractCSSRuleImpl parentRule) {
+        checkNotFrozen();
         parentRule_ = parentRule;
     }
 
@@ -88,6 +95,127 @@ public AbstractCSSRuleImpl getParentRule() {
         return parentRule_;
     }
 
+    /**
+     * @return the offset of the rule in the source of the style sheet
+     *         or -1 if the source was not tracked while parsing
+     */
+    public int getSourceStart() {
+        return sourceStart_;
+    }
+
+    /**
+     * Sets the offset of the rule in the source of the style sheet.
+     * @param sourceStart the offset or -1
+     */
+    public void setSourceStart(final int sourceStart) {
+        checkNotFrozen();
+        sourceStart_ = sourceStart;
+    }
+
+    /**
+     * @return the offset after the last char of the rule in the source of the
+     *         style sheet or -1 if the source was not tracked while parsing
+     */
+    public int getSourceEnd() {
+        return sourceEnd_;
+    }
+
+    /**
+     * Sets the range of the rule in the source of the style sheet.
+     * @param sourceStart the offset of the first char or -1
+     * @param sourceEnd the offset after the last char or -1
+     */
+    public void setSourceRange(final int sourceStart, final int sourceEnd) {
+        checkNotFrozen();
+        sourceStart_ = sourceStart;
+        sourceEnd_ = sourceEnd;
+    }
+
+    /**
+     * Moves the source range of this rule and of all its parts
+     * (declarations, nested rules) by the given number of chars;
+     * used if the source was edited in front of the rule.
+     * @param delta the number of chars to move
+     */
+    public void shiftSourceRange(final int delta) {
+        checkNotFrozen();
+        if (sourceStart_ > -1) {
+            sourceStart_ += delta;
+        }
+        if (sourceEnd_ > -1) {
+            sourceEnd_ += delta;
+        }
+    }
+
+    /**
+     * @return true if the rule (or one of its parts) was changed after
+     *         parsing; the source range is outdated in this case
+     */
+    public boolean isModified() {
+        return modified_;
+    }
+
+    /**
+     * Marks the rule as changed. Resetting the flag resets the flags
+     * of all the parts (declarations, nested rules) also.
+     * @param modified the new value
+     */
+    public void setModified(final boolean modified) {
+        checkNotFrozen();
+        modified_ = modified;
+    }
+
+    /**
+     * @return true if the rule belongs to a frozen style sheet
+     * @see CSSStyleSheetImpl#freeze()
+     */
+    public boolean isFrozen() {
+        return frozen_;
+    }
+
+    /**
+     * Makes the rule and all its parts read only; deferred parts are parsed before.
+     */
+    void freeze() {
+        frozen_ = true;
+    }
+
+    /**
+     * Creates a mutable copy of this rule for the copy-on-write view of a frozen
+     * style sheet; nested rules are not copied, the copy refers to the same instances.
+     * @param parentStyleSheet the parent style sheet of the copy
+     * @param parentRule the parent rule of the copy
+     * @return the copy
+     * @see CSSStyleSheetImpl#materializeRule(AbstractCSSRuleImpl)
+     */
+    AbstractCSSRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        throw new DOMExceptionImpl(
+            DOMException.NOT_SUPPORTED_ERR,
+            DOMExceptionImpl.NOT_IMPLEMENTED);
+    }
+
+    /**
+     * Copies the locator, the source range and the modified flag of the given rule.
+     * @param rule the rule to copy from
+     */
+    void copyState(final AbstractCSSRuleImpl rule) {
+        setLocator(rule.getLocator());
+        sourceStart_ = rule.sourceStart_;
+        sourceEnd_ = rule.sourceEnd_;
+        modified_ = rule.modified_;
+    }
+
+    /**
+     * @throws DOMException if the rule is frozen
+     */
+    void checkNotFrozen() throws DOMException {
+        if (frozen_) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean equals(final Object obj) {
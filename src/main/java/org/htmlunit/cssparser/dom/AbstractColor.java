@@ -18,10 +18,17 @@
 import java.util.Locale;
 
 import org.htmlunit.cssparser.parser.LexicalUnit;
+import org.htmlunit.cssparser.parser.LexicalUnit.LexicalUnitType;
+import org.htmlunit.cssparser.parser.ValueResolver;
 import org.w3c.dom.DOMException;
 
 /**
  * Color base class.
+ * Beside the values the color is converted once into a packed sRGB
+ * representation; the accessors for this are allocation free.
+ * If some of the channels are not known at parse time (var(), relative
+ * calc() expressions or the relative color syntax) the color is
+ * reported as not resolved.
  *
  * @author Ronald Brill
  */
@@ -30,6 +37,13 @@ public class AbstractColor implements Serializable {
     private final String function_;
     private final CSSValueImpl cssValue_;
 
+    private final boolean resolved_;
+    private final float red_;
+    private final float green_;
+    private final float blue_;
+    private final float alpha_;
+    private final int argb_;
+
     /**
      * Constructor that reads the values from the given
      * chain of LexicalUnits.
@@ -40,6 +54,208 @@ public class AbstractColor implements Serializable {
     public AbstractColor(final String function, final LexicalUnit lu) throws DOMException {
         function_ = function.toLowerCase(Locale.ROOT);
         cssValue_ = new CSSValueImpl(lu);
+
+        final double[] rgba = new double[4];
+        resolved_ = toSRGB(function_, lu, rgba);
+        if (resolved_) {
+            red_ = (float) rgba[0];
+            green_ = (float) rgba[1];
+            blue_ = (float) rgba[2];
+            alpha_ = (float) Math.max(0, Math.min(1, rgba[3]));
+            argb_ = ColorSpaces.packArgb(rgba[0], rgba[1], rgba[2], alpha_);
+        }
+        else {
+            red_ = Float.NaN;
+            green_ = Float.NaN;
+            blue_ = Float.NaN;
+            alpha_ = Float.NaN;
+            argb_ = 0;
+        }
+    }
+
+    /**
+     * @return true if all channels are known and the sRGB values are available
+     */
+    public boolean isResolved() {
+        return resolved_;
+    }
+
+    /**
+     * @return the color clamped to the sRGB gamut and packed as ARGB int (8 bit per channel);
+     *         0 (transparent black) if not resolved
+     */
+    public int getARGB() {
+        return argb_;
+    }
+
+    /**
+     * @return the red channel 0..255 of the packed sRGB value
+     */
+    public int getRed() {
+        return (argb_ >> 16) & 0xFF;
+    }
+
+    /**
+     * @return the green channel 0..255 of the packed sRGB value
+     */
+    public int getGreen() {
+        return (argb_ >> 8) & 0xFF;
+    }
+
+    /**
+     * @return the blue channel 0..255 of the packed sRGB value
+     */
+    public int getBlue() {
+        return argb_ & 0xFF;
+    }
+
+    /**
+     * @return the alpha 0..1 or NaN if not resolved
+     */
+    public float getAlpha() {
+        return alpha_;
+    }
+
+    /**
+     * @return the red component in the extended sRGB space (not clamped,
+     *         might be outside 0..1 for wide gamut colors) or NaN if not resolved
+     */
+    public float getRedComponent() {
+        return red_;
+    }
+
+    /**
+     * @return the green component in the extended sRGB space (not clamped,
+     *         might be outside 0..1 for wide gamut colors) or NaN if not resolved
+     */
+    public float getGreenComponent() {
+        return green_;
+    }
+
+    /**
+     * @return the blue component in the extended sRGB space (not clamped,
+     *         might be outside 0..1 for wide gamut colors) or NaN if not resolved
+     */
+    public float getBlueComponent() {
+        return blue_;
+    }
+
+    private static boolean toSRGB(final String function, final LexicalUnit lu, final double[] rgba) {
+        final LexicalUnit[] channels = new LexicalUnit[4];
+        int count = 0;
+        boolean slash = false;
+
+        LexicalUnit next = lu;
+        while (next != null) {
+            final LexicalUnitType type = next.getLexicalUnitType();
+            if (type == LexicalUnitType.OPERATOR_SLASH) {
+                if (slash || count != 3) {
+                    return false;
+                }
+                slash = true;
+            }
+            else if (type != LexicalUnitType.OPERATOR_COMMA) {
+                if (count == 4) {
+                    return false;
+                }
+                channels[count++] = next;
+            }
+            next = next.getNextLexicalUnit();
+        }
+        if (count < 3) {
+            return false;
+        }
+
+        rgba[3] = count == 4 ? channel(channels[3], 1) : 1;
+
+        switch (function) {
+            case "rgb":
+            case "rgba":
+                rgba[0] = channel(channels[0], 255) / 255;
+                rgba[1] = channel(channels[1], 255) / 255;
+                rgba[2] = channel(channels[2], 255) / 255;
+                break;
+            case "hsl":
+            case "hsla":
+                ColorSpaces.hslToRgb(hue(channels[0]),
+                        channel(channels[1], 100) / 100, channel(channels[2], 100) / 100, rgba);
+                break;
+            case "hwb":
+                ColorSpaces.hwbToRgb(hue(channels[0]),
+                        channel(channels[1], 100) / 100, channel(channels[2], 100) / 100, rgba);
+                break;
+            case "lab":
+                ColorSpaces.labToRgb(channel(channels[0], 100),
+                        channel(channels[1], 125), channel(channels[2], 125), rgba);
+                break;
+            case "oklab":
+                ColorSpaces.oklabToRgb(channel(channels[0], 1),
+                        channel(channels[1], 0.4), channel(channels[2], 0.4), rgba);
+                break;
+            case "lch":
+                ColorSpaces.lchToRgb(channel(channels[0], 100),
+                        channel(channels[1], 150), hue(channels[2]), rgba);
+                break;
+            case "oklch":
+                ColorSpaces.oklchToRgb(channel(channels[0], 1),
+                        channel(channels[1], 0.4), hue(channels[2]), rgba);
+                break;
+            default:
+                return false;
+        }
+
+        for (final double value : rgba) {
+            if (Double.isNaN(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param lu the channel value
+     * @param percentageReference the value 100% maps to
+     * @return the value or NaN if unknown
+     */
+    private static double channel(final LexicalUnit lu, final double percentageReference) {
+        final LexicalUnitType type = lu.getLexicalUnitType();
+        if (type == LexicalUnitType.NONE) {
+            return 0;
+        }
+        if (type == LexicalUnitType.PERCENTAGE) {
+            return lu.getDoubleValue() * percentageReference / 100;
+        }
+        if (type == LexicalUnitType.INTEGER
+                || type == LexicalUnitType.REAL
+                || type == LexicalUnitType.FUNCTION_CALC) {
+            return ValueResolver.resolveAbsolute(lu);
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @param lu the hue value (number or angle)
+     * @return the hue in degrees or NaN if unknown
+     */
+    private static double hue(final LexicalUnit lu) {
+        if (lu.getLexicalUnitType() == LexicalUnitType.NONE) {
+            return 0;
+        }
+        return ValueResolver.resolveAbsolute(lu);
+    }
+
+    /**
+     * @return the lower case function name
+     */
+    String getFunction() {
+        return function_;
+    }
+
+    /**
+     * @return the values
+     */
+    CSSValueImpl getCssValue() {
+        return cssValue_;
     }
 
     /**
@@ -0,0 +1,1051 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.SelectorEntry;
+import org.htmlunit.cssparser.parser.CSSInstrumentation;
+import org.htmlunit.cssparser.parser.CSSParserMetrics;
+import org.htmlunit.cssparser.parser.LexicalUnit;
+import org.htmlunit.cssparser.parser.LexicalUnit.LexicalUnitType;
+import org.htmlunit.cssparser.parser.condition.AttributeCondition;
+import org.htmlunit.cssparser.parser.condition.Condition;
+import org.htmlunit.cssparser.parser.condition.HasPseudoClassCondition;
+import org.htmlunit.cssparser.parser.condition.IsPseudoClassCondition;
+import org.htmlunit.cssparser.parser.condition.NotPseudoClassCondition;
+import org.htmlunit.cssparser.parser.condition.WherePseudoClassCondition;
+import org.htmlunit.cssparser.parser.media.MediaQuery;
+import org.htmlunit.cssparser.parser.selector.ChildSelector;
+import org.htmlunit.cssparser.parser.selector.Combinator;
+import org.htmlunit.cssparser.parser.selector.DescendantSelector;
+import org.htmlunit.cssparser.parser.selector.DirectAdjacentSelector;
+import org.htmlunit.cssparser.parser.selector.ElementSelector;
+import org.htmlunit.cssparser.parser.selector.GeneralAdjacentSelector;
+import org.htmlunit.cssparser.parser.selector.RelativeSelector;
+import org.htmlunit.cssparser.parser.selector.Selector;
+import org.htmlunit.cssparser.parser.selector.Selector.SelectorType;
+
+/**
+ * Cascade and computed style engine on top of the rule indexes of the style sheets.
+ *
+ * <p>The style sheets are added in document order together with their {@link Origin}.
+ * Disabled sheets, sheets and imports with not matching media and the rules of
+ * not matching media rules are ignored; the media lists are evaluated once by the media
+ * matcher given to the constructor. The cascade takes a snapshot of the rules; if
+ * one of the sheets is changed later on, a new cascade has to be set up.</p>
+ *
+ * <p>For every element the candidate rules are taken from the rule indexes,
+ * matched and sorted by origin, specificity and source order. The declarations are
+ * applied in the order of the css cascade (normal declarations of the user agent,
+ * user and author sheets, normal inline declarations, important author declarations,
+ * important inline declarations, important user and user agent declarations); finally
+ * the keywords <code>inherit</code>, <code>initial</code>, <code>unset</code> and
+ * <code>revert</code> (handled like <code>unset</code>) are resolved. Shorthand
+ * properties are applied as their longhands (see
+ * {@link CSSStyleDeclarationImpl#getLonghandProperties()}).</p>
+ *
+ * <p>Siblings share the matching results (style sharing). The siblings are grouped
+ * by a signature made of the local name, id, classes, the parent element and the parent style; the group
+ * knows the candidate selectors and the attributes used by them. Siblings with the same
+ * values for these attributes reuse the previously matched entries (and, without inline style,
+ * also the computed style). Selectors depending on the position of the element
+ * (e.g. <code>:nth-child()</code>, <code>+</code> or <code>~</code>), on the state of the
+ * element (e.g. <code>:hover</code>) or on the descendants (<code>:has()</code>) are
+ * excluded from sharing; they are matched for every element.</p>
+ *
+ * <p>Instances are not thread safe.</p>
+ *
+ * @param <E> the type of the elements
+ *
+ * @author Ronald Brill
+ */
+public class CSSCascade<E> {
+
+    /**
+     * The origin of a style sheet.
+     */
+    public enum Origin {
+        /** The default style sheet of the browser. */
+        USER_AGENT,
+
+        /** Style sheets provided by the user. */
+        USER,
+
+        /** The style sheets of the document. */
+        AUTHOR
+    }
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final int KEYWORD_NONE = 0;
+    private static final int KEYWORD_INHERIT = 1;
+    private static final int KEYWORD_INITIAL = 2;
+    private static final int KEYWORD_UNSET = 3;
+
+    private static final Comparator<Match> CASCADE_ORDER = (m1, m2) -> {
+        int result = m1.info_.origin_.compareTo(m2.info_.origin_);
+        if (result == 0) {
+            result = Long.compare(m1.specificity_, m2.specificity_);
+        }
+        if (result == 0) {
+            result = Long.compare(m1.info_.order_, m2.info_.order_);
+        }
+        return result;
+    };
+
+    private final CSSElementAdapter<E> adapter_;
+    private final Predicate<MediaListImpl> mediaMatcher_;
+    private final List<CSSStyleSheetRuleIndex> indexes_ = new ArrayList<>();
+    private final Map<CSSStyleRuleImpl, RuleInfo> rules_ = new IdentityHashMap<>();
+    private final Map<String, int[]> nthCache_ = new HashMap<>();
+    private final Map<SharingKey, SharingGroup> groups_;
+    private long order_;
+
+    /**
+     * Ctor; all media lists are matching.
+     *
+     * @param adapter the adapter for the elements
+     */
+    public CSSCascade(final CSSElementAdapter<E> adapter) {
+        this(adapter, null, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Ctor.
+     *
+     * @param adapter the adapter for the elements
+     * @param mediaMatcher decides if a media list is matching; null matches all. The matcher
+     *        is not called for lists matching all media (e.g. the implicit media list of a sheet)
+     */
+    public CSSCascade(final CSSElementAdapter<E> adapter, final Predicate<MediaListImpl> mediaMatcher) {
+        this(adapter, mediaMatcher, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Ctor.
+     *
+     * @param adapter the adapter for the elements
+     * @param mediaMatcher decides if a media list is matching; null matches all. The matcher
+     *        is not called for lists matching all media (e.g. the implicit media list of a sheet)
+     * @param cacheSize the max number of sibling groups in the style sharing cache
+     */
+    public CSSCascade(final CSSElementAdapter<E> adapter, final Predicate<MediaListImpl> mediaMatcher,
+            final int cacheSize) {
+        adapter_ = Objects.requireNonNull(adapter, "adapter");
+        mediaMatcher_ = mediaMatcher;
+        groups_ = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<SharingKey, SharingGroup> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Adds a style sheet; the sheets have to be added in document order.
+     * The loaded imports (see {@link CSSImportResolver}) are added before the rules of the sheet.
+     *
+     * @param sheet the style sheet
+     * @param origin the origin of the sheet
+     */
+    public void addStyleSheet(final CSSStyleSheetImpl sheet, final Origin origin) {
+        Objects.requireNonNull(origin, "origin");
+        addStyleSheet(sheet, origin, Collections.newSetFromMap(new IdentityHashMap<>()));
+        clearCache();
+    }
+
+    private void addStyleSheet(final CSSStyleSheetImpl sheet, final Origin origin,
+            final Set<CSSStyleSheetImpl> visited) {
+        if (sheet == null || sheet.getDisabled() || !matches(sheet.getMedia()) || !visited.add(sheet)) {
+            return;
+        }
+
+        final List<AbstractCSSRuleImpl> rules = sheet.getCssRules().getRules();
+        for (final AbstractCSSRuleImpl rule : rules) {
+            if (rule instanceof CSSImportRuleImpl importRule && matches(importRule.getMedia())) {
+                addStyleSheet(importRule.getImportedStyleSheet(), origin, visited);
+            }
+        }
+        for (final AbstractCSSRuleImpl rule : rules) {
+            register(rule, origin);
+        }
+        addIndex(sheet.getOrCreateRuleIndex());
+    }
+
+    private void register(final AbstractCSSRuleImpl rule, final Origin origin) {
+        if (rule instanceof CSSStyleRuleImpl styleRule) {
+            rules_.put(styleRule, new RuleInfo(origin, order_++));
+        }
+        else if (rule instanceof CSSMediaRuleImpl mediaRule) {
+            for (final AbstractCSSRuleImpl child : mediaRule.getCssRules().getRules()) {
+                register(child, origin);
+            }
+        }
+    }
+
+    private void addIndex(final CSSStyleSheetRuleIndex index) {
+        if (!matches(index.getMediaList())) {
+            return;
+        }
+        indexes_.add(index);
+        for (final CSSStyleSheetRuleIndex child : index.getChildren()) {
+            addIndex(child);
+        }
+    }
+
+    private boolean matches(final MediaListImpl media) {
+        return mediaMatcher_ == null || matchesAll(media) || mediaMatcher_.test(media);
+    }
+
+    /**
+     * @return true if the list is empty or contains a query for all media without
+     *         conditions (e.g. the implicit media list of a style sheet)
+     */
+    private static boolean matchesAll(final MediaListImpl media) {
+        if (media == null || media.getLength() == 0) {
+            return true;
+        }
+        for (int i = 0; i < media.getLength(); i++) {
+            final MediaQuery query = media.mediaQuery(i);
+            if (!query.isNot() && query.getProperties().isEmpty() && "all".equalsIgnoreCase(query.getMedia())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clears the style sharing cache; has to be called if the local name, id,
+     * classes or attributes of elements have changed.
+     */
+    public void clearCache() {
+        groups_.clear();
+    }
+
+    /**
+     * @param element the element
+     * @return the entries matching the element in cascade order (origin, specificity, source order);
+     *         there is at most one entry per rule
+     */
+    public List<SelectorEntry> getMatchingEntries(final E element) {
+        final List<Match> matches = match(element, null).matches_;
+        final List<SelectorEntry> result = new ArrayList<>(matches.size());
+        for (final Match match : matches) {
+            result.add(match.entry_);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the style of the given element.
+     *
+     * @param element the element
+     * @param inlineStyle the declarations of the style attribute or null
+     * @param parentStyle the computed style of the parent element or null for the root element
+     * @return the computed style
+     */
+    public CSSComputedStyle computeStyle(final E element, final CSSStyleDeclarationImpl inlineStyle,
+            final CSSComputedStyle parentStyle) {
+        final MatchResult result = match(element, parentStyle);
+        final SharedMatches shared = result.shared_;
+        if (inlineStyle == null && shared != null && shared.style_ != null) {
+            return shared.style_;
+        }
+
+        final List<Match> matches = result.matches_;
+        final Declared declared = new Declared();
+        for (final Match match : matches) {
+            declared.apply(match.entry_.getRule().getStyle(), false);
+        }
+        if (inlineStyle != null) {
+            declared.apply(inlineStyle, false);
+        }
+
+        applyImportant(declared, matches, Origin.AUTHOR);
+        if (inlineStyle != null) {
+            declared.apply(inlineStyle, true);
+        }
+        applyImportant(declared, matches, Origin.USER);
+        applyImportant(declared, matches, Origin.USER_AGENT);
+
+        final CSSComputedStyle style = resolve(declared, parentStyle);
+        if (inlineStyle == null && shared != null) {
+            shared.style_ = style;
+        }
+        return style;
+    }
+
+    private static void applyImportant(final Declared declared, final List<Match> matches, final Origin origin) {
+        for (final Match match : matches) {
+            if (match.info_.origin_ == origin) {
+                declared.apply(match.entry_.getRule().getStyle(), true);
+            }
+        }
+    }
+
+    private static CSSComputedStyle resolve(final Declared declared, final CSSComputedStyle parentStyle) {
+        final CSSValueImpl[] values = declared.values_;
+        final CSSValueImpl[] parentValues = parentStyle == null ? null : parentStyle.getValues();
+        for (int i = 0; i < values.length; i++) {
+            final CSSValueImpl parentValue = parentValues == null ? null : parentValues[i];
+            values[i] = resolve(values[i], CSSPropertyRegistry.isInherited(i), parentValue);
+        }
+
+        Map<String, CSSValueImpl> others = null;
+        if (parentStyle != null) {
+            // custom properties are inherited
+            for (final Map.Entry<String, CSSValueImpl> entry : parentStyle.getOthers().entrySet()) {
+                if (entry.getKey().startsWith("--")) {
+                    if (others == null) {
+                        others = new HashMap<>();
+                    }
+                    others.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        if (declared.others_ != null) {
+            for (final Map.Entry<String, CSSValueImpl> entry : declared.others_.entrySet()) {
+                final String name = entry.getKey();
+                final CSSValueImpl parentValue = parentStyle == null ? null : parentStyle.getOthers().get(name);
+                final CSSValueImpl value = resolve(entry.getValue(), name.startsWith("--"), parentValue);
+                if (others == null) {
+                    others = new HashMap<>();
+                }
+                if (value == null) {
+                    others.remove(name);
+                }
+                else {
+                    others.put(name, value);
+                }
+            }
+        }
+        return new CSSComputedStyle(values, others);
+    }
+
+    private static CSSValueImpl resolve(final CSSValueImpl value, final boolean inherited,
+            final CSSValueImpl parentValue) {
+        switch (keyword(value)) {
+            case KEYWORD_INHERIT:
+                return parentValue;
+            case KEYWORD_INITIAL:
+                return null;
+            case KEYWORD_UNSET:
+                return inherited ? parentValue : null;
+            default:
+                if (value == null && inherited) {
+                    return parentValue;
+                }
+                return value;
+        }
+    }
+
+    private static int keyword(final CSSValueImpl value) {
+        if (value != null && value.getValue() instanceof LexicalUnit lu && lu.getNextLexicalUnit() == null) {
+            if (lu.getLexicalUnitType() == LexicalUnitType.INHERIT) {
+                return KEYWORD_INHERIT;
+            }
+            if (lu.getLexicalUnitType() == LexicalUnitType.IDENT) {
+                final String ident = lu.getStringValue();
+                if ("initial".equalsIgnoreCase(ident)) {
+                    return KEYWORD_INITIAL;
+                }
+                if ("inherit".equalsIgnoreCase(ident)) {
+                    return KEYWORD_INHERIT;
+                }
+                if ("unset".equalsIgnoreCase(ident)
+                        || "revert".equalsIgnoreCase(ident)
+                        || "revert-layer".equalsIgnoreCase(ident)) {
+                    return KEYWORD_UNSET;
+                }
+            }
+        }
+        return KEYWORD_NONE;
+    }
+
+    private MatchResult match(final E element, final CSSComputedStyle parentStyle) {
+        final String localName = adapter_.getLocalName(element);
+        final String id = adapter_.getId(element);
+        final String[] classes = adapter_.getClassNames(element);
+
+        final SharingKey key = new SharingKey(adapter_.getParent(element), parentStyle, localName, id, classes);
+        SharingGroup group = groups_.get(key);
+        if (group == null) {
+            group = createGroup(localName, id, classes);
+            groups_.put(key, group);
+        }
+
+        final String[] attributeNames = group.attributeNames_;
+        final List<String> attributeValues;
+        if (attributeNames.length == 0) {
+            attributeValues = Collections.emptyList();
+        }
+        else {
+            final String[] values = new String[attributeNames.length];
+            for (int i = 0; i < attributeNames.length; i++) {
+                values[i] = adapter_.getAttribute(element, attributeNames[i]);
+            }
+            attributeValues = Arrays.asList(values);
+        }
+
+        SharedMatches shared = group.variants_.get(attributeValues);
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        if (metrics != null) {
+            metrics.cacheAccess(CSSInstrumentation.CACHE_STYLE_SHARING, shared != null);
+        }
+        if (shared == null) {
+            shared = new SharedMatches(match(group.sharable_, element, null));
+            group.variants_.put(attributeValues, shared);
+        }
+
+        if (!group.positional_.isEmpty()) {
+            final List<Match> positional = match(group.positional_, element, shared.matches_);
+            if (positional != null) {
+                return new MatchResult(positional, null);
+            }
+        }
+        return new MatchResult(shared.matches_, shared);
+    }
+
+    private SharingGroup createGroup(final String localName, final String id, final String[] classes) {
+        final List<Candidate> sharable = new ArrayList<>();
+        final List<Candidate> positional = new ArrayList<>();
+        final Set<String> attributeNames = new LinkedHashSet<>();
+
+        for (final CSSStyleSheetRuleIndex index : indexes_) {
+            final Iterator<SelectorEntry> iter = index.getSelectorEntriesIteratorFor(localName, id, classes);
+            while (iter.hasNext()) {
+                final SelectorEntry entry = iter.next();
+                final RuleInfo info = rules_.get(entry.getRule());
+                if (info != null) {
+                    final Candidate candidate = new Candidate(entry, info);
+                    if (isSharable(entry.getSelector(), attributeNames)) {
+                        sharable.add(candidate);
+                    }
+                    else {
+                        positional.add(candidate);
+                    }
+                }
+            }
+        }
+        return new SharingGroup(sharable, positional, attributeNames.toArray(new String[0]));
+    }
+
+    /**
+     * Matches the candidates.
+     *
+     * @param candidates the candidates
+     * @param element the element
+     * @param shared the already matched entries to merge with or null
+     * @return the matches in cascade order; if shared is given null if none of the candidates matches
+     */
+    private List<Match> match(final List<Candidate> candidates, final E element, final List<Match> shared) {
+        Map<CSSStyleRuleImpl, Match> matched = null;
+        for (final Candidate candidate : candidates) {
+            final Selector selector = candidate.entry_.getSelector();
+            if (matches(selector, element)) {
+                if (matched == null) {
+                    matched = new IdentityHashMap<>();
+                    if (shared != null) {
+                        for (final Match match : shared) {
+                            matched.put(match.entry_.getRule(), match);
+                        }
+                    }
+                }
+                final long specificity = selector.getSelectorSpecificity().getPackedValue();
+                final CSSStyleRuleImpl rule = candidate.entry_.getRule();
+                final Match match = matched.get(rule);
+                if (match == null || match.specificity_ < specificity) {
+                    matched.put(rule, new Match(candidate.entry_, candidate.info_, specificity));
+                }
+            }
+        }
+
+        if (matched == null) {
+            return shared == null ? Collections.emptyList() : null;
+        }
+        final List<Match> matches = new ArrayList<>(matched.values());
+        matches.sort(CASCADE_ORDER);
+        return matches;
+    }
+
+    // true if the selector result is the same for all siblings having the same local name,
+    // id, classes and values of the collected attributes
+    private static boolean isSharable(final Selector selector, final Set<String> attributeNames) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                final List<Condition> conditions = ((ElementSelector) selector).getConditions();
+                if (conditions != null) {
+                    for (final Condition condition : conditions) {
+                        if (!isSharable(condition, attributeNames)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            case DESCENDANT_SELECTOR:
+            case CHILD_SELECTOR:
+                // the ancestors are the same for all siblings
+                return isSharable(selector.getSimpleSelector(), attributeNames);
+            case PSEUDO_ELEMENT_SELECTOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isSharable(final Condition condition, final Set<String> attributeNames) {
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+            case CLASS_CONDITION:
+                return true;
+            case ATTRIBUTE_CONDITION:
+            case ONE_OF_ATTRIBUTE_CONDITION:
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+            case PREFIX_ATTRIBUTE_CONDITION:
+            case SUFFIX_ATTRIBUTE_CONDITION:
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+                attributeNames.add(condition.getLocalName());
+                return true;
+            case LANG_CONDITION:
+                attributeNames.add("lang");
+                return true;
+            case NOT_PSEUDO_CLASS_CONDITION:
+                return isSharable(((NotPseudoClassCondition) condition).getSelectors(), attributeNames);
+            case IS_PSEUDO_CLASS_CONDITION:
+                return isSharable(((IsPseudoClassCondition) condition).getSelectors(), attributeNames);
+            case WHERE_PSEUDO_CLASS_CONDITION:
+                return isSharable(((WherePseudoClassCondition) condition).getSelectors(), attributeNames);
+            default:
+                // pseudo classes and :has()
+                return false;
+        }
+    }
+
+    private static boolean isSharable(final List<Selector> selectors, final Set<String> attributeNames) {
+        for (final Selector selector : selectors) {
+            if (!isSharable(selector, attributeNames)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param selector the selector
+     * @param element the element
+     * @return true if the selector matches the element; pseudo elements never match
+     */
+    public boolean matches(final Selector selector, final E element) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                return matchesElement((ElementSelector) selector, element);
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector ds = (DescendantSelector) selector;
+                if (!matches(ds.getSimpleSelector(), element)) {
+                    return false;
+                }
+                E ancestor = adapter_.getParent(element);
+                while (ancestor != null) {
+                    if (matches(ds.getAncestorSelector(), ancestor)) {
+                        return true;
+                    }
+                    ancestor = adapter_.getParent(ancestor);
+                }
+                return false;
+            case CHILD_SELECTOR:
+                final ChildSelector cs = (ChildSelector) selector;
+                if (!matches(cs.getSimpleSelector(), element)) {
+                    return false;
+                }
+                final E parent = adapter_.getParent(element);
+                return parent != null && matches(cs.getAncestorSelector(), parent);
+            case DIRECT_ADJACENT_SELECTOR:
+                final DirectAdjacentSelector das = (DirectAdjacentSelector) selector;
+                if (!matches(das.getSimpleSelector(), element)) {
+                    return false;
+                }
+                final E previous = adapter_.getPreviousSibling(element);
+                return previous != null && matches(das.getSelector(), previous);
+            case GENERAL_ADJACENT_SELECTOR:
+                final GeneralAdjacentSelector gas = (GeneralAdjacentSelector) selector;
+                if (!matches(gas.getSimpleSelector(), element)) {
+                    return false;
+                }
+                E sibling = adapter_.getPreviousSibling(element);
+                while (sibling != null) {
+                    if (matches(gas.getSelector(), sibling)) {
+                        return true;
+                    }
+                    sibling = adapter_.getPreviousSibling(sibling);
+                }
+                return false;
+            case RELATIVE_SELECTOR:
+                return matches(((RelativeSelector) selector).getSelector(), element);
+            default:
+                // pseudo elements
+                return false;
+        }
+    }
+
+    private boolean matchesElement(final ElementSelector selector, final E element) {
+        final String localName = selector.getLocalNameLowerCase();
+        if (localName != null && !localName.equals(adapter_.getLocalName(element))) {
+            return false;
+        }
+        final List<Condition> conditions = selector.getConditions();
+        if (conditions != null) {
+            for (final Condition condition : conditions) {
+                if (!matchesCondition(condition, element)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesCondition(final Condition condition, final E element) {
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+                return condition.getValue().equals(adapter_.getId(element));
+            case CLASS_CONDITION:
+                final String[] classes = adapter_.getClassNames(element);
+                if (classes != null) {
+                    for (final String clazz : classes) {
+                        if (condition.getValue().equals(clazz)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            case ATTRIBUTE_CONDITION:
+            case ONE_OF_ATTRIBUTE_CONDITION:
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+            case PREFIX_ATTRIBUTE_CONDITION:
+            case SUFFIX_ATTRIBUTE_CONDITION:
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+                return matchesAttribute((AttributeCondition) condition, element);
+            case LANG_CONDITION:
+                return matchesLang(condition.getValue(), element);
+            case PSEUDO_CLASS_CONDITION:
+                return matchesPseudoClass(condition.getValue(), element);
+            case NOT_PSEUDO_CLASS_CONDITION:
+                return !matchesAny(((NotPseudoClassCondition) condition).getSelectors(), element);
+            case IS_PSEUDO_CLASS_CONDITION:
+                return matchesAny(((IsPseudoClassCondition) condition).getSelectors(), element);
+            case WHERE_PSEUDO_CLASS_CONDITION:
+                return matchesAny(((WherePseudoClassCondition) condition).getSelectors(), element);
+            case HAS_PSEUDO_CLASS_CONDITION:
+                for (final Selector selector : ((HasPseudoClassCondition) condition).getSelectors()) {
+                    if (matchesHas(selector, element)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean matchesAny(final List<Selector> selectors, final E element) {
+        for (final Selector selector : selectors) {
+            if (matches(selector, element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAttribute(final AttributeCondition condition, final E element) {
+        String attribute = adapter_.getAttribute(element, condition.getLocalName());
+        if (attribute == null) {
+            return false;
+        }
+        String value = condition.getValue();
+        if (value == null) {
+            return true;
+        }
+        if (condition.isCaseInSensitive()) {
+            attribute = attribute.toLowerCase(Locale.ROOT);
+            value = value.toLowerCase(Locale.ROOT);
+        }
+
+        switch (condition.getConditionType()) {
+            case ONE_OF_ATTRIBUTE_CONDITION:
+                if (value.isEmpty()) {
+                    return false;
+                }
+                for (final String part : attribute.split("\\s+")) {
+                    if (value.equals(part)) {
+                        return true;
+                    }
+                }
+                return false;
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                return attribute.equals(value) || attribute.startsWith(value + "-");
+            case PREFIX_ATTRIBUTE_CONDITION:
+                return !value.isEmpty() && attribute.startsWith(value);
+            case SUFFIX_ATTRIBUTE_CONDITION:
+                return !value.isEmpty() && attribute.endsWith(value);
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+                return !value.isEmpty() && attribute.contains(value);
+            default:
+                return attribute.equals(value);
+        }
+    }
+
+    private boolean matchesLang(final String lang, final E element) {
+        E current = element;
+        while (current != null) {
+            final String value = adapter_.getAttribute(current, "lang");
+            if (value != null) {
+                return value.equalsIgnoreCase(lang)
+                        || value.toLowerCase(Locale.ROOT).startsWith(lang.toLowerCase(Locale.ROOT) + "-");
+            }
+            current = adapter_.getParent(current);
+        }
+        return false;
+    }
+
+    private boolean matchesPseudoClass(final String value, final E element) {
+        final String pseudoClass = value.toLowerCase(Locale.ROOT);
+        switch (pseudoClass) {
+            case "root":
+                return adapter_.getParent(element) == null;
+            case "first-child":
+                return adapter_.getPreviousSibling(element) == null;
+            case "last-child":
+                return adapter_.getNextSibling(element) == null;
+            case "only-child":
+                return adapter_.getPreviousSibling(element) == null && adapter_.getNextSibling(element) == null;
+            case "first-of-type":
+                return countPrevious(element, true) == 0;
+            case "last-of-type":
+                return countNext(element, true) == 0;
+            case "only-of-type":
+                return countPrevious(element, true) == 0 && countNext(element, true) == 0;
+            default:
+                final int paren = pseudoClass.indexOf('(');
+                if (paren > 0 && pseudoClass.endsWith(")")) {
+                    final String name = pseudoClass.substring(0, paren);
+                    switch (name) {
+                        case "nth-child":
+                            return matchesNth(pseudoClass.substring(paren + 1, pseudoClass.length() - 1),
+                                    countPrevious(element, false) + 1);
+                        case "nth-last-child":
+                            return matchesNth(pseudoClass.substring(paren + 1, pseudoClass.length() - 1),
+                                    countNext(element, false) + 1);
+                        case "nth-of-type":
+                            return matchesNth(pseudoClass.substring(paren + 1, pseudoClass.length() - 1),
+                                    countPrevious(element, true) + 1);
+                        case "nth-last-of-type":
+                            return matchesNth(pseudoClass.substring(paren + 1, pseudoClass.length() - 1),
+                                    countNext(element, true) + 1);
+                        default:
+                            break;
+                    }
+                }
+                return adapter_.matchesPseudoClass(element, pseudoClass);
+        }
+    }
+
+    private int countPrevious(final E element, final boolean sameType) {
+        final String localName = sameType ? adapter_.getLocalName(element) : null;
+        int count = 0;
+        E sibling = adapter_.getPreviousSibling(element);
+        while (sibling != null) {
+            if (!sameType || localName.equals(adapter_.getLocalName(sibling))) {
+                count++;
+            }
+            sibling = adapter_.getPreviousSibling(sibling);
+        }
+        return count;
+    }
+
+    private int countNext(final E element, final boolean sameType) {
+        final String localName = sameType ? adapter_.getLocalName(element) : null;
+        int count = 0;
+        E sibling = adapter_.getNextSibling(element);
+        while (sibling != null) {
+            if (!sameType || localName.equals(adapter_.getLocalName(sibling))) {
+                count++;
+            }
+            sibling = adapter_.getNextSibling(sibling);
+        }
+        return count;
+    }
+
+    private boolean matchesNth(final String argument, final int position) {
+        final int[] ab = nthCache_.computeIfAbsent(argument, CSSCascade::parseNth);
+        if (ab.length == 0) {
+            return false;
+        }
+        final int a = ab[0];
+        final int b = ab[1];
+        if (a == 0) {
+            return position == b;
+        }
+        final int diff = position - b;
+        return diff / a >= 0 && diff % a == 0;
+    }
+
+    /**
+     * Parses the An+B notation.
+     *
+     * @param argument the argument of the pseudo class
+     * @return the array {a, b} or an empty array if the argument is not supported
+     */
+    static int[] parseNth(final String argument) {
+        final String arg = argument.replaceAll("\\s+", "");
+        if ("odd".equals(arg)) {
+            return new int[] {2, 1};
+        }
+        if ("even".equals(arg)) {
+            return new int[] {2, 0};
+        }
+
+        try {
+            final int n = arg.indexOf('n');
+            if (n < 0) {
+                return new int[] {0, Integer.parseInt(arg)};
+            }
+
+            final String aPart = arg.substring(0, n);
+            final int a;
+            if (aPart.isEmpty() || "+".equals(aPart)) {
+                a = 1;
+            }
+            else if ("-".equals(aPart)) {
+                a = -1;
+            }
+            else {
+                a = Integer.parseInt(aPart);
+            }
+            final String bPart = arg.substring(n + 1);
+            final int b = bPart.isEmpty() ? 0 : Integer.parseInt(bPart);
+            return new int[] {a, b};
+        }
+        catch (final NumberFormatException e) {
+            // e.g. the 'of S' syntax
+            return new int[0];
+        }
+    }
+
+    // approximation: the selector after the combinator is matched without
+    // restricting the ancestors or previous siblings to the anchor element
+    private boolean matchesHas(final Selector selector, final E element) {
+        Combinator combinator = Combinator.DESCENDANT_COMBINATOR;
+        Selector relative = selector;
+        if (selector.getSelectorType() == SelectorType.RELATIVE_SELECTOR) {
+            combinator = ((RelativeSelector) selector).getCombinator();
+            relative = ((RelativeSelector) selector).getSelector();
+        }
+
+        switch (combinator) {
+            case CHILD_COMBINATOR:
+                for (E child = adapter_.getFirstChild(element); child != null;
+                        child = adapter_.getNextSibling(child)) {
+                    if (matches(relative, child)) {
+                        return true;
+                    }
+                }
+                return false;
+            case NEXT_SIBLING_COMBINATOR:
+                final E next = adapter_.getNextSibling(element);
+                return next != null && matches(relative, next);
+            case SUBSEQUENT_SIBLING_COMBINATOR:
+                for (E sibling = adapter_.getNextSibling(element); sibling != null;
+                        sibling = adapter_.getNextSibling(sibling)) {
+                    if (matches(relative, sibling)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return matchesDescendant(relative, element);
+        }
+    }
+
+    private boolean matchesDescendant(final Selector selector, final E element) {
+        for (E child = adapter_.getFirstChild(element); child != null; child = adapter_.getNextSibling(child)) {
+            if (matches(selector, child) || matchesDescendant(selector, child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class RuleInfo {
+        private final Origin origin_;
+        private final long order_;
+
+        RuleInfo(final Origin origin, final long order) {
+            origin_ = origin;
+            order_ = order;
+        }
+    }
+
+    private static final class Match {
+        private final SelectorEntry entry_;
+        private final RuleInfo info_;
+        private final long specificity_;
+
+        Match(final SelectorEntry entry, final RuleInfo info, final long specificity) {
+            entry_ = entry;
+            info_ = info;
+            specificity_ = specificity;
+        }
+    }
+
+    private static final class Candidate {
+        private final SelectorEntry entry_;
+        private final RuleInfo info_;
+
+        Candidate(final SelectorEntry entry, final RuleInfo info) {
+            entry_ = entry;
+            info_ = info;
+        }
+    }
+
+    private static final class MatchResult {
+        private final List<Match> matches_;
+        private final SharedMatches shared_;
+
+        MatchResult(final List<Match> matches, final SharedMatches shared) {
+            matches_ = matches;
+            shared_ = shared;
+        }
+    }
+
+    private static final class SharedMatches {
+        private final List<Match> matches_;
+        private CSSComputedStyle style_;
+
+        SharedMatches(final List<Match> matches) {
+            matches_ = matches;
+        }
+    }
+
+    private static final class SharingGroup {
+        private static final int MAX_VARIANTS = 64;
+
+        private final List<Candidate> sharable_;
+        private final List<Candidate> positional_;
+        private final String[] attributeNames_;
+        private final Map<List<String>, SharedMatches> variants_;
+
+        SharingGroup(final List<Candidate> sharable, final List<Candidate> positional,
+                final String[] attributeNames) {
+            sharable_ = sharable;
+            positional_ = positional;
+            attributeNames_ = attributeNames;
+            variants_ = new LinkedHashMap<>(4, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<String>, SharedMatches> eldest) {
+                    return size() > MAX_VARIANTS;
+                }
+            };
+        }
+    }
+
+    private static final class SharingKey {
+        private final Object parent_;
+        private final CSSComputedStyle parentStyle_;
+        private final String localName_;
+        private final String id_;
+        private final String[] classes_;
+        private final int hash_;
+
+        SharingKey(final Object parent, final CSSComputedStyle parentStyle, final String localName,
+                final String id, final String[] classes) {
+            parent_ = parent;
+            parentStyle_ = parentStyle;
+            localName_ = localName;
+            id_ = id;
+            if (classes == null || classes.length == 0) {
+                classes_ = null;
+            }
+            else {
+                classes_ = classes.clone();
+                Arrays.sort(classes_);
+            }
+            hash_ = Objects.hash(System.identityHashCode(parent), System.identityHashCode(parentStyle),
+                    localName, id, Arrays.hashCode(classes_));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash_;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SharingKey)) {
+                return false;
+            }
+            final SharingKey other = (SharingKey) obj;
+            return parent_ == other.parent_
+                    && parentStyle_ == other.parentStyle_
+                    && Objects.equals(localName_, other.localName_)
+                    && Objects.equals(id_, other.id_)
+                    && Arrays.equals(classes_, other.classes_);
+        }
+    }
+
+    private static final class Declared {
+        private final CSSValueImpl[] values_ = new CSSValueImpl[CSSPropertyRegistry.getCount()];
+        private Map<String, CSSValueImpl> others_;
+
+        void apply(final CSSStyleDeclarationImpl declaration, final boolean important) {
+            if (declaration == null) {
+                return;
+            }
+            for (final Property property : declaration.getLonghandProperties()) {
+                final CSSValueImpl value = property.getValue();
+                if (property.isImportant() != important || value == null) {
+                    continue;
+                }
+                final int id = property.getId();
+                if (id != CSSPropertyRegistry.UNKNOWN) {
+                    values_[id] = value;
+                }
+                else {
+                    if (others_ == null) {
+                        others_ = new LinkedHashMap<>();
+                    }
+                    others_.put(CSSComputedStyle.otherKey(property.getName()), value);
+                }
+            }
+        }
+    }
+}
@@ -49,6 +49,7 @@ public CSSCharsetRuleImpl(
     /** {@inheritDoc} */
     @Override
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             final AbstractCSSRuleImpl r = parser.parseRule(cssText);
@@ -56,6 +57,7 @@ public void setCssText(final String cssText) throws DOMException {
             // The rule must be a charset rule
             if (r instanceof CSSCharsetRuleImpl) {
                 encoding_ = ((CSSCharsetRuleImpl) r).encoding_;
+                setModified(true);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -101,6 +103,14 @@ public int hashCode() {
         return hash;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    CSSCharsetRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        final CSSCharsetRuleImpl copy = new CSSCharsetRuleImpl(parentStyleSheet, parentRule, encoding_);
+        copy.copyState(this);
+        return copy;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The read only result of the {@link CSSCascade} for one element.
+ * The values of the known properties are stored in an array indexed
+ * by the {@link CSSPropertyRegistry} id; custom and unknown properties
+ * are stored by name. A missing value means the initial value
+ * of the property.
+ *
+ * <p>The values are the cascaded values; no units or relative values are resolved.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class CSSComputedStyle {
+
+    private final CSSValueImpl[] values_;
+    private final Map<String, CSSValueImpl> others_;
+
+    CSSComputedStyle(final CSSValueImpl[] values, final Map<String, CSSValueImpl> others) {
+        values_ = values;
+        others_ = others == null ? Collections.emptyMap() : others;
+    }
+
+    /**
+     * @param propertyId the id from the {@link CSSPropertyRegistry}
+     * @return the value or null if the property has its initial value
+     */
+    public CSSValueImpl getPropertyCSSValue(final int propertyId) {
+        if (propertyId < 0 || propertyId >= values_.length) {
+            return null;
+        }
+        return values_[propertyId];
+    }
+
+    /**
+     * @param propertyName the name of the property
+     * @return the value or null if the property has its initial value
+     */
+    public CSSValueImpl getPropertyCSSValue(final String propertyName) {
+        final int id = CSSPropertyRegistry.getId(propertyName);
+        if (id != CSSPropertyRegistry.UNKNOWN) {
+            return values_[id];
+        }
+        return others_.get(otherKey(propertyName));
+    }
+
+    /**
+     * @param propertyName the name of the property
+     * @return the css text of the value or an empty string if the property has its initial value
+     */
+    public String getPropertyValue(final String propertyName) {
+        final CSSValueImpl value = getPropertyCSSValue(propertyName);
+        return value == null ? "" : value.getCssText();
+    }
+
+    /**
+     * @return the custom and unknown properties
+     */
+    public Map<String, CSSValueImpl> getOtherProperties() {
+        return Collections.unmodifiableMap(others_);
+    }
+
+    /**
+     * @return the number of properties having a value
+     */
+    public int getLength() {
+        int length = others_.size();
+        for (final CSSValueImpl value : values_) {
+            if (value != null) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    CSSValueImpl[] getValues() {
+        return values_;
+    }
+
+    Map<String, CSSValueImpl> getOthers() {
+        return others_;
+    }
+
+    // custom properties are case sensitive
+    static String otherKey(final String propertyName) {
+        if (propertyName.startsWith("--")) {
+            return propertyName;
+        }
+        return propertyName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values_.length; i++) {
+            final CSSValueImpl value = values_[i];
+            if (value != null) {
+                sb.append(CSSPropertyRegistry.getName(i)).append(": ").append(value.getCssText()).append("; ");
+            }
+        }
+        for (final Map.Entry<String, CSSValueImpl> entry : others_.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue().getCssText()).append("; ");
+        }
+        if (sb.length() > 0) {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+}
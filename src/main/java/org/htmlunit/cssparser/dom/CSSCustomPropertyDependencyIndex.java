@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the custom property (var()) dependencies of a style sheet.
+ * For every custom property the index knows the declarations using it,
+ * directly or through other custom properties. This makes it possible
+ * to recompute only the affected values if a custom property changes.
+ *
+ * <p>The index is not updated automatically; call {@link #update(CSSStyleDeclarationImpl)}
+ * after a declaration was changed.</p>
+ *
+ * <p>The index knows nothing about the elements; the references are tracked by the name
+ * of the custom property over all rules. Therefore the cycle detection is conservative:
+ * a cycle built from declarations of rules that never apply to the same element
+ * (e.g. <code>.x { --a: var(--b) } .y { --b: var(--a) }</code>) is reported also.</p>
+ *
+ * @author Ronald Brill
+ */
+public class CSSCustomPropertyDependencyIndex {
+
+    /**
+     * A single property using at least one custom property.
+     */
+    public static final class Dependency {
+        private final CSSStyleDeclarationImpl declaration_;
+        private final Property property_;
+        private final Set<String> references_;
+
+        Dependency(final CSSStyleDeclarationImpl declaration, final Property property,
+                final Set<String> references) {
+            declaration_ = declaration;
+            property_ = property;
+            references_ = Collections.unmodifiableSet(references);
+        }
+
+        /**
+         * @return the declaration containing the property
+         */
+        public CSSStyleDeclarationImpl getDeclaration() {
+            return declaration_;
+        }
+
+        /**
+         * @return the property
+         */
+        public Property getProperty() {
+            return property_;
+        }
+
+        /**
+         * @return the names of the referenced custom properties
+         */
+        public Set<String> getReferences() {
+            return references_;
+        }
+
+        /**
+         * @return true if the property is a custom property itself
+         */
+        public boolean isCustomProperty() {
+            return isCustomPropertyName(property_.getName());
+        }
+    }
+
+    private final Map<CSSStyleDeclarationImpl, List<Dependency>> byDeclaration_ = new IdentityHashMap<>();
+    private final Map<String, List<Dependency>> usages_ = new HashMap<>();
+
+    /** cache */
+    private Set<String> cyclic_;
+
+    /**
+     * Creates the index for the given style sheet.
+     * Rules of nested media rules and of already resolved imports are included.
+     *
+     * @param styleSheet the style sheet
+     */
+    public CSSCustomPropertyDependencyIndex(final CSSStyleSheetImpl styleSheet) {
+        addStyleSheet(styleSheet, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private void addStyleSheet(final CSSStyleSheetImpl styleSheet, final Set<CSSStyleSheetImpl> visited) {
+        if (styleSheet == null || !visited.add(styleSheet)) {
+            return;
+        }
+        addRules(styleSheet.getCssRules(), visited);
+    }
+
+    private void addRules(final CSSRuleListImpl rules, final Set<CSSStyleSheetImpl> visited) {
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                update(((CSSStyleRuleImpl) rule).getStyle());
+            }
+            else if (rule instanceof CSSMediaRuleImpl) {
+                addRules(((CSSMediaRuleImpl) rule).getCssRules(), visited);
+            }
+            else if (rule instanceof CSSPageRuleImpl) {
+                update(((CSSPageRuleImpl) rule).getStyle());
+            }
+            else if (rule instanceof CSSFontFaceRuleImpl) {
+                update(((CSSFontFaceRuleImpl) rule).getStyle());
+            }
+            else if (rule instanceof CSSImportRuleImpl) {
+                addStyleSheet(((CSSImportRuleImpl) rule).getImportedStyleSheet(), visited);
+            }
+        }
+    }
+
+    /**
+     * (Re)indexes the given declaration. Call this after properties
+     * of the declaration were added, removed or changed.
+     *
+     * @param declaration the declaration
+     */
+    public void update(final CSSStyleDeclarationImpl declaration) {
+        if (declaration == null) {
+            return;
+        }
+        remove(declaration);
+
+        final List<Dependency> dependencies = new ArrayList<>();
+        for (final Property property : declaration.getProperties()) {
+            final CSSValueImpl value = property.getValue();
+            if (value == null) {
+                continue;
+            }
+
+            final Set<String> references = new LinkedHashSet<>();
+            value.collectCustomPropertyReferences(references);
+            if (!references.isEmpty()) {
+                final Dependency dependency = new Dependency(declaration, property, references);
+                dependencies.add(dependency);
+                for (final String name : references) {
+                    usages_.computeIfAbsent(name, k -> new ArrayList<>()).add(dependency);
+                }
+            }
+        }
+
+        if (!dependencies.isEmpty()) {
+            byDeclaration_.put(declaration, dependencies);
+        }
+        cyclic_ = null;
+    }
+
+    /**
+     * Removes the given declaration from the index.
+     *
+     * @param declaration the declaration
+     */
+    public void remove(final CSSStyleDeclarationImpl declaration) {
+        final List<Dependency> dependencies = byDeclaration_.remove(declaration);
+        if (dependencies == null) {
+            return;
+        }
+
+        for (final Dependency dependency : dependencies) {
+            for (final String name : dependency.getReferences()) {
+                final List<Dependency> usages = usages_.get(name);
+                if (usages != null) {
+                    usages.remove(dependency);
+                    if (usages.isEmpty()) {
+                        usages_.remove(name);
+                    }
+                }
+            }
+        }
+        cyclic_ = null;
+    }
+
+    /**
+     * @param name the name of the custom property including the leading '--'
+     * @return the properties directly referencing the given custom property
+     */
+    public List<Dependency> getDirectDependencies(final String name) {
+        final List<Dependency> usages = usages_.get(name);
+        if (usages == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(usages);
+    }
+
+    /**
+     * Returns all properties that have to be recomputed if the given
+     * custom property changes; this includes properties referencing
+     * the custom property through other custom properties.
+     *
+     * @param name the name of the custom property including the leading '--'
+     * @return the affected properties in breadth first order
+     */
+    public List<Dependency> getAffectedDependencies(final String name) {
+        final Set<Dependency> result = new LinkedHashSet<>();
+        final Set<String> seen = new HashSet<>();
+        final Deque<String> todo = new ArrayDeque<>();
+        todo.add(name);
+        seen.add(name);
+
+        while (!todo.isEmpty()) {
+            final List<Dependency> usages = usages_.get(todo.poll());
+            if (usages == null) {
+                continue;
+            }
+            for (final Dependency dependency : usages) {
+                if (result.add(dependency) && dependency.isCustomProperty()) {
+                    final String dependent = dependency.getProperty().getName();
+                    if (seen.add(dependent)) {
+                        todo.add(dependent);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @param name the name of the custom property including the leading '--'
+     * @return the declarations that have to be recomputed if the given custom property changes
+     */
+    public Set<CSSStyleDeclarationImpl> getAffectedDeclarations(final String name) {
+        final Set<CSSStyleDeclarationImpl> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final Dependency dependency : getAffectedDependencies(name)) {
+            result.add(dependency.getDeclaration());
+        }
+        return result;
+    }
+
+    /**
+     * Custom properties being part of a reference cycle are invalid at computed-value time.
+     * The check is done on the names only (see the class comment); the result means the
+     * property is possibly part of a cycle, depending on the rules matching an element.
+     *
+     * @param name the name of the custom property including the leading '--'
+     * @return true if the given custom property is possibly part of a reference cycle
+     */
+    public boolean isCyclic(final String name) {
+        return getCyclicCustomProperties().contains(name);
+    }
+
+    /**
+     * @return the names of all custom properties possibly being part of a reference cycle
+     * @see #isCyclic(String)
+     */
+    public Set<String> getCyclicCustomProperties() {
+        Set<String> cyclic = cyclic_;
+        if (cyclic == null) {
+            cyclic = Collections.unmodifiableSet(new CycleFinder(buildGraph()).find());
+            cyclic_ = cyclic;
+        }
+        return cyclic;
+    }
+
+    /**
+     * @return a graph custom property name -&gt; referenced custom property names
+     */
+    private Map<String, Set<String>> buildGraph() {
+        final Map<String, Set<String>> graph = new HashMap<>();
+        for (final List<Dependency> dependencies : byDeclaration_.values()) {
+            for (final Dependency dependency : dependencies) {
+                if (dependency.isCustomProperty()) {
+                    graph.computeIfAbsent(dependency.getProperty().getName(), k -> new HashSet<>())
+                        .addAll(dependency.getReferences());
+                }
+            }
+        }
+        return graph;
+    }
+
+    static boolean isCustomPropertyName(final String name) {
+        return name != null && name.startsWith("--");
+    }
+
+    /**
+     * Tarjan's strongly connected components; every component with more than
+     * one member (or with a self reference) is a cycle. The depth first search
+     * is iterative to support long reference chains.
+     */
+    private static final class CycleFinder {
+        private final Map<String, Set<String>> graph_;
+        private final Map<String, Integer> index_ = new HashMap<>();
+        private final Map<String, Integer> lowLink_ = new HashMap<>();
+        private final Deque<String> stack_ = new ArrayDeque<>();
+        private final Set<String> onStack_ = new HashSet<>();
+        private final Set<String> cyclic_ = new HashSet<>();
+        private int counter_;
+
+        CycleFinder(final Map<String, Set<String>> graph) {
+            graph_ = graph;
+        }
+
+        Set<String> find() {
+            for (final String name : graph_.keySet()) {
+                if (!index_.containsKey(name)) {
+                    visit(name);
+                }
+            }
+            return cyclic_;
+        }
+
+        private void visit(final String root) {
+            final Deque<Frame> frames = new ArrayDeque<>();
+            frames.push(open(root));
+            while (!frames.isEmpty()) {
+                final Frame frame = frames.peek();
+                if (frame.references_.hasNext()) {
+                    final String reference = frame.references_.next();
+                    if (!index_.containsKey(reference)) {
+                        frames.push(open(reference));
+                    }
+                    else if (onStack_.contains(reference)) {
+                        lowLink_.put(frame.name_, Math.min(lowLink_.get(frame.name_), index_.get(reference)));
+                    }
+                    continue;
+                }
+
+                frames.pop();
+                close(frame.name_);
+                if (!frames.isEmpty()) {
+                    final String parent = frames.peek().name_;
+                    lowLink_.put(parent, Math.min(lowLink_.get(parent), lowLink_.get(frame.name_)));
+                }
+            }
+        }
+
+        private Frame open(final String name) {
+            index_.put(name, counter_);
+            lowLink_.put(name, counter_);
+            counter_++;
+            stack_.push(name);
+            onStack_.add(name);
+            return new Frame(name, graph_.getOrDefault(name, Collections.emptySet()).iterator());
+        }
+
+        private void close(final String name) {
+            if (lowLink_.get(name).equals(index_.get(name))) {
+                final List<String> component = new ArrayList<>();
+                String member;
+                do {
+                    member = stack_.pop();
+                    onStack_.remove(member);
+                    component.add(member);
+                }
+                while (!member.equals(name));
+
+                if (component.size() > 1 || graph_.getOrDefault(name, Collections.emptySet()).contains(name)) {
+                    cyclic_.addAll(component);
+                }
+            }
+        }
+    }
+
+    /**
+     * A custom property on the stack of the depth first search.
+     */
+    private static final class Frame {
+        private final String name_;
+        private final Iterator<String> references_;
+
+        Frame(final String name, final Iterator<String> references) {
+            name_ = name;
+            references_ = references;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+/**
+ * Gives the {@link CSSCascade} access to the elements of a document
+ * without the need to wrap them. All navigation methods only return
+ * elements (e.g. text nodes are skipped).
+ *
+ * @param <E> the type of the elements
+ *
+ * @author Ronald Brill
+ */
+public interface CSSElementAdapter<E> {
+
+    /**
+     * @param element the element
+     * @return the local name of the element in lower case
+     */
+    String getLocalName(E element);
+
+    /**
+     * @param element the element
+     * @return the id of the element or null
+     */
+    String getId(E element);
+
+    /**
+     * @param element the element
+     * @return the classes of the element or null
+     */
+    String[] getClassNames(E element);
+
+    /**
+     * @param element the element
+     * @param name the attribute name
+     * @return the attribute value or null if the element has no such attribute
+     */
+    String getAttribute(E element, String name);
+
+    /**
+     * @param element the element
+     * @return the parent element or null
+     */
+    E getParent(E element);
+
+    /**
+     * @param element the element
+     * @return the previous sibling element or null
+     */
+    E getPreviousSibling(E element);
+
+    /**
+     * @param element the element
+     * @return the next sibling element or null
+     */
+    E getNextSibling(E element);
+
+    /**
+     * @param element the element
+     * @return the first child element or null
+     */
+    E getFirstChild(E element);
+
+    /**
+     * Checks the pseudo classes depending on the state of the element
+     * or the document (e.g. "hover", "checked", "link" or "empty"). The structural
+     * pseudo classes ("root", "first-child", "nth-child(...)", ...) are evaluated
+     * by the cascade itself.
+     *
+     * @param element the element
+     * @param pseudoClass the pseudo class in lower case (e.g. "hover")
+     * @return true if the element matches; false by default
+     */
+    default boolean matchesPseudoClass(final E element, final String pseudoClass) {
+        return false;
+    }
+}
@@ -61,6 +61,7 @@ public String getCssText() {
     /** {@inheritDoc} */
     @Override
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             final AbstractCSSRuleImpl r = parser.parseRule(cssText);
@@ -68,6 +69,7 @@ public void setCssText(final String cssText) throws DOMException {
             // The rule must be a font face rule
             if (r instanceof CSSFontFaceRuleImpl) {
                 style_ = ((CSSFontFaceRuleImpl) r).style_;
+                setModified(true);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -98,7 +100,53 @@ public CSSStyleDeclarationImpl getStyle() {
      * @param style the new style
      */
     public void setStyle(final CSSStyleDeclarationImpl style) {
+        checkNotFrozen();
         style_ = style;
+        setModified(true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isModified() {
+        return super.isModified() || (style_ != null && style_.isModified());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    CSSFontFaceRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        final CSSFontFaceRuleImpl copy = new CSSFontFaceRuleImpl(parentStyleSheet, parentRule);
+        if (style_ != null) {
+            copy.style_ = style_.copy(copy);
+        }
+        copy.copyState(this);
+        return copy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void freeze() {
+        if (style_ != null) {
+            style_.freeze();
+        }
+        super.freeze();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setModified(final boolean modified) {
+        super.setModified(modified);
+        if (!modified && style_ != null) {
+            style_.setModified(false);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shiftSourceRange(final int delta) {
+        super.shiftSourceRange(delta);
+        if (style_ != null) {
+            style_.shiftSourceRange(delta);
+        }
     }
 
     /** {@inheritDoc} */
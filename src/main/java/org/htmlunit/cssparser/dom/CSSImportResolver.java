@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.htmlunit.cssparser.parser.CSSErrorHandler;
+import org.htmlunit.cssparser.parser.CSSInstrumentation;
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.CSSParseException;
+import org.htmlunit.cssparser.parser.CSSParserMetrics;
+import org.htmlunit.cssparser.parser.InputSource;
+import org.htmlunit.cssparser.parser.Locator;
+
+/**
+ * Loads style sheets together with all the (nested) imported style sheets.
+ * The imported sheets are fetched and parsed concurrently using the given executor;
+ * because the loader blocks while fetching, an executor using virtual threads
+ * is a good fit (if available).
+ *
+ * <p>Every imported sheet is wired into the import rule
+ * (see {@link CSSImportRuleImpl#getImportedStyleSheet()}); the owner rule of the
+ * imported sheet is the import rule and the media list is the one of the import rule.
+ * The uri of every sheet is fetched only once per call, but every import gets its
+ * own parsed sheet. Cyclic imports and imports that fail to load are skipped
+ * (the import rule has no sheet) and reported as warnings to the error handler.</p>
+ *
+ * @author Ronald Brill
+ */
+public class CSSImportResolver {
+
+    private final CSSStyleSheetLoader loader_;
+    private final Executor executor_;
+    private CSSErrorHandler errorHandler_;
+
+    /**
+     * Ctor.
+     *
+     * @param loader the loader used to fetch the style sheets
+     * @param executor the executor used to fetch and parse the style sheets
+     */
+    public CSSImportResolver(final CSSStyleSheetLoader loader, final Executor executor) {
+        loader_ = loader;
+        executor_ = executor;
+    }
+
+    /**
+     * Sets the error handler used for parsing and for the import problems;
+     * the handler is called from different threads.
+     *
+     * @param errorHandler the error handler or null
+     */
+    public void setErrorHandler(final CSSErrorHandler errorHandler) {
+        errorHandler_ = errorHandler;
+    }
+
+    /**
+     * Loads and parses the style sheet and all the imported sheets.
+     *
+     * @param uri the uri of the style sheet
+     * @return the future style sheet; completes exceptionally if the style sheet
+     *         itself can't be loaded
+     */
+    public CompletableFuture<CSSStyleSheetImpl> load(final String uri) {
+        final Map<String, CompletableFuture<String>> sources = new ConcurrentHashMap<>();
+        final Set<String> chain = new HashSet<>();
+        chain.add(uri);
+        return fetch(uri, sources)
+                .thenApplyAsync(text -> parse(text, uri), executor_)
+                .thenCompose(sheet -> resolveImports(sheet, uri, chain, sources));
+    }
+
+    /**
+     * Loads and parses all the sheets imported by the given (already parsed) sheet;
+     * the imports are resolved against the href of the sheet.
+     *
+     * @param sheet the style sheet
+     * @return the future style sheet (the given one) completed after all imports are processed
+     */
+    public CompletableFuture<CSSStyleSheetImpl> resolveImports(final CSSStyleSheetImpl sheet) {
+        final String uri = sheet.getHref();
+        final Set<String> chain = new HashSet<>();
+        if (uri != null) {
+            chain.add(uri);
+        }
+        return resolveImports(sheet, uri, chain, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Creates the parser used for one style sheet; override this to configure the parser.
+     *
+     * @return a new parser
+     */
+    protected CSSOMParser createParser() {
+        return new CSSOMParser();
+    }
+
+    private CompletableFuture<CSSStyleSheetImpl> resolveImports(final CSSStyleSheetImpl sheet, final String uri,
+            final Set<String> chain, final Map<String, CompletableFuture<String>> sources) {
+        final List<CompletableFuture<Void>> imports = new ArrayList<>();
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            if (rule instanceof CSSImportRuleImpl importRule && importRule.getHref() != null) {
+                final String importUri = resolveUri(uri, importRule.getHref());
+                if (chain.contains(importUri)) {
+                    warning(importRule, uri, "Cyclic import of '" + importUri + "' ignored.", null);
+                    continue;
+                }
+
+                final Set<String> importChain = new HashSet<>(chain);
+                importChain.add(importUri);
+                imports.add(fetch(importUri, sources)
+                        .thenApplyAsync(text -> parse(text, importUri), executor_)
+                        .thenCompose(imported -> resolveImports(imported, importUri, importChain, sources))
+                        .handle((imported, e) -> {
+                            if (e == null) {
+                                imported.setOwnerRule(importRule);
+                                if (importRule.getMedia() != null) {
+                                    imported.setMedia(importRule.getMedia());
+                                }
+                                importRule.setImportedStyleSheet(imported);
+                            }
+                            else {
+                                final Throwable cause = e instanceof CompletionException && e.getCause() != null
+                                        ? e.getCause() : e;
+                                warning(importRule, uri, "Loading the import '" + importUri + "' failed: "
+                                        + cause.getMessage(), cause instanceof Exception ex ? ex : null);
+                            }
+                            return null;
+                        }));
+            }
+        }
+        return CompletableFuture.allOf(imports.toArray(new CompletableFuture<?>[0])).thenApply(v -> sheet);
+    }
+
+    private CompletableFuture<String> fetch(final String uri, final Map<String, CompletableFuture<String>> sources) {
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        if (metrics != null) {
+            metrics.cacheAccess(CSSInstrumentation.CACHE_IMPORT_SOURCE, sources.containsKey(uri));
+        }
+        return sources.computeIfAbsent(uri, u -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader_.load(u);
+            }
+            catch (final IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor_));
+    }
+
+    private CSSStyleSheetImpl parse(final String text, final String uri) {
+        final CSSOMParser parser = createParser();
+        if (errorHandler_ != null) {
+            parser.setErrorHandler(errorHandler_);
+        }
+        try (InputSource source = new InputSource(new StringReader(text))) {
+            return parser.parseStyleSheet(source, uri);
+        }
+        catch (final IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void warning(final CSSImportRuleImpl rule, final String uri, final String message, final Exception e) {
+        if (errorHandler_ == null) {
+            return;
+        }
+
+        final Locator locator = rule.getLocator();
+        if (locator == null) {
+            errorHandler_.warning(new CSSParseException(message, uri, -1, -1, e));
+        }
+        else {
+            errorHandler_.warning(new CSSParseException(message, locator, e));
+        }
+    }
+
+    /**
+     * @param base the uri of the importing sheet or null
+     * @param href the href of the import
+     * @return the href resolved against the base; the href itself if this is not possible
+     */
+    static String resolveUri(final String base, final String href) {
+        if (base == null) {
+            return href;
+        }
+        try {
+            return new URI(base).resolve(href).toString();
+        }
+        catch (final URISyntaxException | IllegalArgumentException e) {
+            return href;
+        }
+    }
+}
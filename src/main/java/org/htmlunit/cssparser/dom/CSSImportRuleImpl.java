@@ -31,6 +31,7 @@ public class CSSImportRuleImpl extends AbstractCSSRuleImpl {
 
     private String href_;
     private MediaListImpl media_;
+    private CSSStyleSheetImpl importedStyleSheet_;
 
     /**
      * Ctor.
@@ -72,6 +73,7 @@ public String getCssText() {
     /** {@inheritDoc} */
     @Override
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             final AbstractCSSRuleImpl r = parser.parseRule(cssText);
@@ -80,6 +82,7 @@ public void setCssText(final String cssText) throws DOMException {
             if (r instanceof CSSImportRuleImpl) {
                 href_ = ((CSSImportRuleImpl) r).href_;
                 media_ = ((CSSImportRuleImpl) r).media_;
+                setModified(true);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -95,6 +98,43 @@ public void setCssText(final String cssText) throws DOMException {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean isModified() {
+        return super.isModified() || (media_ != null && media_.isModified());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    CSSImportRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        final CSSImportRuleImpl copy = new CSSImportRuleImpl(parentStyleSheet, parentRule,
+                href_, media_ == null ? null : media_.copy());
+        copy.importedStyleSheet_ = importedStyleSheet_;
+        copy.copyState(this);
+        return copy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void freeze() {
+        if (media_ != null) {
+            media_.freeze();
+        }
+        if (importedStyleSheet_ != null) {
+            importedStyleSheet_.freeze();
+        }
+        super.freeze();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setModified(final boolean modified) {
+        super.setModified(modified);
+        if (!modified && media_ != null) {
+            media_.setModified(false);
+        }
+    }
+
     /**
      * <p>getHref.</p>
      *
@@ -122,6 +162,23 @@ public CSSStyleSheetImpl getStyleSheet() {
         return getParentStyleSheet();
     }
 
+    /**
+     * @return the imported style sheet or null if not loaded
+     * @see CSSImportResolver
+     */
+    public CSSStyleSheetImpl getImportedStyleSheet() {
+        return importedStyleSheet_;
+    }
+
+    /**
+     * Sets the imported style sheet.
+     * @param importedStyleSheet the imported style sheet
+     */
+    public void setImportedStyleSheet(final CSSStyleSheetImpl importedStyleSheet) {
+        checkNotFrozen();
+        importedStyleSheet_ = importedStyleSheet;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -68,6 +68,7 @@ public String getCssText() {
     /** {@inheritDoc} */
     @Override
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             final AbstractCSSRuleImpl r = parser.parseRule(cssText);
@@ -76,6 +77,7 @@ public void setCssText(final String cssText) throws DOMException {
             if (r instanceof CSSMediaRuleImpl) {
                 mediaList_ = ((CSSMediaRuleImpl) r).mediaList_;
                 cssRules_ = ((CSSMediaRuleImpl) r).cssRules_;
+                setModified(true);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -120,6 +122,7 @@ public CSSRuleListImpl getCssRules() {
      * @throws DOMException in case of error
      */
     public void insertRule(final String rule, final int index) throws DOMException {
+        checkNotFrozen();
         final CSSStyleSheetImpl parentStyleSheet = getParentStyleSheet();
 
         try {
@@ -131,7 +134,7 @@ public void insertRule(final String rule, final int index) throws DOMException {
             // Insert the rule into the list of rules
             getCssRules().insert(r, index);
             r.setParentRule(this);
-
+            setModified(true);
         }
         catch (final IndexOutOfBoundsException e) {
             throw new DOMExceptionImpl(
@@ -153,8 +156,10 @@ public void insertRule(final String rule, final int index) throws DOMException {
      * @throws DOMException in case of error
      */
     public void deleteRule(final int index) throws DOMException {
+        checkNotFrozen();
         try {
             getCssRules().delete(index);
+            setModified(true);
         }
         catch (final IndexOutOfBoundsException e) {
             throw new DOMExceptionImpl(
@@ -169,7 +174,70 @@ public void deleteRule(final int index) throws DOMException {
      * @param rules the new rule list
      */
     public void setRuleList(final CSSRuleListImpl rules) {
+        checkNotFrozen();
         cssRules_ = rules;
+        setModified(true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isModified() {
+        if (super.isModified() || (mediaList_ != null && mediaList_.isModified())) {
+            return true;
+        }
+        if (cssRules_ != null) {
+            for (final AbstractCSSRuleImpl rule : cssRules_.getRules()) {
+                if (rule.isModified()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The copy gets a new rule list holding the same nested rules.
+     */
+    @Override
+    CSSMediaRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        final CSSMediaRuleImpl copy = new CSSMediaRuleImpl(parentStyleSheet, parentRule,
+                mediaList_ == null ? null : mediaList_.copy());
+        if (cssRules_ != null) {
+            final CSSRuleListImpl rules = new CSSRuleListImpl();
+            rules.getRules().addAll(cssRules_.getRules());
+            copy.cssRules_ = rules;
+        }
+        copy.copyState(this);
+        return copy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void freeze() {
+        if (mediaList_ != null) {
+            mediaList_.freeze();
+        }
+        if (cssRules_ != null) {
+            cssRules_.freeze();
+        }
+        super.freeze();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setModified(final boolean modified) {
+        super.setModified(modified);
+        if (!modified) {
+            if (mediaList_ != null) {
+                mediaList_.setModified(false);
+            }
+            if (cssRules_ != null) {
+                for (final AbstractCSSRuleImpl rule : cssRules_.getRules()) {
+                    rule.setModified(false);
+                }
+            }
+        }
     }
 
     /** {@inheritDoc} */
@@ -200,6 +268,17 @@ public int hashCode() {
         return hash;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void shiftSourceRange(final int delta) {
+        super.shiftSourceRange(delta);
+        if (cssRules_ != null) {
+            for (final AbstractCSSRuleImpl rule : cssRules_.getRules()) {
+                rule.shiftSourceRange(delta);
+            }
+        }
+    }
+
     private void writeObject(final ObjectOutputStream out) throws IOException {
         out.writeObject(cssRules_);
         out.writeObject(mediaList_);
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.SelectorEntry;
+import org.htmlunit.cssparser.parser.LexicalUnit;
+import org.htmlunit.cssparser.parser.Locator;
+import org.htmlunit.cssparser.parser.condition.Condition;
+import org.htmlunit.cssparser.parser.media.MediaQuery;
+import org.htmlunit.cssparser.parser.media.MediaQueryList;
+import org.htmlunit.cssparser.parser.selector.Selector;
+
+/**
+ * Approximate retained size of a parsed object model (e.g. a style sheet), broken
+ * down by category. Can be used as weight for caches of parsed style sheets and shows
+ * which parts of the object model are the expensive ones.
+ *
+ * <p>The estimation walks the object graph starting at the given root; every object
+ * is counted once. The links to the parent rules and the owners (e.g. the owner node of
+ * a style sheet) are not followed; imported style sheets, the rule index, the tracked
+ * source and the sources of deferred rules are part of the result. The sizes assume a
+ * 64 bit JVM with compressed references (12 byte object headers, 4 byte references,
+ * 8 byte alignment); collections are counted as if they have no spare capacity.</p>
+ *
+ * <p>The walk reads the fields of the object model by reflection. In a native image
+ * the model classes are not registered for reflection, therefore the estimation is not
+ * available there (see {@link #isAvailable()}).</p>
+ *
+ * @author Ronald Brill
+ */
+public final class CSSMemoryUsage {
+
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    /**
+     * The categories of the estimation.
+     */
+    public enum Category {
+        /** The style sheets. */
+        SHEETS,
+        /** The rules and rule lists. */
+        RULES,
+        /** The style declarations. */
+        DECLARATIONS,
+        /** The properties and their values (without the lexical units). */
+        PROPERTIES,
+        /** The selectors and selector lists. */
+        SELECTORS,
+        /** The conditions of the selectors. */
+        CONDITIONS,
+        /** The media lists and media queries. */
+        MEDIA,
+        /** The lexical units (including the compiled calc() expressions). */
+        LEXICAL_UNITS,
+        /** The locators. */
+        LOCATORS,
+        /** The strings. */
+        STRINGS,
+        /** The tracked source and the sources of deferred rules. */
+        SOURCE,
+        /** The rule index. */
+        INDEX,
+        /** Everything else. */
+        OTHER
+    }
+
+    private static final boolean AVAILABLE = System.getProperty("org.graalvm.nativeimage.imagecode") == null;
+
+    private static final ClassValue<Shape> SHAPES = new ClassValue<Shape>() {
+        @Override
+        protected Shape computeValue(final Class<?> type) {
+            return new Shape(type);
+        }
+    };
+
+    private final Map<Category, long[]> usage_ = new EnumMap<>(Category.class);
+
+    private CSSMemoryUsage() {
+        for (final Category category : Category.values()) {
+            usage_.put(category, new long[2]);
+        }
+    }
+
+    /**
+     * @return true if the estimation is available; false in a native image
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Estimates the retained size of the given style sheet.
+     *
+     * @param sheet the style sheet
+     * @return the estimation
+     * @throws UnsupportedOperationException in a native image
+     */
+    public static CSSMemoryUsage estimate(final CSSStyleSheetImpl sheet) {
+        return estimate((Object) sheet);
+    }
+
+    /**
+     * Estimates the retained size of the given part of the object model
+     * (e.g. a rule, a style declaration or a selector list).
+     *
+     * @param root the root object
+     * @return the estimation
+     * @throws UnsupportedOperationException in a native image
+     */
+    public static CSSMemoryUsage estimate(final Object root) {
+        if (!AVAILABLE) {
+            throw new UnsupportedOperationException("The memory usage estimation is not available in a native image.");
+        }
+        final CSSMemoryUsage result = new CSSMemoryUsage();
+        if (root != null) {
+            result.walk(root);
+        }
+        return result;
+    }
+
+    private void walk(final Object root) {
+        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Object[]> todo = new ArrayDeque<>();
+        todo.push(new Object[] {root, Category.OTHER});
+
+        while (!todo.isEmpty()) {
+            final Object[] next = todo.pop();
+            final Object o = next[0];
+            if (!visited.add(o)) {
+                continue;
+            }
+
+            final Class<?> type = o.getClass();
+            if (o instanceof String) {
+                add(Category.STRINGS, stringSize((String) o));
+                continue;
+            }
+            if (o instanceof char[]) {
+                add(Category.SOURCE, align(ARRAY_HEADER + 2L * ((char[]) o).length));
+                continue;
+            }
+
+            final Category owner = (Category) next[1];
+            if (type.isArray()) {
+                final Class<?> component = type.getComponentType();
+                if (component.isPrimitive()) {
+                    add(owner, align(ARRAY_HEADER + (long) primitiveSize(component) * Array.getLength(o)));
+                }
+                else {
+                    final Object[] array = (Object[]) o;
+                    add(owner, align(ARRAY_HEADER + (long) REFERENCE * array.length));
+                    push(todo, array, owner);
+                }
+                continue;
+            }
+
+            final Shape shape = SHAPES.get(type);
+            Category category = owner;
+            if (shape.fields_ != null) {
+                if (shape.category_ != null) {
+                    category = shape.category_;
+                }
+                add(category, shape.size_);
+                for (final Field field : shape.fields_) {
+                    try {
+                        final Object value = field.get(o);
+                        if (value != null) {
+                            todo.push(new Object[] {value, category});
+                        }
+                    }
+                    catch (final IllegalAccessException e) {
+                        // ignore
+                    }
+                }
+                if (!shape.jdkCollection_) {
+                    continue;
+                }
+            }
+
+            if (o instanceof Collection) {
+                final Collection<?> collection = (Collection<?>) o;
+                add(category, align(HEADER + 3 * REFERENCE)
+                            + align(ARRAY_HEADER + (long) REFERENCE * collection.size()));
+                push(todo, collection.toArray(), category);
+            }
+            else if (o instanceof Map) {
+                final Map<?, ?> map = (Map<?, ?>) o;
+                // the map, the table and one node per entry
+                add(category, align(HEADER + 6 * REFERENCE) + align(ARRAY_HEADER + (long) REFERENCE * map.size())
+                            + (long) map.size() * align(HEADER + 4 * REFERENCE));
+                push(todo, map.keySet().toArray(), category);
+                push(todo, map.values().toArray(), category);
+            }
+            // everything else is not part of the object model; e.g. enums, boxed values or the owner node
+        }
+    }
+
+    private static void push(final Deque<Object[]> todo, final Object[] values, final Category owner) {
+        for (final Object value : values) {
+            if (value != null) {
+                todo.push(new Object[] {value, owner});
+            }
+        }
+    }
+
+    private void add(final Category category, final long bytes) {
+        final long[] usage = usage_.get(category);
+        usage[0] += bytes;
+        usage[1]++;
+    }
+
+    /**
+     * @param category the category
+     * @return the estimated bytes used by the objects of the given category
+     */
+    public long getBytes(final Category category) {
+        return usage_.get(category)[0];
+    }
+
+    /**
+     * @param category the category
+     * @return the number of objects of the given category
+     */
+    public long getCount(final Category category) {
+        return usage_.get(category)[1];
+    }
+
+    /**
+     * @return the estimated bytes used by all objects
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (final long[] usage : usage_.values()) {
+            total += usage[0];
+        }
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("total: ").append(getTotalBytes());
+        for (final Map.Entry<Category, long[]> entry : usage_.entrySet()) {
+            if (entry.getValue()[1] > 0) {
+                sb.append(", ").append(entry.getKey().name().toLowerCase(Locale.ROOT))
+                    .append(": ").append(entry.getValue()[0])
+                    .append(" (").append(entry.getValue()[1]).append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long stringSize(final String s) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return align(HEADER + REFERENCE + 4 + 2) + align(ARRAY_HEADER + (long) bytesPerChar * s.length());
+    }
+
+    private static int primitiveSize(final Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == char.class || type == short.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * The size, the category and the reference fields of a class of the object model.
+     */
+    private static final class Shape {
+        private final Category category_;
+        private final long size_;
+        private final Field[] fields_;
+        private final boolean jdkCollection_;
+
+        Shape(final Class<?> type) {
+            if (!isModelClass(type)) {
+                category_ = null;
+                size_ = 0;
+                fields_ = null;
+                jdkCollection_ = false;
+                return;
+            }
+
+            category_ = category(type);
+            long size = HEADER;
+            final List<Field> fields = new ArrayList<>();
+            Class<?> c = type;
+            while (isModelClass(c)) {
+                for (final Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    final Class<?> fieldType = field.getType();
+                    if (fieldType.isPrimitive()) {
+                        size += primitiveSize(fieldType);
+                        continue;
+                    }
+                    size += REFERENCE;
+
+                    // links to the parents and owners are not part of the retained size
+                    final String name = field.getName();
+                    if (!name.startsWith("parent") && !name.startsWith("owner") && !name.startsWith("this$")) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+                c = c.getSuperclass();
+            }
+            size_ = align(size);
+            fields_ = fields.toArray(new Field[0]);
+
+            // e.g. a subclass of ArrayList; the jdk part is estimated like a jdk collection
+            jdkCollection_ = Collection.class.isAssignableFrom(c) || Map.class.isAssignableFrom(c);
+        }
+
+        private static boolean isModelClass(final Class<?> type) {
+            return type != null && !type.isEnum() && type.getName().startsWith("org.htmlunit.cssparser.");
+        }
+
+        private static Category category(final Class<?> type) {
+            for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+                if (CSSStyleSheetRuleIndex.class.isAssignableFrom(c) || c == SelectorEntry.class) {
+                    return Category.INDEX;
+                }
+            }
+
+            Class<?> topLevel = type;
+            while (topLevel.getEnclosingClass() != null) {
+                topLevel = topLevel.getEnclosingClass();
+            }
+
+            if (Locator.class.isAssignableFrom(topLevel)) {
+                return Category.LOCATORS;
+            }
+            if (CSSStyleSheetImpl.class.isAssignableFrom(topLevel)
+                    || CSSStyleSheetListImpl.class.isAssignableFrom(topLevel)) {
+                return Category.SHEETS;
+            }
+            if (AbstractCSSRuleImpl.class.isAssignableFrom(topLevel)
+                    || CSSRuleListImpl.class.isAssignableFrom(topLevel)) {
+                return Category.RULES;
+            }
+            if (CSSStyleDeclarationImpl.class.isAssignableFrom(topLevel)) {
+                return Category.DECLARATIONS;
+            }
+            if (Property.class.isAssignableFrom(topLevel)
+                    || CSSValueImpl.class.isAssignableFrom(topLevel)
+                    || AbstractColor.class.isAssignableFrom(topLevel)
+                    || RectImpl.class.isAssignableFrom(topLevel)
+                    || CounterImpl.class.isAssignableFrom(topLevel)) {
+                return Category.PROPERTIES;
+            }
+            if (MediaListImpl.class.isAssignableFrom(topLevel)
+                    || MediaQueryList.class.isAssignableFrom(topLevel)
+                    || MediaQuery.class.isAssignableFrom(topLevel)) {
+                return Category.MEDIA;
+            }
+            if (Condition.class.isAssignableFrom(topLevel)) {
+                return Category.CONDITIONS;
+            }
+            if (topLevel.getPackageName().endsWith(".selector") || Selector.class.isAssignableFrom(topLevel)) {
+                return Category.SELECTORS;
+            }
+            if (LexicalUnit.class.isAssignableFrom(topLevel) || "CalcExpression".equals(topLevel.getSimpleName())) {
+                return Category.LEXICAL_UNITS;
+            }
+            return null;
+        }
+    }
+}
@@ -78,6 +78,7 @@ public String getCssText() {
      */
     @Override
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
@@ -87,6 +88,7 @@ public void setCssText(final String cssText) throws DOMException {
             if (r instanceof CSSPageRuleImpl) {
                 pseudoPage_ = ((CSSPageRuleImpl) r).pseudoPage_;
                 style_ = ((CSSPageRuleImpl) r).style_;
+                setModified(true);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -119,6 +121,7 @@ public String getSelectorText() {
      * @param selectorText the new selector text
      */
     public void setSelectorText(final String selectorText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
@@ -127,6 +130,7 @@ public void setSelectorText(final String selectorText) throws DOMException {
             // The rule must be a page rule
             if (r instanceof CSSPageRuleImpl) {
                 pseudoPage_ = ((CSSPageRuleImpl) r).pseudoPage_;
+                setModified(true);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -154,7 +158,53 @@ public CSSStyleDeclarationImpl getStyle() {
      * @param style the new style
      */
     public void setStyle(final CSSStyleDeclarationImpl style) {
+        checkNotFrozen();
         style_ = style;
+        setModified(true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isModified() {
+        return super.isModified() || (style_ != null && style_.isModified());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    CSSPageRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        final CSSPageRuleImpl copy = new CSSPageRuleImpl(parentStyleSheet, parentRule, pseudoPage_);
+        if (style_ != null) {
+            copy.style_ = style_.copy(copy);
+        }
+        copy.copyState(this);
+        return copy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void freeze() {
+        if (style_ != null) {
+            style_.freeze();
+        }
+        super.freeze();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setModified(final boolean modified) {
+        super.setModified(modified);
+        if (!modified && style_ != null) {
+            style_.setModified(false);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shiftSourceRange(final int delta) {
+        super.shiftSourceRange(delta);
+        if (style_ != null) {
+            style_.shiftSourceRange(delta);
+        }
     }
 
     @Override
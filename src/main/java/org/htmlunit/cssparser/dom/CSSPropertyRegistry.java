@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registry of the standard css property names (longhands and shorthands).
+ * Every known property has a dense integer id (0 .. {@link #getCount()} - 1);
+ * the ids are assigned in alphabetical order of the names. Custom properties
+ * and unknown names don't have an id ({@link #UNKNOWN}).
+ *
+ * <p>The ids are stable for a given version of this library only; don't persist them.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class CSSPropertyRegistry {
+
+    /** The id used for custom and unknown properties. */
+    public static final int UNKNOWN = -1;
+
+    // generated from the property indexes of the w3c css specifications; keep sorted
+    private static final String[] NAMES = {
+        "accent-color", "align-content", "align-items", "align-self", "alignment-baseline", "all", "animation",
+        "animation-composition", "animation-delay", "animation-direction", "animation-duration",
+        "animation-fill-mode", "animation-iteration-count", "animation-name", "animation-play-state",
+        "animation-timing-function", "appearance", "aspect-ratio", "backdrop-filter", "backface-visibility",
+        "background", "background-attachment", "background-blend-mode", "background-clip", "background-color",
+        "background-image", "background-origin", "background-position", "background-position-x",
+        "background-position-y", "background-repeat", "background-size", "baseline-shift", "block-size", "border",
+        "border-block", "border-block-color", "border-block-end", "border-block-end-color",
+        "border-block-end-style", "border-block-end-width", "border-block-start", "border-block-start-color",
+        "border-block-start-style", "border-block-start-width", "border-block-style", "border-block-width",
+        "border-bottom", "border-bottom-color", "border-bottom-left-radius", "border-bottom-right-radius",
+        "border-bottom-style", "border-bottom-width", "border-collapse", "border-color", "border-end-end-radius",
+        "border-end-start-radius", "border-image", "border-image-outset", "border-image-repeat",
+        "border-image-slice", "border-image-source", "border-image-width", "border-inline", "border-inline-color",
+        "border-inline-end", "border-inline-end-color", "border-inline-end-style", "border-inline-end-width",
+        "border-inline-start", "border-inline-start-color", "border-inline-start-style",
+        "border-inline-start-width", "border-inline-style", "border-inline-width", "border-left",
+        "border-left-color", "border-left-style", "border-left-width", "border-radius", "border-right",
+        "border-right-color", "border-right-style", "border-right-width", "border-spacing",
+        "border-start-end-radius", "border-start-start-radius", "border-style", "border-top", "border-top-color",
+        "border-top-left-radius", "border-top-right-radius", "border-top-style", "border-top-width",
+        "border-width", "bottom", "box-decoration-break", "box-shadow", "box-sizing", "break-after",
+        "break-before", "break-inside", "caption-side", "caret-color", "clear", "clip", "clip-path", "clip-rule",
+        "color", "color-interpolation", "color-interpolation-filters", "color-scheme", "column-count",
+        "column-fill", "column-gap", "column-rule", "column-rule-color", "column-rule-style", "column-rule-width",
+        "column-span", "column-width", "columns", "contain", "contain-intrinsic-block-size",
+        "contain-intrinsic-height", "contain-intrinsic-inline-size", "contain-intrinsic-size",
+        "contain-intrinsic-width", "container", "container-name", "container-type", "content",
+        "content-visibility", "counter-increment", "counter-reset", "counter-set", "cursor", "cx", "cy", "d",
+        "direction", "display", "dominant-baseline", "empty-cells", "fill", "fill-opacity", "fill-rule", "filter",
+        "flex", "flex-basis", "flex-direction", "flex-flow", "flex-grow", "flex-shrink", "flex-wrap", "float",
+        "flood-color", "flood-opacity", "font", "font-family", "font-feature-settings", "font-kerning",
+        "font-language-override", "font-optical-sizing", "font-palette", "font-size", "font-size-adjust",
+        "font-stretch", "font-style", "font-synthesis", "font-variant", "font-variant-alternates",
+        "font-variant-caps", "font-variant-east-asian", "font-variant-ligatures", "font-variant-numeric",
+        "font-variant-position", "font-variation-settings", "font-weight", "forced-color-adjust", "gap", "grid",
+        "grid-area", "grid-auto-columns", "grid-auto-flow", "grid-auto-rows", "grid-column", "grid-column-end",
+        "grid-column-start", "grid-row", "grid-row-end", "grid-row-start", "grid-template", "grid-template-areas",
+        "grid-template-columns", "grid-template-rows", "height", "hyphenate-character", "hyphens",
+        "image-orientation", "image-rendering", "inline-size", "inset", "inset-block", "inset-block-end",
+        "inset-block-start", "inset-inline", "inset-inline-end", "inset-inline-start", "isolation",
+        "justify-content", "justify-items", "justify-self", "left", "letter-spacing", "lighting-color",
+        "line-break", "line-height", "list-style", "list-style-image", "list-style-position", "list-style-type",
+        "margin", "margin-block", "margin-block-end", "margin-block-start", "margin-bottom", "margin-inline",
+        "margin-inline-end", "margin-inline-start", "margin-left", "margin-right", "margin-top", "marker",
+        "marker-end", "marker-mid", "marker-start", "mask", "mask-clip", "mask-composite", "mask-image",
+        "mask-mode", "mask-origin", "mask-position", "mask-repeat", "mask-size", "mask-type", "math-depth",
+        "math-style", "max-block-size", "max-height", "max-inline-size", "max-width", "min-block-size",
+        "min-height", "min-inline-size", "min-width", "mix-blend-mode", "object-fit", "object-position", "offset",
+        "offset-anchor", "offset-distance", "offset-path", "offset-position", "offset-rotate", "opacity", "order",
+        "orphans", "outline", "outline-color", "outline-offset", "outline-style", "outline-width", "overflow",
+        "overflow-anchor", "overflow-clip-margin", "overflow-wrap", "overflow-x", "overflow-y",
+        "overscroll-behavior", "overscroll-behavior-block", "overscroll-behavior-inline", "overscroll-behavior-x",
+        "overscroll-behavior-y", "padding", "padding-block", "padding-block-end", "padding-block-start",
+        "padding-bottom", "padding-inline", "padding-inline-end", "padding-inline-start", "padding-left",
+        "padding-right", "padding-top", "page", "page-break-after", "page-break-before", "page-break-inside",
+        "paint-order", "perspective", "perspective-origin", "place-content", "place-items", "place-self",
+        "pointer-events", "position", "print-color-adjust", "quotes", "r", "resize", "right", "rotate", "row-gap",
+        "ruby-align", "ruby-position", "rx", "ry", "scale", "scroll-behavior", "scroll-margin",
+        "scroll-margin-block", "scroll-margin-block-end", "scroll-margin-block-start", "scroll-margin-bottom",
+        "scroll-margin-inline", "scroll-margin-inline-end", "scroll-margin-inline-start", "scroll-margin-left",
+        "scroll-margin-right", "scroll-margin-top", "scroll-padding", "scroll-padding-block",
+        "scroll-padding-block-end", "scroll-padding-block-start", "scroll-padding-bottom",
+        "scroll-padding-inline", "scroll-padding-inline-end", "scroll-padding-inline-start",
+        "scroll-padding-left", "scroll-padding-right", "scroll-padding-top", "scroll-snap-align",
+        "scroll-snap-stop", "scroll-snap-type", "scrollbar-color", "scrollbar-gutter", "scrollbar-width",
+        "shape-image-threshold", "shape-margin", "shape-outside", "shape-rendering", "stop-color", "stop-opacity",
+        "stroke", "stroke-dasharray", "stroke-dashoffset", "stroke-linecap", "stroke-linejoin",
+        "stroke-miterlimit", "stroke-opacity", "stroke-width", "tab-size", "table-layout", "text-align",
+        "text-align-last", "text-anchor", "text-combine-upright", "text-decoration", "text-decoration-color",
+        "text-decoration-line", "text-decoration-skip-ink", "text-decoration-style", "text-decoration-thickness",
+        "text-emphasis", "text-emphasis-color", "text-emphasis-position", "text-emphasis-style", "text-indent",
+        "text-justify", "text-orientation", "text-overflow", "text-rendering", "text-shadow", "text-transform",
+        "text-underline-offset", "text-underline-position", "text-wrap", "text-wrap-mode", "text-wrap-style",
+        "top", "touch-action", "transform", "transform-box", "transform-origin", "transform-style", "transition",
+        "transition-behavior", "transition-delay", "transition-duration", "transition-property",
+        "transition-timing-function", "translate", "unicode-bidi", "user-select", "vector-effect",
+        "vertical-align", "visibility", "white-space", "white-space-collapse", "widows", "width", "will-change",
+        "word-break", "word-spacing", "word-wrap", "writing-mode", "x", "y", "z-index", "zoom"
+    };
+
+    private static final String[] SHORTHANDS = {
+        "all", "animation", "background", "background-position", "border", "border-block", "border-block-color",
+        "border-block-end", "border-block-start", "border-block-style", "border-block-width", "border-bottom",
+        "border-color", "border-image", "border-inline", "border-inline-color", "border-inline-end",
+        "border-inline-start", "border-inline-style", "border-inline-width", "border-left", "border-radius",
+        "border-right", "border-style", "border-top", "border-width", "column-rule", "columns",
+        "contain-intrinsic-size", "container", "flex", "flex-flow", "font", "font-synthesis", "font-variant",
+        "gap", "grid", "grid-area", "grid-column", "grid-row", "grid-template", "inset", "inset-block",
+        "inset-inline", "list-style", "margin", "margin-block", "margin-inline", "marker", "mask", "offset",
+        "outline", "overflow", "overscroll-behavior", "padding", "padding-block", "padding-inline",
+        "place-content", "place-items", "place-self", "scroll-margin", "scroll-margin-block",
+        "scroll-margin-inline", "scroll-padding", "scroll-padding-block", "scroll-padding-inline",
+        "text-decoration", "text-emphasis", "text-wrap", "transition", "white-space"
+    };
+
+    // the properties inherited by default
+    private static final String[] INHERITED_NAMES = {
+        "accent-color", "border-collapse", "border-spacing", "caption-side", "caret-color", "clip-rule", "color",
+        "color-interpolation", "color-interpolation-filters", "color-scheme", "cursor", "direction",
+        "dominant-baseline", "empty-cells", "fill", "fill-opacity", "fill-rule", "font", "font-family",
+        "font-feature-settings", "font-kerning", "font-language-override", "font-optical-sizing", "font-palette",
+        "font-size", "font-size-adjust", "font-stretch", "font-style", "font-synthesis", "font-variant",
+        "font-variant-alternates", "font-variant-caps", "font-variant-east-asian", "font-variant-ligatures",
+        "font-variant-numeric", "font-variant-position", "font-variation-settings", "font-weight",
+        "forced-color-adjust", "hyphenate-character", "hyphens", "image-orientation", "image-rendering",
+        "letter-spacing", "line-break", "line-height", "list-style", "list-style-image", "list-style-position",
+        "list-style-type", "marker", "marker-end", "marker-mid", "marker-start", "orphans", "overflow-wrap",
+        "paint-order", "pointer-events", "print-color-adjust", "quotes", "ruby-align", "ruby-position",
+        "shape-rendering", "stroke", "stroke-dasharray", "stroke-dashoffset", "stroke-linecap", "stroke-linejoin",
+        "stroke-miterlimit", "stroke-opacity", "stroke-width", "tab-size", "text-align", "text-align-last",
+        "text-anchor", "text-combine-upright", "text-decoration-skip-ink", "text-emphasis", "text-emphasis-color",
+        "text-emphasis-position", "text-emphasis-style", "text-indent", "text-justify", "text-orientation",
+        "text-rendering", "text-shadow", "text-transform", "text-underline-offset", "text-underline-position",
+        "text-wrap", "text-wrap-mode", "text-wrap-style", "visibility", "white-space", "white-space-collapse", "widows",
+        "word-break", "word-spacing", "word-wrap", "writing-mode"
+    };
+
+    private static final Map<String, Integer> IDS = new HashMap<>(NAMES.length * 2);
+    private static final boolean[] SHORTHAND = new boolean[NAMES.length];
+    private static final boolean[] INHERITED = new boolean[NAMES.length];
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            IDS.put(NAMES[i], i);
+        }
+        for (final String name : SHORTHANDS) {
+            SHORTHAND[IDS.get(name)] = true;
+        }
+        for (final String name : INHERITED_NAMES) {
+            INHERITED[IDS.get(name)] = true;
+        }
+    }
+
+    private CSSPropertyRegistry() {
+        // util class
+    }
+
+    /**
+     * @return the number of known properties
+     */
+    public static int getCount() {
+        return NAMES.length;
+    }
+
+    /**
+     * @param name the property name (case insensitive)
+     * @return the id or {@link #UNKNOWN}
+     */
+    public static int getId(final String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+        final Integer id = IDS.get(name.toLowerCase(Locale.ROOT));
+        return id == null ? UNKNOWN : id.intValue();
+    }
+
+    /**
+     * @param id the id
+     * @return the (lower case) name of the property with the given id
+     * @throws IndexOutOfBoundsException if the id is not valid
+     */
+    public static String getName(final int id) {
+        return NAMES[id];
+    }
+
+    /**
+     * @param id the id
+     * @return true if the property with the given id is a shorthand
+     */
+    public static boolean isShorthand(final int id) {
+        return id >= 0 && id < SHORTHAND.length && SHORTHAND[id];
+    }
+
+    /**
+     * @param id the id
+     * @return true if the property with the given id is inherited by default
+     */
+    public static boolean isInherited(final int id) {
+        return id >= 0 && id < INHERITED.length && INHERITED[id];
+    }
+}
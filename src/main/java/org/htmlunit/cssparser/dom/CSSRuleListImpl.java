@@ -16,9 +16,11 @@
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.htmlunit.cssparser.util.ParserUtils;
+import org.w3c.dom.DOMException;
 
 /**
  * Implementation of CSSRuleList.
@@ -28,13 +30,19 @@
 public class CSSRuleListImpl implements Serializable {
 
     private final List<AbstractCSSRuleImpl> rules_ = new ArrayList<>();
+    /** read only view of the rules; set if the list is frozen */
+    private transient List<AbstractCSSRuleImpl> frozenRules_;
 
     /**
      * <p>getRules.</p>
      *
-     * @return the rules
+     * @return the rules; a read only list if this list is frozen
      */
     public List<AbstractCSSRuleImpl> getRules() {
+        final List<AbstractCSSRuleImpl> frozenRules = frozenRules_;
+        if (frozenRules != null) {
+            return frozenRules;
+        }
         return rules_;
     }
 
@@ -59,6 +67,7 @@ public int getLength() {
      * @param rule the rule to be added
      */
     public void add(final AbstractCSSRuleImpl rule) {
+        checkNotFrozen();
         getRules().add(rule);
     }
 
@@ -68,6 +77,7 @@ public void add(final AbstractCSSRuleImpl rule) {
      * @param index the insert pos
      */
     public void insert(final AbstractCSSRuleImpl rule, final int index) {
+        checkNotFrozen();
         getRules().add(index, rule);
     }
 
@@ -76,9 +86,39 @@ public void insert(final AbstractCSSRuleImpl rule, final int index) {
      * @param index the delete pos
      */
     public void delete(final int index) {
+        checkNotFrozen();
         getRules().remove(index);
     }
 
+    /**
+     * @return true if the list belongs to a frozen style sheet
+     * @see CSSStyleSheetImpl#freeze()
+     */
+    public boolean isFrozen() {
+        return frozenRules_ != null;
+    }
+
+    /**
+     * Makes the list and all the rules read only.
+     */
+    void freeze() {
+        for (final AbstractCSSRuleImpl rule : rules_) {
+            // rules shared with a copy-on-write view are frozen already
+            if (!rule.isFrozen()) {
+                rule.freeze();
+            }
+        }
+        frozenRules_ = Collections.unmodifiableList(rules_);
+    }
+
+    private void checkNotFrozen() throws DOMException {
+        if (frozenRules_ != null) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
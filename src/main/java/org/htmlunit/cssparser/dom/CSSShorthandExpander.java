@@ -0,0 +1,681 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.htmlunit.cssparser.parser.LexicalUnit;
+import org.htmlunit.cssparser.parser.LexicalUnit.LexicalUnitType;
+import org.htmlunit.cssparser.parser.LexicalUnitImpl;
+
+/**
+ * Expands shorthand properties into their longhands. The expansion is driven by
+ * a table mapping every supported shorthand to its longhands and a grammar;
+ * the grammar distributes the items of the shorthand value to the longhands,
+ * omitted longhands get their initial value.
+ *
+ * <p>Values with <code>var()</code> references, multiple background layers, system fonts
+ * and the template areas syntax of grid-template are not expanded.</p>
+ *
+ * @author Ronald Brill
+ */
+final class CSSShorthandExpander {
+
+    /**
+     * Distributes the items of a shorthand value to the longhands.
+     */
+    @FunctionalInterface
+    private interface Grammar {
+        /**
+         * @param items the items of the shorthand value
+         * @return the values for the longhands or null if the value is not supported
+         */
+        CSSValueImpl[] expand(List<CSSValueImpl> items);
+    }
+
+    private static final class Shorthand {
+        private final String[] longhands_;
+        private final Grammar grammar_;
+
+        Shorthand(final String[] longhands, final Grammar grammar) {
+            longhands_ = longhands;
+            grammar_ = grammar;
+        }
+    }
+
+    private static final String[] SIDES = {"top", "right", "bottom", "left"};
+
+    private static final Set<LexicalUnitType> LENGTHS = EnumSet.of(
+            LexicalUnitType.EM, LexicalUnitType.REM, LexicalUnitType.EX, LexicalUnitType.CH,
+            LexicalUnitType.VW, LexicalUnitType.VH, LexicalUnitType.VMIN, LexicalUnitType.VMAX,
+            LexicalUnitType.DVW, LexicalUnitType.DVH, LexicalUnitType.DVMIN, LexicalUnitType.DVMAX,
+            LexicalUnitType.LVW, LexicalUnitType.LVH, LexicalUnitType.LVMIN, LexicalUnitType.LVMAX,
+            LexicalUnitType.SVW, LexicalUnitType.SVH, LexicalUnitType.SVMIN, LexicalUnitType.SVMAX,
+            LexicalUnitType.PIXEL, LexicalUnitType.INCH, LexicalUnitType.CENTIMETER, LexicalUnitType.MILLIMETER,
+            LexicalUnitType.POINT, LexicalUnitType.PICA, LexicalUnitType.QUATER,
+            LexicalUnitType.PERCENTAGE, LexicalUnitType.FUNCTION_CALC);
+
+    private static final Set<String> CSS_WIDE_KEYWORDS = Set.of("inherit", "initial", "unset", "revert",
+            "revert-layer");
+    private static final Set<String> BORDER_STYLES = Set.of("none", "hidden", "dotted", "dashed", "solid", "double",
+            "groove", "ridge", "inset", "outset");
+    private static final Set<String> BORDER_WIDTHS = Set.of("thin", "medium", "thick");
+    private static final Set<String> FONT_STYLES = Set.of("italic", "oblique");
+    private static final Set<String> FONT_WEIGHTS = Set.of("bold", "bolder", "lighter");
+    private static final Set<String> FONT_STRETCHES = Set.of("ultra-condensed", "extra-condensed", "condensed",
+            "semi-condensed", "semi-expanded", "expanded", "extra-expanded", "ultra-expanded");
+    private static final Set<String> FONT_SIZES = Set.of("xx-small", "x-small", "small", "medium", "large",
+            "x-large", "xx-large", "xxx-large", "larger", "smaller", "math");
+    private static final Set<String> BACKGROUND_REPEATS = Set.of("repeat-x", "repeat-y", "repeat", "space", "round",
+            "no-repeat");
+    private static final Set<String> BACKGROUND_ATTACHMENTS = Set.of("scroll", "fixed", "local");
+    private static final Set<String> BACKGROUND_BOXES = Set.of("border-box", "padding-box", "content-box");
+    private static final Set<String> BACKGROUND_POSITIONS = Set.of("left", "right", "top", "bottom", "center");
+    private static final Set<String> BACKGROUND_SIZES = Set.of("auto", "cover", "contain");
+    private static final Set<String> IMAGE_FUNCTIONS = Set.of("image", "image-set", "cross-fade", "element");
+    private static final Set<String> FLEX_DIRECTIONS = Set.of("row", "row-reverse", "column", "column-reverse");
+    private static final Set<String> FLEX_WRAPS = Set.of("nowrap", "wrap", "wrap-reverse");
+
+    private static final Map<String, Shorthand> SHORTHANDS = Map.ofEntries(
+            box("margin", "margin-%s"),
+            box("padding", "padding-%s"),
+            box("inset", "%s"),
+            box("border-width", "border-%s-width"),
+            box("border-style", "border-%s-style"),
+            box("border-color", "border-%s-color"),
+            border("border", SIDES),
+            border("border-top", "top"),
+            border("border-right", "right"),
+            border("border-bottom", "bottom"),
+            border("border-left", "left"),
+            entry("gap", CSSShorthandExpander::expandGap, "row-gap", "column-gap"),
+            entry("font", CSSShorthandExpander::expandFont, "font-style", "font-variant", "font-weight",
+                    "font-stretch", "font-size", "line-height", "font-family"),
+            entry("background", CSSShorthandExpander::expandBackground, "background-image", "background-position",
+                    "background-size", "background-repeat", "background-attachment", "background-origin",
+                    "background-clip", "background-color"),
+            entry("flex", CSSShorthandExpander::expandFlex, "flex-grow", "flex-shrink", "flex-basis"),
+            entry("flex-flow", CSSShorthandExpander::expandFlexFlow, "flex-direction", "flex-wrap"),
+            entry("grid-template", CSSShorthandExpander::expandGridTemplate, "grid-template-rows",
+                    "grid-template-columns", "grid-template-areas"));
+
+    private CSSShorthandExpander() {
+        // util class
+    }
+
+    private static Map.Entry<String, Shorthand> entry(final String name, final Grammar grammar,
+            final String... longhands) {
+        return Map.entry(name, new Shorthand(longhands, grammar));
+    }
+
+    private static Map.Entry<String, Shorthand> box(final String name, final String pattern) {
+        final String[] longhands = new String[SIDES.length];
+        for (int i = 0; i < SIDES.length; i++) {
+            longhands[i] = String.format(pattern, SIDES[i]);
+        }
+        return entry(name, CSSShorthandExpander::expandBox, longhands);
+    }
+
+    // all widths, all styles, all colors
+    private static Map.Entry<String, Shorthand> border(final String name, final String... sides) {
+        final String[] longhands = new String[sides.length * 3];
+        for (int i = 0; i < sides.length; i++) {
+            longhands[i] = "border-" + sides[i] + "-width";
+            longhands[sides.length + i] = "border-" + sides[i] + "-style";
+            longhands[2 * sides.length + i] = "border-" + sides[i] + "-color";
+        }
+        return entry(name, items -> expandBorder(items, sides.length), longhands);
+    }
+
+    /**
+     * @param shorthand the name of the shorthand
+     * @return the names of the longhands or null if the shorthand is not supported
+     */
+    static List<String> getLonghandNames(final String shorthand) {
+        final Shorthand entry = SHORTHANDS.get(shorthand.toLowerCase(Locale.ROOT));
+        return entry == null ? null : Arrays.asList(entry.longhands_);
+    }
+
+    /**
+     * Expands the given property. The longhands get the priority and the locator of
+     * the shorthand; they share the values with the shorthand.
+     *
+     * @param property the property
+     * @return the longhands or null if the property is no supported shorthand
+     *         or the value can't be expanded
+     */
+    static List<Property> expand(final Property property) {
+        final String name = property.getName();
+        final CSSValueImpl value = property.getValue();
+        if (name == null || value == null) {
+            return null;
+        }
+        final Shorthand shorthand = SHORTHANDS.get(name.toLowerCase(Locale.ROOT));
+        if (shorthand == null) {
+            return null;
+        }
+
+        final List<CSSValueImpl> items = items(value);
+        if (items.isEmpty() || containsVar(items)) {
+            return null;
+        }
+
+        final CSSValueImpl[] values;
+        final String keyword = items.size() == 1 ? ident(items.get(0)) : null;
+        if (keyword != null && CSS_WIDE_KEYWORDS.contains(keyword)) {
+            values = new CSSValueImpl[shorthand.longhands_.length];
+            Arrays.fill(values, items.get(0));
+        }
+        else {
+            values = shorthand.grammar_.expand(items);
+            if (values == null) {
+                return null;
+            }
+        }
+
+        final List<Property> longhands = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            final Property longhand = new Property(shorthand.longhands_[i], values[i], property.isImportant());
+            longhand.setLocator(property.getLocator());
+            longhands.add(longhand);
+        }
+        return longhands;
+    }
+
+    private static CSSValueImpl[] expandBox(final List<CSSValueImpl> items) {
+        if (items.size() > 4 || containsOperator(items)) {
+            return null;
+        }
+        final CSSValueImpl top = items.get(0);
+        final CSSValueImpl right = items.size() > 1 ? items.get(1) : top;
+        final CSSValueImpl bottom = items.size() > 2 ? items.get(2) : top;
+        final CSSValueImpl left = items.size() > 3 ? items.get(3) : right;
+        return new CSSValueImpl[] {top, right, bottom, left};
+    }
+
+    private static CSSValueImpl[] expandGap(final List<CSSValueImpl> items) {
+        if (items.size() > 2 || containsOperator(items)) {
+            return null;
+        }
+        return new CSSValueImpl[] {items.get(0), items.size() > 1 ? items.get(1) : items.get(0)};
+    }
+
+    private static CSSValueImpl[] expandBorder(final List<CSSValueImpl> items, final int sides) {
+        if (items.size() > 3 || containsOperator(items)) {
+            return null;
+        }
+
+        CSSValueImpl width = null;
+        CSSValueImpl style = null;
+        CSSValueImpl color = null;
+        for (final CSSValueImpl item : items) {
+            final String ident = ident(item);
+            if (ident != null && BORDER_STYLES.contains(ident)) {
+                if (style != null) {
+                    return null;
+                }
+                style = item;
+            }
+            else if (isLengthPercentage(item) || ident != null && BORDER_WIDTHS.contains(ident)) {
+                if (width != null) {
+                    return null;
+                }
+                width = item;
+            }
+            else {
+                if (color != null) {
+                    return null;
+                }
+                color = item;
+            }
+        }
+
+        final CSSValueImpl[] values = new CSSValueImpl[sides * 3];
+        for (int i = 0; i < sides; i++) {
+            values[i] = width == null ? ident("medium") : width;
+            values[sides + i] = style == null ? ident("none") : style;
+            values[2 * sides + i] = color == null ? ident("currentcolor") : color;
+        }
+        return values;
+    }
+
+    private static CSSValueImpl[] expandFont(final List<CSSValueImpl> items) {
+        CSSValueImpl style = null;
+        CSSValueImpl variant = null;
+        CSSValueImpl weight = null;
+        CSSValueImpl stretch = null;
+
+        // [ <font-style> || <font-variant-css2> || <font-weight> || <font-stretch-css3> ]?
+        int i = 0;
+        while (i < items.size() && i < 4) {
+            final CSSValueImpl item = items.get(i);
+            final String ident = ident(item);
+            if ("normal".equals(ident)) {
+                // sets one of the longhands to the initial value
+                i++;
+                continue;
+            }
+            if (ident != null && FONT_STYLES.contains(ident)) {
+                if (style != null) {
+                    return null;
+                }
+                style = item;
+            }
+            else if ("small-caps".equals(ident)) {
+                if (variant != null) {
+                    return null;
+                }
+                variant = item;
+            }
+            else if (ident != null && FONT_WEIGHTS.contains(ident) || isNumber(item) && !isLengthPercentage(item)) {
+                if (weight != null) {
+                    return null;
+                }
+                weight = item;
+            }
+            else if (ident != null && FONT_STRETCHES.contains(ident)) {
+                if (stretch != null) {
+                    return null;
+                }
+                stretch = item;
+            }
+            else {
+                break;
+            }
+            i++;
+        }
+
+        // <font-size> [ / <line-height> ]? <font-family>#
+        if (i >= items.size()) {
+            return null;
+        }
+        final CSSValueImpl size = items.get(i);
+        final String sizeIdent = ident(size);
+        if (!isLengthPercentage(size) && (sizeIdent == null || !FONT_SIZES.contains(sizeIdent))) {
+            // e.g. system fonts like 'caption'
+            return null;
+        }
+        i++;
+
+        CSSValueImpl lineHeight = null;
+        if (i < items.size() && type(items.get(i)) == LexicalUnitType.OPERATOR_SLASH) {
+            i++;
+            if (i >= items.size()) {
+                return null;
+            }
+            lineHeight = items.get(i);
+            i++;
+        }
+
+        if (i >= items.size()) {
+            return null;
+        }
+        final List<CSSValueImpl> family = items.subList(i, items.size());
+        for (final CSSValueImpl item : family) {
+            if (type(item) == LexicalUnitType.OPERATOR_SLASH) {
+                return null;
+            }
+        }
+
+        return new CSSValueImpl[] {
+            style == null ? ident("normal") : style,
+            variant == null ? ident("normal") : variant,
+            weight == null ? ident("normal") : weight,
+            stretch == null ? ident("normal") : stretch,
+            size,
+            lineHeight == null ? ident("normal") : lineHeight,
+            value(family)};
+    }
+
+    private static CSSValueImpl[] expandBackground(final List<CSSValueImpl> items) {
+        CSSValueImpl image = null;
+        CSSValueImpl position = null;
+        CSSValueImpl size = null;
+        CSSValueImpl repeat = null;
+        CSSValueImpl attachment = null;
+        CSSValueImpl origin = null;
+        CSSValueImpl clip = null;
+        CSSValueImpl color = null;
+
+        int i = 0;
+        while (i < items.size()) {
+            final CSSValueImpl item = items.get(i);
+            final String ident = ident(item);
+            if (isImage(item)) {
+                if (image != null) {
+                    return null;
+                }
+                image = item;
+                i++;
+            }
+            else if (isPosition(item)) {
+                if (position != null) {
+                    return null;
+                }
+                final int start = i;
+                while (i < items.size() && i - start < 4 && isPosition(items.get(i))) {
+                    i++;
+                }
+                position = value(items.subList(start, i));
+
+                if (i < items.size() && type(items.get(i)) == LexicalUnitType.OPERATOR_SLASH) {
+                    i++;
+                    final int sizeStart = i;
+                    while (i < items.size() && i - sizeStart < 2 && isBackgroundSize(items.get(i))) {
+                        i++;
+                    }
+                    if (i == sizeStart) {
+                        return null;
+                    }
+                    size = value(items.subList(sizeStart, i));
+                }
+            }
+            else if (ident != null && BACKGROUND_REPEATS.contains(ident)) {
+                if (repeat != null) {
+                    return null;
+                }
+                final int start = i;
+                i++;
+                if (i < items.size() && !"repeat-x".equals(ident) && !"repeat-y".equals(ident)) {
+                    final String second = ident(items.get(i));
+                    if (second != null && BACKGROUND_REPEATS.contains(second)
+                            && !"repeat-x".equals(second) && !"repeat-y".equals(second)) {
+                        i++;
+                    }
+                }
+                repeat = value(items.subList(start, i));
+            }
+            else if (ident != null && BACKGROUND_ATTACHMENTS.contains(ident)) {
+                if (attachment != null) {
+                    return null;
+                }
+                attachment = item;
+                i++;
+            }
+            else if (ident != null && BACKGROUND_BOXES.contains(ident)) {
+                if (origin == null) {
+                    origin = item;
+                }
+                else if (clip == null) {
+                    clip = item;
+                }
+                else {
+                    return null;
+                }
+                i++;
+            }
+            else if (isOperator(item)) {
+                // e.g. multiple layers
+                return null;
+            }
+            else {
+                if (color != null) {
+                    return null;
+                }
+                color = item;
+                i++;
+            }
+        }
+
+        if (clip == null) {
+            clip = origin;
+        }
+        return new CSSValueImpl[] {
+            image == null ? ident("none") : image,
+            position == null
+                ? CSSValueImpl.createList(List.of(percentage(0), percentage(0)))
+                : position,
+            size == null ? ident("auto") : size,
+            repeat == null ? ident("repeat") : repeat,
+            attachment == null ? ident("scroll") : attachment,
+            origin == null ? ident("padding-box") : origin,
+            clip == null ? ident("border-box") : clip,
+            color == null ? ident("transparent") : color};
+    }
+
+    private static CSSValueImpl[] expandFlex(final List<CSSValueImpl> items) {
+        if (items.size() == 1) {
+            final String ident = ident(items.get(0));
+            if ("none".equals(ident)) {
+                return new CSSValueImpl[] {number(0), number(0), ident("auto")};
+            }
+            if ("auto".equals(ident)) {
+                return new CSSValueImpl[] {number(1), number(1), ident("auto")};
+            }
+        }
+        if (items.size() > 3) {
+            return null;
+        }
+
+        // <flex-grow> <flex-shrink>? || <flex-basis>
+        CSSValueImpl grow = null;
+        CSSValueImpl shrink = null;
+        CSSValueImpl basis = null;
+        int i = 0;
+        while (i < items.size()) {
+            final CSSValueImpl item = items.get(i);
+            final String ident = ident(item);
+            if (grow == null && isNumber(item)) {
+                grow = item;
+                i++;
+                if (i < items.size() && isNumber(items.get(i))) {
+                    shrink = items.get(i);
+                    i++;
+                }
+            }
+            else if (basis == null && (isLengthPercentage(item) || "auto".equals(ident) || "content".equals(ident))) {
+                basis = item;
+                i++;
+            }
+            else {
+                return null;
+            }
+        }
+
+        return new CSSValueImpl[] {
+            grow == null ? number(1) : grow,
+            shrink == null ? number(1) : shrink,
+            basis == null ? percentage(0) : basis};
+    }
+
+    private static CSSValueImpl[] expandFlexFlow(final List<CSSValueImpl> items) {
+        if (items.size() > 2) {
+            return null;
+        }
+        CSSValueImpl direction = null;
+        CSSValueImpl wrap = null;
+        for (final CSSValueImpl item : items) {
+            final String ident = ident(item);
+            if (direction == null && ident != null && FLEX_DIRECTIONS.contains(ident)) {
+                direction = item;
+            }
+            else if (wrap == null && ident != null && FLEX_WRAPS.contains(ident)) {
+                wrap = item;
+            }
+            else {
+                return null;
+            }
+        }
+        return new CSSValueImpl[] {
+            direction == null ? ident("row") : direction,
+            wrap == null ? ident("nowrap") : wrap};
+    }
+
+    private static CSSValueImpl[] expandGridTemplate(final List<CSSValueImpl> items) {
+        if (items.size() == 1 && "none".equals(ident(items.get(0)))) {
+            return new CSSValueImpl[] {ident("none"), ident("none"), ident("none")};
+        }
+
+        // <grid-template-rows> / <grid-template-columns>
+        int slash = -1;
+        for (int i = 0; i < items.size(); i++) {
+            final LexicalUnitType type = type(items.get(i));
+            if (type == LexicalUnitType.STRING_VALUE) {
+                // the template areas syntax is not supported
+                return null;
+            }
+            if (type == LexicalUnitType.OPERATOR_SLASH) {
+                if (slash > -1) {
+                    return null;
+                }
+                slash = i;
+            }
+        }
+        if (slash < 1 || slash == items.size() - 1) {
+            return null;
+        }
+        return new CSSValueImpl[] {
+            value(items.subList(0, slash)),
+            value(items.subList(slash + 1, items.size())),
+            ident("none")};
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<CSSValueImpl> items(final CSSValueImpl value) {
+        if (value.getValue() instanceof List) {
+            return (List<CSSValueImpl>) value.getValue();
+        }
+        return List.of(value);
+    }
+
+    private static CSSValueImpl value(final List<CSSValueImpl> items) {
+        if (items.size() == 1) {
+            return items.get(0);
+        }
+        return CSSValueImpl.createList(new ArrayList<>(items));
+    }
+
+    private static CSSValueImpl ident(final String ident) {
+        return new CSSValueImpl(LexicalUnitImpl.createIdent(null, ident));
+    }
+
+    private static CSSValueImpl number(final int number) {
+        return new CSSValueImpl(LexicalUnitImpl.createNumber(null, number));
+    }
+
+    private static CSSValueImpl percentage(final double percentage) {
+        return new CSSValueImpl(LexicalUnitImpl.createPercentage(null, percentage));
+    }
+
+    private static LexicalUnitType type(final CSSValueImpl item) {
+        if (item.getValue() instanceof LexicalUnit lu) {
+            return lu.getLexicalUnitType();
+        }
+        return null;
+    }
+
+    /**
+     * @return the lower case identifier or null if the item is no identifier
+     */
+    private static String ident(final CSSValueImpl item) {
+        if (item.getValue() instanceof LexicalUnit lu) {
+            switch (lu.getLexicalUnitType()) {
+                case IDENT:
+                    return lu.getStringValue().toLowerCase(Locale.ROOT);
+                case NONE:
+                    return "none";
+                case INHERIT:
+                    return "inherit";
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNumber(final CSSValueImpl item) {
+        final LexicalUnitType type = type(item);
+        return type == LexicalUnitType.INTEGER || type == LexicalUnitType.REAL;
+    }
+
+    private static boolean isLengthPercentage(final CSSValueImpl item) {
+        if (item.getValue() instanceof LexicalUnit lu) {
+            final LexicalUnitType type = lu.getLexicalUnitType();
+            if (LENGTHS.contains(type)) {
+                return true;
+            }
+            // unitless zero
+            return (type == LexicalUnitType.INTEGER || type == LexicalUnitType.REAL) && lu.getDoubleValue() == 0;
+        }
+        return false;
+    }
+
+    private static boolean isImage(final CSSValueImpl item) {
+        if (item.getValue() instanceof LexicalUnit lu) {
+            final LexicalUnitType type = lu.getLexicalUnitType();
+            if (type == LexicalUnitType.URI || "none".equals(ident(item))) {
+                return true;
+            }
+            if (type == LexicalUnitType.FUNCTION) {
+                final String name = lu.getFunctionName().toLowerCase(Locale.ROOT);
+                return name.endsWith("gradient") || IMAGE_FUNCTIONS.contains(name);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPosition(final CSSValueImpl item) {
+        final String ident = ident(item);
+        return isLengthPercentage(item) || ident != null && BACKGROUND_POSITIONS.contains(ident);
+    }
+
+    private static boolean isBackgroundSize(final CSSValueImpl item) {
+        final String ident = ident(item);
+        return isLengthPercentage(item) || ident != null && BACKGROUND_SIZES.contains(ident);
+    }
+
+    private static boolean isOperator(final CSSValueImpl item) {
+        final LexicalUnitType type = type(item);
+        return type != null && type.name().startsWith("OPERATOR_");
+    }
+
+    private static boolean containsOperator(final List<CSSValueImpl> items) {
+        for (final CSSValueImpl item : items) {
+            if (isOperator(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsVar(final List<CSSValueImpl> items) {
+        for (final CSSValueImpl item : items) {
+            if (item.getValue() instanceof LexicalUnit lu && containsVar(lu.getParameters(), lu)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsVar(final LexicalUnit parameters, final LexicalUnit unit) {
+        if (unit.getLexicalUnitType() == LexicalUnitType.FUNCTION && "var".equalsIgnoreCase(unit.getFunctionName())) {
+            return true;
+        }
+        LexicalUnit param = parameters;
+        while (param != null) {
+            if (containsVar(param.getParameters(), param)) {
+                return true;
+            }
+            param = param.getNextLexicalUnit();
+        }
+        return false;
+    }
+}
@@ -14,9 +14,28 @@
  */
 package org.htmlunit.cssparser.dom;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import org.htmlunit.cssparser.parser.CSSErrorHandler;
 import org.htmlunit.cssparser.parser.CSSOMParser;
@@ -33,8 +52,25 @@ public class CSSStyleDeclarationImpl implements Serializable {
 
     private static final String PRIORITY_IMPORTANT = "important";
 
+    /** Below this size a linear scan is faster than maintaining the index. */
+    private static final int INDEX_THRESHOLD = 8;
+
     private final AbstractCSSRuleImpl parentRule_;
-    private final List<Property> properties_ = new ArrayList<>();
+    private final PropertyList properties_ = new PropertyList();
+    private int sourceStart_ = -1;
+    private int sourceEnd_ = -1;
+    /** the version of the property list at the last reset of the modified flag */
+    private int unmodifiedVersion_;
+
+    /** lower case name -&gt; last property with this name; built on demand */
+    private transient Map<String, Property> index_;
+    /** id -&gt; last property with this id; built on demand from the name index */
+    private transient IdIndex idIndex_;
+    private transient int indexVersion_;
+    /** read only view of the properties; set if the declarations are frozen */
+    private transient List<Property> frozenProperties_;
+    /** the properties with the shorthands expanded; built on demand */
+    private transient volatile Longhands longhands_;
 
     /**
      * Ctor.
@@ -48,12 +84,64 @@ public CSSStyleDeclarationImpl(final AbstractCSSRuleImpl parentRule) {
     /**
      * <p>getProperties.</p>
      *
-     * @return the properties
+     * @return the properties; a read only list if the declarations are frozen
      */
     public List<Property> getProperties() {
+        final List<Property> frozenProperties = frozenProperties_;
+        if (frozenProperties != null) {
+            return frozenProperties;
+        }
         return properties_;
     }
 
+    /**
+     * @return true if the declarations belong to a frozen style sheet
+     * @see CSSStyleSheetImpl#freeze()
+     */
+    public boolean isFrozen() {
+        return frozenProperties_ != null;
+    }
+
+    /**
+     * Makes the declarations and all the properties read only;
+     * the lookup index is built upfront. If the shorthands were already
+     * expanded the longhands are expanded and frozen again.
+     */
+    void freeze() {
+        for (final Property property : properties_) {
+            property.freeze();
+        }
+        idIndex();
+        frozenProperties_ = Collections.unmodifiableList(properties_);
+        if (longhands_ != null) {
+            longhands_ = null;
+            longhands();
+        }
+    }
+
+    /**
+     * @param parentRule the parent rule of the copy
+     * @return a mutable copy of the declarations and all the properties
+     */
+    CSSStyleDeclarationImpl copy(final AbstractCSSRuleImpl parentRule) {
+        final CSSStyleDeclarationImpl copy = new CSSStyleDeclarationImpl(parentRule);
+        for (final Property property : properties_) {
+            copy.properties_.add(property.copy());
+        }
+        copy.sourceStart_ = sourceStart_;
+        copy.sourceEnd_ = sourceEnd_;
+        copy.unmodifiedVersion_ = unmodifiedVersion_ == properties_.version() ? copy.properties_.version() : -1;
+        return copy;
+    }
+
+    private void checkNotFrozen() throws DOMException {
+        if (frozenProperties_ != null) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
+    }
+
     /**
      * @return the current css text
      */
@@ -88,6 +176,7 @@ public void setCssText(final String cssText) throws DOMException {
      * @throws DOMException in case of error
      */
     public void setCssText(final String cssText, final CSSErrorHandler cssErrorHandler) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             parser.setErrorHandler(cssErrorHandler);
@@ -133,13 +222,32 @@ public CSSValueImpl getPropertyCSSValue(final String propertyName) {
      * @throws DOMException in case of error
      */
     public String removeProperty(final String propertyName) throws DOMException {
+        checkNotFrozen();
         if (null == propertyName) {
             return "";
         }
+        if (properties_.size() >= INDEX_THRESHOLD && getPropertyDeclaration(propertyName) == null) {
+            // fast path, nothing to remove
+            return "";
+        }
+
         for (int i = 0; i < properties_.size(); i++) {
             final Property p = properties_.get(i);
             if (p != null && propertyName.equalsIgnoreCase(p.getName())) {
+                final boolean indexValid = isIndexValid();
                 properties_.remove(i);
+                if (indexValid) {
+                    // the index points to the last property with this name
+                    final String key = p.getName().toLowerCase(Locale.ROOT);
+                    if (index_.get(key) == p) {
+                        index_.remove(key);
+                        if (p.getId() != CSSPropertyRegistry.UNKNOWN) {
+                            idIndex_ = null;
+                        }
+                    }
+                    indexVersion_ = properties_.version();
+                }
+
                 if (p.getValue() == null) {
                     return "";
                 }
@@ -174,6 +282,7 @@ public void setProperty(
             final String propertyName,
             final String value,
             final String priority) throws DOMException {
+        checkNotFrozen();
         try {
             CSSValueImpl expr = null;
             if (!value.isEmpty()) {
@@ -217,15 +326,106 @@ public AbstractCSSRuleImpl getParentRule() {
         return parentRule_;
     }
 
+    /**
+     * @return the offset of the first declaration in the source of the style sheet
+     *         or -1 if the source was not tracked while parsing
+     */
+    public int getSourceStart() {
+        return sourceStart_;
+    }
+
+    /**
+     * @return the offset after the last declaration (the position of the closing '}'
+     *         without the whitespace in front) in the source of the style sheet
+     *         or -1 if the source was not tracked while parsing
+     */
+    public int getSourceEnd() {
+        return sourceEnd_;
+    }
+
+    /**
+     * Sets the range of the declarations in the source of the style sheet.
+     * @param sourceStart the offset of the first char or -1
+     * @param sourceEnd the offset after the last char or -1
+     */
+    public void setSourceRange(final int sourceStart, final int sourceEnd) {
+        checkNotFrozen();
+        sourceStart_ = sourceStart;
+        sourceEnd_ = sourceEnd;
+    }
+
+    /**
+     * @return true if properties were added, removed or changed after parsing
+     */
+    public boolean isModified() {
+        if (unmodifiedVersion_ != properties_.version()) {
+            return true;
+        }
+        for (final Property property : properties_) {
+            if (property.isModified()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the declarations as changed. Resetting the flag resets
+     * the flags of all the properties also.
+     * @param modified the new value
+     */
+    public void setModified(final boolean modified) {
+        checkNotFrozen();
+        if (modified) {
+            unmodifiedVersion_ = -1;
+            return;
+        }
+
+        unmodifiedVersion_ = properties_.version();
+        for (final Property property : properties_) {
+            property.setModified(false);
+        }
+    }
+
+    /**
+     * Moves the source range of the declarations and of all the properties
+     * by the given number of chars.
+     * @param delta the number of chars to move
+     */
+    public void shiftSourceRange(final int delta) {
+        checkNotFrozen();
+        if (sourceStart_ > -1) {
+            sourceStart_ += delta;
+        }
+        if (sourceEnd_ > -1) {
+            sourceEnd_ += delta;
+        }
+        for (final Property property : properties_) {
+            property.shiftSourceRange(delta);
+        }
+    }
+
     /**
      * Add a property.
      * @param p the property to add
      */
     public void addProperty(final Property p) {
+        checkNotFrozen();
         if (null == p) {
             return;
         }
+
+        final boolean indexValid = isIndexValid();
         properties_.add(p);
+        if (indexValid) {
+            if (p.getName() != null) {
+                index_.put(p.getName().toLowerCase(Locale.ROOT), p);
+            }
+            if (p.getId() != CSSPropertyRegistry.UNKNOWN && idIndex_ != null && !idIndex_.replace(p)) {
+                idIndex_ = null;
+            }
+            indexVersion_ = properties_.version();
+        }
     }
 
     /**
@@ -238,6 +438,130 @@ public Property getPropertyDeclaration(final String propertyName) {
         if (null == propertyName) {
             return null;
         }
+        if (properties_.size() < INDEX_THRESHOLD) {
+            return findLast(propertyName);
+        }
+
+        return index().get(propertyName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the property for the given id; this is faster than
+     * the lookup by name.
+     *
+     * @param propertyId the id of the property from the {@link CSSPropertyRegistry}
+     * @return the property or null
+     */
+    public Property getPropertyDeclaration(final int propertyId) {
+        if (propertyId < 0 || propertyId >= CSSPropertyRegistry.getCount()) {
+            return null;
+        }
+        if (properties_.size() < INDEX_THRESHOLD) {
+            for (int i = properties_.size() - 1; i > -1; i--) {
+                final Property p = properties_.get(i);
+                if (p != null && p.getId() == propertyId) {
+                    return p;
+                }
+            }
+            return null;
+        }
+
+        return idIndex().get(propertyId);
+    }
+
+    /**
+     * @param propertyId the id of the property from the {@link CSSPropertyRegistry}
+     * @return the property value or null
+     */
+    public CSSValueImpl getPropertyCSSValue(final int propertyId) {
+        final Property p = getPropertyDeclaration(propertyId);
+        return (p == null) ? null : p.getValue();
+    }
+
+    /**
+     * Expands the supported shorthand properties (e.g. margin, border, font or flex)
+     * into their longhands upfront; without this call the expansion is done
+     * on the first access. The properties of the declarations are not changed,
+     * the css text still contains the shorthands.
+     *
+     * @see CSSOMParser#setExpandShorthands(boolean)
+     */
+    public void expandShorthands() {
+        longhands();
+    }
+
+    /**
+     * Returns the properties in declaration order with all supported shorthands
+     * replaced by their longhands. Shorthands that can't be expanded
+     * (e.g. because of a <code>var()</code> reference) are part of the list.
+     * The expanded form is cached until the declarations are changed; the properties
+     * of the list must not be modified.
+     *
+     * @return the read only list of properties
+     */
+    public List<Property> getLonghandProperties() {
+        return longhands().properties_;
+    }
+
+    /**
+     * Returns the longhand winning the cascade inside these declarations;
+     * an important declaration wins, otherwise the last one.
+     *
+     * @param propertyId the id of the property from the {@link CSSPropertyRegistry}
+     * @return the property or null
+     */
+    public Property getLonghandDeclaration(final int propertyId) {
+        return longhands().get(propertyId);
+    }
+
+    /**
+     * @param propertyId the id of the property from the {@link CSSPropertyRegistry}
+     * @return the value of the longhand winning the cascade inside these declarations or null
+     * @see #getLonghandDeclaration(int)
+     */
+    public CSSValueImpl getLonghandCSSValue(final int propertyId) {
+        final Property p = getLonghandDeclaration(propertyId);
+        return (p == null) ? null : p.getValue();
+    }
+
+    private Longhands longhands() {
+        Longhands longhands = longhands_;
+        final boolean frozen = frozenProperties_ != null;
+        if (longhands != null
+                && (frozen
+                    || longhands.version_ == properties_.version()
+                    && longhands.changes_ == properties_.propertyChanges())) {
+            return longhands;
+        }
+
+        final int changes = properties_.propertyChanges();
+        final List<Property> expanded = new ArrayList<>(properties_.size());
+        for (final Property p : properties_) {
+            if (p == null) {
+                continue;
+            }
+            final List<Property> expansion = CSSShorthandExpander.expand(p);
+            if (expansion == null) {
+                expanded.add(p);
+                continue;
+            }
+            for (final Property longhand : expansion) {
+                if (frozen) {
+                    longhand.freeze();
+                }
+                expanded.add(longhand);
+            }
+        }
+
+        // an important longhand wins, otherwise the last one
+        longhands = new Longhands(Collections.unmodifiableList(expanded),
+                IdIndex.of(expanded, (winner, p) -> p.isImportant() || !winner.isImportant()),
+                properties_.version(), changes);
+        longhands_ = longhands;
+        return longhands;
+    }
+
+    private Property findLast(final String propertyName) {
         for (int i = properties_.size() - 1; i > -1; i--) {
             final Property p = properties_.get(i);
             if (p != null && propertyName.equalsIgnoreCase(p.getName())) {
@@ -247,6 +571,39 @@ public Property getPropertyDeclaration(final String propertyName) {
         return null;
     }
 
+    private boolean isIndexValid() {
+        // renames of the properties change the version also
+        return index_ != null && (frozenProperties_ != null || indexVersion_ == properties_.version());
+    }
+
+    private IdIndex idIndex() {
+        index();
+        IdIndex idIndex = idIndex_;
+        if (idIndex == null) {
+            // the name index contains only the last property per name
+            idIndex = IdIndex.of(index_.values(), (winner, p) -> true);
+            idIndex_ = idIndex;
+        }
+        return idIndex;
+    }
+
+    private Map<String, Property> index() {
+        if (isIndexValid()) {
+            return index_;
+        }
+
+        final Map<String, Property> index = new HashMap<>(properties_.size() * 2);
+        for (final Property p : properties_) {
+            if (p != null && p.getName() != null) {
+                index.put(p.getName().toLowerCase(Locale.ROOT), p);
+            }
+        }
+        index_ = index;
+        idIndex_ = null;
+        indexVersion_ = properties_.version();
+        return index;
+    }
+
     @Override
     public String toString() {
         return getCssText();
@@ -296,4 +653,349 @@ public int hashCode() {
         hash = ParserUtils.hashCode(hash, properties_);
         return hash;
     }
+
+    /**
+     * The expanded properties and the winning longhands.
+     */
+    private static final class Longhands {
+        private final List<Property> properties_;
+        private final IdIndex byId_;
+        private final int version_;
+        private final int changes_;
+
+        Longhands(final List<Property> properties, final IdIndex byId, final int version, final int changes) {
+            properties_ = properties;
+            byId_ = byId;
+            version_ = version;
+            changes_ = changes;
+        }
+
+        Property get(final int propertyId) {
+            return byId_.get(propertyId);
+        }
+    }
+
+    /**
+     * Property id -&gt; property; the ids are stored in a sorted array
+     * sized to the declarations to keep the store compact.
+     */
+    private static final class IdIndex {
+        private final int[] ids_;
+        private final Property[] properties_;
+
+        private IdIndex(final int[] ids, final Property[] properties) {
+            ids_ = ids;
+            properties_ = properties;
+        }
+
+        /**
+         * @param properties the properties in declaration order
+         * @param replaces decides if a property replaces the winner with the same id
+         * @return the new index
+         */
+        static IdIndex of(final Collection<Property> properties, final BiPredicate<Property, Property> replaces) {
+            // the sort is stable, the properties with the same id stay in declaration order
+            final List<Property> known = new ArrayList<>(properties.size());
+            for (final Property p : properties) {
+                if (p.getId() != CSSPropertyRegistry.UNKNOWN) {
+                    known.add(p);
+                }
+            }
+            known.sort(Comparator.comparingInt(Property::getId));
+
+            final int[] ids = new int[known.size()];
+            final Property[] winners = new Property[known.size()];
+            int count = 0;
+            for (final Property p : known) {
+                if (count > 0 && ids[count - 1] == p.getId()) {
+                    if (replaces.test(winners[count - 1], p)) {
+                        winners[count - 1] = p;
+                    }
+                    continue;
+                }
+                ids[count] = p.getId();
+                winners[count] = p;
+                count++;
+            }
+            if (count < ids.length) {
+                return new IdIndex(Arrays.copyOf(ids, count), Arrays.copyOf(winners, count));
+            }
+            return new IdIndex(ids, winners);
+        }
+
+        Property get(final int propertyId) {
+            final int i = Arrays.binarySearch(ids_, propertyId);
+            return i < 0 ? null : properties_[i];
+        }
+
+        /**
+         * @param property the new property for the id of the property
+         * @return false if the index has no entry for the id
+         */
+        boolean replace(final Property property) {
+            final int i = Arrays.binarySearch(ids_, property.getId());
+            if (i < 0) {
+                return false;
+            }
+            properties_[i] = property;
+            return true;
+        }
+    }
+
+    /**
+     * The property list; every modification of the list (including set()
+     * and the modifications done through subList()) and every rename of a
+     * contained property changes the version, this way the name index is never stale.
+     * The contained properties refer to the list to notify it; a removed property
+     * drops this reference.
+     */
+    static final class PropertyList extends ArrayList<Property> {
+
+        /** counts the replacements and renames; these are not structural modifications */
+        private transient int changes_;
+        /** counts the value and priority changes of the properties */
+        private transient int propertyChanges_;
+
+        @Override
+        public boolean add(final Property element) {
+            adopt(element);
+            return super.add(element);
+        }
+
+        @Override
+        public void add(final int index, final Property element) {
+            adopt(element);
+            super.add(index, element);
+        }
+
+        @Override
+        public boolean addAll(final Collection<? extends Property> c) {
+            for (final Property property : c) {
+                adopt(property);
+            }
+            return super.addAll(c);
+        }
+
+        @Override
+        public boolean addAll(final int index, final Collection<? extends Property> c) {
+            for (final Property property : c) {
+                adopt(property);
+            }
+            return super.addAll(index, c);
+        }
+
+        @Override
+        public Property set(final int index, final Property element) {
+            adopt(element);
+            changes_++;
+            final Property replaced = super.set(index, element);
+            release(replaced);
+            return replaced;
+        }
+
+        @Override
+        public Property remove(final int index) {
+            final Property removed = super.remove(index);
+            release(removed);
+            return removed;
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            final int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            remove(index);
+            return true;
+        }
+
+        @Override
+        public boolean removeAll(final Collection<?> c) {
+            final Property[] before = toArray(new Property[0]);
+            return released(before, super.removeAll(c));
+        }
+
+        @Override
+        public boolean retainAll(final Collection<?> c) {
+            final Property[] before = toArray(new Property[0]);
+            return released(before, super.retainAll(c));
+        }
+
+        @Override
+        public boolean removeIf(final Predicate<? super Property> filter) {
+            final Property[] before = toArray(new Property[0]);
+            return released(before, super.removeIf(filter));
+        }
+
+        @Override
+        protected void removeRange(final int fromIndex, final int toIndex) {
+            final Property[] before = toArray(new Property[0]);
+            super.removeRange(fromIndex, toIndex);
+            released(before, true);
+        }
+
+        @Override
+        public void clear() {
+            final Property[] before = toArray(new Property[0]);
+            super.clear();
+            released(before, true);
+        }
+
+        @Override
+        public void replaceAll(final UnaryOperator<Property> operator) {
+            Objects.requireNonNull(operator);
+            final ListIterator<Property> iterator = listIterator();
+            while (iterator.hasNext()) {
+                iterator.set(operator.apply(iterator.next()));
+            }
+        }
+
+        @Override
+        public List<Property> subList(final int fromIndex, final int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size());
+            return new SubList(this, fromIndex, toIndex);
+        }
+
+        int version() {
+            return modCount + changes_;
+        }
+
+        int structureVersion() {
+            return modCount;
+        }
+
+        int propertyChanges() {
+            return propertyChanges_;
+        }
+
+        void propertyChanged(final boolean renamed) {
+            if (renamed) {
+                changes_++;
+            }
+            else {
+                propertyChanges_++;
+            }
+        }
+
+        private void adopt(final Property property) {
+            if (property != null) {
+                property.addOwner(this);
+            }
+        }
+
+        private void release(final Property property) {
+            if (property != null && !containsInstance(property)) {
+                property.removeOwner(this);
+            }
+        }
+
+        private boolean containsInstance(final Property property) {
+            for (final Property p : this) {
+                if (p == property) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // drops the reference of the properties no longer contained
+        private boolean released(final Property[] before, final boolean changed) {
+            if (!changed) {
+                return false;
+            }
+            if (isEmpty()) {
+                for (final Property property : before) {
+                    if (property != null) {
+                        property.removeOwner(this);
+                    }
+                }
+                return true;
+            }
+
+            final Set<Property> remaining = Collections.newSetFromMap(new IdentityHashMap<>());
+            remaining.addAll(this);
+            for (final Property property : before) {
+                if (property != null && !remaining.contains(property)) {
+                    property.removeOwner(this);
+                }
+            }
+            return true;
+        }
+
+        private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            for (final Property property : this) {
+                adopt(property);
+            }
+        }
+    }
+
+    /**
+     * The view returned by {@link PropertyList#subList(int, int)}; different from
+     * the view of the ArrayList all the modifications are done using the methods
+     * of the list.
+     */
+    private static final class SubList extends AbstractList<Property> implements RandomAccess {
+        private final PropertyList root_;
+        private final int offset_;
+        private int size_;
+        private int rootVersion_;
+
+        SubList(final PropertyList root, final int fromIndex, final int toIndex) {
+            root_ = root;
+            offset_ = fromIndex;
+            size_ = toIndex - fromIndex;
+            rootVersion_ = root.structureVersion();
+        }
+
+        @Override
+        public Property get(final int index) {
+            Objects.checkIndex(index, size_);
+            checkForComodification();
+            return root_.get(offset_ + index);
+        }
+
+        @Override
+        public Property set(final int index, final Property element) {
+            Objects.checkIndex(index, size_);
+            checkForComodification();
+            return root_.set(offset_ + index, element);
+        }
+
+        @Override
+        public void add(final int index, final Property element) {
+            Objects.checkIndex(index, size_ + 1);
+            checkForComodification();
+            root_.add(offset_ + index, element);
+            structureChanged(1);
+        }
+
+        @Override
+        public Property remove(final int index) {
+            Objects.checkIndex(index, size_);
+            checkForComodification();
+            final Property removed = root_.remove(offset_ + index);
+            structureChanged(-1);
+            return removed;
+        }
+
+        @Override
+        public int size() {
+            checkForComodification();
+            return size_;
+        }
+
+        private void checkForComodification() {
+            if (root_.structureVersion() != rootVersion_) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        private void structureChanged(final int delta) {
+            size_ += delta;
+            rootVersion_ = root_.structureVersion();
+            modCount++;
+        }
+    }
 }
@@ -15,10 +15,17 @@
 package org.htmlunit.cssparser.dom;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 
+import org.htmlunit.cssparser.parser.CSSDiagnosticsSink;
+import org.htmlunit.cssparser.parser.CSSErrorHandler;
 import org.htmlunit.cssparser.parser.CSSException;
 import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.InputSource;
+import org.htmlunit.cssparser.parser.Locator;
+import org.htmlunit.cssparser.parser.selector.SelectorKey;
 import org.htmlunit.cssparser.parser.selector.SelectorList;
+import org.htmlunit.cssparser.parser.selector.SelectorListImpl;
 import org.htmlunit.cssparser.util.ParserUtils;
 import org.w3c.dom.DOMException;
 
@@ -32,6 +39,17 @@ public class CSSStyleRuleImpl extends AbstractCSSRuleImpl {
     private SelectorList selectors_;
     private CSSStyleDeclarationImpl style_;
 
+    /** The not yet parsed selectors; they are parsed on first access. */
+    private transient volatile DeferredSelectors deferredSelectors_;
+    private transient SelectorKey[] selectorKeys_;
+
+    /**
+     * The not yet parsed declarations; the style is parsed on first access.
+     * The style is published by the volatile write setting this to null,
+     * read this before style_.
+     */
+    private transient volatile DeferredStyle deferredStyle_;
+
     /**
      * Ctor.
      * @param parentStyleSheet the parent style sheet
@@ -48,6 +66,9 @@ public CSSStyleRuleImpl(final CSSStyleSheetImpl parentStyleSheet,
      * @return all selectors
      */
     public SelectorList getSelectors() {
+        if (deferredSelectors_ != null) {
+            return parseDeferredSelectors();
+        }
         return selectors_;
     }
 
@@ -56,7 +77,75 @@ public SelectorList getSelectors() {
      * @param selectors the new selectors
      */
     public void setSelectors(final SelectorList selectors) {
+        checkNotFrozen();
+        synchronized (this) {
+            selectors_ = selectors;
+            selectorKeys_ = null;
+            deferredSelectors_ = null;
+            setModified(true);
+        }
+    }
+
+    /**
+     * Stores the source of the selectors; they are parsed on the first
+     * call of {@link #getSelectors()}.
+     * @param source the source; the array is not copied and must not be modified
+     * @param start the offset of the first char of the selectors
+     * @param end the offset after the last char of the selectors
+     * @param keys the prefilter keys of the selectors, one per selector
+     */
+    public void setDeferredSelectors(final char[] source, final int start, final int end,
+            final SelectorKey[] keys) {
+        checkNotFrozen();
+        synchronized (this) {
+            selectorKeys_ = keys;
+            deferredSelectors_ = new DeferredSelectors(source, start, end);
+        }
+    }
+
+    /**
+     * @return the prefilter keys of the selectors (one per selector) if the
+     *         selectors were not parsed together with the style sheet; null otherwise
+     */
+    public SelectorKey[] getSelectorKeys() {
+        return selectorKeys_;
+    }
+
+    private synchronized SelectorList parseDeferredSelectors() {
+        final DeferredSelectors deferred = deferredSelectors_;
+        if (deferred == null) {
+            // parsed by another thread in the meantime
+            return selectors_;
+        }
+
+        // the selectors start at the position of the rule
+        final Locator locator = getLocator();
+        int line = 1;
+        int column = 1;
+        String uri = null;
+        if (locator != null) {
+            line = locator.getLineNumber();
+            column = locator.getColumnNumber();
+            uri = locator.getUri();
+        }
+
+        SelectorList selectors = null;
+        try (InputSource source = new InputSource(deferred.source_, deferred.start_, deferred.end_, line, column)) {
+            source.setURI(uri);
+            selectors = new CSSOMParser().parseSelectors(source);
+        }
+        catch (final CSSException | IOException e) {
+            // handled below
+        }
+        if (selectors == null) {
+            // invalid selectors do not match anything
+            selectors = new SelectorListImpl();
+        }
+
+        // publish the selectors before the volatile write
         selectors_ = selectors;
+        deferredSelectors_ = null;
+        return selectors;
     }
 
     /**
@@ -69,7 +158,7 @@ public String getCssText() {
             return "";
         }
 
-        final String selectorText = selectors_.toString();
+        final String selectorText = getSelectors().toString();
         final String styleText = style.toString();
 
         if (null == styleText || styleText.length() == 0) {
@@ -84,14 +173,15 @@ public String getCssText() {
      */
     @Override
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             final AbstractCSSRuleImpl r = parser.parseRule(cssText);
 
             // The rule must be a style rule
             if (r instanceof CSSStyleRuleImpl) {
-                selectors_ = ((CSSStyleRuleImpl) r).selectors_;
-                style_ = ((CSSStyleRuleImpl) r).style_;
+                setSelectors(((CSSStyleRuleImpl) r).getSelectors());
+                setStyle(((CSSStyleRuleImpl) r).getStyle());
             }
             else {
                 throw new DOMExceptionImpl(
@@ -111,7 +201,7 @@ public void setCssText(final String cssText) throws DOMException {
      * @return the selector text
      */
     public String getSelectorText() {
-        return selectors_.toString();
+        return getSelectors().toString();
     }
 
     /**
@@ -120,9 +210,10 @@ public String getSelectorText() {
      * @throws DOMException in clase of error
      */
     public void setSelectorText(final String selectorText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
-            selectors_ = parser.parseSelectors(selectorText);
+            setSelectors(parser.parseSelectors(selectorText));
         }
         catch (final CSSException | IOException e) {
             throw new DOMExceptionImpl(
@@ -136,6 +227,9 @@ public void setSelectorText(final String selectorText) throws DOMException {
      * @return the style
      */
     public CSSStyleDeclarationImpl getStyle() {
+        if (deferredStyle_ != null) {
+            return parseDeferredStyle();
+        }
         return style_;
     }
 
@@ -144,7 +238,138 @@ public CSSStyleDeclarationImpl getStyle() {
      * @param style the new style
      */
     public void setStyle(final CSSStyleDeclarationImpl style) {
+        checkNotFrozen();
+        synchronized (this) {
+            style_ = style;
+            deferredStyle_ = null;
+            setModified(true);
+        }
+    }
+
+    /**
+     * Stores the source of the declarations; they are parsed on the first
+     * call of {@link #getStyle()}. The errors found at that time are reported
+     * to the given error handler and diagnostics sink; exceptions thrown by the
+     * error handler stop the parsing, the style keeps the declarations parsed so far.
+     * @param source the source; the array is not copied and must not be modified
+     * @param start the offset of the first char of the declarations
+     * @param end the offset after the last char of the declarations
+     * @param locator the position of the first char of the declarations
+     * @param errorHandler the error handler or null to use the default one
+     * @param diagnosticsSink the diagnostics sink or null
+     */
+    public void setDeferredStyle(final char[] source, final int start, final int end, final Locator locator,
+            final CSSErrorHandler errorHandler, final CSSDiagnosticsSink diagnosticsSink) {
+        checkNotFrozen();
+        synchronized (this) {
+            deferredStyle_ = new DeferredStyle(source, start, end, locator, errorHandler, diagnosticsSink);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Deferred declarations are unmodified.
+     */
+    @Override
+    public boolean isModified() {
+        if (super.isModified()) {
+            return true;
+        }
+        if (deferredStyle_ != null) {
+            return false;
+        }
+        final CSSStyleDeclarationImpl style = style_;
+        return style != null && style.isModified();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The deferred selectors and declarations are parsed.
+     */
+    @Override
+    void freeze() {
+        getSelectors();
+        final CSSStyleDeclarationImpl style = getStyle();
+        if (style != null) {
+            style.freeze();
+        }
+        super.freeze();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    CSSStyleRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        final CSSStyleRuleImpl copy = new CSSStyleRuleImpl(parentStyleSheet, parentRule, getSelectors());
+        final CSSStyleDeclarationImpl style = getStyle();
+        if (style != null) {
+            copy.style_ = style.copy(copy);
+        }
+        copy.copyState(this);
+        return copy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setModified(final boolean modified) {
+        super.setModified(modified);
+        if (!modified && deferredStyle_ == null) {
+            final CSSStyleDeclarationImpl style = style_;
+            if (style != null) {
+                style.setModified(false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Deferred declarations stay deferred.
+     */
+    @Override
+    public void shiftSourceRange(final int delta) {
+        super.shiftSourceRange(delta);
+        // the range of deferred declarations is read when they are parsed
+        synchronized (this) {
+            if (style_ != null) {
+                style_.shiftSourceRange(delta);
+            }
+        }
+    }
+
+    private synchronized CSSStyleDeclarationImpl parseDeferredStyle() {
+        final DeferredStyle deferred = deferredStyle_;
+        if (deferred == null) {
+            // parsed by another thread in the meantime
+            return style_;
+        }
+
+        final CSSStyleDeclarationImpl style = new CSSStyleDeclarationImpl(this);
+        final Locator locator = deferred.locator_;
+        try (InputSource source = new InputSource(deferred.source_, deferred.start_, deferred.end_,
+                locator.getLineNumber(), locator.getColumnNumber())) {
+            source.setURI(locator.getUri());
+            final CSSOMParser parser = new CSSOMParser();
+            if (deferred.errorHandler_ != null) {
+                parser.setErrorHandler(deferred.errorHandler_);
+            }
+            parser.setDiagnosticsSink(deferred.diagnosticsSink_);
+            if (style_ != null && style_.getSourceStart() > -1) {
+                // the declarations start at the recorded offset
+                style.setSourceRange(style_.getSourceStart(), style_.getSourceEnd());
+                parser.setSourceTracking(true);
+                parser.setSourceOffset(style_.getSourceStart());
+            }
+            parser.parseStyleDeclaration(style, source);
+        }
+        catch (final CSSException | IOException e) {
+            // thrown by the error handler (the source is in memory); same as
+            // for the eager parsing the declarations parsed so far are kept
+        }
+        style.setModified(false);
+
+        // publish the style before the volatile write
         style_ = style;
+        deferredStyle_ = null;
+        return style;
     }
 
     @Override
@@ -168,8 +393,46 @@ public boolean equals(final Object obj) {
     @Override
     public int hashCode() {
         int hash = super.hashCode();
-        hash = ParserUtils.hashCode(hash, selectors_);
-        hash = ParserUtils.hashCode(hash, style_);
+        hash = ParserUtils.hashCode(hash, getSelectors());
+        hash = ParserUtils.hashCode(hash, getStyle());
         return hash;
     }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        // parse the selectors and the declarations; the source is not serialized
+        getSelectors();
+        getStyle();
+        out.defaultWriteObject();
+    }
+
+    private static final class DeferredSelectors {
+        private final char[] source_;
+        private final int start_;
+        private final int end_;
+
+        DeferredSelectors(final char[] source, final int start, final int end) {
+            source_ = source;
+            start_ = start;
+            end_ = end;
+        }
+    }
+
+    private static final class DeferredStyle {
+        private final char[] source_;
+        private final int start_;
+        private final int end_;
+        private final Locator locator_;
+        private final CSSErrorHandler errorHandler_;
+        private final CSSDiagnosticsSink diagnosticsSink_;
+
+        DeferredStyle(final char[] source, final int start, final int end, final Locator locator,
+                final CSSErrorHandler errorHandler, final CSSDiagnosticsSink diagnosticsSink) {
+            source_ = source;
+            start_ = start;
+            end_ = end;
+            locator_ = locator;
+            errorHandler_ = errorHandler;
+            diagnosticsSink_ = diagnosticsSink;
+        }
+    }
 }
@@ -20,18 +20,30 @@
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
 
 import org.htmlunit.cssparser.parser.CSSException;
+import org.htmlunit.cssparser.parser.CSSInstrumentation;
 import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.CSSParserMetrics;
+import org.htmlunit.cssparser.parser.condition.Condition;
+import org.htmlunit.cssparser.parser.condition.Condition.ConditionType;
 import org.htmlunit.cssparser.parser.media.MediaQuery;
 import org.htmlunit.cssparser.parser.media.MediaQueryList;
 import org.htmlunit.cssparser.parser.selector.ElementSelector;
 import org.htmlunit.cssparser.parser.selector.Selector;
+import org.htmlunit.cssparser.parser.selector.SelectorKey;
+import org.htmlunit.cssparser.parser.selector.SelectorList;
+import org.htmlunit.cssparser.parser.selector.SimpleSelector;
 import org.htmlunit.cssparser.util.ParserUtils;
 import org.htmlunit.cssparser.util.ThrowCssExceptionErrorHandler;
 import org.w3c.dom.DOMException;
@@ -53,6 +65,16 @@ public class CSSStyleSheetImpl implements Serializable {
     private CSSRuleListImpl cssRules_;
     private CSSStyleSheetRuleIndex index_;
 
+    /** The source of the sheet; only available if tracked while parsing. */
+    private char[] source_;
+    private int sourceLength_;
+
+    /** written last by {@link #freeze()}; readers checking the flag see the frozen state */
+    private volatile boolean frozen_;
+
+    /** The frozen sheet this copy-on-write view is based on. */
+    private CSSStyleSheetImpl base_;
+
     /**
      * Ctor.
      */
@@ -75,6 +97,7 @@ public boolean getDisabled() {
      * @param disabled the new disabled
      */
     public void setDisabled(final boolean disabled) {
+        checkNotFrozen();
         disabled_ = disabled;
     }
 
@@ -143,6 +166,7 @@ public CSSRuleListImpl getCssRules() {
      * @throws DOMException in case of error
      */
     public void insertRule(final String rule, final int index) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             parser.setParentStyleSheet(this);
@@ -202,6 +226,7 @@ else if (r instanceof CSSImportRuleImpl) {
 
             // Insert the rule into the list of rules
             getCssRules().insert(r, index);
+            updateOverlayRuleIndex(null, Collections.emptySet(), r, index);
 
         }
         catch (final IndexOutOfBoundsException e) {
@@ -225,8 +250,13 @@ else if (r instanceof CSSImportRuleImpl) {
      * @throws DOMException in case of error
      */
     public void deleteRule(final int index) throws DOMException {
+        checkNotFrozen();
         try {
+            final AbstractCSSRuleImpl rule = getCssRules().getRules().get(index);
             getCssRules().delete(index);
+            if (base_ != null) {
+                updateOverlayRuleIndex(rule, styleRules(rule), null, index);
+            }
         }
         catch (final IndexOutOfBoundsException e) {
             throw new DOMExceptionImpl(
@@ -236,11 +266,45 @@ public void deleteRule(final int index) throws DOMException {
         }
     }
 
+    /**
+     * Updates the rule index of a copy-on-write view after a top level rule was replaced,
+     * inserted or deleted. The index shared with the base is not changed; the first change
+     * creates an index for the view that refers to the shared index and holds only the changes.
+     *
+     * @param removed the top level rule removed or replaced; null if a rule was inserted
+     * @param removedStyleRules the style rules of the removed rule before the change
+     * @param added the top level rule added; null if a rule was deleted
+     * @param position the position of the changed rule
+     */
+    private void updateOverlayRuleIndex(final AbstractCSSRuleImpl removed,
+            final Set<AbstractCSSRuleImpl> removedStyleRules, final AbstractCSSRuleImpl added, final int position) {
+        if (base_ == null || index_ == null) {
+            return;
+        }
+        if (index_ == base_.index_) {
+            index_ = CSSStyleSheetRuleIndex.createOverlay(index_, this);
+        }
+        else if (index_.frozen_) {
+            // a frozen index set from outside can not be updated
+            index_ = null;
+            return;
+        }
+        final List<AbstractCSSRuleImpl> rules = getCssRules().getRules();
+        final int next = added == null ? position : position + 1;
+        index_.replaceTopLevelRule(removed, removedStyleRules, added, rules.subList(next, rules.size()));
+    }
+
+    private static Set<AbstractCSSRuleImpl> styleRules(final AbstractCSSRuleImpl rule) {
+        return CSSStyleSheetRuleIndex.collectStyleRules(Collections.singletonList(rule),
+                Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
     /**
      * Set the owner node.
      * @param ownerNode the new node
      */
     public void setOwnerNode(final Node ownerNode) {
+        checkNotFrozen();
         ownerNode_ = ownerNode;
     }
 
@@ -249,6 +313,7 @@ public void setOwnerNode(final Node ownerNode) {
      * @param href the new href
      */
     public void setHref(final String href) {
+        checkNotFrozen();
         href_ = href;
     }
 
@@ -257,6 +322,7 @@ public void setHref(final String href) {
      * @param title the new title
      */
     public void setTitle(final String title) {
+        checkNotFrozen();
         title_ = title;
     }
 
@@ -265,6 +331,7 @@ public void setTitle(final String title) {
      * @param mediaText the new media text
      */
     public void setMediaText(final String mediaText) {
+        checkNotFrozen();
         if (mediaText == null || mediaText.length() == 0) {
             final MediaQueryList sml = new MediaQueryList();
             sml.add(new MediaQuery(null));
@@ -282,12 +349,18 @@ public void setMediaText(final String mediaText) {
         }
     }
 
+    void setMedia(final MediaListImpl media) {
+        checkNotFrozen();
+        media_ = media;
+    }
+
     /**
      * <p>setOwnerRule.</p>
      *
      * @param ownerRule the new ownerRule
      */
     public void setOwnerRule(final AbstractCSSRuleImpl ownerRule) {
+        checkNotFrozen();
         ownerRule_ = ownerRule;
     }
 
@@ -297,6 +370,7 @@ public void setOwnerRule(final AbstractCSSRuleImpl ownerRule) {
      * @param rules the new rules
      */
     public void setCssRules(final CSSRuleListImpl rules) {
+        checkNotFrozen();
         cssRules_ = rules;
     }
 
@@ -361,6 +435,247 @@ private void readObject(final ObjectInputStream in) throws IOException, ClassNot
         title_ = (String) in.readObject();
     }
 
+    /**
+     * @return the source the sheet was parsed from or null if the source
+     *         was not tracked; the array may be longer than the source, do not modify
+     * @see org.htmlunit.cssparser.parser.CSSOMParser#setSourceTracking(boolean)
+     */
+    public char[] getSource() {
+        return source_;
+    }
+
+    /**
+     * @return the length of the source
+     */
+    public int getSourceLength() {
+        return sourceLength_;
+    }
+
+    /**
+     * Sets the source the sheet was parsed from.
+     * @param source the source; the array is not copied
+     * @param length the length of the source
+     */
+    public void setSource(final char[] source, final int length) {
+        checkNotFrozen();
+        source_ = source;
+        sourceLength_ = length;
+    }
+
+    /**
+     * Returns the text of the style sheet like {@link #toString()} does; but
+     * the text of all the rules not modified since parsing is copied from the
+     * tracked source instead of being rebuilt from the object model.
+     * Without a tracked source the result is the same as {@link #toString()}.
+     *
+     * @return the css text
+     * @see org.htmlunit.cssparser.parser.CSSOMParser#setSourceTracking(boolean)
+     */
+    public String getCssText() {
+        final List<AbstractCSSRuleImpl> rules = getCssRules().getRules();
+        final StringBuilder sb = new StringBuilder(source_ == null ? 16 : sourceLength_ + 16);
+        boolean isNotFirst = false;
+        for (final AbstractCSSRuleImpl rule : rules) {
+            if (isNotFirst) {
+                sb.append("\r\n");
+            }
+            else {
+                isNotFirst = true;
+            }
+
+            final int start = rule.getSourceStart();
+            final int end = rule.getSourceEnd();
+            if (source_ != null && start > -1 && start <= end && end <= sourceLength_
+                    && isSourceOf(rule) && !rule.isModified()) {
+                sb.append(source_, start, end - start);
+            }
+            else {
+                sb.append(rule.toString());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param rule the rule
+     * @return true if the source range of the rule refers to the source of this sheet;
+     *         for a copy-on-write view this is also true for the rules shared with the base
+     */
+    private boolean isSourceOf(final AbstractCSSRuleImpl rule) {
+        CSSStyleSheetImpl sheet = this;
+        while (sheet != null && sheet.source_ == source_) {
+            if (rule.getParentStyleSheet() == sheet) {
+                return true;
+            }
+            sheet = sheet.base_;
+        }
+        return false;
+    }
+
+    /**
+     * Makes the style sheet deeply read only; this way one parsed sheet can be
+     * shared by many threads. All deferred selectors and declarations are parsed,
+     * the lookup indexes of the declarations and the rule index (if not already
+     * set) are built and the deferred entries of the rule index are resolved upfront.
+     * Afterwards all the modifying methods of the sheet, the rule lists, rules,
+     * declarations, properties, values and media lists throw a {@link DOMException}
+     * ({@link DOMException#NO_MODIFICATION_ALLOWED_ERR}) and no read access
+     * writes any internal state.
+     *
+     * <p>The selectors, media queries and lexical units are the parser's value
+     * objects; they are not guarded and must not be modified. The sheet has to be
+     * published safely to other threads (e.g. by a final field, a concurrent collection
+     * or after checking {@link #isFrozen()}).</p>
+     */
+    public void freeze() {
+        if (frozen_) {
+            return;
+        }
+
+        getCssRules().freeze();
+        if (media_ != null) {
+            media_.freeze();
+        }
+
+        getOrCreateRuleIndex().freeze();
+
+        frozen_ = true;
+    }
+
+    /**
+     * @return true if the sheet is frozen
+     * @see #freeze()
+     */
+    public boolean isFrozen() {
+        return frozen_;
+    }
+
+    /**
+     * Creates a copy-on-write view of this sheet, e.g. for every page using a style sheet
+     * that is parsed only once. This sheet is frozen first (see {@link #freeze()}).
+     *
+     * <p>The view has its own rule list but shares all the (frozen) rules, the rule index
+     * and the source with this sheet; the memory needed for the view is proportional to
+     * the number of rules, not to the size of the rules. {@link #insertRule(String, int)} and
+     * {@link #deleteRule(int)} work on the own rule list of the view. After the first change
+     * the view gets an own rule index that refers to the shared index and holds only the
+     * changed rules.</p>
+     *
+     * <p>Copy-on-write is not automatic: the shared rules are frozen and changing them
+     * (e.g. {@code getStyle().setProperty(...)}) throws a DOMException. Before changing a
+     * shared rule (or its declarations) call {@link #materializeRule(AbstractCSSRuleImpl)} to
+     * replace the rule by a private mutable copy; only the changed rules are copied this way.</p>
+     *
+     * @return the new view
+     */
+    public CSSStyleSheetImpl createOverlay() {
+        freeze();
+
+        final CSSStyleSheetImpl overlay = new CSSStyleSheetImpl();
+        overlay.base_ = this;
+        overlay.disabled_ = disabled_;
+        overlay.href_ = href_;
+        overlay.title_ = title_;
+        overlay.ownerRule_ = ownerRule_;
+        if (media_ != null) {
+            overlay.media_ = media_.copy();
+        }
+
+        final CSSRuleListImpl rules = new CSSRuleListImpl();
+        rules.getRules().addAll(getCssRules().getRules());
+        overlay.cssRules_ = rules;
+
+        overlay.index_ = index_;
+        overlay.source_ = source_;
+        overlay.sourceLength_ = sourceLength_;
+        return overlay;
+    }
+
+    /**
+     * @return the frozen sheet this sheet is a copy-on-write view of or null
+     * @see #createOverlay()
+     */
+    public CSSStyleSheetImpl getBase() {
+        return base_;
+    }
+
+    /**
+     * Replaces a rule shared with the base of this copy-on-write view by a mutable copy.
+     * If the rule is nested inside a shared media rule, the media rule is copied also
+     * (but not the other rules nested inside). The rule index of the view is updated;
+     * the index shared with the base is not changed.
+     *
+     * @param <T> the type of the rule
+     * @param rule the rule of this sheet to be changed
+     * @return the mutable rule; the given rule itself if it is not shared
+     * @throws DOMException if this sheet is frozen or the rule is not part of this sheet
+     * @see #createOverlay()
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractCSSRuleImpl> T materializeRule(final T rule) throws DOMException {
+        checkNotFrozen();
+        if (!rule.isFrozen()) {
+            return rule;
+        }
+
+        final List<AbstractCSSRuleImpl> rules = getCssRules().getRules();
+        int position = 0;
+        while (position < rules.size() && rules.get(position) != rule
+                && !(rules.get(position) instanceof CSSMediaRuleImpl media && contains(media, rule))) {
+            position++;
+        }
+        if (position == rules.size()) {
+            throw new DOMExceptionImpl(
+                DOMException.NOT_FOUND_ERR,
+                DOMExceptionImpl.NOT_FOUND);
+        }
+
+        final AbstractCSSRuleImpl topLevel = rules.get(position);
+        final Set<AbstractCSSRuleImpl> styleRules = styleRules(topLevel);
+        final AbstractCSSRuleImpl copy = materializeRule(getCssRules(), null, rule);
+        updateOverlayRuleIndex(topLevel, styleRules, rules.get(position), position);
+        return (T) copy;
+    }
+
+    private AbstractCSSRuleImpl materializeRule(final CSSRuleListImpl rules, final AbstractCSSRuleImpl parentRule,
+            final AbstractCSSRuleImpl rule) {
+        final List<AbstractCSSRuleImpl> list = rules.getRules();
+        for (int i = 0; i < list.size(); i++) {
+            final AbstractCSSRuleImpl r = list.get(i);
+            if (r == rule) {
+                final AbstractCSSRuleImpl copy = rule.copy(this, parentRule);
+                list.set(i, copy);
+                return copy;
+            }
+            if (r instanceof CSSMediaRuleImpl media && contains(media, rule)) {
+                CSSMediaRuleImpl mutable = media;
+                if (media.isFrozen()) {
+                    mutable = media.copy(this, parentRule);
+                    list.set(i, mutable);
+                }
+                return materializeRule(mutable.getCssRules(), mutable, rule);
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(final CSSMediaRuleImpl media, final AbstractCSSRuleImpl rule) {
+        for (final AbstractCSSRuleImpl r : media.getCssRules().getRules()) {
+            if (r == rule || r instanceof CSSMediaRuleImpl nested && contains(nested, rule)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkNotFrozen() throws DOMException {
+        if (frozen_) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
+    }
+
     /**
      * <p>getRuleIndex.</p>
      *
@@ -370,11 +685,52 @@ public CSSStyleSheetRuleIndex getRuleIndex() {
         return index_;
     }
 
+    /**
+     * Returns the rule index of this sheet; if there is no index so far
+     * a new index containing all the rules is built.
+     *
+     * @return the CSSStyleSheetRuleIndex
+     */
+    public CSSStyleSheetRuleIndex getOrCreateRuleIndex() {
+        if (index_ != null) {
+            return index_;
+        }
+
+        final CSSRuleListImpl rules = getCssRules();
+        final RuleIndexBuildEvent event = CSSInstrumentation.isFlightRecorderAvailable()
+                ? new RuleIndexBuildEvent() : null;
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        final long start = metrics == null ? 0 : System.nanoTime();
+        if (event != null) {
+            event.begin();
+        }
+
+        final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex();
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            index.addRule(rule);
+        }
+        index_ = index;
+
+        if (event != null) {
+            event.end();
+        }
+        if (event != null && event.shouldCommit()) {
+            event.href = href_;
+            event.rules = rules.getLength();
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.ruleIndexBuilt(rules.getLength(), System.nanoTime() - start);
+        }
+        return index;
+    }
+
     /**
      * Set the CSSStyleSheetRuleIndex.
      * @param index the new index
      */
     public void setRuleIndex(final CSSStyleSheetRuleIndex index) {
+        checkNotFrozen();
         index_ = index;
     }
 
@@ -382,6 +738,7 @@ public void setRuleIndex(final CSSStyleSheetRuleIndex index) {
      * Clean the index.
      */
     public void resetRuleIndex() {
+        checkNotFrozen();
         index_ = null;
     }
 
@@ -389,18 +746,34 @@ public void resetRuleIndex() {
      * SelectorEntry.
      */
     public static final class SelectorEntry {
-        private final Selector selector_;
+        private Selector selector_;
         private final CSSStyleRuleImpl rule_;
+        private final int selectorIndex_;
 
         SelectorEntry(final Selector selector, final CSSStyleRuleImpl rule) {
             selector_ = selector;
             rule_ = rule;
+            selectorIndex_ = -1;
+        }
+
+        SelectorEntry(final CSSStyleRuleImpl rule, final int selectorIndex) {
+            rule_ = rule;
+            selectorIndex_ = selectorIndex;
         }
 
         /**
-         * @return the selector
+         * For rules with deferred selectors the selectors of the rule
+         * are parsed on the first call.
+         *
+         * @return the selector or null if the deferred selectors are invalid
          */
         public Selector getSelector() {
+            if (selector_ == null && selectorIndex_ > -1) {
+                final SelectorList selectors = rule_.getSelectors();
+                if (selectorIndex_ < selectors.size()) {
+                    selector_ = selectors.get(selectorIndex_);
+                }
+            }
             return selector_;
         }
 
@@ -410,6 +783,14 @@ public Selector getSelector() {
         public CSSStyleRuleImpl getRule() {
             return rule_;
         }
+
+        /**
+         * @return the index of the selector in the selector list of the rule
+         *         or -1 if the entry was created for a given selector
+         */
+        int getSelectorIndex() {
+            return selectorIndex_;
+        }
     }
 
     /**
@@ -426,6 +807,17 @@ void add(final String key, final SelectorEntry selector) {
                 entry.add(selector);
             }
 
+            void insert(final String key, final SelectorEntry selector, final Set<AbstractCSSRuleImpl> following) {
+                final List<SelectorEntry> entry = keyToSelectors_.computeIfAbsent(key, k -> new ArrayList<>());
+                CSSStyleSheetRuleIndex.insert(entry, selector, following);
+            }
+
+            void remove(final Set<AbstractCSSRuleImpl> rules) {
+                for (final List<SelectorEntry> entry : keyToSelectors_.values()) {
+                    entry.removeIf(e -> rules.contains(e.getRule()));
+                }
+            }
+
             List<SelectorEntry> get(final String key) {
                 final List<SelectorEntry> entry = keyToSelectors_.get(key);
                 if (entry == null) {
@@ -442,7 +834,56 @@ List<SelectorEntry> get(final String key) {
         private MediaListImpl mediaList_ = DEFAULT_MEDIA_LIST;
         private final SelectorIndex elementSelectors_ = new SelectorIndex();
         private final SelectorIndex classSelectors_ = new SelectorIndex();
+        private final SelectorIndex idSelectors_ = new SelectorIndex();
+        /** the entries of idSelectors_ by element name; used if the id of the element is not known */
+        private final SelectorIndex idSelectorsByElement_ = new SelectorIndex();
         private final List<SelectorEntry> otherSelectors_ = new ArrayList<>();
+        private boolean frozen_;
+
+        /** the shared index of the base if this is the index of a copy-on-write view */
+        private final CSSStyleSheetRuleIndex base_;
+        /** the changes of the copy-on-write view; shared by the index of the view and its children */
+        private final OverlayState overlay_;
+
+        /**
+         * Ctor.
+         */
+        public CSSStyleSheetRuleIndex() {
+            base_ = null;
+            overlay_ = null;
+        }
+
+        private CSSStyleSheetRuleIndex(final CSSStyleSheetRuleIndex base, final OverlayState overlay) {
+            base_ = base;
+            overlay_ = overlay;
+            mediaList_ = base.mediaList_;
+            for (final CSSStyleSheetRuleIndex child : base.children_) {
+                children_.add(new CSSStyleSheetRuleIndex(child, overlay));
+            }
+        }
+
+        /**
+         * Creates the index of a copy-on-write view. The entries of the shared index
+         * are not copied; the new index only holds the entries of the changed rules
+         * and hides the entries of the replaced and deleted rules of the shared index.
+         *
+         * @param base the shared index
+         * @param sheet the view
+         * @return the new index
+         */
+        static CSSStyleSheetRuleIndex createOverlay(final CSSStyleSheetRuleIndex base, final CSSStyleSheetImpl sheet) {
+            final OverlayState overlay = new OverlayState(sheet);
+            final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex(base, overlay);
+            overlay.root_ = index;
+            return index;
+        }
+
+        /**
+         * @return true if this is the index of a copy-on-write view referring to a shared index
+         */
+        boolean isOverlay() {
+            return base_ != null;
+        }
 
         /**
          * Add an ElementSelector.
@@ -453,6 +894,7 @@ List<SelectorEntry> get(final String key) {
          */
         public void addElementSelector(final ElementSelector elementSelector,
                                         final Selector s, final CSSStyleRuleImpl styleRule) {
+            checkNotFrozen();
             final String elementName = elementSelector.getLocalNameLowerCase();
             elementSelectors_.add(elementName, new SelectorEntry(s, styleRule));
         }
@@ -467,6 +909,7 @@ public void addElementSelector(final ElementSelector elementSelector,
          */
         public void addClassSelector(final ElementSelector elementSelector, final String className,
                 final Selector s, final CSSStyleRuleImpl styleRule) {
+            checkNotFrozen();
             final String elementName = elementSelector.getLocalNameLowerCase();
             final String key;
             if (elementName == null) {
@@ -478,6 +921,200 @@ public void addClassSelector(final ElementSelector elementSelector, final String
             classSelectors_.add(key, new SelectorEntry(s, styleRule));
         }
 
+        /**
+         * Adds all selectors of a style rule with deferred selectors
+         * (see {@link CSSStyleRuleImpl#getSelectorKeys()}) using the prefilter keys.
+         * The selectors are parsed only if the entries are requested for a matching element.
+         *
+         * @param styleRule the rule
+         */
+        public void addDeferredStyleRule(final CSSStyleRuleImpl styleRule) {
+            checkNotFrozen();
+            addDeferredStyleRule(styleRule, Collections.emptySet());
+        }
+
+        private void addDeferredStyleRule(final CSSStyleRuleImpl styleRule, final Set<AbstractCSSRuleImpl> following) {
+            final SelectorKey[] keys = styleRule.getSelectorKeys();
+            for (int i = 0; i < keys.length; i++) {
+                final SelectorKey key = keys[i];
+                final SelectorEntry entry = new SelectorEntry(styleRule, i);
+                if (key.getId() != null) {
+                    idSelectors_.insert(key.getId(), entry, following);
+                    idSelectorsByElement_.insert(key.getElementName(), entry, following);
+                }
+                else if (key.getClassName() != null) {
+                    if (key.getElementName() == null) {
+                        classSelectors_.insert("." + key.getClassName(), entry, following);
+                    }
+                    else {
+                        classSelectors_.insert(key.getElementName() + "." + key.getClassName(), entry, following);
+                    }
+                }
+                else {
+                    elementSelectors_.insert(key.getElementName(), entry, following);
+                }
+            }
+        }
+
+        /**
+         * Adds the selectors of the given rule; the selectors of style rules are
+         * filed by their rightmost simple selector, the rules of media rules go
+         * into the index of the media list.
+         *
+         * @param rule the rule
+         */
+        public void addRule(final AbstractCSSRuleImpl rule) {
+            checkNotFrozen();
+            addRule(rule, Collections.emptySet());
+        }
+
+        /**
+         * Updates the index after some top level rules of the style sheet were replaced.
+         * The entries of the removed rules are removed, the entries of the added rules
+         * are placed before the entries of the following rules; this way
+         * the order of the entries still is the source order.
+         *
+         * @param removed the removed top level rules
+         * @param added the new top level rules
+         * @param following the top level rules following the new ones
+         */
+        public void replaceRules(final List<AbstractCSSRuleImpl> removed, final List<AbstractCSSRuleImpl> added,
+                final List<AbstractCSSRuleImpl> following) {
+            checkNotFrozen();
+            replaceRules(collectStyleRules(removed, Collections.newSetFromMap(new IdentityHashMap<>())),
+                    added, following);
+        }
+
+        /**
+         * Updates the index after a top level rule was replaced (e.g. by a mutable copy),
+         * inserted or deleted.
+         *
+         * @param removed the replaced or deleted top level rule or null
+         * @param removedStyleRules the style rules of the removed rule before the change
+         * @param added the new top level rule or null
+         * @param following the top level rules following the new one
+         */
+        void replaceTopLevelRule(final AbstractCSSRuleImpl removed, final Set<AbstractCSSRuleImpl> removedStyleRules,
+                final AbstractCSSRuleImpl added, final List<AbstractCSSRuleImpl> following) {
+            checkNotFrozen();
+            if (overlay_ != null && removed != null && added != null && removed != added) {
+                // the shared rules nested inside a copied media rule still refer to the original
+                overlay_.replaced_.replaceAll((original, copy) -> copy == removed ? added : copy);
+                overlay_.replaced_.put(removed, added);
+            }
+            replaceRules(removedStyleRules,
+                    added == null ? Collections.emptyList() : Collections.singletonList(added), following);
+        }
+
+        private void replaceRules(final Set<AbstractCSSRuleImpl> removedStyleRules,
+                final List<AbstractCSSRuleImpl> added, final List<AbstractCSSRuleImpl> following) {
+            if (!removedStyleRules.isEmpty()) {
+                remove(removedStyleRules);
+                if (overlay_ != null) {
+                    overlay_.hidden_.addAll(removedStyleRules);
+                }
+            }
+            if (!added.isEmpty()) {
+                final Set<AbstractCSSRuleImpl> followingSet = Collections.newSetFromMap(new IdentityHashMap<>());
+                if (overlay_ == null) {
+                    followingSet.addAll(following);
+                }
+                for (final AbstractCSSRuleImpl rule : added) {
+                    addRule(rule, followingSet);
+                }
+            }
+            if (overlay_ != null) {
+                // the own entries are sorted before the next lookup
+                overlay_.positions_ = null;
+            }
+        }
+
+        private void addRule(final AbstractCSSRuleImpl rule, final Set<AbstractCSSRuleImpl> following) {
+            if (rule instanceof CSSStyleRuleImpl styleRule) {
+                if (styleRule.getSelectorKeys() != null) {
+                    addDeferredStyleRule(styleRule, following);
+                    return;
+                }
+
+                for (final Selector s : styleRule.getSelectors()) {
+                    final SimpleSelector sel = s.getSimpleSelector();
+                    if (sel instanceof ElementSelector es) {
+                        final String elementName = es.getLocalNameLowerCase();
+                        final List<Condition> conditions = es.getConditions();
+                        if (conditions != null && conditions.size() == 1
+                                && conditions.get(0).getConditionType() == ConditionType.CLASS_CONDITION) {
+                            final String className = conditions.get(0).getValue();
+                            if (elementName == null) {
+                                classSelectors_.insert("." + className, new SelectorEntry(s, styleRule), following);
+                            }
+                            else {
+                                classSelectors_.insert(elementName + "." + className,
+                                        new SelectorEntry(s, styleRule), following);
+                            }
+                        }
+                        else {
+                            elementSelectors_.insert(elementName, new SelectorEntry(s, styleRule), following);
+                        }
+                    }
+                    else {
+                        insert(otherSelectors_, new SelectorEntry(s, styleRule), following);
+                    }
+                }
+            }
+            else if (rule instanceof CSSMediaRuleImpl mediaRule) {
+                final MediaListImpl mediaList = mediaRule.getMediaList();
+                CSSStyleSheetRuleIndex index = this;
+                if (mediaList.getLength() != 0 || mediaList_.getLength() != 0) {
+                    index = addMedia(mediaList);
+                }
+                for (final AbstractCSSRuleImpl child : mediaRule.getCssRules().getRules()) {
+                    index.addRule(child, following);
+                }
+            }
+        }
+
+        private void remove(final Set<AbstractCSSRuleImpl> styleRules) {
+            elementSelectors_.remove(styleRules);
+            classSelectors_.remove(styleRules);
+            idSelectors_.remove(styleRules);
+            idSelectorsByElement_.remove(styleRules);
+            otherSelectors_.removeIf(e -> styleRules.contains(e.getRule()));
+            for (final CSSStyleSheetRuleIndex child : children_) {
+                child.remove(styleRules);
+            }
+        }
+
+        static Set<AbstractCSSRuleImpl> collectStyleRules(final List<AbstractCSSRuleImpl> rules,
+                final Set<AbstractCSSRuleImpl> styleRules) {
+            for (final AbstractCSSRuleImpl rule : rules) {
+                if (rule instanceof CSSStyleRuleImpl) {
+                    styleRules.add(rule);
+                }
+                else if (rule instanceof CSSMediaRuleImpl mediaRule) {
+                    collectStyleRules(mediaRule.getCssRules().getRules(), styleRules);
+                }
+            }
+            return styleRules;
+        }
+
+        // inserts the entry before the first entry belonging to one of the following top level rules
+        private static void insert(final List<SelectorEntry> entries, final SelectorEntry entry,
+                final Set<AbstractCSSRuleImpl> following) {
+            if (!following.isEmpty()) {
+                for (int i = 0; i < entries.size(); i++) {
+                    AbstractCSSRuleImpl topLevel = entries.get(i).getRule();
+                    while (topLevel.getParentRule() != null) {
+                        topLevel = topLevel.getParentRule();
+                    }
+                    if (following.contains(topLevel)) {
+                        entries.add(i, entry);
+                        return;
+                    }
+                }
+            }
+            entries.add(entry);
+        }
+
         /**
          * Add a OtherSelector.
          *
@@ -485,6 +1122,7 @@ public void addClassSelector(final ElementSelector elementSelector, final String
          * @param styleRule the rule
          */
         public void addOtherSelector(final Selector s, final CSSStyleRuleImpl styleRule) {
+            checkNotFrozen();
             final SelectorEntry selectorEntry = new SelectorEntry(s, styleRule);
             otherSelectors_.add(selectorEntry);
         }
@@ -495,6 +1133,7 @@ public void addOtherSelector(final Selector s, final CSSStyleRuleImpl styleRule)
          * @return the CSSStyleSheetRuleIndex
          */
         public CSSStyleSheetRuleIndex addMedia(final MediaListImpl mediaList) {
+            checkNotFrozen();
             final String media = mediaList.getMediaText();
             for (final CSSStyleSheetRuleIndex cssStyleSheetRuleIndex : children_) {
                 if (media.equals(cssStyleSheetRuleIndex.getMediaList().getMediaText())) {
@@ -509,6 +1148,77 @@ public CSSStyleSheetRuleIndex addMedia(final MediaListImpl mediaList) {
             return index;
         }
 
+        /**
+         * Resolves the selectors of all deferred entries and makes the index read only.
+         */
+        void freeze() {
+            if (overlay_ != null && overlay_.root_ == this) {
+                overlay_.prepare();
+            }
+            for (final List<SelectorEntry> entries : elementSelectors_.keyToSelectors_.values()) {
+                resolve(entries);
+            }
+            for (final List<SelectorEntry> entries : classSelectors_.keyToSelectors_.values()) {
+                resolve(entries);
+            }
+            for (final List<SelectorEntry> entries : idSelectors_.keyToSelectors_.values()) {
+                resolve(entries);
+            }
+            resolve(otherSelectors_);
+            for (final CSSStyleSheetRuleIndex child : children_) {
+                child.freeze();
+            }
+            frozen_ = true;
+        }
+
+        private static void resolve(final List<SelectorEntry> entries) {
+            for (final SelectorEntry entry : entries) {
+                entry.getSelector();
+            }
+        }
+
+        private void checkNotFrozen() throws DOMException {
+            if (frozen_) {
+                throw new DOMExceptionImpl(
+                    DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                    DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+            }
+        }
+
+        Map<String, List<SelectorEntry>> getElementSelectors() {
+            return elementSelectors_.keyToSelectors_;
+        }
+
+        Map<String, List<SelectorEntry>> getClassSelectors() {
+            return classSelectors_.keyToSelectors_;
+        }
+
+        Map<String, List<SelectorEntry>> getIdSelectors() {
+            return idSelectors_.keyToSelectors_;
+        }
+
+        /**
+         * Rebuilds the entries of the id selectors by element name
+         * after {@link #getIdSelectors()} was filled directly.
+         */
+        void idSelectorsChanged() {
+            idSelectorsByElement_.keyToSelectors_.clear();
+            for (final List<SelectorEntry> entries : idSelectors_.keyToSelectors_.values()) {
+                for (final SelectorEntry entry : entries) {
+                    String elementName = null;
+                    final Selector selector = entry.getSelector();
+                    if (selector != null && selector.getSimpleSelector() instanceof ElementSelector es) {
+                        elementName = es.getLocalNameLowerCase();
+                    }
+                    idSelectorsByElement_.add(elementName, entry);
+                }
+            }
+        }
+
+        List<SelectorEntry> getOtherSelectors() {
+            return otherSelectors_;
+        }
+
         /**
          * @return return the medial list
          */
@@ -529,78 +1239,230 @@ public List<CSSStyleSheetRuleIndex> getChildren() {
          * @return Iterator of SelectorEntry
          */
         public Iterator<SelectorEntry> getSelectorEntriesIteratorFor(final String elementName, final String[] classes) {
-            return new SelectorEntriesIterator(this, elementName, classes);
+            if (overlay_ != null) {
+                overlay_.prepare();
+            }
+            return new SelectorEntriesIterator(this, elementName, null, true, classes);
+        }
+
+        /**
+         * @param elementName the element
+         * @param id the id of the element or null
+         * @param classes the classes
+         * @return Iterator of SelectorEntry
+         */
+        public Iterator<SelectorEntry> getSelectorEntriesIteratorFor(final String elementName, final String id,
+                final String[] classes) {
+            if (overlay_ != null) {
+                overlay_.prepare();
+            }
+            return new SelectorEntriesIterator(this, elementName, id, false, classes);
+        }
+
+        /**
+         * Adds the iterator over the entries of one bucket; for the index of a copy-on-write view
+         * the entries of the shared index (without the hidden ones) and the own entries are merged
+         * in the order of the rules of the view.
+         */
+        private void addEntries(final List<Iterator<SelectorEntry>> iterators,
+                final Function<CSSStyleSheetRuleIndex, List<SelectorEntry>> bucket) {
+            final List<SelectorEntry> own = bucket.apply(this);
+            final List<SelectorEntry> shared = base_ == null ? Collections.emptyList() : bucket.apply(base_);
+            if (!shared.isEmpty()) {
+                iterators.add(new OverlayIterator(overlay_, shared.iterator(), own.iterator()));
+            }
+            else if (!own.isEmpty()) {
+                iterators.add(own.iterator());
+            }
+        }
+
+        private void sortOwnEntries(final Comparator<SelectorEntry> order) {
+            for (final List<SelectorEntry> entries : elementSelectors_.keyToSelectors_.values()) {
+                entries.sort(order);
+            }
+            for (final List<SelectorEntry> entries : classSelectors_.keyToSelectors_.values()) {
+                entries.sort(order);
+            }
+            for (final List<SelectorEntry> entries : idSelectors_.keyToSelectors_.values()) {
+                entries.sort(order);
+            }
+            for (final List<SelectorEntry> entries : idSelectorsByElement_.keyToSelectors_.values()) {
+                entries.sort(order);
+            }
+            otherSelectors_.sort(order);
+            for (final CSSStyleSheetRuleIndex child : children_) {
+                child.sortOwnEntries(order);
+            }
+        }
+    }
+
+    /**
+     * The changes of a copy-on-write view relative to the shared rule index of its base.
+     */
+    private static final class OverlayState {
+        private final CSSStyleSheetImpl sheet_;
+        private CSSStyleSheetRuleIndex root_;
+        /** the style rules whose entries of the shared index are hidden */
+        private final Set<AbstractCSSRuleImpl> hidden_ = Collections.newSetFromMap(new IdentityHashMap<>());
+        /** the replaced top level rules of the base and their copies */
+        private final Map<AbstractCSSRuleImpl, AbstractCSSRuleImpl> replaced_ = new IdentityHashMap<>();
+        /** the positions of the top level rules of the view; null after a change */
+        private Map<AbstractCSSRuleImpl, Integer> positions_;
+
+        OverlayState(final CSSStyleSheetImpl sheet) {
+            sheet_ = sheet;
+        }
+
+        /**
+         * Computes the positions of the rules after a change and brings the own entries into this order.
+         */
+        void prepare() {
+            if (positions_ != null) {
+                return;
+            }
+            final List<AbstractCSSRuleImpl> rules = sheet_.getCssRules().getRules();
+            final Map<AbstractCSSRuleImpl, Integer> positions = new IdentityHashMap<>(rules.size());
+            for (int i = 0; i < rules.size(); i++) {
+                positions.put(rules.get(i), i);
+            }
+            positions_ = positions;
+            root_.sortOwnEntries(Comparator.comparingInt(this::position));
+        }
+
+        int position(final SelectorEntry entry) {
+            AbstractCSSRuleImpl topLevel = entry.getRule();
+            while (topLevel.getParentRule() != null) {
+                topLevel = topLevel.getParentRule();
+            }
+            final AbstractCSSRuleImpl copy = replaced_.get(topLevel);
+            final Integer position = positions_.get(copy == null ? topLevel : copy);
+            return position == null ? Integer.MAX_VALUE : position;
+        }
+    }
+
+    /**
+     * Merges the visible entries of the shared index with the own entries of a copy-on-write view.
+     */
+    private static final class OverlayIterator implements Iterator<SelectorEntry> {
+        private final OverlayState overlay_;
+        private final Iterator<SelectorEntry> shared_;
+        private final Iterator<SelectorEntry> own_;
+        private SelectorEntry nextShared_;
+        private SelectorEntry nextOwn_;
+
+        OverlayIterator(final OverlayState overlay, final Iterator<SelectorEntry> shared,
+                final Iterator<SelectorEntry> own) {
+            overlay_ = overlay;
+            shared_ = shared;
+            own_ = own;
+            nextShared_ = nextShared();
+            nextOwn_ = own_.hasNext() ? own_.next() : null;
+        }
+
+        private SelectorEntry nextShared() {
+            while (shared_.hasNext()) {
+                final SelectorEntry entry = shared_.next();
+                if (!overlay_.hidden_.contains(entry.getRule())) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextShared_ != null || nextOwn_ != null;
+        }
+
+        @Override
+        public SelectorEntry next() {
+            final SelectorEntry next;
+            if (nextOwn_ == null
+                    || nextShared_ != null && overlay_.position(nextShared_) <= overlay_.position(nextOwn_)) {
+                if (nextShared_ == null) {
+                    throw new NoSuchElementException();
+                }
+                next = nextShared_;
+                nextShared_ = nextShared();
+            }
+            else {
+                next = nextOwn_;
+                nextOwn_ = own_.hasNext() ? own_.next() : null;
+            }
+            return next;
         }
     }
 
     static final class SelectorEntriesIterator implements Iterator<SelectorEntry> {
         private final LinkedList<Iterator<SelectorEntry>> iterators_;
+        private SelectorEntry next_;
 
         SelectorEntriesIterator(final CSSStyleSheetRuleIndex index,
                 final String elementName,
+                final String id,
+                final boolean allIds,
                 final String[] classes) {
 
             iterators_ = new LinkedList<>();
 
-            List<SelectorEntry> selectors = index.elementSelectors_.get(null);
-            if (!selectors.isEmpty()) {
-                iterators_.add(selectors.iterator());
+            if (allIds) {
+                // the id is unknown, the entries are filtered by the element name only
+                index.addEntries(iterators_, i -> i.idSelectorsByElement_.get(null));
+                if (elementName != null) {
+                    index.addEntries(iterators_, i -> i.idSelectorsByElement_.get(elementName));
+                }
             }
-
-            selectors = index.elementSelectors_.get(elementName);
-            if (!selectors.isEmpty()) {
-                iterators_.add(selectors.iterator());
+            else if (id != null) {
+                index.addEntries(iterators_, i -> i.idSelectors_.get(id));
             }
 
+            index.addEntries(iterators_, i -> i.elementSelectors_.get(null));
+            index.addEntries(iterators_, i -> i.elementSelectors_.get(elementName));
+
             if (classes != null) {
                 for (final String clazz : classes) {
-                    selectors = index.classSelectors_.get("." + clazz);
-                    if (selectors != null && !selectors.isEmpty()) {
-                        iterators_.add(selectors.iterator());
-                    }
+                    index.addEntries(iterators_, i -> i.classSelectors_.get("." + clazz));
 
                     if (elementName != null) {
-                        selectors = index.classSelectors_.get(elementName + "." + clazz);
-                        if (selectors != null && !selectors.isEmpty()) {
-                            iterators_.add(selectors.iterator());
-                        }
+                        index.addEntries(iterators_, i -> i.classSelectors_.get(elementName + "." + clazz));
                     }
                 }
             }
 
-            if (index.otherSelectors_ != null && !index.otherSelectors_.isEmpty()) {
-                iterators_.add(index.otherSelectors_.iterator());
-            }
+            index.addEntries(iterators_, i -> i.otherSelectors_);
         }
 
         @Override
         public SelectorEntry next() {
-            if (iterators_.isEmpty()) {
+            if (!hasNext()) {
                 return null;
             }
 
-            final Iterator<SelectorEntry> iter = iterators_.peek();
-            if (iter.hasNext()) {
-                return iter.next();
-            }
-
-            iterators_.removeFirst();
-            return next();
+            final SelectorEntry next = next_;
+            next_ = null;
+            return next;
         }
 
         @Override
         public boolean hasNext() {
-            if (iterators_.isEmpty()) {
-                return false;
-            }
+            while (next_ == null) {
+                if (iterators_.isEmpty()) {
+                    return false;
+                }
 
-            final Iterator<SelectorEntry> iter = iterators_.peek();
-            if (iter.hasNext()) {
-                return true;
+                final Iterator<SelectorEntry> iter = iterators_.peek();
+                if (iter.hasNext()) {
+                    final SelectorEntry entry = iter.next();
+                    // skip invalid deferred selectors
+                    if (entry.getSelector() != null) {
+                        next_ = entry;
+                    }
+                }
+                else {
+                    iterators_.removeFirst();
+                }
             }
-
-            iterators_.pop();
-            return hasNext();
+            return true;
         }
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Loads the text of style sheets for the {@link CSSImportResolver}; implementations
+ * may read from the file system, from memory or use the http client of the caller.
+ * The loader is called concurrently from the threads of the executor used by the
+ * resolver and has to be thread safe.
+ *
+ * @author Ronald Brill
+ */
+@FunctionalInterface
+public interface CSSStyleSheetLoader {
+
+    /**
+     * Loads the style sheet.
+     *
+     * @param uri the uri of the style sheet; already resolved against the uri of the importing sheet
+     * @return the text of the style sheet
+     * @throws IOException if the style sheet is not available
+     */
+    String load(String uri) throws IOException;
+
+    /**
+     * Creates a loader reading the (UTF-8 encoded) files from a local directory; the
+     * uris are interpreted as paths relative to the directory, query and fragment are ignored.
+     * Files outside of the directory are not accessible.
+     *
+     * @param directory the directory
+     * @return the new loader
+     */
+    static CSSStyleSheetLoader forDirectory(final Path directory) {
+        final Path root = directory.toAbsolutePath().normalize();
+        return uri -> {
+            String name = uri;
+            int end = name.indexOf('?');
+            if (end < 0) {
+                end = name.indexOf('#');
+            }
+            if (end > -1) {
+                name = name.substring(0, end);
+            }
+            while (name.startsWith("/")) {
+                name = name.substring(1);
+            }
+
+            final Path path = root.resolve(name).normalize();
+            if (!path.startsWith(root)) {
+                throw new IOException("The style sheet '" + uri + "' is outside of '" + root + "'.");
+            }
+            return Files.readString(path, StandardCharsets.UTF_8);
+        };
+    }
+
+    /**
+     * Creates a loader returning the style sheets from the given map.
+     *
+     * @param styleSheets the text of the style sheets by uri; the map is not copied
+     * @return the new loader
+     */
+    static CSSStyleSheetLoader forMap(final Map<String, String> styleSheets) {
+        return uri -> {
+            final String text = styleSheets.get(uri);
+            if (text == null) {
+                throw new IOException("No style sheet found for '" + uri + "'.");
+            }
+            return text;
+        };
+    }
+}
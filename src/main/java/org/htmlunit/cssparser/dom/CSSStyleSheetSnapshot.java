@@ -0,0 +1,1076 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.SelectorEntry;
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.LexicalUnit;
+import org.htmlunit.cssparser.parser.LexicalUnit.LexicalUnitType;
+import org.htmlunit.cssparser.parser.LexicalUnitImpl;
+import org.htmlunit.cssparser.parser.Locator;
+import org.htmlunit.cssparser.parser.condition.AttributeCondition;
+import org.htmlunit.cssparser.parser.condition.BeginHyphenAttributeCondition;
+import org.htmlunit.cssparser.parser.condition.ClassCondition;
+import org.htmlunit.cssparser.parser.condition.Condition;
+import org.htmlunit.cssparser.parser.condition.Condition.ConditionType;
+import org.htmlunit.cssparser.parser.condition.HasPseudoClassCondition;
+import org.htmlunit.cssparser.parser.condition.IdCondition;
+import org.htmlunit.cssparser.parser.condition.IsPseudoClassCondition;
+import org.htmlunit.cssparser.parser.condition.LangCondition;
+import org.htmlunit.cssparser.parser.condition.NotPseudoClassCondition;
+import org.htmlunit.cssparser.parser.condition.OneOfAttributeCondition;
+import org.htmlunit.cssparser.parser.condition.PrefixAttributeCondition;
+import org.htmlunit.cssparser.parser.condition.PseudoClassCondition;
+import org.htmlunit.cssparser.parser.condition.SubstringAttributeCondition;
+import org.htmlunit.cssparser.parser.condition.SuffixAttributeCondition;
+import org.htmlunit.cssparser.parser.condition.WherePseudoClassCondition;
+import org.htmlunit.cssparser.parser.media.MediaQuery;
+import org.htmlunit.cssparser.parser.media.MediaQueryList;
+import org.htmlunit.cssparser.parser.selector.ChildSelector;
+import org.htmlunit.cssparser.parser.selector.Combinator;
+import org.htmlunit.cssparser.parser.selector.DescendantSelector;
+import org.htmlunit.cssparser.parser.selector.DirectAdjacentSelector;
+import org.htmlunit.cssparser.parser.selector.ElementSelector;
+import org.htmlunit.cssparser.parser.selector.GeneralAdjacentSelector;
+import org.htmlunit.cssparser.parser.selector.PseudoElementSelector;
+import org.htmlunit.cssparser.parser.selector.RelativeSelector;
+import org.htmlunit.cssparser.parser.selector.Selector;
+import org.htmlunit.cssparser.parser.selector.Selector.SelectorType;
+import org.htmlunit.cssparser.parser.selector.SelectorList;
+import org.htmlunit.cssparser.parser.selector.SelectorListImpl;
+import org.htmlunit.cssparser.parser.selector.SimpleSelector;
+
+/**
+ * Compact binary encoding of a {@link CSSStyleSheetImpl}; made to store parsed
+ * style sheets in a cache and to rebuild the object model without parsing.
+ *
+ * <p>The snapshot starts with a magic number and the format version; snapshots
+ * of a different version are rejected. All numbers are written as variable length
+ * integers and every string is written only once, later occurrences refer
+ * to the first one.</p>
+ *
+ * <p>The snapshot contains the rules with their selectors, media queries,
+ * declarations and values and optionally the rule index. Deferred selectors and
+ * declarations are parsed while writing. The locators of the rules and
+ * properties are kept; the tracked source, the source ranges and the owner
+ * node are not part of the snapshot.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class CSSStyleSheetSnapshot {
+
+    /** The current format version. */
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'H', 'U', 'C', 'S'};
+
+    private static final int RULE_STYLE = 1;
+    private static final int RULE_MEDIA = 2;
+    private static final int RULE_PAGE = 3;
+    private static final int RULE_FONT_FACE = 4;
+    private static final int RULE_IMPORT = 5;
+    private static final int RULE_CHARSET = 6;
+    private static final int RULE_UNKNOWN = 7;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_LEXICAL_UNITS = 1;
+    private static final int VALUE_TEXT = 2;
+
+    private static final int UNIT_INTEGRAL = 1;
+    private static final int UNIT_DOUBLE = 2;
+    private static final int UNIT_DIMENSION = 4;
+    private static final int UNIT_FUNCTION = 8;
+    private static final int UNIT_STRING = 16;
+    private static final int UNIT_PARAMETERS = 32;
+
+    private CSSStyleSheetSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of the given style sheet.
+     *
+     * @param sheet the style sheet
+     * @param out the stream to write to; the stream is not closed
+     * @param includeRuleIndex whether to include the rule index of the sheet (if any)
+     * @throws IOException in case of error
+     */
+    public static void write(final CSSStyleSheetImpl sheet, final OutputStream out,
+            final boolean includeRuleIndex) throws IOException {
+        final Writer writer = new Writer();
+        writer.writeSheet(sheet, includeRuleIndex);
+        out.write(writer.buffer_, 0, writer.length_);
+    }
+
+    /**
+     * @param sheet the style sheet
+     * @param includeRuleIndex whether to include the rule index of the sheet (if any)
+     * @return the snapshot of the given style sheet
+     * @throws IOException in case of error
+     */
+    public static byte[] toByteArray(final CSSStyleSheetImpl sheet, final boolean includeRuleIndex)
+            throws IOException {
+        final Writer writer = new Writer();
+        writer.writeSheet(sheet, includeRuleIndex);
+        return Arrays.copyOf(writer.buffer_, writer.length_);
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(CSSStyleSheetImpl, OutputStream, boolean)}.
+     *
+     * @param in the stream to read from; the stream is read to the end but not closed
+     * @return the new style sheet
+     * @throws IOException if the snapshot is invalid or was written by another format version
+     */
+    public static CSSStyleSheetImpl read(final InputStream in) throws IOException {
+        return read(in.readAllBytes());
+    }
+
+    /**
+     * Reads a snapshot written by {@link #toByteArray(CSSStyleSheetImpl, boolean)}.
+     *
+     * @param snapshot the snapshot
+     * @return the new style sheet
+     * @throws IOException if the snapshot is invalid or was written by another format version
+     */
+    public static CSSStyleSheetImpl read(final byte[] snapshot) throws IOException {
+        try {
+            return new Reader(snapshot).readSheet();
+        }
+        catch (final IndexOutOfBoundsException | IllegalArgumentException | ClassCastException e) {
+            throw new IOException("Invalid style sheet snapshot.", e);
+        }
+    }
+
+    /**
+     * Returns the head of the lexical unit chain the value was created from
+     * or null if the value does not keep the lexical units.
+     */
+    private static LexicalUnit toLexicalUnit(final CSSValueImpl value) {
+        final Object val = value.getValue();
+        if (val instanceof LexicalUnit lu) {
+            return lu;
+        }
+
+        if (val instanceof List<?> list) {
+            // the items still are linked to their neighbours
+            for (final Object item : list) {
+                if (((CSSValueImpl) item).getValue() instanceof LexicalUnit lu) {
+                    LexicalUnit head = lu;
+                    while (head.getPreviousLexicalUnit() != null) {
+                        head = head.getPreviousLexicalUnit();
+                    }
+                    return head;
+                }
+            }
+            return null;
+        }
+
+        if (val instanceof AbstractColor color) {
+            final LexicalUnit parameters = toLexicalUnit(color.getCssValue());
+            if (parameters == null) {
+                return null;
+            }
+
+            final LexicalUnitType type;
+            if (color instanceof HSLColorImpl) {
+                type = LexicalUnitType.HSLCOLOR;
+            }
+            else if (color instanceof HWBColorImpl) {
+                type = LexicalUnitType.HWBCOLOR;
+            }
+            else if (color instanceof LABColorImpl) {
+                type = LexicalUnitType.LABCOLOR;
+            }
+            else if (color instanceof LCHColorImpl) {
+                type = LexicalUnitType.LCHCOLOR;
+            }
+            else {
+                type = LexicalUnitType.RGBCOLOR;
+            }
+
+            final LexicalUnitImpl lu = new LexicalUnitImpl(null, type);
+            lu.setFunctionName(color.getFunction());
+            lu.setParameters(parameters);
+            return lu;
+        }
+
+        return null;
+    }
+
+    private static final class Writer {
+        private byte[] buffer_ = new byte[4096];
+        private int length_;
+        private final Map<String, Integer> strings_ = new HashMap<>();
+        private final Map<CSSStyleRuleImpl, Integer> styleRules_ = new IdentityHashMap<>();
+
+        void writeSheet(final CSSStyleSheetImpl sheet, final boolean includeRuleIndex) throws IOException {
+            ensure(MAGIC.length);
+            System.arraycopy(MAGIC, 0, buffer_, length_, MAGIC.length);
+            length_ += MAGIC.length;
+            writeInt(VERSION);
+
+            writeString(sheet.getHref());
+            writeString(sheet.getTitle());
+            writeBoolean(sheet.getDisabled());
+            writeMediaList(sheet.getMedia());
+            writeRules(sheet.getCssRules().getRules());
+
+            final CSSStyleSheetRuleIndex index = sheet.getRuleIndex();
+            // the index of a copy-on-write view only holds the changes; it is rebuilt after reading
+            if (includeRuleIndex && index != null && !index.isOverlay()) {
+                writeBoolean(true);
+                writeIndex(index);
+            }
+            else {
+                writeBoolean(false);
+            }
+        }
+
+        private void writeRules(final List<AbstractCSSRuleImpl> rules) throws IOException {
+            writeInt(rules.size());
+            for (final AbstractCSSRuleImpl rule : rules) {
+                writeRule(rule);
+            }
+        }
+
+        private void writeRule(final AbstractCSSRuleImpl rule) throws IOException {
+            if (rule instanceof CSSStyleRuleImpl styleRule) {
+                writeInt(RULE_STYLE);
+                writeLocator(rule.getLocator());
+                styleRules_.put(styleRule, styleRules_.size());
+                writeSelectorList(styleRule.getSelectors());
+                writeStyle(styleRule.getStyle());
+            }
+            else if (rule instanceof CSSMediaRuleImpl mediaRule) {
+                writeInt(RULE_MEDIA);
+                writeLocator(rule.getLocator());
+                writeMediaList(mediaRule.getMediaList());
+                writeRules(mediaRule.getCssRules().getRules());
+            }
+            else if (rule instanceof CSSPageRuleImpl pageRule) {
+                writeInt(RULE_PAGE);
+                writeLocator(rule.getLocator());
+                writeString(pageRule.getSelectorText());
+                writeStyle(pageRule.getStyle());
+            }
+            else if (rule instanceof CSSFontFaceRuleImpl fontFaceRule) {
+                writeInt(RULE_FONT_FACE);
+                writeLocator(rule.getLocator());
+                writeStyle(fontFaceRule.getStyle());
+            }
+            else if (rule instanceof CSSImportRuleImpl importRule) {
+                writeInt(RULE_IMPORT);
+                writeLocator(rule.getLocator());
+                writeString(importRule.getHref());
+                writeMediaList(importRule.getMedia());
+            }
+            else if (rule instanceof CSSCharsetRuleImpl charsetRule) {
+                writeInt(RULE_CHARSET);
+                writeLocator(rule.getLocator());
+                writeString(charsetRule.getEncoding());
+            }
+            else if (rule instanceof CSSUnknownRuleImpl) {
+                writeInt(RULE_UNKNOWN);
+                writeLocator(rule.getLocator());
+                writeString(rule.getCssText());
+            }
+            else {
+                throw new IOException("Unsupported rule type '" + rule.getClass().getName() + "'.");
+            }
+        }
+
+        private void writeStyle(final CSSStyleDeclarationImpl style) throws IOException {
+            if (style == null) {
+                writeBoolean(false);
+                return;
+            }
+
+            writeBoolean(true);
+            final List<Property> properties = style.getProperties();
+            writeInt(properties.size());
+            for (final Property property : properties) {
+                writeProperty(property);
+            }
+        }
+
+        private void writeProperty(final Property property) throws IOException {
+            writeString(property.getName());
+            writeBoolean(property.isImportant());
+            writeLocator(property.getLocator());
+            writeValue(property.getValue());
+        }
+
+        private void writeMediaList(final MediaListImpl media) throws IOException {
+            if (media == null) {
+                writeInt(0);
+                return;
+            }
+
+            writeInt(media.getLength() + 1);
+            for (int i = 0; i < media.getLength(); i++) {
+                final MediaQuery query = media.mediaQuery(i);
+                writeString(query.isImplicitAll() ? null : query.getMedia());
+                writeBoolean(query.isOnly());
+                writeBoolean(query.isNot());
+                final List<Property> properties = query.getProperties();
+                writeInt(properties.size());
+                for (final Property property : properties) {
+                    writeProperty(property);
+                }
+            }
+        }
+
+        private void writeSelectorList(final SelectorList selectors) throws IOException {
+            writeInt(selectors.size());
+            for (final Selector selector : selectors) {
+                writeSelector(selector);
+            }
+        }
+
+        private void writeSelector(final Selector selector) throws IOException {
+            final SelectorType type = selector.getSelectorType();
+            writeString(type.name());
+            switch (type) {
+                case ELEMENT_NODE_SELECTOR:
+                    final ElementSelector elementSelector = (ElementSelector) selector;
+                    writeString(elementSelector.getLocalName());
+                    final List<Condition> conditions = elementSelector.getConditions();
+                    if (conditions == null) {
+                        writeInt(0);
+                    }
+                    else {
+                        writeInt(conditions.size());
+                        for (final Condition condition : conditions) {
+                            writeCondition(condition);
+                        }
+                    }
+                    break;
+
+                case PSEUDO_ELEMENT_SELECTOR:
+                    final PseudoElementSelector pseudoElementSelector = (PseudoElementSelector) selector;
+                    writeString(pseudoElementSelector.getLocalName());
+                    writeBoolean(pseudoElementSelector.isDoubleColon());
+                    break;
+
+                case CHILD_SELECTOR:
+                    writeSelector(((ChildSelector) selector).getAncestorSelector());
+                    writeSelector(selector.getSimpleSelector());
+                    break;
+
+                case DESCENDANT_SELECTOR:
+                    writeSelector(((DescendantSelector) selector).getAncestorSelector());
+                    writeSelector(selector.getSimpleSelector());
+                    break;
+
+                case DIRECT_ADJACENT_SELECTOR:
+                    writeSelector(((DirectAdjacentSelector) selector).getSelector());
+                    writeSelector(selector.getSimpleSelector());
+                    break;
+
+                case GENERAL_ADJACENT_SELECTOR:
+                    writeSelector(((GeneralAdjacentSelector) selector).getSelector());
+                    writeSelector(selector.getSimpleSelector());
+                    break;
+
+                case RELATIVE_SELECTOR:
+                    final RelativeSelector relativeSelector = (RelativeSelector) selector;
+                    writeString(relativeSelector.getCombinator().name());
+                    writeSelector(relativeSelector.getSelector());
+                    break;
+
+                default:
+                    throw new IOException("Unsupported selector type '" + type + "'.");
+            }
+        }
+
+        private void writeCondition(final Condition condition) throws IOException {
+            final ConditionType type = condition.getConditionType();
+            writeString(type.name());
+            switch (type) {
+                case ATTRIBUTE_CONDITION:
+                case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                case ONE_OF_ATTRIBUTE_CONDITION:
+                case PREFIX_ATTRIBUTE_CONDITION:
+                case SUBSTRING_ATTRIBUTE_CONDITION:
+                case SUFFIX_ATTRIBUTE_CONDITION:
+                    final AttributeCondition attributeCondition = (AttributeCondition) condition;
+                    writeString(attributeCondition.getLocalName());
+                    writeString(attributeCondition.getValue());
+                    final Boolean caseInSensitive = attributeCondition.getCaseInSensitive();
+                    if (caseInSensitive == null) {
+                        writeInt(0);
+                    }
+                    else {
+                        writeInt(caseInSensitive.booleanValue() ? 1 : 2);
+                    }
+                    break;
+
+                case CLASS_CONDITION:
+                case ID_CONDITION:
+                case LANG_CONDITION:
+                    writeString(condition.getValue());
+                    break;
+
+                case PSEUDO_CLASS_CONDITION:
+                    writeString(condition.getValue());
+                    writeBoolean(((PseudoClassCondition) condition).isDoubleColon());
+                    break;
+
+                case IS_PSEUDO_CLASS_CONDITION:
+                    writeSelectorList(((IsPseudoClassCondition) condition).getSelectors());
+                    break;
+
+                case WHERE_PSEUDO_CLASS_CONDITION:
+                    writeSelectorList(((WherePseudoClassCondition) condition).getSelectors());
+                    break;
+
+                case HAS_PSEUDO_CLASS_CONDITION:
+                    writeSelectorList(((HasPseudoClassCondition) condition).getSelectors());
+                    break;
+
+                case NOT_PSEUDO_CLASS_CONDITION:
+                    writeSelectorList(((NotPseudoClassCondition) condition).getSelectors());
+                    break;
+
+                default:
+                    throw new IOException("Unsupported condition type '" + type + "'.");
+            }
+        }
+
+        private void writeValue(final CSSValueImpl value) {
+            if (value == null) {
+                writeInt(VALUE_NULL);
+                return;
+            }
+
+            final LexicalUnit lu = toLexicalUnit(value);
+            if (lu == null) {
+                // rect() and counter() values do not keep their lexical units
+                writeInt(VALUE_TEXT);
+                writeString(value.getCssText());
+                return;
+            }
+
+            writeInt(VALUE_LEXICAL_UNITS);
+            writeLexicalUnits(lu);
+        }
+
+        private void writeLexicalUnits(final LexicalUnit lu) {
+            int count = 0;
+            for (LexicalUnit unit = lu; unit != null; unit = unit.getNextLexicalUnit()) {
+                count++;
+            }
+            writeInt(count);
+
+            for (LexicalUnit unit = lu; unit != null; unit = unit.getNextLexicalUnit()) {
+                final LexicalUnitImpl impl = (LexicalUnitImpl) unit;
+                final double doubleValue = impl.getDoubleValue();
+                final long longValue = (long) doubleValue;
+
+                int flags = 0;
+                if (Double.doubleToRawLongBits(doubleValue) != 0) {
+                    // -0.0 and fractions are written as raw bits
+                    if (longValue == doubleValue && longValue != 0) {
+                        flags |= UNIT_INTEGRAL;
+                    }
+                    else {
+                        flags |= UNIT_DOUBLE;
+                    }
+                }
+                if (impl.getDimension() != null) {
+                    flags |= UNIT_DIMENSION;
+                }
+                if (impl.getFunctionName() != null) {
+                    flags |= UNIT_FUNCTION;
+                }
+                if (impl.getStringValue() != null) {
+                    flags |= UNIT_STRING;
+                }
+                if (impl.getParameters() != null) {
+                    flags |= UNIT_PARAMETERS;
+                }
+
+                writeString(impl.getLexicalUnitType().name());
+                writeInt(flags);
+                if ((flags & UNIT_INTEGRAL) != 0) {
+                    writeLong(longValue);
+                }
+                else if ((flags & UNIT_DOUBLE) != 0) {
+                    writeRawLong(Double.doubleToRawLongBits(doubleValue));
+                }
+                if ((flags & UNIT_DIMENSION) != 0) {
+                    writeString(impl.getDimension());
+                }
+                if ((flags & UNIT_FUNCTION) != 0) {
+                    writeString(impl.getFunctionName());
+                }
+                if ((flags & UNIT_STRING) != 0) {
+                    writeString(impl.getStringValue());
+                }
+                if ((flags & UNIT_PARAMETERS) != 0) {
+                    writeLexicalUnits(impl.getParameters());
+                }
+            }
+        }
+
+        private void writeIndex(final CSSStyleSheetRuleIndex index) throws IOException {
+            writeSelectorMap(index.getElementSelectors());
+            writeSelectorMap(index.getClassSelectors());
+            writeSelectorMap(index.getIdSelectors());
+            writeSelectorEntries(index.getOtherSelectors());
+
+            final List<CSSStyleSheetRuleIndex> children = index.getChildren();
+            writeInt(children.size());
+            for (final CSSStyleSheetRuleIndex child : children) {
+                writeMediaList(child.getMediaList());
+                writeIndex(child);
+            }
+        }
+
+        private void writeSelectorMap(final Map<String, List<SelectorEntry>> map) {
+            writeInt(map.size());
+            for (final Map.Entry<String, List<SelectorEntry>> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeSelectorEntries(entry.getValue());
+            }
+        }
+
+        private void writeSelectorEntries(final List<SelectorEntry> entries) {
+            final List<int[]> resolved = new ArrayList<>(entries.size());
+            for (final SelectorEntry entry : entries) {
+                final Integer rule = styleRules_.get(entry.getRule());
+                if (rule == null) {
+                    continue;
+                }
+
+                int selectorIndex = entry.getSelectorIndex();
+                if (selectorIndex < 0) {
+                    final Selector selector = entry.getSelector();
+                    final SelectorList selectors = entry.getRule().getSelectors();
+                    for (int i = 0; i < selectors.size(); i++) {
+                        if (selectors.get(i) == selector) {
+                            selectorIndex = i;
+                            break;
+                        }
+                    }
+                    if (selectorIndex < 0) {
+                        continue;
+                    }
+                }
+                resolved.add(new int[] {rule, selectorIndex});
+            }
+
+            writeInt(resolved.size());
+            for (final int[] entry : resolved) {
+                writeInt(entry[0]);
+                writeInt(entry[1]);
+            }
+        }
+
+        private void writeLocator(final Locator locator) {
+            if (locator == null) {
+                writeInt(0);
+                return;
+            }
+            writeInt(locator.getLineNumber() + 1);
+            writeInt(locator.getColumnNumber());
+            writeString(locator.getUri());
+        }
+
+        private void writeBoolean(final boolean value) {
+            writeInt(value ? 1 : 0);
+        }
+
+        /**
+         * Strings are written only once; 0 is null, 1 a new string
+         * followed by the utf-8 bytes and n + 2 the n-th string.
+         */
+        private void writeString(final String value) {
+            if (value == null) {
+                writeInt(0);
+                return;
+            }
+
+            final Integer id = strings_.get(value);
+            if (id != null) {
+                writeInt(id + 2);
+                return;
+            }
+
+            strings_.put(value, strings_.size());
+            writeInt(1);
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer_, length_, bytes.length);
+            length_ += bytes.length;
+        }
+
+        private void writeInt(final int value) {
+            writeUnsignedLong(value & 0xFFFFFFFFL);
+        }
+
+        // zigzag encoded to keep small negative values short
+        private void writeLong(final long value) {
+            writeUnsignedLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeUnsignedLong(final long value) {
+            ensure(10);
+            long v = value;
+            while ((v & ~0x7FL) != 0) {
+                buffer_[length_++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buffer_[length_++] = (byte) v;
+        }
+
+        private void writeRawLong(final long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buffer_[length_++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        private void ensure(final int count) {
+            if (length_ + count > buffer_.length) {
+                buffer_ = Arrays.copyOf(buffer_, Math.max(buffer_.length * 2, length_ + count));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer_;
+        private int pos_;
+        private final List<String> strings_ = new ArrayList<>();
+        private final List<CSSStyleRuleImpl> styleRules_ = new ArrayList<>();
+        private CSSStyleSheetImpl sheet_;
+
+        Reader(final byte[] buffer) {
+            buffer_ = buffer;
+        }
+
+        CSSStyleSheetImpl readSheet() throws IOException {
+            if (buffer_.length < MAGIC.length
+                    || !Arrays.equals(buffer_, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+                throw new IOException("Not a style sheet snapshot.");
+            }
+            pos_ = MAGIC.length;
+            final int version = readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported style sheet snapshot version " + version
+                        + " (expected " + VERSION + ").");
+            }
+
+            sheet_ = new CSSStyleSheetImpl();
+            sheet_.setHref(readString());
+            sheet_.setTitle(readString());
+            sheet_.setDisabled(readBoolean());
+            final MediaListImpl media = readMediaList();
+            if (media != null) {
+                sheet_.setMedia(media);
+            }
+
+            final CSSRuleListImpl rules = new CSSRuleListImpl();
+            readRules(rules, null);
+            sheet_.setCssRules(rules);
+
+            if (readBoolean()) {
+                final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex();
+                readIndex(index);
+                sheet_.setRuleIndex(index);
+            }
+
+            if (pos_ != buffer_.length) {
+                throw new IOException("Unexpected data at the end of the style sheet snapshot.");
+            }
+            return sheet_;
+        }
+
+        private void readRules(final CSSRuleListImpl rules, final AbstractCSSRuleImpl parentRule)
+                throws IOException {
+            final int count = readInt();
+            for (int i = 0; i < count; i++) {
+                final AbstractCSSRuleImpl rule = readRule(parentRule);
+                rule.setModified(false);
+                rules.add(rule);
+            }
+        }
+
+        private AbstractCSSRuleImpl readRule(final AbstractCSSRuleImpl parentRule) throws IOException {
+            final int kind = readInt();
+            final Locator locator = readLocator();
+            final AbstractCSSRuleImpl rule;
+            switch (kind) {
+                case RULE_STYLE:
+                    final CSSStyleRuleImpl styleRule = new CSSStyleRuleImpl(sheet_, parentRule, readSelectorList());
+                    styleRules_.add(styleRule);
+                    styleRule.setStyle(readStyle(styleRule));
+                    rule = styleRule;
+                    break;
+
+                case RULE_MEDIA:
+                    final CSSMediaRuleImpl mediaRule = new CSSMediaRuleImpl(sheet_, parentRule, readMediaList());
+                    final CSSRuleListImpl rules = new CSSRuleListImpl();
+                    readRules(rules, mediaRule);
+                    mediaRule.setRuleList(rules);
+                    rule = mediaRule;
+                    break;
+
+                case RULE_PAGE:
+                    String pseudoPage = readString();
+                    if (pseudoPage != null && pseudoPage.isEmpty()) {
+                        pseudoPage = null;
+                    }
+                    final CSSPageRuleImpl pageRule = new CSSPageRuleImpl(sheet_, parentRule, pseudoPage);
+                    pageRule.setStyle(readStyle(pageRule));
+                    rule = pageRule;
+                    break;
+
+                case RULE_FONT_FACE:
+                    final CSSFontFaceRuleImpl fontFaceRule = new CSSFontFaceRuleImpl(sheet_, parentRule);
+                    fontFaceRule.setStyle(readStyle(fontFaceRule));
+                    rule = fontFaceRule;
+                    break;
+
+                case RULE_IMPORT:
+                    final String href = readString();
+                    rule = new CSSImportRuleImpl(sheet_, parentRule, href, readMediaList());
+                    break;
+
+                case RULE_CHARSET:
+                    rule = new CSSCharsetRuleImpl(sheet_, parentRule, readString());
+                    break;
+
+                case RULE_UNKNOWN:
+                    rule = new CSSUnknownRuleImpl(sheet_, parentRule, readString());
+                    break;
+
+                default:
+                    throw new IOException("Unsupported rule kind " + kind + " in style sheet snapshot.");
+            }
+            rule.setLocator(locator);
+            return rule;
+        }
+
+        private CSSStyleDeclarationImpl readStyle(final AbstractCSSRuleImpl rule) throws IOException {
+            if (!readBoolean()) {
+                return null;
+            }
+
+            final CSSStyleDeclarationImpl style = new CSSStyleDeclarationImpl(rule);
+            final int count = readInt();
+            for (int i = 0; i < count; i++) {
+                style.addProperty(readProperty());
+            }
+            return style;
+        }
+
+        private Property readProperty() throws IOException {
+            final String name = readString();
+            final boolean important = readBoolean();
+            final Locator locator = readLocator();
+            final Property property = new Property(name, readValue(), important);
+            property.setLocator(locator);
+            return property;
+        }
+
+        private MediaListImpl readMediaList() throws IOException {
+            final int count = readInt() - 1;
+            if (count < 0) {
+                return null;
+            }
+
+            final MediaQueryList queries = new MediaQueryList();
+            for (int i = 0; i < count; i++) {
+                final String media = readString();
+                final boolean isOnly = readBoolean();
+                final boolean isNot = readBoolean();
+                final MediaQuery query = new MediaQuery(media, isOnly, isNot);
+                final int properties = readInt();
+                for (int j = 0; j < properties; j++) {
+                    query.addMediaProperty(readProperty());
+                }
+                queries.add(query);
+            }
+            return new MediaListImpl(queries);
+        }
+
+        private SelectorList readSelectorList() throws IOException {
+            final SelectorListImpl selectors = new SelectorListImpl();
+            final int count = readInt();
+            for (int i = 0; i < count; i++) {
+                selectors.add(readSelector());
+            }
+            return selectors;
+        }
+
+        private Selector readSelector() throws IOException {
+            final SelectorType type = SelectorType.valueOf(readString());
+            switch (type) {
+                case ELEMENT_NODE_SELECTOR:
+                    final ElementSelector elementSelector = new ElementSelector(readString(), null);
+                    final int count = readInt();
+                    for (int i = 0; i < count; i++) {
+                        elementSelector.addCondition(readCondition());
+                    }
+                    return elementSelector;
+
+                case PSEUDO_ELEMENT_SELECTOR:
+                    final String localName = readString();
+                    return new PseudoElementSelector(localName, null, readBoolean());
+
+                case CHILD_SELECTOR:
+                    return new ChildSelector(readSelector(), (SimpleSelector) readSelector());
+
+                case DESCENDANT_SELECTOR:
+                    return new DescendantSelector(readSelector(), (SimpleSelector) readSelector());
+
+                case DIRECT_ADJACENT_SELECTOR:
+                    return new DirectAdjacentSelector(readSelector(), (SimpleSelector) readSelector());
+
+                case GENERAL_ADJACENT_SELECTOR:
+                    return new GeneralAdjacentSelector(readSelector(), (SimpleSelector) readSelector());
+
+                case RELATIVE_SELECTOR:
+                    final Combinator combinator = Combinator.valueOf(readString());
+                    return new RelativeSelector(combinator, readSelector());
+
+                default:
+                    throw new IOException("Unsupported selector type '" + type + "' in style sheet snapshot.");
+            }
+        }
+
+        private Condition readCondition() throws IOException {
+            final ConditionType type = ConditionType.valueOf(readString());
+            switch (type) {
+                case ATTRIBUTE_CONDITION:
+                case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                case ONE_OF_ATTRIBUTE_CONDITION:
+                case PREFIX_ATTRIBUTE_CONDITION:
+                case SUBSTRING_ATTRIBUTE_CONDITION:
+                case SUFFIX_ATTRIBUTE_CONDITION:
+                    final String localName = readString();
+                    final String value = readString();
+                    final int flag = readInt();
+                    final Boolean caseInSensitive = flag == 0 ? null : Boolean.valueOf(flag == 1);
+                    return newAttributeCondition(type, localName, value, caseInSensitive);
+
+                case CLASS_CONDITION:
+                    return new ClassCondition(readString(), null);
+
+                case ID_CONDITION:
+                    return new IdCondition(readString(), null);
+
+                case LANG_CONDITION:
+                    return new LangCondition(readString(), null);
+
+                case PSEUDO_CLASS_CONDITION:
+                    final String pseudoClass = readString();
+                    return new PseudoClassCondition(pseudoClass, null, readBoolean());
+
+                case IS_PSEUDO_CLASS_CONDITION:
+                    return new IsPseudoClassCondition(readSelectorList(), null);
+
+                case WHERE_PSEUDO_CLASS_CONDITION:
+                    return new WherePseudoClassCondition(readSelectorList(), null);
+
+                case HAS_PSEUDO_CLASS_CONDITION:
+                    return new HasPseudoClassCondition(readSelectorList(), null);
+
+                case NOT_PSEUDO_CLASS_CONDITION:
+                    return new NotPseudoClassCondition(readSelectorList(), null);
+
+                default:
+                    throw new IOException("Unsupported condition type '" + type + "' in style sheet snapshot.");
+            }
+        }
+
+        private static Condition newAttributeCondition(final ConditionType type, final String localName,
+                final String value, final Boolean caseInSensitive) {
+            switch (type) {
+                case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                    return new BeginHyphenAttributeCondition(localName, value, caseInSensitive);
+                case ONE_OF_ATTRIBUTE_CONDITION:
+                    return new OneOfAttributeCondition(localName, value, caseInSensitive);
+                case PREFIX_ATTRIBUTE_CONDITION:
+                    return new PrefixAttributeCondition(localName, value, caseInSensitive);
+                case SUBSTRING_ATTRIBUTE_CONDITION:
+                    return new SubstringAttributeCondition(localName, value, caseInSensitive);
+                case SUFFIX_ATTRIBUTE_CONDITION:
+                    return new SuffixAttributeCondition(localName, value, caseInSensitive);
+                default:
+                    return new AttributeCondition(localName, value, caseInSensitive);
+            }
+        }
+
+        private CSSValueImpl readValue() throws IOException {
+            final int kind = readInt();
+            switch (kind) {
+                case VALUE_NULL:
+                    return null;
+
+                case VALUE_LEXICAL_UNITS:
+                    return new CSSValueImpl(readLexicalUnits());
+
+                case VALUE_TEXT:
+                    return new CSSOMParser().parsePropertyValue(readString());
+
+                default:
+                    throw new IOException("Unsupported value kind " + kind + " in style sheet snapshot.");
+            }
+        }
+
+        private LexicalUnit readLexicalUnits() {
+            final int count = readInt();
+            LexicalUnitImpl first = null;
+            LexicalUnitImpl unit = null;
+            for (int i = 0; i < count; i++) {
+                final LexicalUnitType type = LexicalUnitType.valueOf(readString());
+                unit = new LexicalUnitImpl(unit, type);
+                if (first == null) {
+                    first = unit;
+                }
+
+                final int flags = readInt();
+                if ((flags & UNIT_INTEGRAL) != 0) {
+                    unit.setDoubleValue(readLong());
+                }
+                else if ((flags & UNIT_DOUBLE) != 0) {
+                    unit.setDoubleValue(Double.longBitsToDouble(readRawLong()));
+                }
+                if ((flags & UNIT_DIMENSION) != 0) {
+                    unit.setDimension(readString());
+                }
+                if ((flags & UNIT_FUNCTION) != 0) {
+                    unit.setFunctionName(readString());
+                }
+                if ((flags & UNIT_STRING) != 0) {
+                    unit.setStringValue(readString());
+                }
+                if ((flags & UNIT_PARAMETERS) != 0) {
+                    unit.setParameters(readLexicalUnits());
+                }
+            }
+            return first;
+        }
+
+        private void readIndex(final CSSStyleSheetRuleIndex index) throws IOException {
+            readSelectorMap(index.getElementSelectors());
+            readSelectorMap(index.getClassSelectors());
+            readSelectorMap(index.getIdSelectors());
+            index.idSelectorsChanged();
+            readSelectorEntries(index.getOtherSelectors());
+
+            final int count = readInt();
+            for (int i = 0; i < count; i++) {
+                readIndex(index.addMedia(readMediaList()));
+            }
+        }
+
+        private void readSelectorMap(final Map<String, List<SelectorEntry>> map) {
+            final int count = readInt();
+            for (int i = 0; i < count; i++) {
+                final String key = readString();
+                readSelectorEntries(map.computeIfAbsent(key, k -> new ArrayList<>()));
+            }
+        }
+
+        private void readSelectorEntries(final List<SelectorEntry> entries) {
+            final int count = readInt();
+            for (int i = 0; i < count; i++) {
+                final CSSStyleRuleImpl rule = styleRules_.get(readInt());
+                entries.add(new SelectorEntry(rule, readInt()));
+            }
+        }
+
+        private Locator readLocator() {
+            final int line = readInt() - 1;
+            if (line < 0) {
+                return null;
+            }
+            final int column = readInt();
+            return new Locator(readString(), line, column);
+        }
+
+        private boolean readBoolean() {
+            return readInt() != 0;
+        }
+
+        private String readString() {
+            final int id = readInt();
+            if (id == 0) {
+                return null;
+            }
+            if (id > 1) {
+                return strings_.get(id - 2);
+            }
+
+            final int length = readInt();
+            if (length < 0 || pos_ + length > buffer_.length) {
+                throw new IllegalArgumentException("Invalid string length " + length + ".");
+            }
+            final String value = new String(buffer_, pos_, length, StandardCharsets.UTF_8);
+            pos_ += length;
+            strings_.add(value);
+            return value;
+        }
+
+        private int readInt() {
+            return (int) readUnsignedLong();
+        }
+
+        private long readLong() {
+            final long value = readUnsignedLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readUnsignedLong() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                final byte b = buffer_[pos_++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+                shift += 7;
+                if (shift > 63) {
+                    throw new IllegalArgumentException("Invalid number.");
+                }
+            }
+        }
+
+        private long readRawLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (buffer_[pos_++] & 0xFFL) << (i * 8);
+            }
+            return value;
+        }
+    }
+}
@@ -56,13 +56,15 @@ public String getCssText() {
     /** {@inheritDoc} */
     @Override
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             final AbstractCSSRuleImpl r = parser.parseRule(cssText);
 
             // The rule must be an unknown rule
             if (r instanceof CSSUnknownRuleImpl) {
-                text_ = ((CSSUnknownRuleImpl) r).text_;
+                text_ = r.getCssText();
+                setModified(true);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -78,6 +80,14 @@ public void setCssText(final String cssText) throws DOMException {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    CSSUnknownRuleImpl copy(final CSSStyleSheetImpl parentStyleSheet, final AbstractCSSRuleImpl parentRule) {
+        final CSSUnknownRuleImpl copy = new CSSUnknownRuleImpl(parentStyleSheet, parentRule, getCssText());
+        copy.copyState(this);
+        return copy;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -18,6 +18,7 @@
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.htmlunit.cssparser.parser.AbstractLocatable;
 import org.htmlunit.cssparser.parser.CSSOMParser;
@@ -198,6 +199,8 @@ public enum CSSPrimitiveValueType {
     }
 
     private Object value_;
+    private boolean modified_;
+    private transient boolean frozen_;
 
     /**
      * <p>getValue.</p>
@@ -331,10 +334,12 @@ public String getCssText() {
      * @throws DOMException in case of error
      */
     public void setCssText(final String cssText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             final CSSValueImpl v2 = parser.parsePropertyValue(cssText);
             value_ = v2.value_;
+            modified_ = true;
         }
         catch (final Exception e) {
             throw new DOMExceptionImpl(
@@ -451,7 +456,87 @@ public LexicalUnit.LexicalUnitType getLexicalUnitType() {
      * @throws DOMException in case of error
      */
     public void setDoubleValue(final double doubleValue) throws DOMException {
+        checkNotFrozen();
         value_ = LexicalUnitImpl.createNumber(null, doubleValue);
+        modified_ = true;
+    }
+
+    /**
+     * @return true if the value was changed after parsing
+     */
+    public boolean isModified() {
+        return modified_;
+    }
+
+    /**
+     * Marks the value as changed.
+     * @param modified the new value
+     */
+    public void setModified(final boolean modified) {
+        checkNotFrozen();
+        modified_ = modified;
+    }
+
+    /**
+     * @return true if the value belongs to a frozen style sheet
+     * @see CSSStyleSheetImpl#freeze()
+     */
+    public boolean isFrozen() {
+        return frozen_;
+    }
+
+    /**
+     * Makes the value and all the items of a value list read only.
+     */
+    void freeze() {
+        if (value_ instanceof List<?> list) {
+            for (final Object item : list) {
+                ((CSSValueImpl) item).freeze();
+            }
+        }
+        frozen_ = true;
+    }
+
+    /**
+     * @param items the items
+     * @return a new value list containing the given items
+     */
+    static CSSValueImpl createList(final List<CSSValueImpl> items) {
+        final CSSValueImpl list = new CSSValueImpl(null, true);
+        list.value_ = items;
+        if (!items.isEmpty()) {
+            list.setLocator(items.get(0).getLocator());
+        }
+        return list;
+    }
+
+    /**
+     * @return a mutable copy of this value; the items of a value list are copied,
+     *         the lexical units, colors, rects and counters are shared
+     */
+    CSSValueImpl copy() {
+        final CSSValueImpl copy = new CSSValueImpl(null, true);
+        if (value_ instanceof List<?> list) {
+            final List<CSSValueImpl> items = new ArrayList<>(list.size());
+            for (final Object item : list) {
+                items.add(((CSSValueImpl) item).copy());
+            }
+            copy.value_ = items;
+        }
+        else {
+            copy.value_ = value_;
+        }
+        copy.modified_ = modified_;
+        copy.setLocator(getLocator());
+        return copy;
+    }
+
+    private void checkNotFrozen() throws DOMException {
+        if (frozen_) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
     }
 
     /**
@@ -537,6 +622,52 @@ public CSSValueImpl item(final int index) {
         return null;
     }
 
+    /**
+     * Adds the names of all custom properties referenced by var()
+     * (including the fallback values) to the given set.
+     *
+     * @param names the set to add the names to
+     */
+    @SuppressWarnings("unchecked")
+    void collectCustomPropertyReferences(final Set<String> names) {
+        if (value_ instanceof List) {
+            for (final CSSValueImpl item : (List<CSSValueImpl>) value_) {
+                item.collectCustomPropertyReferences(names);
+            }
+        }
+        else if (value_ instanceof LexicalUnit) {
+            collectCustomPropertyReferences((LexicalUnit) value_, names);
+        }
+        else if (value_ instanceof AbstractColor) {
+            ((AbstractColor) value_).getCssValue().collectCustomPropertyReferences(names);
+        }
+        else if (value_ instanceof RectImpl) {
+            final RectImpl rect = (RectImpl) value_;
+            for (final CSSValueImpl side : new CSSValueImpl[] {rect.getTop(), rect.getRight(),
+                                                                rect.getBottom(), rect.getLeft()}) {
+                if (side != null) {
+                    side.collectCustomPropertyReferences(names);
+                }
+            }
+        }
+    }
+
+    private static void collectCustomPropertyReferences(final LexicalUnit lu, final Set<String> names) {
+        if (lu.getLexicalUnitType() == LexicalUnitType.FUNCTION
+                && "var".equalsIgnoreCase(lu.getFunctionName())) {
+            final LexicalUnit name = lu.getParameters();
+            if (name != null && name.getLexicalUnitType() == LexicalUnitType.IDENT) {
+                names.add(name.getStringValue());
+            }
+        }
+
+        LexicalUnit param = lu.getParameters();
+        while (param != null) {
+            collectCustomPropertyReferences(param, names);
+            param = param.getNextLexicalUnit();
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+/**
+ * Conversions between the css color spaces and sRGB.
+ * All methods write the (gamma encoded, not clamped) sRGB
+ * components into the given array to avoid allocations.
+ *
+ * @see <a href="https://www.w3.org/TR/css-color-4/#color-conversion-code">CSS Color 4 - Sample code</a>
+ * @author Ronald Brill
+ */
+final class ColorSpaces {
+
+    private static final double D50_X = 0.3457d / 0.3585d;
+    private static final double D50_Z = (1.0d - 0.3457d - 0.3585d) / 0.3585d;
+    private static final double LAB_KAPPA = 24389d / 27d;
+    private static final double LAB_EPSILON = 216d / 24389d;
+
+    private ColorSpaces() {
+        // util class
+    }
+
+    /**
+     * @param hue the hue in degrees
+     * @param saturation the saturation 0..1
+     * @param lightness the lightness 0..1
+     * @param rgb the result
+     */
+    static void hslToRgb(final double hue, final double saturation, final double lightness, final double[] rgb) {
+        final double h = normalizeHue(hue);
+        final double a = saturation * Math.min(lightness, 1 - lightness);
+        rgb[0] = hslChannel(0, h, lightness, a);
+        rgb[1] = hslChannel(8, h, lightness, a);
+        rgb[2] = hslChannel(4, h, lightness, a);
+    }
+
+    private static double hslChannel(final int n, final double hue, final double lightness, final double a) {
+        final double k = (n + hue / 30) % 12;
+        return lightness - a * Math.max(-1, Math.min(Math.min(k - 3, 9 - k), 1));
+    }
+
+    /**
+     * @param hue the hue in degrees
+     * @param whiteness the whiteness 0..1
+     * @param blackness the blackness 0..1
+     * @param rgb the result
+     */
+    static void hwbToRgb(final double hue, final double whiteness, final double blackness, final double[] rgb) {
+        if (whiteness + blackness >= 1) {
+            final double gray = whiteness / (whiteness + blackness);
+            rgb[0] = gray;
+            rgb[1] = gray;
+            rgb[2] = gray;
+            return;
+        }
+
+        hslToRgb(hue, 1, 0.5, rgb);
+        final double factor = 1 - whiteness - blackness;
+        for (int i = 0; i < 3; i++) {
+            rgb[i] = rgb[i] * factor + whiteness;
+        }
+    }
+
+    /**
+     * @param lightness the CIE lightness 0..100
+     * @param a the a axis
+     * @param b the b axis
+     * @param rgb the result
+     */
+    static void labToRgb(final double lightness, final double a, final double b, final double[] rgb) {
+        final double f1 = (lightness + 16) / 116;
+        final double f0 = a / 500 + f1;
+        final double f2 = f1 - b / 200;
+
+        final double f0Cube = f0 * f0 * f0;
+        final double f2Cube = f2 * f2 * f2;
+        final double x = (f0Cube > LAB_EPSILON ? f0Cube : (116 * f0 - 16) / LAB_KAPPA) * D50_X;
+        final double y = lightness > LAB_KAPPA * LAB_EPSILON ? f1 * f1 * f1 : lightness / LAB_KAPPA;
+        final double z = (f2Cube > LAB_EPSILON ? f2Cube : (116 * f2 - 16) / LAB_KAPPA) * D50_Z;
+
+        // Bradford chromatic adaptation D50 -> D65
+        final double x65 = 0.955473421488075 * x - 0.02309845494876471 * y + 0.06325924320057072 * z;
+        final double y65 = -0.0283697093338637 * x + 1.0099953980813041 * y + 0.021041441191917323 * z;
+        final double z65 = 0.012314014864481998 * x - 0.020507649298898964 * y + 1.330365926242124 * z;
+
+        xyzD65ToRgb(x65, y65, z65, rgb);
+    }
+
+    /**
+     * @param lightness the CIE lightness 0..100
+     * @param chroma the chroma
+     * @param hue the hue in degrees
+     * @param rgb the result
+     */
+    static void lchToRgb(final double lightness, final double chroma, final double hue, final double[] rgb) {
+        final double h = Math.toRadians(hue);
+        labToRgb(lightness, chroma * Math.cos(h), chroma * Math.sin(h), rgb);
+    }
+
+    /**
+     * @param lightness the lightness 0..1
+     * @param a the a axis
+     * @param b the b axis
+     * @param rgb the result
+     */
+    static void oklabToRgb(final double lightness, final double a, final double b, final double[] rgb) {
+        final double l1 = lightness + 0.3963377774 * a + 0.2158037573 * b;
+        final double m1 = lightness - 0.1055613458 * a - 0.0638541728 * b;
+        final double s1 = lightness - 0.0894841775 * a - 1.2914855480 * b;
+
+        final double l = l1 * l1 * l1;
+        final double m = m1 * m1 * m1;
+        final double s = s1 * s1 * s1;
+
+        rgb[0] = gamma(4.0767416621 * l - 3.3077115913 * m + 0.2309699292 * s);
+        rgb[1] = gamma(-1.2684380046 * l + 2.6097574011 * m - 0.3413193965 * s);
+        rgb[2] = gamma(-0.0041960863 * l - 0.7034186147 * m + 1.7076147010 * s);
+    }
+
+    /**
+     * @param lightness the lightness 0..1
+     * @param chroma the chroma
+     * @param hue the hue in degrees
+     * @param rgb the result
+     */
+    static void oklchToRgb(final double lightness, final double chroma, final double hue, final double[] rgb) {
+        final double h = Math.toRadians(hue);
+        oklabToRgb(lightness, chroma * Math.cos(h), chroma * Math.sin(h), rgb);
+    }
+
+    private static void xyzD65ToRgb(final double x, final double y, final double z, final double[] rgb) {
+        rgb[0] = gamma(3.2409699419045226 * x - 1.537383177570094 * y - 0.4986107602930034 * z);
+        rgb[1] = gamma(-0.9692436362808796 * x + 1.8759675015077202 * y + 0.04155505740717559 * z);
+        rgb[2] = gamma(0.05563007969699366 * x - 0.20397695888897652 * y + 1.0569715142428786 * z);
+    }
+
+    private static double gamma(final double linear) {
+        final double abs = Math.abs(linear);
+        if (abs <= 0.0031308) {
+            return 12.92 * linear;
+        }
+        return Math.signum(linear) * (1.055 * Math.pow(abs, 1 / 2.4) - 0.055);
+    }
+
+    private static double normalizeHue(final double hue) {
+        final double h = hue % 360;
+        return h < 0 ? h + 360 : h;
+    }
+
+    /**
+     * @param red the red component 0..1
+     * @param green the green component 0..1
+     * @param blue the blue component 0..1
+     * @param alpha the alpha component 0..1
+     * @return the components clamped and packed into an ARGB int
+     */
+    static int packArgb(final double red, final double green, final double blue, final double alpha) {
+        return (toByte(alpha) << 24) | (toByte(red) << 16) | (toByte(green) << 8) | toByte(blue);
+    }
+
+    private static int toByte(final double value) {
+        if (!(value > 0)) {
+            return 0;
+        }
+        if (value >= 1) {
+            return 255;
+        }
+        return (int) Math.round(value * 255);
+    }
+}
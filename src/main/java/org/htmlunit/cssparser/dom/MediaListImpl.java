@@ -36,6 +36,8 @@
 public class MediaListImpl extends AbstractLocatable implements Serializable {
 
     private final List<MediaQuery> mediaQueries_;
+    private boolean modified_;
+    private transient boolean frozen_;
 
     /**
      * Creates new MediaList.
@@ -76,11 +78,13 @@ public String getMediaText() {
      * @throws DOMException in case of error
      */
     public void setMediaText(final String mediaText) throws DOMException {
+        checkNotFrozen();
         try {
             final CSSOMParser parser = new CSSOMParser();
             parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
             final MediaQueryList sml = parser.parseMedia(mediaText);
             setMediaList(sml);
+            modified_ = true;
         }
         catch (final CSSParseException e) {
             throw new DOMException(DOMException.SYNTAX_ERR, e.getLocalizedMessage());
@@ -123,10 +127,62 @@ public String toString() {
      * @param media the media queries string to be parsed
      */
     public void setMedia(final List<String> media) {
+        checkNotFrozen();
         mediaQueries_.clear();
         for (final String medium : media) {
             mediaQueries_.add(new MediaQuery(medium));
         }
+        modified_ = true;
+    }
+
+    /**
+     * @return true if the media list was changed after parsing
+     */
+    public boolean isModified() {
+        return modified_;
+    }
+
+    /**
+     * Marks the media list as changed.
+     * @param modified the new value
+     */
+    public void setModified(final boolean modified) {
+        checkNotFrozen();
+        modified_ = modified;
+    }
+
+    /**
+     * @return true if the media list belongs to a frozen style sheet
+     * @see CSSStyleSheetImpl#freeze()
+     */
+    public boolean isFrozen() {
+        return frozen_;
+    }
+
+    /**
+     * Makes the media list read only.
+     */
+    void freeze() {
+        frozen_ = true;
+    }
+
+    /**
+     * @return a mutable copy of this list; the media queries are shared
+     */
+    MediaListImpl copy() {
+        final MediaListImpl copy = new MediaListImpl(null);
+        copy.mediaQueries_.addAll(mediaQueries_);
+        copy.modified_ = modified_;
+        copy.setLocator(getLocator());
+        return copy;
+    }
+
+    private void checkNotFrozen() throws DOMException {
+        if (frozen_) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
     }
 
     private void setMediaList(final MediaQueryList mediaList) {
@@ -14,10 +14,14 @@
  */
 package org.htmlunit.cssparser.dom;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 import org.htmlunit.cssparser.parser.AbstractLocatable;
 import org.htmlunit.cssparser.util.ParserUtils;
+import org.w3c.dom.DOMException;
 
 /**
  * <p>Property class.</p>
@@ -27,8 +31,18 @@
 public class Property extends AbstractLocatable implements Serializable {
 
     private String name_;
+    /** derived from the name; not serialized because the ids depend on the registry version */
+    private transient int id_;
     private CSSValueImpl value_;
     private boolean important_;
+    private int sourceStart_ = -1;
+    private int sourceEnd_ = -1;
+    private boolean modified_;
+    private transient boolean frozen_;
+    /** the property list of the declarations containing this property; notified about changes */
+    private transient CSSStyleDeclarationImpl.PropertyList owner_;
+    /** the lists of other declarations if the property was added to more than one */
+    private transient CSSStyleDeclarationImpl.PropertyList[] otherOwners_;
 
     /**
      * Creates new Property.
@@ -38,6 +52,7 @@ public class Property extends AbstractLocatable implements Serializable {
      */
     public Property(final String name, final CSSValueImpl value, final boolean important) {
         name_ = name;
+        id_ = CSSPropertyRegistry.getId(name);
         value_ = value;
         important_ = important;
     }
@@ -50,12 +65,25 @@ public String getName() {
         return name_;
     }
 
+    /**
+     * Returns the id of the property.
+     * @return the id from the {@link CSSPropertyRegistry} or
+     *         {@link CSSPropertyRegistry#UNKNOWN} for custom and unknown properties
+     */
+    public int getId() {
+        return id_;
+    }
+
     /**
      * Sets the name to a new value.
      * @param name the new name
      */
     public void setName(final String name) {
+        checkNotFrozen();
         name_ = name;
+        id_ = CSSPropertyRegistry.getId(name);
+        modified_ = true;
+        changed(true);
     }
 
     /**
@@ -79,7 +107,10 @@ public boolean isImportant() {
      * @param value the new CSSValue
      */
     public void setValue(final CSSValueImpl value) {
+        checkNotFrozen();
         value_ = value;
+        modified_ = true;
+        changed(false);
     }
 
     /**
@@ -87,7 +118,183 @@ public void setValue(final CSSValueImpl value) {
      * @param important the new flag value
      */
     public void setImportant(final boolean important) {
+        checkNotFrozen();
         important_ = important;
+        modified_ = true;
+        changed(false);
+    }
+
+    /**
+     * @return the offset of the property name in the source of the style sheet
+     *         or -1 if the source was not tracked while parsing
+     */
+    public int getSourceStart() {
+        return sourceStart_;
+    }
+
+    /**
+     * @return the offset after the last char of the value (including the priority)
+     *         in the source of the style sheet or -1 if the source was not tracked while parsing
+     */
+    public int getSourceEnd() {
+        return sourceEnd_;
+    }
+
+    /**
+     * Sets the range of the property in the source of the style sheet.
+     * @param sourceStart the offset of the first char or -1
+     * @param sourceEnd the offset after the last char or -1
+     */
+    public void setSourceRange(final int sourceStart, final int sourceEnd) {
+        checkNotFrozen();
+        sourceStart_ = sourceStart;
+        sourceEnd_ = sourceEnd;
+    }
+
+    /**
+     * @return true if the property or its value was changed after parsing
+     */
+    public boolean isModified() {
+        return modified_ || (value_ != null && value_.isModified());
+    }
+
+    /**
+     * Marks the property as changed. Resetting the flag resets
+     * the flag of the value also.
+     * @param modified the new value
+     */
+    public void setModified(final boolean modified) {
+        checkNotFrozen();
+        modified_ = modified;
+        if (!modified && value_ != null) {
+            value_.setModified(false);
+        }
+    }
+
+    /**
+     * Moves the source range by the given number of chars.
+     * @param delta the number of chars to move
+     */
+    public void shiftSourceRange(final int delta) {
+        checkNotFrozen();
+        if (sourceStart_ > -1) {
+            sourceStart_ += delta;
+        }
+        if (sourceEnd_ > -1) {
+            sourceEnd_ += delta;
+        }
+    }
+
+    /**
+     * @return true if the property belongs to a frozen style sheet
+     * @see CSSStyleSheetImpl#freeze()
+     */
+    public boolean isFrozen() {
+        return frozen_;
+    }
+
+    /**
+     * Makes the property and the value read only.
+     */
+    void freeze() {
+        if (value_ != null) {
+            value_.freeze();
+        }
+        frozen_ = true;
+    }
+
+    /**
+     * Registers a property list containing this property.
+     * @param owner the list
+     */
+    void addOwner(final CSSStyleDeclarationImpl.PropertyList owner) {
+        if (owner_ == null || owner_ == owner) {
+            owner_ = owner;
+            return;
+        }
+
+        if (otherOwners_ == null) {
+            otherOwners_ = new CSSStyleDeclarationImpl.PropertyList[] {owner};
+            return;
+        }
+        for (final CSSStyleDeclarationImpl.PropertyList otherOwner : otherOwners_) {
+            if (otherOwner == owner) {
+                return;
+            }
+        }
+        otherOwners_ = Arrays.copyOf(otherOwners_, otherOwners_.length + 1);
+        otherOwners_[otherOwners_.length - 1] = owner;
+    }
+
+    /**
+     * Unregisters a property list no longer containing this property.
+     * @param owner the list
+     */
+    void removeOwner(final CSSStyleDeclarationImpl.PropertyList owner) {
+        if (owner_ == owner) {
+            owner_ = null;
+            if (otherOwners_ != null) {
+                owner_ = otherOwners_[0];
+                otherOwners_ = otherOwners_.length == 1
+                        ? null : Arrays.copyOfRange(otherOwners_, 1, otherOwners_.length);
+            }
+            return;
+        }
+
+        if (otherOwners_ == null) {
+            return;
+        }
+        for (int i = 0; i < otherOwners_.length; i++) {
+            if (otherOwners_[i] == owner) {
+                if (otherOwners_.length == 1) {
+                    otherOwners_ = null;
+                }
+                else {
+                    final CSSStyleDeclarationImpl.PropertyList[] owners =
+                            new CSSStyleDeclarationImpl.PropertyList[otherOwners_.length - 1];
+                    System.arraycopy(otherOwners_, 0, owners, 0, i);
+                    System.arraycopy(otherOwners_, i + 1, owners, i, owners.length - i);
+                    otherOwners_ = owners;
+                }
+                return;
+            }
+        }
+    }
+
+    private void changed(final boolean renamed) {
+        if (owner_ != null) {
+            owner_.propertyChanged(renamed);
+        }
+        if (otherOwners_ != null) {
+            for (final CSSStyleDeclarationImpl.PropertyList owner : otherOwners_) {
+                owner.propertyChanged(renamed);
+            }
+        }
+    }
+
+    /**
+     * @return a mutable copy of this property (and the value)
+     */
+    Property copy() {
+        final Property copy = new Property(name_, value_ == null ? null : value_.copy(), important_);
+        copy.sourceStart_ = sourceStart_;
+        copy.sourceEnd_ = sourceEnd_;
+        copy.modified_ = modified_;
+        copy.setLocator(getLocator());
+        return copy;
+    }
+
+    private void checkNotFrozen() throws DOMException {
+        if (frozen_) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        id_ = CSSPropertyRegistry.getId(name_);
     }
 
     /** {@inheritDoc} */
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for building the rule index of a style sheet.
+ *
+ * @author Ronald Brill
+ */
+@Name("org.htmlunit.cssparser.RuleIndexBuild")
+@Label("Rule Index Build")
+@Description("Building the rule index of a style sheet")
+@Category("HtmlUnit CSS Parser")
+@StackTrace(false)
+final class RuleIndexBuildEvent extends jdk.jfr.Event {
+
+    @Label("Href")
+    String href;
+
+    @Label("Rules")
+    int rules;
+}
@@ -17,15 +17,18 @@
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
-import java.text.MessageFormat;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import org.htmlunit.cssparser.parser.javacc.CharStream;
 import org.htmlunit.cssparser.parser.javacc.ParseException;
 import org.htmlunit.cssparser.parser.javacc.Token;
 import org.htmlunit.cssparser.parser.javacc.TokenMgrException;
 import org.htmlunit.cssparser.parser.media.MediaQueryList;
+import org.htmlunit.cssparser.parser.selector.SelectorKey;
 import org.htmlunit.cssparser.parser.selector.SelectorList;
 import org.w3c.dom.DOMException;
 
@@ -37,59 +40,15 @@
 public abstract class AbstractCSSParser {
     private DocumentHandler documentHandler_;
     private CSSErrorHandler errorHandler_;
+    private CSSDiagnosticsSink diagnosticsSink_;
     private InputSource source_;
+    private CharStream charStream_;
+    private int errorCount_;
 
-    private static final HashMap<String, String> PARSER_MESSAGES_ = new HashMap<>();
-
-    static {
-        PARSER_MESSAGES_.put("invalidExpectingOne", "Invalid token \"{0}\". Was expecting: {1}.");
-        PARSER_MESSAGES_.put("invalidExpectingMore", "Invalid token \"{0}\". Was expecting one of: {1}.");
-        PARSER_MESSAGES_.put("invalidColor", "Invalid color \"{0}\".");
-        PARSER_MESSAGES_.put("invalidStyleSheet", "Error in style sheet.");
-        PARSER_MESSAGES_.put("invalidRule", "Error in rule.");
-        PARSER_MESSAGES_.put("invalidUnknownRule", "Error in unknown at-rule.");
-        PARSER_MESSAGES_.put("invalidCharsetRule", "Error in @charset rule.");
-        PARSER_MESSAGES_.put("misplacedCharsetRule", "The @charset must be the first element in the style sheet.");
-        PARSER_MESSAGES_.put("invalidImportRule", "Error in @import rule.");
-        PARSER_MESSAGES_.put("invalidImportRuleIgnored", "@import rule must occur before all other rules.");
-        PARSER_MESSAGES_.put("invalidImportRuleIgnored2",
-                                "@import rule must occur before all other rules, except the @charset rule.");
-        PARSER_MESSAGES_.put("invalidPageRule", "Error in @page rule.");
-        PARSER_MESSAGES_.put("invalidFontFaceRule", "Error in @font-face rule.");
-        PARSER_MESSAGES_.put("invalidMediaList", "Error in media list.");
-        PARSER_MESSAGES_.put("invalidMediaRule", "Error in @media rule.");
-        PARSER_MESSAGES_.put("invalidStyleRule", "Error in style rule.");
-        PARSER_MESSAGES_.put("invalidStyleDeclaration", "Error in style declaration.");
-        PARSER_MESSAGES_.put("invalidDeclaration", "Error in declaration.");
-        PARSER_MESSAGES_.put("invalidDeclarationInvalidChar", "Error in declaration; invalid character \"{0}\" found.");
-        PARSER_MESSAGES_.put("invalidDeclarationStarHack",
-                                    "Error in declaration. ''*'' is not allowed as first char of a property.");
-        PARSER_MESSAGES_.put("invalidSelectorList", "Error in selector list.");
-        PARSER_MESSAGES_.put("invalidSelector", "Error in selector.");
-        PARSER_MESSAGES_.put("invalidSimpleSelector", "Error in simple selector.");
-        PARSER_MESSAGES_.put("invalidClassSelector", "Error in class selector.");
-        PARSER_MESSAGES_.put("invalidElementName", "Error in element name.");
-        PARSER_MESSAGES_.put("invalidAttrib", "Error in attribute selector.");
-        PARSER_MESSAGES_.put("invalidPseudo", "Error in pseudo class or element.");
-        PARSER_MESSAGES_.put("invalidPseudoColon", "\":{0}\" is not a valid selector.");
-        PARSER_MESSAGES_.put("duplicatePseudo", "Duplicate pseudo class \":{0}\" or pseudo class \":{0}\" not at end.");
-        PARSER_MESSAGES_.put("invalidHash", "Error in hash.");
-        PARSER_MESSAGES_.put("invalidExpr", "Error in expression.");
-        PARSER_MESSAGES_.put("invalidExprColon", "Error in expression; '':'' found after identifier \"{0}\".");
-        PARSER_MESSAGES_.put("invalidPrio", "Error in priority.");
-
-        PARSER_MESSAGES_.put("invalidPagePseudoClass",
-                "Invalid page pseudo class \"{0}\"; valid values are \"blank\", \"first\", \"left\", and \"right\".");
-
-        PARSER_MESSAGES_.put("invalidCaseInSensitivelyIdentifier",
-                "Invalid case-insensitively identifier \"{0}\" found; valid values are \"i\", and \"s\".");
-
-        PARSER_MESSAGES_.put("ignoringRule", "Ignoring the whole rule.");
-        PARSER_MESSAGES_.put("ignoringFollowingDeclarations", "Ignoring the following declarations in this rule.");
-
-        PARSER_MESSAGES_.put("tokenMgrError", "Lexical error.");
-        PARSER_MESSAGES_.put("domException", "DOM exception: ''{0}''");
-    }
+    /** The selectors found by {@link #isSelectorDeferred(Token)}. */
+    private final List<SelectorKey> deferredSelectorKeys_ = new ArrayList<>();
+    private int deferredSelectorStart_ = -1;
+    private int deferredSelectorEnd_;
 
     private static final String NUM_CHARS = "0123456789.";
 
@@ -156,6 +115,41 @@ public void setErrorHandler(final CSSErrorHandler handler) {
         errorHandler_ = handler;
     }
 
+    /**
+     * @return the error handler registered by the application or null
+     */
+    CSSErrorHandler getRegisteredErrorHandler() {
+        return errorHandler_;
+    }
+
+    /**
+     * @return the diagnostics sink or null
+     */
+    public CSSDiagnosticsSink getDiagnosticsSink() {
+        return diagnosticsSink_;
+    }
+
+    /**
+     * Allow an application to register a diagnostics sink.
+     *
+     * <p>All errors and warnings are reported to the sink (in addition to the
+     * error handler). As long as no error handler is registered, the parser does
+     * not create exception objects for the error handler.</p>
+     *
+     * @param sink the diagnostics sink or null
+     * @see CSSDiagnosticsSink
+     */
+    public void setDiagnosticsSink(final CSSDiagnosticsSink sink) {
+        diagnosticsSink_ = sink;
+    }
+
+    /**
+     * @return false if only the diagnostics sink is interested in the problems
+     */
+    private boolean isErrorHandlerRequired() {
+        return errorHandler_ != null || diagnosticsSink_ == null;
+    }
+
     /**
      * <p>getInputSource.</p>
      *
@@ -170,11 +164,18 @@ protected InputSource getInputSource() {
      * @return the parser message
      */
     protected String getParserMessage(final String key) {
-        final String msg = PARSER_MESSAGES_.get(key);
-        if (msg == null) {
-            return "[[" + key + "]]";
-        }
-        return msg;
+        return parserMessage(key);
+    }
+
+    static String parserMessage(final String key) {
+        return ParserMessages.get(key);
+    }
+
+    /**
+     * @return the keys of all messages
+     */
+    static Set<String> getParserMessageKeys() {
+        return ParserMessages.keys();
     }
 
     /**
@@ -194,6 +195,10 @@ protected Locator createLocator(final Token t) {
      * @return a new string with the escaped values
      */
     protected String addEscapes(final String str) {
+        return escape(str);
+    }
+
+    private static String escape(final String str) {
         final StringBuilder sb = new StringBuilder();
         char ch;
         for (int i = 0; i < str.length(); i++) {
@@ -239,6 +244,159 @@ protected String addEscapes(final String str) {
         return sb.toString();
     }
 
+    /**
+     * @return true if the exceptions created by this parser have to fill in the stack trace
+     * @see CSSErrorHandler#isStackTraceRequired()
+     */
+    protected boolean isStackTraceRequired() {
+        if (!isErrorHandlerRequired()) {
+            return false;
+        }
+        return getErrorHandler().isStackTraceRequired();
+    }
+
+    private void countProblem(final String messageKey, final boolean warning) {
+        if (!warning) {
+            errorCount_++;
+        }
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        if (metrics != null) {
+            metrics.problem(messageKey == null ? CSSDiagnosticsSink.UNKNOWN_CODE : messageKey, warning);
+        }
+    }
+
+    /**
+     * @return the number of errors reported since the start of the last parse call
+     */
+    int getErrorCount() {
+        return errorCount_;
+    }
+
+    /**
+     * Reports an error to the diagnostics sink and the error handler.
+     *
+     * @param e the exception
+     */
+    protected void reportError(final CSSParseException e) {
+        // exceptions created outside of the parser may not have a message key
+        final String messageKey = e.getMessageKey() == null ? CSSDiagnosticsSink.UNKNOWN_CODE : e.getMessageKey();
+        countProblem(messageKey, false);
+        if (diagnosticsSink_ != null) {
+            final int line = e.getLineNumber();
+            final int column = e.getColumnNumber();
+            diagnosticsSink_.error(messageKey, line, column, getOffset(line, column));
+        }
+        if (isErrorHandlerRequired()) {
+            getErrorHandler().error(e);
+        }
+    }
+
+    /**
+     * Reports an error to the diagnostics sink and the error handler.
+     * The CSSParseException for the error handler is only created if
+     * there is an error handler.
+     *
+     * @param messageKey the message key
+     * @param e the parse exception
+     */
+    protected void reportError(final String messageKey, final ParseException e) {
+        countProblem(messageKey, false);
+        if (diagnosticsSink_ != null) {
+            final Token next = e.currentToken.next;
+            diagnosticsSink_.error(messageKey, next.beginLine, next.beginColumn,
+                    getOffset(next.beginLine, next.beginColumn));
+        }
+        if (isErrorHandlerRequired()) {
+            getErrorHandler().error(toCSSParseException(messageKey, e));
+        }
+    }
+
+    /**
+     * Reports an error to the diagnostics sink and the error handler.
+     * The CSSParseException for the error handler is only created if
+     * there is an error handler.
+     *
+     * @param messageKey the message key
+     * @param msgParams the params
+     * @param locator the locator
+     */
+    protected void reportError(final String messageKey, final Object[] msgParams, final Locator locator) {
+        countProblem(messageKey, false);
+        if (diagnosticsSink_ != null) {
+            final int line = locator.getLineNumber();
+            final int column = locator.getColumnNumber();
+            diagnosticsSink_.error(messageKey, line, column, getOffset(line, column));
+        }
+        if (isErrorHandlerRequired()) {
+            getErrorHandler().error(toCSSParseException(messageKey, msgParams, locator));
+        }
+    }
+
+    /**
+     * Reports a skip warning at the position of the given exception.
+     *
+     * @param messageKey the message key
+     * @param e the exception
+     */
+    protected void reportWarning(final String messageKey, final CSSParseException e) {
+        countProblem(messageKey, true);
+        if (diagnosticsSink_ != null) {
+            final int line = e.getLineNumber();
+            final int column = e.getColumnNumber();
+            diagnosticsSink_.warning(messageKey, line, column, getOffset(line, column));
+        }
+        if (isErrorHandlerRequired()) {
+            getErrorHandler().warning(createSkipWarning(messageKey, e));
+        }
+    }
+
+    /**
+     * Reports a skip warning at the position of the given exception.
+     *
+     * @param messageKey the message key
+     * @param e the parse exception
+     */
+    protected void reportWarning(final String messageKey, final ParseException e) {
+        countProblem(messageKey, true);
+        final Token next = e.currentToken.next;
+        if (diagnosticsSink_ != null) {
+            diagnosticsSink_.warning(messageKey, next.beginLine, next.beginColumn,
+                    getOffset(next.beginLine, next.beginColumn));
+        }
+        if (isErrorHandlerRequired()) {
+            final String message = getParserMessage(messageKey);
+            getErrorHandler().warning(
+                    createCSSParseException(messageKey, () -> message, next.beginLine, next.beginColumn));
+        }
+    }
+
+    /**
+     * @param line the line
+     * @param column the column
+     * @return the char offset of the given position in the current input or -1
+     */
+    protected int getOffset(final int line, final int column) {
+        if (charStream_ instanceof CssCharArrayStream) {
+            return ((CssCharArrayStream) charStream_).getOffset(line, column);
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a new CSSParseException with a lazy formatted message.
+     *
+     * @param messageKey the message lookup key
+     * @param messageSupplier the supplier of the message
+     * @param line the line
+     * @param column the column
+     * @return a new CSSParseException
+     */
+    protected CSSParseException createCSSParseException(final String messageKey,
+            final Supplier<String> messageSupplier, final int line, final int column) {
+        return new CSSParseException(messageKey, messageSupplier,
+                getInputSource().getURI(), line, column, isStackTraceRequired());
+    }
+
     /**
      * <p>toCSSParseException.</p>
      *
@@ -247,46 +405,69 @@ protected String addEscapes(final String str) {
      * @return a new CSSParseException
      */
     protected CSSParseException toCSSParseException(final String key, final ParseException e) {
-        final String messagePattern1 = getParserMessage("invalidExpectingOne");
-        final String messagePattern2 = getParserMessage("invalidExpectingMore");
+        // collect only the data required for the message; the message itself
+        // is formatted only if someone asks for it
+        final int[][] expectedTokenSequences = e.expectedTokenSequences;
         int maxSize = 0;
-        final StringBuilder expected = new StringBuilder();
-        for (int i = 0; i < e.expectedTokenSequences.length; i++) {
-            if (maxSize < e.expectedTokenSequences[i].length) {
-                maxSize = e.expectedTokenSequences[i].length;
+        for (final int[] sequence : expectedTokenSequences) {
+            if (maxSize < sequence.length) {
+                maxSize = sequence.length;
             }
-            for (int j = 0; j < e.expectedTokenSequences[i].length; j++) {
-                expected.append(e.tokenImage[e.expectedTokenSequences[i][j]]);
+        }
+
+        final Token next = e.currentToken.next;
+        final String[] tokenImage = e.tokenImage;
+        final String[] invalidTokens = new String[maxSize];
+        Token tok = next;
+        for (int i = 0; i < maxSize; i++) {
+            if (tok.kind == 0) {
+                invalidTokens[i] = tokenImage[0];
+                break;
             }
-            if (i < e.expectedTokenSequences.length - 1) {
+            invalidTokens[i] = tok.image;
+            tok = tok.next;
+        }
+
+        final String message = getParserMessage(key);
+        final String messagePattern = expectedTokenSequences.length == 1
+                ? getParserMessage("invalidExpectingOne")
+                : getParserMessage("invalidExpectingMore");
+
+        return createCSSParseException(key,
+                () -> formatParseExceptionMessage(message, messagePattern,
+                            expectedTokenSequences, tokenImage, invalidTokens),
+                next.beginLine, next.beginColumn);
+    }
+
+    private static String formatParseExceptionMessage(final String message, final String messagePattern,
+            final int[][] expectedTokenSequences, final String[] tokenImage, final String[] invalidTokens) {
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < expectedTokenSequences.length; i++) {
+            for (int j = 0; j < expectedTokenSequences[i].length; j++) {
+                expected.append(tokenImage[expectedTokenSequences[i][j]]);
+            }
+            if (i < expectedTokenSequences.length - 1) {
                 expected.append(", ");
             }
         }
+
         final StringBuilder invalid = new StringBuilder();
-        Token tok = e.currentToken.next;
-        for (int i = 0; i < maxSize; i++) {
+        for (int i = 0; i < invalidTokens.length; i++) {
             if (i != 0) {
                 invalid.append(" ");
             }
-            if (tok.kind == 0) {
-                invalid.append(e.tokenImage[0]);
+            if (invalidTokens[i] == tokenImage[0]) {
+                invalid.append(tokenImage[0]);
                 break;
             }
-            invalid.append(addEscapes(tok.image));
-            tok = tok.next;
+            invalid.append(escape(invalidTokens[i]));
         }
-        final StringBuilder message = new StringBuilder(getParserMessage(key));
-        message.append(" (");
-        if (e.expectedTokenSequences.length == 1) {
-            message.append(MessageFormat.format(messagePattern1, invalid, expected));
-        }
-        else {
-            message.append(MessageFormat.format(messagePattern2, invalid, expected));
-        }
-        message.append(")");
-        return new CSSParseException(message.toString(),
-            getInputSource().getURI(), e.currentToken.next.beginLine,
-            e.currentToken.next.beginColumn);
+
+        final StringBuilder sb = new StringBuilder(message);
+        sb.append(" (")
+            .append(ParserMessages.format(messagePattern, invalid, expected))
+            .append(")");
+        return sb.toString();
     }
 
     /**
@@ -297,8 +478,9 @@ protected CSSParseException toCSSParseException(final String key, final ParseExc
      */
     protected CSSParseException toCSSParseException(final DOMException e) {
         final String messagePattern = getParserMessage("domException");
-        return new CSSParseException(
-                MessageFormat.format(messagePattern, e.getMessage()), getInputSource().getURI(), 1, 1);
+        final String domMessage = e.getMessage();
+        return createCSSParseException("domException",
+                () -> ParserMessages.format(messagePattern, domMessage), 1, 1);
     }
 
     /**
@@ -309,7 +491,7 @@ protected CSSParseException toCSSParseException(final DOMException e) {
      */
     protected CSSParseException toCSSParseException(final TokenMgrException e) {
         final String messagePattern = getParserMessage("tokenMgrError");
-        return new CSSParseException(messagePattern, getInputSource().getURI(), 1, 1);
+        return createCSSParseException("tokenMgrError", () -> messagePattern, 1, 1);
     }
 
     /**
@@ -321,7 +503,8 @@ protected CSSParseException toCSSParseException(final TokenMgrException e) {
     protected CSSParseException toCSSParseException(final String messageKey,
             final Object[] msgParams, final Locator locator) {
         final String messagePattern = getParserMessage(messageKey);
-        return new CSSParseException(MessageFormat.format(messagePattern, msgParams), locator);
+        return new CSSParseException(messageKey, () -> ParserMessages.format(messagePattern, msgParams),
+                locator.getUri(), locator.getLineNumber(), locator.getColumnNumber(), isStackTraceRequired());
     }
 
     /**
@@ -330,7 +513,9 @@ protected CSSParseException toCSSParseException(final String messageKey,
      * @return a new CSSParseException
      */
     protected CSSParseException createSkipWarning(final String messageKey, final CSSParseException e) {
-        return new CSSParseException(getParserMessage(messageKey), e.getURI(), e.getLineNumber(), e.getColumnNumber());
+        final String message = getParserMessage(messageKey);
+        return new CSSParseException(messageKey, () -> message,
+                e.getURI(), e.getLineNumber(), e.getColumnNumber(), isStackTraceRequired());
     }
 
     /**
@@ -364,13 +549,13 @@ public void parseStyleSheet(final InputSource source) throws IOException {
             styleSheet();
         }
         catch (final ParseException e) {
-            getErrorHandler().error(toCSSParseException("invalidStyleSheet", e));
+            reportError("invalidStyleSheet", e);
         }
         catch (final TokenMgrException e) {
-            getErrorHandler().error(toCSSParseException(e));
+            reportError(toCSSParseException(e));
         }
         catch (final CSSParseException e) {
-            getErrorHandler().error(e);
+            reportError(e);
         }
     }
 
@@ -391,13 +576,13 @@ public void parseStyleDeclaration(final InputSource source) throws IOException {
             styleDeclaration();
         }
         catch (final ParseException e) {
-            getErrorHandler().error(toCSSParseException("invalidStyleDeclaration", e));
+            reportError("invalidStyleDeclaration", e);
         }
         catch (final TokenMgrException e) {
-            getErrorHandler().error(toCSSParseException(e));
+            reportError(toCSSParseException(e));
         }
         catch (final CSSParseException e) {
-            getErrorHandler().error(e);
+            reportError(e);
         }
     }
 
@@ -418,13 +603,13 @@ public void parseRule(final InputSource source) throws IOException {
             styleSheetRuleSingle();
         }
         catch (final ParseException e) {
-            getErrorHandler().error(toCSSParseException("invalidRule", e));
+            reportError("invalidRule", e);
         }
         catch (final TokenMgrException e) {
-            getErrorHandler().error(toCSSParseException(e));
+            reportError(toCSSParseException(e));
         }
         catch (final CSSParseException e) {
-            getErrorHandler().error(e);
+            reportError(e);
         }
     }
 
@@ -447,13 +632,13 @@ public SelectorList parseSelectors(final InputSource source) throws IOException
             sl = parseSelectorsInternal();
         }
         catch (final ParseException e) {
-            getErrorHandler().error(toCSSParseException("invalidSelectorList", e));
+            reportError("invalidSelectorList", e);
         }
         catch (final TokenMgrException e) {
-            getErrorHandler().error(toCSSParseException(e));
+            reportError(toCSSParseException(e));
         }
         catch (final CSSParseException e) {
-            getErrorHandler().error(e);
+            reportError(e);
         }
         return sl;
     }
@@ -477,13 +662,13 @@ public LexicalUnit parsePropertyValue(final InputSource source) throws IOExcepti
             lu = expr();
         }
         catch (final ParseException e) {
-            getErrorHandler().error(toCSSParseException("invalidExpr", e));
+            reportError("invalidExpr", e);
         }
         catch (final TokenMgrException e) {
-            getErrorHandler().error(toCSSParseException(e));
+            reportError(toCSSParseException(e));
         }
         catch (final CSSParseException e) {
-            getErrorHandler().error(e);
+            reportError(e);
         }
         return lu;
     }
@@ -507,13 +692,13 @@ public boolean parsePriority(final InputSource source) throws IOException {
             b = prio();
         }
         catch (final ParseException e) {
-            getErrorHandler().error(toCSSParseException("invalidPrio", e));
+            reportError("invalidPrio", e);
         }
         catch (final TokenMgrException e) {
-            getErrorHandler().error(toCSSParseException(e));
+            reportError(toCSSParseException(e));
         }
         catch (final CSSParseException e) {
-            getErrorHandler().error(e);
+            reportError(e);
         }
         return b;
     }
@@ -532,26 +717,34 @@ public MediaQueryList parseMedia(final InputSource source) throws IOException {
             mediaList(ml);
         }
         catch (final ParseException e) {
-            getErrorHandler().error(toCSSParseException("invalidMediaList", e));
+            reportError("invalidMediaList", e);
         }
         catch (final TokenMgrException e) {
-            getErrorHandler().error(toCSSParseException(e));
+            reportError(toCSSParseException(e));
         }
         catch (final CSSParseException e) {
-            getErrorHandler().error(e);
+            reportError(e);
         }
         return ml;
     }
 
-    private static CharStream getCharStream(final InputSource source) throws IOException {
-        if (source.getReader() != null) {
-            return new CssCharStream(source.getReader(), 1, 1);
+    private CharStream getCharStream(final InputSource source) throws IOException {
+        charStream_ = null;
+        errorCount_ = 0;
+        deferredSelectorStart_ = -1;
+        if (source.getChars() != null) {
+            charStream_ = new CssCharArrayStream(source.getChars(), source.getBegin(), source.getEnd(),
+                                source.getLineNumber(), source.getColumnNumber());
         }
-        if (source.getURI() != null) {
-            final InputStreamReader reader = new InputStreamReader(new URL(source.getURI()).openStream());
-            return new CssCharStream(reader, 1, 1);
+        else if (source.getReader() != null) {
+            charStream_ = CssCharArrayStream.read(source.getReader());
         }
-        return null;
+        else if (source.getURI() != null) {
+            try (InputStreamReader reader = new InputStreamReader(new URL(source.getURI()).openStream())) {
+                charStream_ = CssCharArrayStream.read(reader);
+            }
+        }
+        return charStream_;
     }
 
     /**
@@ -563,6 +756,11 @@ private static CharStream getCharStream(final InputSource source) throws IOExcep
      */
     public abstract String getParserVersion();
 
+    /**
+     * @return the last token consumed
+     */
+    protected abstract Token getLastToken();
+
     /**
      * Re intit the stream.
      * @param charStream the stream
@@ -647,6 +845,207 @@ protected void handleIgnorableAtRule(final String s, final Locator locator) {
         getDocumentHandler().ignorableAtRule(s, locator);
     }
 
+    /**
+     * Skips the rest of an unknown at-rule directly on the input chars (without
+     * tokenizing it) and reports the source slice of the whole rule to the
+     * document handler.
+     *
+     * @param atKeyword the at-keyword token of the rule; has to be the last token read
+     * @param locator the locator
+     * @return false if skipping on the input is not possible, the caller has to
+     *         skip (and report) the rule using the tokens
+     */
+    protected boolean skipIgnorableAtRule(final Token atKeyword, final Locator locator) {
+        if (atKeyword.next != null || !(charStream_ instanceof CssCharArrayStream)) {
+            return false;
+        }
+
+        final CssCharArrayStream stream = (CssCharArrayStream) charStream_;
+        final int start = stream.getOffset(atKeyword.beginLine, atKeyword.beginColumn);
+        if (start < 0) {
+            return false;
+        }
+
+        final int end = stream.scanToEndOfBlock(stream.getEndOffset() + 1, 0, true);
+        stream.seek(end);
+        getDocumentHandler().ignorableAtRule(stream.getBuffer(), start, end, locator);
+        return true;
+    }
+
+    /**
+     * @return the stream of the current input if the input is read as a whole
+     */
+    CssCharArrayStream getCharArrayStream() {
+        if (charStream_ instanceof CssCharArrayStream) {
+            return (CssCharArrayStream) charStream_;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the offset after the last char consumed by the parser. Tokens read
+     * ahead are not counted; parts skipped directly on the input are.
+     *
+     * @return the offset or -1 if the input is not read as a whole
+     */
+    int getConsumedOffset() {
+        if (!(charStream_ instanceof CssCharArrayStream)) {
+            return -1;
+        }
+
+        final CssCharArrayStream stream = (CssCharArrayStream) charStream_;
+        final Token last = getLastToken();
+        if (last != null && last.next != null) {
+            // the stream is positioned behind the token(s) read ahead
+            final int offset = stream.getOffset(last.endLine, last.endColumn);
+            if (offset > -1) {
+                return Math.min(offset + 1, stream.getEnd());
+            }
+        }
+        return Math.min(stream.getEndOffset() + 1, stream.getEnd());
+    }
+
+    /**
+     * @return the offset of the token read ahead or (if there is none)
+     *         the offset after the last char consumed; -1 if the input is not
+     *         read as a whole
+     */
+    int getNextTokenOffset() {
+        final Token last = getLastToken();
+        if (last != null && last.next != null && charStream_ instanceof CssCharArrayStream) {
+            final int offset = ((CssCharArrayStream) charStream_).getOffset(last.next.beginLine,
+                    last.next.beginColumn);
+            if (offset > -1) {
+                return offset;
+            }
+        }
+        return getConsumedOffset();
+    }
+
+    /**
+     * Checks if the selectors starting with the given token can be deferred;
+     * this is the case if the document handler wants this, the input allows it
+     * and the selector list is simple enough to extract the keys with
+     * the {@link SelectorKey} scanner.
+     *
+     * @param first the first token of the selector list; the token must be the
+     *        only one read ahead
+     * @return true if the selectors can be deferred
+     * @see DocumentHandler#isSelectorDeferred()
+     */
+    protected boolean isSelectorDeferred(final Token first) {
+        if (first.next != null
+                || !(charStream_ instanceof CssCharArrayStream)
+                || !getDocumentHandler().isSelectorDeferred()) {
+            return false;
+        }
+
+        final CssCharArrayStream stream = (CssCharArrayStream) charStream_;
+        final int start = stream.getOffset(first.beginLine, first.beginColumn);
+        if (start < 0) {
+            return false;
+        }
+        if (start == deferredSelectorStart_) {
+            return true;
+        }
+
+        deferredSelectorKeys_.clear();
+        final int brace = SelectorKey.scan(stream.getBuffer(), start, stream.getEnd(), deferredSelectorKeys_);
+        if (brace < 0) {
+            deferredSelectorStart_ = -1;
+            return false;
+        }
+
+        deferredSelectorStart_ = start;
+        deferredSelectorEnd_ = brace;
+        return true;
+    }
+
+    /**
+     * Continues reading the input at the '{' following the selectors found
+     * by {@link #isSelectorDeferred(Token)}; the caller has to drop the
+     * tokens already read.
+     */
+    protected void skipDeferredSelector() {
+        ((CssCharArrayStream) charStream_).seek(deferredSelectorEnd_);
+    }
+
+    /**
+     * Reports the selectors found by {@link #isSelectorDeferred(Token)}
+     * to the document handler.
+     *
+     * @param locator the locator
+     */
+    protected void handleDeferredSelector(final Locator locator) {
+        final char[] buffer = ((CssCharArrayStream) charStream_).getBuffer();
+        final int start = deferredSelectorStart_;
+        int end = deferredSelectorEnd_;
+        while (end > start && Character.isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+        final SelectorKey[] keys = deferredSelectorKeys_.toArray(new SelectorKey[0]);
+        deferredSelectorStart_ = -1;
+        deferredSelectorKeys_.clear();
+
+        getDocumentHandler().deferredSelector(buffer, start, end, keys, locator);
+    }
+
+    /**
+     * @return true if the document handler wants the declarations of the
+     *         style rules deferred and the input allows this
+     * @see DocumentHandler#isStyleDeclarationDeferred()
+     */
+    protected boolean isStyleDeclarationDeferred() {
+        return charStream_ instanceof CssCharArrayStream && getDocumentHandler().isStyleDeclarationDeferred();
+    }
+
+    /**
+     * Skips the declarations of a style rule directly on the input chars
+     * (including the closing '}') and reports the source slice of the
+     * declarations to the document handler.
+     *
+     * @param first the first token of the declarations; has to be the last token read
+     */
+    protected void skipStyleDeclaration(final Token first) {
+        final CssCharArrayStream stream = (CssCharArrayStream) charStream_;
+        final int begin = stream.getOffset(first.beginLine, first.beginColumn);
+
+        // the first token is consumed already
+        final int nesting = "{".equals(first.image) ? 2 : 1;
+        final int close = stream.indexOfEndOfBlock(stream.getEndOffset() + 1, nesting, false);
+        final int end;
+        if (close < 0) {
+            end = stream.getEnd();
+            stream.seek(end);
+        }
+        else {
+            end = close;
+            stream.seek(close + 1);
+        }
+
+        getDocumentHandler().deferredStyleDeclaration(stream.getBuffer(), begin, end,
+                new Locator(getInputSource().getURI(), first.beginLine, first.beginColumn));
+    }
+
+    /**
+     * Skips the input up to the end of the current block directly on the
+     * input chars (without tokenizing it).
+     *
+     * @param current the last token read
+     * @param nesting the current nesting
+     * @return false if skipping on the input is not possible, the caller has to
+     *         skip using the tokens
+     */
+    protected boolean skipBlock(final Token current, final int nesting) {
+        if (current.next != null || current.kind == 0 || !(charStream_ instanceof CssCharArrayStream)) {
+            return false;
+        }
+
+        final CssCharArrayStream stream = (CssCharArrayStream) charStream_;
+        stream.seek(stream.scanToEndOfBlock(stream.getEndOffset() + 1, nesting, false));
+        return true;
+    }
+
     /**
      * charset handler.
      *
@@ -830,21 +1229,22 @@ protected LexicalUnit hexColorInternal(final LexicalUnit prev, final Token t) {
         int b = 0;
         Double a = null;
 
-        final int len = t.image.length() - 1;
+        final String image = t.image;
+        final int len = image.length() - 1;
         try {
             if (len == 3) {
-                r = Integer.parseInt(t.image.substring(i + 0, i + 1), 16);
-                g = Integer.parseInt(t.image.substring(i + 1, i + 2), 16);
-                b = Integer.parseInt(t.image.substring(i + 2, i + 3), 16);
+                r = hexDigit(image, i + 0);
+                g = hexDigit(image, i + 1);
+                b = hexDigit(image, i + 2);
                 r = (r << 4) | r;
                 g = (g << 4) | g;
                 b = (b << 4) | b;
             }
             else if (len == 4) {
-                r = Integer.parseInt(t.image.substring(i + 0, i + 1), 16);
-                g = Integer.parseInt(t.image.substring(i + 1, i + 2), 16);
-                b = Integer.parseInt(t.image.substring(i + 2, i + 3), 16);
-                int ai = Integer.parseInt(t.image.substring(i + 3, i + 4), 16);
+                r = hexDigit(image, i + 0);
+                g = hexDigit(image, i + 1);
+                b = hexDigit(image, i + 2);
+                int ai = hexDigit(image, i + 3);
                 r = (r << 4) | r;
                 g = (g << 4) | g;
                 b = (b << 4) | b;
@@ -852,23 +1252,21 @@ else if (len == 4) {
                 a = ai / 255d;
             }
             else if (len == 6) {
-                r = Integer.parseInt(t.image.substring(i + 0, i + 2), 16);
-                g = Integer.parseInt(t.image.substring(i + 2, i + 4), 16);
-                b = Integer.parseInt(t.image.substring(i + 4, i + 6), 16);
+                r = (hexDigit(image, i + 0) << 4) | hexDigit(image, i + 1);
+                g = (hexDigit(image, i + 2) << 4) | hexDigit(image, i + 3);
+                b = (hexDigit(image, i + 4) << 4) | hexDigit(image, i + 5);
             }
             else if (len == 8) {
-                r = Integer.parseInt(t.image.substring(i + 0, i + 2), 16);
-                g = Integer.parseInt(t.image.substring(i + 2, i + 4), 16);
-                b = Integer.parseInt(t.image.substring(i + 4, i + 6), 16);
-                final int ai = Integer.parseInt(t.image.substring(i + 6, i + 8), 16);
+                r = (hexDigit(image, i + 0) << 4) | hexDigit(image, i + 1);
+                g = (hexDigit(image, i + 2) << 4) | hexDigit(image, i + 3);
+                b = (hexDigit(image, i + 4) << 4) | hexDigit(image, i + 5);
+                final int ai = (hexDigit(image, i + 6) << 4) | hexDigit(image, i + 7);
                 a = ai / 255d;
             }
             else {
                 final String pattern = getParserMessage("invalidColor");
-                throw new CSSParseException(MessageFormat.format(
-                    pattern, t),
-                    getInputSource().getURI(), t.beginLine,
-                    t.beginColumn);
+                throw createCSSParseException("invalidColor",
+                        () -> ParserMessages.format(pattern, image), t.beginLine, t.beginColumn);
             }
 
             // Turn into an "rgb()"
@@ -888,11 +1286,17 @@ else if (len == 8) {
         }
         catch (final NumberFormatException ex) {
             final String pattern = getParserMessage("invalidColor");
-            throw new CSSParseException(MessageFormat.format(
-                pattern, t),
-                getInputSource().getURI(), t.beginLine,
-                t.beginColumn, ex);
+            throw createCSSParseException("invalidColor",
+                    () -> ParserMessages.format(pattern, image), t.beginLine, t.beginColumn);
+        }
+    }
+
+    private static int hexDigit(final String image, final int pos) {
+        final int digit = Character.digit(image.charAt(pos), 16);
+        if (digit < 0) {
+            throw new NumberFormatException("Invalid hex digit in '" + image + "'");
         }
+        return digit;
     }
 
     /**
@@ -1107,7 +1511,7 @@ protected String normalizeAndValidatePagePseudoClass(final Token t) {
         }
 
         final String pattern = getParserMessage("invalidPagePseudoClass");
-        throw new CSSParseException(MessageFormat.format(pattern, pseudo),
-            getInputSource().getURI(), t.beginLine, t.beginColumn);
+        throw createCSSParseException("invalidPagePseudoClass",
+                () -> ParserMessages.format(pattern, pseudo), t.beginLine, t.beginColumn);
     }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+/**
+ * Receives the problems found by the parser as plain events.
+ *
+ * <p>In contrast to the {@link CSSErrorHandler} no exception objects are
+ * passed to the sink. If a sink is registered and no error handler is set,
+ * the parser skips the creation of the exceptions used for the error handler
+ * and the exceptions still required for the error recovery are created without
+ * stack trace.</p>
+ *
+ * <p>The code is the message key of the problem (e.g. "invalidDeclaration");
+ * the human readable message is available via
+ * {@link CSSErrorStatistics#getMessage(String)}. Problems without message key
+ * are reported with the code {@link #UNKNOWN_CODE}.</p>
+ *
+ * @author Ronald Brill
+ */
+public interface CSSDiagnosticsSink {
+
+    /** The code of problems without message key. */
+    String UNKNOWN_CODE = "unknown";
+
+    /**
+     * A recoverable error.
+     *
+     * @param code the message key
+     * @param line the line (one based)
+     * @param column the column (one based)
+     * @param offset the char offset in the input (zero based) or -1 if not available
+     */
+    void error(String code, int line, int column, int offset);
+
+    /**
+     * A warning; the parser reports warnings if parts of the input are skipped.
+     *
+     * @param code the message key
+     * @param line the line (one based)
+     * @param column the column (one based)
+     * @param offset the char offset in the input (zero based) or -1 if not available
+     */
+    void warning(String code, int line, int column, int offset);
+}
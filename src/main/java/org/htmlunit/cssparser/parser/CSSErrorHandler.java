@@ -46,4 +46,18 @@ public interface CSSErrorHandler {
      * @throws CSSException if any.
      */
     void fatalError(CSSParseException exception) throws CSSException;
+
+    /**
+     * Error handlers that only count or ignore the problems don't need the
+     * stack traces of the reported exceptions. Returning false here allows the
+     * parser to create the exceptions without filling in the stack trace.
+     * The messages of the exceptions created by the parser are always formatted
+     * lazily; use {@link CSSParseException#getMessageKey()} to identify the
+     * kind of problem without formatting the message.
+     *
+     * @return true if the stack traces of the reported exceptions are required
+     */
+    default boolean isStackTraceRequired() {
+        return true;
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link CSSDiagnosticsSink} counting the reported problems per message key.
+ * The counters for all the messages known by the parser are created upfront;
+ * counting does not allocate anything.
+ * An instance can be shared by many parsers (also from different threads).
+ *
+ * @author Ronald Brill
+ */
+public class CSSErrorStatistics implements CSSDiagnosticsSink {
+
+    private final Map<String, LongAdder> counts_ = new ConcurrentHashMap<>();
+    private final LongAdder errors_ = new LongAdder();
+    private final LongAdder warnings_ = new LongAdder();
+
+    /**
+     * Ctor.
+     */
+    public CSSErrorStatistics() {
+        for (final String key : AbstractCSSParser.getParserMessageKeys()) {
+            counts_.put(key, new LongAdder());
+        }
+        counts_.put(UNKNOWN_CODE, new LongAdder());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void error(final String code, final int line, final int column, final int offset) {
+        errors_.increment();
+        count(code);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void warning(final String code, final int line, final int column, final int offset) {
+        warnings_.increment();
+        count(code);
+    }
+
+    private void count(final String code) {
+        if (code == null) {
+            counts_.get(UNKNOWN_CODE).increment();
+            return;
+        }
+        LongAdder counter = counts_.get(code);
+        if (counter == null) {
+            counter = counts_.computeIfAbsent(code, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * @return the number of reported errors
+     */
+    public long getErrorCount() {
+        return errors_.sum();
+    }
+
+    /**
+     * @return the number of reported warnings
+     */
+    public long getWarningCount() {
+        return warnings_.sum();
+    }
+
+    /**
+     * @param code the message key
+     * @return the number of errors and warnings reported for the given message key
+     */
+    public long getCount(final String code) {
+        final LongAdder counter = counts_.get(code);
+        if (counter == null) {
+            return 0;
+        }
+        return counter.sum();
+    }
+
+    /**
+     * @return a snapshot of all counts greater than zero, sorted by message key
+     */
+    public Map<String, Long> getCounts() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (final Map.Entry<String, LongAdder> entry : counts_.entrySet()) {
+            final long count = entry.getValue().sum();
+            if (count > 0) {
+                result.put(entry.getKey(), count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        errors_.reset();
+        warnings_.reset();
+        for (final LongAdder counter : counts_.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * @param code the message key
+     * @return the message pattern for the given message key
+     */
+    public static String getMessage(final String code) {
+        return AbstractCSSParser.parserMessage(code);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "errors: " + getErrorCount() + ", warnings: " + getWarningCount() + " " + getCounts();
+    }
+}
@@ -108,6 +108,19 @@ public CSSException(final String message, final Exception e) {
         initCause(e);
     }
 
+    /**
+     * Creates a new CSSException with an embeded exception and a specified
+     * message.
+     * @param message the message
+     * @param e the cause
+     * @param writableStackTrace whether or not the stack trace should be filled in;
+     *        creating exceptions without stack trace is much cheaper
+     */
+    protected CSSException(final String message, final Exception e, final boolean writableStackTrace) {
+        super(null, e, true, writableStackTrace);
+        message_ = message;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+/**
+ * Global switch for the instrumentation of the parser.
+ *
+ * <p>If the module jdk.jfr is available at runtime the parser emits JDK Flight Recorder
+ * events (category "HtmlUnit CSS Parser") for parsing style sheets, style declarations
+ * and selectors and for building rule indexes; as long as no recording enables these
+ * events they cost nearly nothing. The module is optional; without it no events are created.
+ * In addition a {@link CSSParserMetrics} can be registered here; without metrics
+ * the parser does not even read the clock.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class CSSInstrumentation {
+
+    /** Name of the cache for compiled calc() expressions. */
+    public static final String CACHE_CALC_EXPRESSION = "calcExpression";
+    /** Name of the cache for the loaded sources of a {@code CSSImportResolver} run. */
+    public static final String CACHE_IMPORT_SOURCE = "importSource";
+    /** Name of the parser pool of the {@link CSSParserService}. */
+    public static final String CACHE_PARSER_POOL = "parserPool";
+    /** Name of the style sharing cache of a {@code CSSCascade}. */
+    public static final String CACHE_STYLE_SHARING = "styleSharing";
+
+    private static volatile CSSParserMetrics Metrics_;
+
+    private CSSInstrumentation() {
+    }
+
+    /**
+     * @return the registered metrics or null
+     */
+    public static CSSParserMetrics getMetrics() {
+        return Metrics_;
+    }
+
+    /**
+     * Registers the metrics used by all parsers.
+     *
+     * @param metrics the metrics or null to disable
+     */
+    public static void setMetrics(final CSSParserMetrics metrics) {
+        Metrics_ = metrics;
+    }
+
+    /**
+     * @return true if the flight recorder (module jdk.jfr) is available at runtime;
+     *         the events are only created in this case
+     */
+    public static boolean isFlightRecorderAvailable() {
+        return FlightRecorderHolder.AVAILABLE;
+    }
+
+    /**
+     * Checks the availability of the flight recorder on first use.
+     */
+    private static final class FlightRecorderHolder {
+        static final boolean AVAILABLE = isAvailable();
+
+        private static boolean isAvailable() {
+            try {
+                final Class<?> event = Class.forName("jdk.jfr.Event", false,
+                        CSSInstrumentation.class.getClassLoader());
+                return CSSInstrumentation.class.getModule().canRead(event.getModule());
+            }
+            catch (final ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        }
+    }
+}
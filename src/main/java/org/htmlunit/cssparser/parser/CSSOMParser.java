@@ -17,8 +17,11 @@
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 
 import org.htmlunit.cssparser.dom.AbstractCSSRuleImpl;
 import org.htmlunit.cssparser.dom.CSSCharsetRuleImpl;
@@ -30,12 +33,15 @@
 import org.htmlunit.cssparser.dom.CSSStyleDeclarationImpl;
 import org.htmlunit.cssparser.dom.CSSStyleRuleImpl;
 import org.htmlunit.cssparser.dom.CSSStyleSheetImpl;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
 import org.htmlunit.cssparser.dom.CSSUnknownRuleImpl;
 import org.htmlunit.cssparser.dom.CSSValueImpl;
+import org.htmlunit.cssparser.dom.DOMExceptionImpl;
 import org.htmlunit.cssparser.dom.MediaListImpl;
 import org.htmlunit.cssparser.dom.Property;
 import org.htmlunit.cssparser.parser.javacc.CSS3Parser;
 import org.htmlunit.cssparser.parser.media.MediaQueryList;
+import org.htmlunit.cssparser.parser.selector.SelectorKey;
 import org.htmlunit.cssparser.parser.selector.SelectorList;
 import org.w3c.dom.DOMException;
 
@@ -46,6 +52,11 @@ public class CSSOMParser {
 
     private final AbstractCSSParser parser_;
     private CSSStyleSheetImpl parentStyleSheet_;
+    private boolean lazyStyleDeclarations_;
+    private boolean lazySelectors_;
+    private boolean expandShorthands_;
+    private boolean sourceTracking_;
+    private int sourceOffset_;
 
     /**
      * Creates new CSSOMParser.
@@ -71,6 +82,84 @@ public void setErrorHandler(final CSSErrorHandler eh) {
         parser_.setErrorHandler(eh);
     }
 
+    /**
+     * <p>setDiagnosticsSink.</p>
+     *
+     * @param sink the diagnostics sink to be used
+     */
+    public void setDiagnosticsSink(final CSSDiagnosticsSink sink) {
+        parser_.setDiagnosticsSink(sink);
+    }
+
+    /**
+     * If set, the declarations of the style rules are not parsed together with
+     * the style sheet; every style rule keeps the (not copied) source of its
+     * declarations and parses them on the first access of the style.
+     * Errors inside the declarations are reported to the error handler and the
+     * diagnostics sink of this parser at that time (maybe from a different thread).
+     * If the error handler throws an exception, the style keeps the declarations
+     * parsed so far; the access of the style does not fail.
+     *
+     * @param lazyStyleDeclarations the new value
+     */
+    public void setLazyStyleDeclarations(final boolean lazyStyleDeclarations) {
+        lazyStyleDeclarations_ = lazyStyleDeclarations;
+    }
+
+    /**
+     * If set, simple selector lists of style rules are not parsed together with
+     * the style sheet; only the {@link SelectorKey}s are extracted and the rule
+     * keeps the (not copied) source of the selectors. The selectors are parsed
+     * on the first access.
+     * The scanner only accepts selectors it can validate completely; everything
+     * else is parsed together with the style sheet. This way invalid selectors
+     * are reported and dropped the same way as without this option.
+     *
+     * @param lazySelectors the new value
+     */
+    public void setLazySelectors(final boolean lazySelectors) {
+        lazySelectors_ = lazySelectors;
+    }
+
+    /**
+     * If set, the shorthand properties (e.g. margin, border, font or flex) of every
+     * parsed declaration block are expanded into their longhands at the end of the block.
+     * The declarations still contain the shorthands; the longhands are available
+     * from {@link CSSStyleDeclarationImpl#getLonghandProperties()}.
+     * Without this the expansion is done on the first access of the longhands;
+     * deferred declarations (see {@link #setLazyStyleDeclarations(boolean)})
+     * are always expanded on the first access.
+     *
+     * @param expandShorthands the new value
+     */
+    public void setExpandShorthands(final boolean expandShorthands) {
+        expandShorthands_ = expandShorthands;
+    }
+
+    /**
+     * If set, the style sheet keeps the source it was parsed from and the rules,
+     * style declarations and properties know their range in the source
+     * (see {@link AbstractCSSRuleImpl#getSourceStart()} and friends).
+     * This is required for {@link #reparseStyleSheet(CSSStyleSheetImpl, int, int, String)}
+     * and allows {@link CSSStyleSheetImpl#getCssText()} to copy unmodified rules from the source.
+     *
+     * @param sourceTracking the new value
+     */
+    public void setSourceTracking(final boolean sourceTracking) {
+        sourceTracking_ = sourceTracking;
+    }
+
+    /**
+     * Sets the offset of the parsed input in the tracked source; the offset
+     * is added to all the recorded source ranges. Useful if only a part
+     * of a larger source is parsed.
+     *
+     * @param sourceOffset the new value
+     */
+    public void setSourceOffset(final int sourceOffset) {
+        sourceOffset_ = sourceOffset;
+    }
+
     /**
      * Parses a SAC input source into a CSSOM style sheet.
      *
@@ -80,17 +169,258 @@ public void setErrorHandler(final CSSErrorHandler eh) {
      * @throws IOException if the underlying SAC parser throws an IOException
      */
     public CSSStyleSheetImpl parseStyleSheet(final InputSource source, final String href) throws IOException {
+        final StyleSheetParseEvent event = CSSInstrumentation.isFlightRecorderAvailable()
+                ? new StyleSheetParseEvent() : null;
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        final long start = metrics == null ? 0 : System.nanoTime();
+        if (event != null) {
+            event.begin();
+        }
+
         final CSSOMHandler handler = new CSSOMHandler();
         handler.setHref(href);
         parser_.setDocumentHandler(handler);
         parser_.parseStyleSheet(source);
         final Object o = handler.getRoot();
+
+        if (event != null) {
+            event.end();
+        }
+        final boolean commit = event != null && event.shouldCommit();
+        if (commit || metrics != null) {
+            final int rules = o instanceof CSSStyleSheetImpl ? ((CSSStyleSheetImpl) o).getCssRules().getLength() : 0;
+            if (commit) {
+                event.href = href;
+                event.chars = parsedChars();
+                event.rules = rules;
+                event.errors = parser_.getErrorCount();
+                event.commit();
+            }
+            if (metrics != null) {
+                metrics.styleSheetParsed(parsedChars(), rules, parser_.getErrorCount(), System.nanoTime() - start);
+            }
+        }
+
         if (o instanceof CSSStyleSheetImpl) {
-            return (CSSStyleSheetImpl) o;
+            final CSSStyleSheetImpl sheet = (CSSStyleSheetImpl) o;
+            if (sourceTracking_) {
+                final CssCharArrayStream stream = parser_.getCharArrayStream();
+                if (stream != null) {
+                    if (stream.getBegin() == 0) {
+                        sheet.setSource(stream.getBuffer(), stream.getEnd());
+                    }
+                    else {
+                        sheet.setSource(Arrays.copyOfRange(stream.getBuffer(), stream.getBegin(), stream.getEnd()),
+                                stream.getEnd() - stream.getBegin());
+                    }
+                }
+            }
+            return sheet;
         }
         return null;
     }
 
+    /**
+     * Applies a text edit to the source of the given style sheet and updates the
+     * sheet. Only the top level rules touched by the edit are parsed again;
+     * all the other rule objects (and their entries in the rule index of the sheet)
+     * are reused. If the last parsed rule is not terminated by '}' or ';' (e.g. an
+     * unknown at-rule swallowing the following rule) the next rule is parsed also.
+     * If the edited part can not be parsed on its own (e.g. the edit
+     * opens a block or a comment that swallows the following rules or introduces
+     * errors) the whole sheet is parsed again and the rule index is reset.
+     *
+     * <p>The sheet has to be parsed with source tracking enabled. The locators of
+     * the reused rules are not updated.</p>
+     *
+     * @param sheet the style sheet to update
+     * @param offset the offset of the edit in the source
+     * @param removedLength the number of chars removed at the offset
+     * @param insertedText the text inserted at the offset
+     * @return true if only parts of the sheet were parsed
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public boolean reparseStyleSheet(final CSSStyleSheetImpl sheet, final int offset, final int removedLength,
+            final String insertedText) throws IOException {
+        if (sheet.isFrozen() || sheet.getBase() != null) {
+            throw new DOMExceptionImpl(
+                DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                DOMExceptionImpl.READ_ONLY_STYLE_SHEET);
+        }
+        final char[] oldSource = sheet.getSource();
+        if (oldSource == null) {
+            throw new CSSException("The style sheet was parsed without source tracking.", null);
+        }
+        final int oldLength = sheet.getSourceLength();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > oldLength) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "/" + removedLength
+                    + " outside of the source (length " + oldLength + ").");
+        }
+
+        final int delta = insertedText.length() - removedLength;
+        final char[] source = new char[oldLength + delta];
+        System.arraycopy(oldSource, 0, source, 0, offset);
+        insertedText.getChars(0, insertedText.length(), source, offset);
+        System.arraycopy(oldSource, offset + removedLength, source, offset + insertedText.length(),
+                oldLength - offset - removedLength);
+
+        final List<AbstractCSSRuleImpl> rules = sheet.getCssRules().getRules();
+        final int count = rules.size();
+
+        // the range of a rule reaches up to the start of the next one; all ranges
+        // overlapping the edit are parsed again
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < count; i++) {
+            final AbstractCSSRuleImpl rule = rules.get(i);
+            if (rule.getSourceStart() < 0) {
+                first = -1;
+                break;
+            }
+
+            final int start = i == 0 ? 0 : rule.getSourceStart();
+            final int end = i + 1 == count ? oldLength + 1 : rules.get(i + 1).getSourceStart();
+            final boolean affected;
+            if (removedLength == 0) {
+                affected = start <= offset && offset < end;
+            }
+            else {
+                affected = start < offset + removedLength && offset < end;
+            }
+            if (affected) {
+                if (rule instanceof CSSCharsetRuleImpl || rule instanceof CSSImportRuleImpl) {
+                    // the position of these rules matters
+                    first = -1;
+                    break;
+                }
+                if (first == -1) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+
+        if (first > -1 && reparseRules(sheet, source, first, last, delta)) {
+            sheet.setSource(source, source.length);
+            return true;
+        }
+
+        // parse the whole sheet
+        final CSSRuleListImpl newRules = new CSSRuleListImpl();
+        parseRules(this, sheet, newRules, new InputSource(source, 0, source.length, 1, 1), 0);
+        rules.clear();
+        rules.addAll(newRules.getRules());
+        sheet.setSource(source, source.length);
+        sheet.resetRuleIndex();
+        return false;
+    }
+
+    private boolean reparseRules(final CSSStyleSheetImpl sheet, final char[] source,
+            final int first, final int last, final int delta) throws IOException {
+        final List<AbstractCSSRuleImpl> rules = sheet.getCssRules().getRules();
+        final int begin = first == 0 ? 0 : rules.get(first).getSourceStart();
+        final int end = last + 1 == rules.size() ? source.length : rules.get(last + 1).getSourceStart() + delta;
+
+        if (!new CssCharArrayStream(source, begin, end, 1, 1).isComplete(begin)) {
+            return false;
+        }
+
+        // the position of the first char for the locators
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < begin; i++) {
+            final char c = source[i];
+            if (c == '\n' || (c == '\r' && (i + 1 == begin || source[i + 1] != '\n'))) {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+
+        // parse the range with a separate parser, the errors are only counted
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazySelectors(lazySelectors_);
+        parser.setLazyStyleDeclarations(lazyStyleDeclarations_);
+        parser.setExpandShorthands(expandShorthands_);
+        final int[] errors = new int[1];
+        parser.setErrorHandler(new HandlerBase() {
+            @Override
+            public void warning(final CSSParseException exception) throws CSSException {
+                errors[0]++;
+            }
+
+            @Override
+            public void error(final CSSParseException exception) throws CSSException {
+                errors[0]++;
+            }
+
+            @Override
+            public void fatalError(final CSSParseException exception) throws CSSException {
+                errors[0]++;
+            }
+        });
+
+        final CSSRuleListImpl newRules = new CSSRuleListImpl();
+        parseRules(parser, sheet, newRules, new InputSource(source, begin, end, line, begin - lineStart + 1), begin);
+        if (errors[0] > 0) {
+            return false;
+        }
+        for (final AbstractCSSRuleImpl rule : newRules.getRules()) {
+            if (rule instanceof CSSCharsetRuleImpl || rule instanceof CSSImportRuleImpl) {
+                return false;
+            }
+        }
+        if (newRules.getLength() > 0 && end < source.length
+                && !isTerminated(source, newRules.getRules().get(newRules.getLength() - 1))) {
+            // the last rule was ended by the end of the range (e.g. an unknown at-rule
+            // without ';'); parsing the whole sheet it continues into the next rule
+            return reparseRules(sheet, source, first, last + 1, delta);
+        }
+
+        final List<AbstractCSSRuleImpl> replaced = rules.subList(first, last + 1);
+        final List<AbstractCSSRuleImpl> removed = new ArrayList<>(replaced);
+        replaced.clear();
+        replaced.addAll(newRules.getRules());
+
+        final List<AbstractCSSRuleImpl> following = rules.subList(first + newRules.getLength(), rules.size());
+        for (final AbstractCSSRuleImpl rule : following) {
+            rule.shiftSourceRange(delta);
+        }
+
+        final CSSStyleSheetRuleIndex index = sheet.getRuleIndex();
+        if (index != null) {
+            index.replaceRules(removed, newRules.getRules(), following);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the rule ends with its (not escaped) terminator '}' or ';'.
+     */
+    private static boolean isTerminated(final char[] source, final AbstractCSSRuleImpl rule) {
+        final int end = rule.getSourceEnd();
+        if (end < 1 || (source[end - 1] != '}' && source[end - 1] != ';')) {
+            return false;
+        }
+        int backslashes = 0;
+        while (end - 2 - backslashes >= 0 && source[end - 2 - backslashes] == '\\') {
+            backslashes++;
+        }
+        return backslashes % 2 == 0;
+    }
+
+    private static void parseRules(final CSSOMParser parser, final CSSStyleSheetImpl sheet,
+            final CSSRuleListImpl rules, final InputSource source, final int sourceOffset) throws IOException {
+        final Deque<Object> nodeStack = new ArrayDeque<>();
+        nodeStack.push(sheet);
+        nodeStack.push(rules);
+        parser.setParentStyleSheet(sheet);
+        final CSSOMHandler handler = parser.new CSSOMHandler(nodeStack);
+        handler.trackSource_ = true;
+        handler.sourceOffset_ = sourceOffset;
+        parser.parser_.setDocumentHandler(handler);
+        parser.parser_.parseStyleSheet(source);
+    }
+
     /**
      * Parses a input string into a CSSOM style declaration.
      *
@@ -113,11 +443,46 @@ public CSSStyleDeclarationImpl parseStyleDeclaration(final String styleDecl) thr
      */
     public void parseStyleDeclaration(final CSSStyleDeclarationImpl sd, final String styleDecl) throws IOException {
         try (InputSource source = new InputSource(new StringReader(styleDecl))) {
-            final Deque<Object> nodeStack = new ArrayDeque<>();
-            nodeStack.push(sd);
-            final CSSOMHandler handler = new CSSOMHandler(nodeStack);
-            parser_.setDocumentHandler(handler);
-            parser_.parseStyleDeclaration(source);
+            parseStyleDeclaration(sd, source);
+        }
+    }
+
+    /**
+     * Parses a SAC input source into a CSSOM style declaration.
+     *
+     * @param sd the CSSOM style declaration
+     * @param source the SAC input source
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public void parseStyleDeclaration(final CSSStyleDeclarationImpl sd, final InputSource source)
+            throws IOException {
+        final StyleDeclarationParseEvent event = CSSInstrumentation.isFlightRecorderAvailable()
+                ? new StyleDeclarationParseEvent() : null;
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        final long start = metrics == null ? 0 : System.nanoTime();
+        if (event != null) {
+            event.begin();
+        }
+
+        final Deque<Object> nodeStack = new ArrayDeque<>();
+        nodeStack.push(sd);
+        final CSSOMHandler handler = new CSSOMHandler(nodeStack);
+        parser_.setDocumentHandler(handler);
+        parser_.parseStyleDeclaration(source);
+        if (expandShorthands_) {
+            sd.expandShorthands();
+        }
+
+        if (event != null) {
+            event.end();
+        }
+        if (event != null && event.shouldCommit()) {
+            event.chars = parsedChars();
+            event.errors = parser_.getErrorCount();
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.styleDeclarationParsed(parsedChars(), parser_.getErrorCount(), System.nanoTime() - start);
         }
     }
 
@@ -165,10 +530,50 @@ public AbstractCSSRuleImpl parseRule(final String rule) throws IOException {
      */
     public SelectorList parseSelectors(final String selectors) throws IOException {
         try (InputSource source = new InputSource(new StringReader(selectors))) {
-            final HandlerBase handler = new HandlerBase();
-            parser_.setDocumentHandler(handler);
-            return parser_.parseSelectors(source);
+            return parseSelectors(source);
+        }
+    }
+
+    /**
+     * Parses a SAC input source into a SelectorList.
+     *
+     * @param source the SAC input source
+     * @return the selector list
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public SelectorList parseSelectors(final InputSource source) throws IOException {
+        final SelectorsParseEvent event = CSSInstrumentation.isFlightRecorderAvailable()
+                ? new SelectorsParseEvent() : null;
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        final long start = metrics == null ? 0 : System.nanoTime();
+        if (event != null) {
+            event.begin();
         }
+
+        final HandlerBase handler = new HandlerBase();
+        parser_.setDocumentHandler(handler);
+        final SelectorList selectors = parser_.parseSelectors(source);
+
+        if (event != null) {
+            event.end();
+        }
+        if (event != null && event.shouldCommit()) {
+            event.chars = parsedChars();
+            event.errors = parser_.getErrorCount();
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.selectorsParsed(parsedChars(), parser_.getErrorCount(), System.nanoTime() - start);
+        }
+        return selectors;
+    }
+
+    private int parsedChars() {
+        final CssCharArrayStream stream = parser_.getCharArrayStream();
+        if (stream == null) {
+            return 0;
+        }
+        return stream.getEnd() - stream.getBegin();
     }
 
     /**
@@ -208,6 +613,8 @@ class CSSOMHandler implements DocumentHandler {
         private final Deque<Object> nodeStack_;
         private Object root_;
         private String href_;
+        private boolean trackSource_ = sourceTracking_;
+        private int sourceOffset_ = CSSOMParser.this.sourceOffset_;
 
         private String getHref() {
             return href_;
@@ -260,6 +667,10 @@ public void ignorableAtRule(final String atRule, final Locator locator) throws C
                 getParentRule(),
                 atRule);
             ir.setLocator(locator);
+            if (trackSource_) {
+                final int start = getSourceOffset(locator);
+                ir.setSourceRange(start, getSourceEnd(start, false));
+            }
             if (!nodeStack_.isEmpty()) {
                 ((CSSRuleListImpl) nodeStack_.peek()).add(ir);
             }
@@ -276,6 +687,10 @@ public void charset(final String characterEncoding, final Locator locator)
                     getParentRule(),
                     characterEncoding);
             cr.setLocator(locator);
+            if (trackSource_) {
+                final int start = getSourceOffset(locator);
+                cr.setSourceRange(start, getSourceEnd(start, false));
+            }
             if (!nodeStack_.isEmpty()) {
                 ((CSSRuleListImpl) nodeStack_.peek()).add(cr);
             }
@@ -294,6 +709,10 @@ public void importStyle(final String uri, final MediaQueryList media,
                 uri,
                 new MediaListImpl(media));
             ir.setLocator(locator);
+            if (trackSource_) {
+                final int start = getSourceOffset(locator);
+                ir.setSourceRange(start, getSourceEnd(start, false));
+            }
             if (!nodeStack_.isEmpty()) {
                 ((CSSRuleListImpl) nodeStack_.peek()).add(ir);
             }
@@ -311,6 +730,7 @@ public void startMedia(final MediaQueryList media, final Locator locator) throws
                 getParentRule(),
                 ml);
             mr.setLocator(locator);
+            startRule(mr, null);
             if (!nodeStack_.isEmpty()) {
                 ((CSSRuleListImpl) nodeStack_.peek()).add(mr);
             }
@@ -327,6 +747,7 @@ public void endMedia(final MediaQueryList media) throws CSSException {
             // Pop the rule list and media rule nodes
             nodeStack_.pop();
             root_ = nodeStack_.pop();
+            endRule((AbstractCSSRuleImpl) root_, null);
         }
 
         @Override
@@ -344,6 +765,7 @@ public void startPage(final String name, final String pseudoPage, final Locator
             // Create the style declaration
             final CSSStyleDeclarationImpl decl = new CSSStyleDeclarationImpl(pr);
             pr.setStyle(decl);
+            startRule(pr, decl);
             nodeStack_.push(pr);
             nodeStack_.push(decl);
         }
@@ -351,8 +773,9 @@ public void startPage(final String name, final String pseudoPage, final Locator
         @Override
         public void endPage(final String name, final String pseudoPage) throws CSSException {
             // Pop both the style declaration and the page rule nodes
-            nodeStack_.pop();
+            final Object decl = nodeStack_.pop();
             root_ = nodeStack_.pop();
+            endRule((AbstractCSSRuleImpl) root_, (CSSStyleDeclarationImpl) decl);
         }
 
         @Override
@@ -369,6 +792,7 @@ public void startFontFace(final Locator locator) throws CSSException {
             // Create the style declaration
             final CSSStyleDeclarationImpl decl = new CSSStyleDeclarationImpl(ffr);
             ffr.setStyle(decl);
+            startRule(ffr, decl);
             nodeStack_.push(ffr);
             nodeStack_.push(decl);
         }
@@ -376,8 +800,9 @@ public void startFontFace(final Locator locator) throws CSSException {
         @Override
         public void endFontFace() throws CSSException {
             // Pop both the style declaration and the font face rule nodes
-            nodeStack_.pop();
+            final Object decl = nodeStack_.pop();
             root_ = nodeStack_.pop();
+            endRule((AbstractCSSRuleImpl) root_, (CSSStyleDeclarationImpl) decl);
         }
 
         @Override
@@ -386,6 +811,25 @@ public void startSelector(final SelectorList selectors, final Locator locator) t
             final CSSStyleRuleImpl sr = new CSSStyleRuleImpl(
                 CSSOMParser.this.getParentStyleSheet(),
                 getParentRule(), selectors);
+            startStyleRule(sr, locator);
+        }
+
+        @Override
+        public boolean isSelectorDeferred() {
+            return lazySelectors_;
+        }
+
+        @Override
+        public void deferredSelector(final char[] source, final int start, final int end,
+                final SelectorKey[] keys, final Locator locator) throws CSSException {
+            final CSSStyleRuleImpl sr = new CSSStyleRuleImpl(
+                CSSOMParser.this.getParentStyleSheet(),
+                getParentRule(), null);
+            sr.setDeferredSelectors(source, start, end, keys);
+            startStyleRule(sr, locator);
+        }
+
+        private void startStyleRule(final CSSStyleRuleImpl sr, final Locator locator) {
             sr.setLocator(locator);
             if (!nodeStack_.isEmpty()) {
                 final Object o = nodeStack_.peek();
@@ -395,15 +839,30 @@ public void startSelector(final SelectorList selectors, final Locator locator) t
             // Create the style declaration
             final CSSStyleDeclarationImpl decl = new CSSStyleDeclarationImpl(sr);
             sr.setStyle(decl);
+            startRule(sr, decl);
             nodeStack_.push(sr);
             nodeStack_.push(decl);
         }
 
+        @Override
+        public boolean isStyleDeclarationDeferred() {
+            return lazyStyleDeclarations_;
+        }
+
+        @Override
+        public void deferredStyleDeclaration(final char[] source, final int start, final int end,
+                final Locator locator) throws CSSException {
+            final CSSStyleDeclarationImpl decl = (CSSStyleDeclarationImpl) nodeStack_.peek();
+            ((CSSStyleRuleImpl) decl.getParentRule()).setDeferredStyle(source, start, end, locator,
+                    parser_.getRegisteredErrorHandler(), parser_.getDiagnosticsSink());
+        }
+
         @Override
         public void endSelector(final SelectorList selectors) throws CSSException {
             // Pop both the style declaration and the style rule nodes
-            nodeStack_.pop();
+            final Object decl = nodeStack_.pop();
             root_ = nodeStack_.pop();
+            endRule((AbstractCSSRuleImpl) root_, (CSSStyleDeclarationImpl) decl);
         }
 
         @Override
@@ -413,11 +872,95 @@ public void property(final String name, final LexicalUnit value, final boolean i
             try {
                 final Property property = new Property(name, new CSSValueImpl(value), important);
                 property.setLocator(locator);
+                if (trackSource_) {
+                    final int start = getSourceOffset(locator);
+                    property.setSourceRange(start, getSourceEnd(start, false));
+                }
                 decl.addProperty(property);
             }
             catch (final DOMException e) {
-                parser_.getErrorHandler().error(parser_.toCSSParseException(e));
+                parser_.reportError(parser_.toCSSParseException(e));
+            }
+        }
+
+        /**
+         * Records the start of the given rule and of its declarations;
+         * the declarations start with the token following the already consumed '{'.
+         */
+        private void startRule(final AbstractCSSRuleImpl rule, final CSSStyleDeclarationImpl decl) {
+            if (trackSource_) {
+                rule.setSourceRange(getSourceOffset(rule.getLocator()), -1);
+                if (decl != null) {
+                    decl.setSourceRange(getNextTokenOffset(), -1);
+                }
+            }
+        }
+
+        /**
+         * Records the end of the given rule and of its declarations;
+         * the closing '}' is consumed already. The rule counts as unmodified
+         * from now on.
+         */
+        private void endRule(final AbstractCSSRuleImpl rule, final CSSStyleDeclarationImpl decl) {
+            rule.setModified(false);
+            if (expandShorthands_ && decl != null) {
+                decl.expandShorthands();
+            }
+            if (trackSource_) {
+                rule.setSourceRange(rule.getSourceStart(), getSourceEnd(rule.getSourceStart(), false));
+                if (decl != null) {
+                    decl.setSourceRange(decl.getSourceStart(), getSourceEnd(decl.getSourceStart(), true));
+                }
+            }
+        }
+
+        /**
+         * @return the offset of the given position in the tracked source or -1
+         */
+        private int getSourceOffset(final Locator locator) {
+            final CssCharArrayStream stream = parser_.getCharArrayStream();
+            if (stream == null || locator == null) {
+                return -1;
+            }
+            final int offset = stream.getOffset(locator.getLineNumber(), locator.getColumnNumber());
+            if (offset < 0) {
+                return -1;
+            }
+            return offset - stream.getBegin() + sourceOffset_;
+        }
+
+        /**
+         * @return the offset of the next token in the tracked source or -1
+         */
+        private int getNextTokenOffset() {
+            final CssCharArrayStream stream = parser_.getCharArrayStream();
+            if (stream == null) {
+                return -1;
+            }
+            return parser_.getNextTokenOffset() - stream.getBegin() + sourceOffset_;
+        }
+
+        /**
+         * Returns the offset after the last consumed char in the tracked source
+         * without trailing whitespace (and without the closing '}' if beforeBrace is set).
+         * The result is never less than the given start.
+         */
+        private int getSourceEnd(final int start, final boolean beforeBrace) {
+            final CssCharArrayStream stream = parser_.getCharArrayStream();
+            if (stream == null) {
+                return -1;
+            }
+            final int shift = sourceOffset_ - stream.getBegin();
+            final int min = Math.max(stream.getBegin(), start - shift);
+            final char[] buffer = stream.getBuffer();
+            int end = parser_.getConsumedOffset();
+            if (beforeBrace && end > min && buffer[end - 1] == '}') {
+                end--;
+            }
+            while (end > min && Character.isWhitespace(buffer[end - 1])) {
+                end--;
             }
+            return end + shift;
         }
 
         private AbstractCSSRuleImpl getParentRule() {
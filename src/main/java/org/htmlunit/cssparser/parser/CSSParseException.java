@@ -14,6 +14,10 @@
  */
 package org.htmlunit.cssparser.parser;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.function.Supplier;
+
 /**
  * Encapsulate a CSS parse error or warning.
  *
@@ -25,6 +29,10 @@ public class CSSParseException extends CSSException {
     private final int lineNumber_;
     private final int columnNumber_;
 
+    private final String messageKey_;
+    private transient Supplier<String> messageSupplier_;
+    private String formattedMessage_;
+
     /**
      * Create a new CSSParseException from a message and a Locator.
      *
@@ -102,6 +110,57 @@ public CSSParseException(final String message, final String uri,
         uri_ = uri;
         lineNumber_ = lineNumber;
         columnNumber_ = columnNumber;
+        messageKey_ = null;
+    }
+
+    /**
+     * Create a new CSSParseException with a lazy message.
+     *
+     * <p>This constructor is used by the parser to make error reporting cheap;
+     * the message is only formatted if someone asks for it.</p>
+     *
+     * @param messageKey the key of the message; this is a short, stable
+     *                   identifier of the kind of the problem
+     * @param messageSupplier the supplier of the message; called at most once
+     * @param uri The URI of the document that generated
+     *                 the error or warning.
+     * @param lineNumber The line number of the end of the text that
+     *                   caused the error or warning.
+     * @param columnNumber The column number of the end of the text that
+     *                     cause the error or warning.
+     * @param writableStackTrace whether or not the stack trace should be filled in
+     */
+    public CSSParseException(final String messageKey, final Supplier<String> messageSupplier, final String uri,
+            final int lineNumber, final int columnNumber, final boolean writableStackTrace) {
+        super(null, null, writableStackTrace);
+        uri_ = uri;
+        lineNumber_ = lineNumber;
+        columnNumber_ = columnNumber;
+        messageKey_ = messageKey;
+        messageSupplier_ = messageSupplier;
+    }
+
+    /**
+     * @return the key of the message if this exception was created by the parser, null otherwise
+     */
+    public String getMessageKey() {
+        return messageKey_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getMessage() {
+        final Supplier<String> supplier = messageSupplier_;
+        if (supplier != null) {
+            formattedMessage_ = supplier.get();
+            messageSupplier_ = null;
+        }
+        if (formattedMessage_ != null) {
+            return formattedMessage_;
+        }
+        return super.getMessage();
     }
 
     /**
@@ -139,4 +198,10 @@ public int getLineNumber() {
     public int getColumnNumber() {
         return columnNumber_;
     }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        // the supplier is not serializable
+        getMessage();
+        out.defaultWriteObject();
+    }
 }
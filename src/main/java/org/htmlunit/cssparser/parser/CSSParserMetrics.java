@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+/**
+ * Receives measurements from the parser and the object model, e.g. to feed
+ * counters and histograms of a metrics library. Register an implementation
+ * with {@link CSSInstrumentation#setMetrics(CSSParserMetrics)}.
+ *
+ * <p>The methods are called by the parsing threads; implementations have to be
+ * thread safe and fast. All methods do nothing by default.</p>
+ *
+ * @author Ronald Brill
+ * @see CSSParserStatistics
+ */
+public interface CSSParserMetrics {
+
+    /**
+     * A style sheet was parsed.
+     *
+     * @param chars the number of chars parsed
+     * @param rules the number of top level rules
+     * @param errors the number of errors reported
+     * @param nanos the time needed
+     */
+    default void styleSheetParsed(final int chars, final int rules, final int errors, final long nanos) {
+        // nothing
+    }
+
+    /**
+     * A style declaration (e.g. a style attribute) was parsed.
+     *
+     * @param chars the number of chars parsed
+     * @param errors the number of errors reported
+     * @param nanos the time needed
+     */
+    default void styleDeclarationParsed(final int chars, final int errors, final long nanos) {
+        // nothing
+    }
+
+    /**
+     * A selector list was parsed.
+     *
+     * @param chars the number of chars parsed
+     * @param errors the number of errors reported
+     * @param nanos the time needed
+     */
+    default void selectorsParsed(final int chars, final int errors, final long nanos) {
+        // nothing
+    }
+
+    /**
+     * The rule index of a style sheet was built.
+     *
+     * @param rules the number of top level rules
+     * @param nanos the time needed
+     */
+    default void ruleIndexBuilt(final int rules, final long nanos) {
+        // nothing
+    }
+
+    /**
+     * The parser reported an error or a warning.
+     *
+     * @param code the message key; {@link CSSDiagnosticsSink#UNKNOWN_CODE} for problems without key
+     * @param warning true for warnings
+     */
+    default void problem(final String code, final boolean warning) {
+        // nothing
+    }
+
+    /**
+     * A lookup in one of the caches.
+     *
+     * @param cache the name of the cache
+     * @param hit true if the value was found
+     */
+    default void cacheAccess(final String cache, final boolean hit) {
+        // nothing
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.htmlunit.cssparser.dom.CSSStyleDeclarationImpl;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl;
+
+/**
+ * Parses many independent style sheets or style declarations (e.g. style attributes)
+ * concurrently using the given executor (an executor using virtual threads works fine,
+ * the service does not block while holding a monitor).
+ *
+ * <p>The results are delivered in the order of the inputs; every result contains the
+ * problems reported while parsing this input. At most <code>maxInFlight</code> inputs are
+ * parsed or waiting for delivery at the same time, the caller is blocked until
+ * the oldest pending input is done if the limit is reached. This way the memory
+ * used is bounded even for endless streams of inputs.</p>
+ *
+ * <p>The parsers are pooled and reused; the pool holds at most as many parsers as inputs
+ * were parsed at the same time. The service is thread safe and can be used by many
+ * callers concurrently.</p>
+ *
+ * @author Ronald Brill
+ */
+public class CSSParserService {
+
+    private final Executor executor_;
+    private final int maxInFlight_;
+    private final Queue<CSSOMParser> parsers_ = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Ctor.
+     *
+     * @param executor the executor used for parsing
+     * @param maxInFlight the max number of inputs parsed or waiting for delivery per call
+     */
+    public CSSParserService(final Executor executor, final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight has to be at least 1 (was " + maxInFlight + ").");
+        }
+        executor_ = executor;
+        maxInFlight_ = maxInFlight;
+    }
+
+    /**
+     * Creates a new parser for the pool; override this to configure the parsers.
+     * The error handler of the parser is replaced for every input.
+     *
+     * @return the new parser
+     */
+    protected CSSOMParser createParser() {
+        return new CSSOMParser();
+    }
+
+    /**
+     * Parses all the style sheets; the uri of the source is used as href.
+     * The sources are closed after parsing.
+     *
+     * @param sources the sources
+     * @return the results in the order of the sources
+     */
+    public List<Result<CSSStyleSheetImpl>> parseAll(final Collection<InputSource> sources) {
+        final List<Result<CSSStyleSheetImpl>> results = new ArrayList<>(sources.size());
+        parseAll(sources.iterator(), results::add);
+        return results;
+    }
+
+    /**
+     * Parses all the style sheets; the uri of the source is used as href.
+     * The sources are closed after parsing.
+     *
+     * @param sources the sources; only consumed by the calling thread
+     * @param consumer receives the results in the order of the sources; called by the calling thread
+     */
+    public void parseAll(final Iterator<InputSource> sources, final Consumer<Result<CSSStyleSheetImpl>> consumer) {
+        process(sources, (parser, source) -> {
+            try (InputSource input = source) {
+                return parser.parseStyleSheet(input, input.getURI());
+            }
+        }, consumer);
+    }
+
+    /**
+     * Parses all the style declarations (without '{' and '}').
+     *
+     * @param declarations the declarations
+     * @return the results in the order of the declarations
+     */
+    public List<Result<CSSStyleDeclarationImpl>> parseStyleDeclarations(final Collection<String> declarations) {
+        final List<Result<CSSStyleDeclarationImpl>> results = new ArrayList<>(declarations.size());
+        parseStyleDeclarations(declarations.iterator(), results::add);
+        return results;
+    }
+
+    /**
+     * Parses all the style declarations (without '{' and '}').
+     *
+     * @param declarations the declarations; only consumed by the calling thread
+     * @param consumer receives the results in the order of the declarations; called by the calling thread
+     */
+    public void parseStyleDeclarations(final Iterator<String> declarations,
+            final Consumer<Result<CSSStyleDeclarationImpl>> consumer) {
+        process(declarations, CSSOMParser::parseStyleDeclaration, consumer);
+    }
+
+    private <S, T> void process(final Iterator<S> inputs, final ParseFunction<S, T> function,
+            final Consumer<Result<T>> consumer) {
+        final Deque<CompletableFuture<Result<T>>> pending = new ArrayDeque<>(maxInFlight_);
+        while (inputs.hasNext()) {
+            if (pending.size() == maxInFlight_) {
+                consumer.accept(pending.poll().join());
+            }
+            final S input = inputs.next();
+            pending.add(CompletableFuture.supplyAsync(() -> parse(input, function), executor_));
+        }
+        while (!pending.isEmpty()) {
+            consumer.accept(pending.poll().join());
+        }
+    }
+
+    private <S, T> Result<T> parse(final S input, final ParseFunction<S, T> function) {
+        CSSOMParser parser = parsers_.poll();
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        if (metrics != null) {
+            metrics.cacheAccess(CSSInstrumentation.CACHE_PARSER_POOL, parser != null);
+        }
+        if (parser == null) {
+            parser = createParser();
+        }
+
+        final List<CSSParseException> errors = new ArrayList<>(0);
+        parser.setErrorHandler(new CollectingErrorHandler(errors));
+        try {
+            final T value = function.parse(parser, input);
+            parser.setErrorHandler(null);
+            parsers_.offer(parser);
+            return new Result<>(value, errors, null);
+        }
+        catch (final IOException | CSSException e) {
+            parser.setErrorHandler(null);
+            parsers_.offer(parser);
+            return new Result<>(null, errors, e);
+        }
+        catch (final RuntimeException e) {
+            // the state of the parser is unknown; don't reuse it
+            return new Result<>(null, errors, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ParseFunction<S, T> {
+        T parse(CSSOMParser parser, S input) throws IOException;
+    }
+
+    /**
+     * Collects all the problems; without stack traces.
+     */
+    private static final class CollectingErrorHandler implements CSSErrorHandler {
+        private final List<CSSParseException> errors_;
+
+        CollectingErrorHandler(final List<CSSParseException> errors) {
+            errors_ = errors;
+        }
+
+        @Override
+        public void warning(final CSSParseException exception) throws CSSException {
+            errors_.add(exception);
+        }
+
+        @Override
+        public void error(final CSSParseException exception) throws CSSException {
+            errors_.add(exception);
+        }
+
+        @Override
+        public void fatalError(final CSSParseException exception) throws CSSException {
+            errors_.add(exception);
+        }
+
+        @Override
+        public boolean isStackTraceRequired() {
+            return false;
+        }
+    }
+
+    /**
+     * The result of parsing one input.
+     *
+     * @param <T> the type of the parsed value
+     */
+    public static final class Result<T> {
+        private final T value_;
+        private final List<CSSParseException> errors_;
+        private final Exception exception_;
+
+        Result(final T value, final List<CSSParseException> errors, final Exception exception) {
+            value_ = value;
+            errors_ = Collections.unmodifiableList(errors);
+            exception_ = exception;
+        }
+
+        /**
+         * @return the parsed value or null if parsing failed
+         */
+        public T getValue() {
+            return value_;
+        }
+
+        /**
+         * @return the warnings and errors reported while parsing
+         */
+        public List<CSSParseException> getErrors() {
+            return errors_;
+        }
+
+        /**
+         * @return the exception if parsing failed or null
+         */
+        public Exception getException() {
+            return exception_;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple {@link CSSParserMetrics} implementation with counters and latency histograms;
+ * can be used directly or as template for a bridge to a metrics library.
+ *
+ * <p>The histograms have one bucket per power of two microseconds; bucket <code>i</code>
+ * counts the parse calls that took less than <code>2^i</code> microseconds (the last bucket
+ * counts all the longer ones).</p>
+ *
+ * @author Ronald Brill
+ */
+public class CSSParserStatistics implements CSSParserMetrics {
+
+    /** The number of histogram buckets. */
+    public static final int BUCKETS = 24;
+
+    private final Counter styleSheets_ = new Counter();
+    private final Counter styleDeclarations_ = new Counter();
+    private final Counter selectors_ = new Counter();
+    private final Counter ruleIndexes_ = new Counter();
+    private final LongAdder errors_ = new LongAdder();
+    private final LongAdder warnings_ = new LongAdder();
+    private final Map<String, LongAdder> problems_ = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> cacheHits_ = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> cacheMisses_ = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void styleSheetParsed(final int chars, final int rules, final int errors, final long nanos) {
+        styleSheets_.add(chars, nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void styleDeclarationParsed(final int chars, final int errors, final long nanos) {
+        styleDeclarations_.add(chars, nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void selectorsParsed(final int chars, final int errors, final long nanos) {
+        selectors_.add(chars, nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void ruleIndexBuilt(final int rules, final long nanos) {
+        ruleIndexes_.add(0, nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void problem(final String code, final boolean warning) {
+        if (warning) {
+            warnings_.increment();
+        }
+        else {
+            errors_.increment();
+        }
+        increment(problems_, code == null ? CSSDiagnosticsSink.UNKNOWN_CODE : code);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cacheAccess(final String cache, final boolean hit) {
+        increment(hit ? cacheHits_ : cacheMisses_, cache);
+    }
+
+    private static void increment(final Map<String, LongAdder> counters, final String key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    private static long get(final Map<String, LongAdder> counters, final String key) {
+        final LongAdder counter = counters.get(key);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return the counters for parsing style sheets
+     */
+    public Counter getStyleSheets() {
+        return styleSheets_;
+    }
+
+    /**
+     * @return the counters for parsing style declarations
+     */
+    public Counter getStyleDeclarations() {
+        return styleDeclarations_;
+    }
+
+    /**
+     * @return the counters for parsing selectors
+     */
+    public Counter getSelectors() {
+        return selectors_;
+    }
+
+    /**
+     * @return the counters for building rule indexes
+     */
+    public Counter getRuleIndexes() {
+        return ruleIndexes_;
+    }
+
+    /**
+     * @return the number of reported errors
+     */
+    public long getErrorCount() {
+        return errors_.sum();
+    }
+
+    /**
+     * @return the number of reported warnings
+     */
+    public long getWarningCount() {
+        return warnings_.sum();
+    }
+
+    /**
+     * @param code the message key
+     * @return the number of errors and warnings reported for the given message key
+     */
+    public long getProblemCount(final String code) {
+        return get(problems_, code);
+    }
+
+    /**
+     * @param cache the name of the cache
+     * @return the number of hits
+     */
+    public long getCacheHits(final String cache) {
+        return get(cacheHits_, cache);
+    }
+
+    /**
+     * @param cache the name of the cache
+     * @return the number of misses
+     */
+    public long getCacheMisses(final String cache) {
+        return get(cacheMisses_, cache);
+    }
+
+    /**
+     * Counters and latency histogram for one kind of operation.
+     */
+    public static final class Counter {
+        private final LongAdder count_ = new LongAdder();
+        private final LongAdder chars_ = new LongAdder();
+        private final LongAdder nanos_ = new LongAdder();
+        private final AtomicLongArray histogram_ = new AtomicLongArray(BUCKETS);
+
+        Counter() {
+        }
+
+        void add(final int chars, final long nanos) {
+            count_.increment();
+            chars_.add(chars);
+            nanos_.add(nanos);
+
+            final long micros = nanos / 1000;
+            final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            histogram_.incrementAndGet(bucket);
+        }
+
+        /**
+         * @return the number of operations
+         */
+        public long getCount() {
+            return count_.sum();
+        }
+
+        /**
+         * @return the number of processed chars
+         */
+        public long getChars() {
+            return chars_.sum();
+        }
+
+        /**
+         * @return the total time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos_.sum();
+        }
+
+        /**
+         * @return the processed chars per second
+         */
+        public double getCharsPerSecond() {
+            final long nanos = getNanos();
+            if (nanos == 0) {
+                return 0;
+            }
+            return getChars() * 1e9 / nanos;
+        }
+
+        /**
+         * @return a copy of the latency histogram
+         */
+        public long[] getHistogram() {
+            final long[] result = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                result[i] = histogram_.get(i);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.util.Locale;
+
+import org.htmlunit.cssparser.parser.LexicalUnit.LexicalUnitType;
+
+/**
+ * The compiled form of a calc() expression.
+ * The flat chain of lexical units is turned into a tree once, all absolute
+ * units are converted to their canonical unit and constant sub expressions
+ * are folded.
+ *
+ * @author Ronald Brill
+ */
+final class CalcExpression {
+
+    /** Marker for expressions we are not able to evaluate. */
+    static final CalcExpression INVALID = new CalcExpression(null);
+
+    private enum Kind {
+        CONSTANT, RELATIVE, REFERENCE, ADD, SUBTRACT, MULTIPLY, DIVIDE
+    }
+
+    /**
+     * The value categories used for type checking.
+     * ANY is used for var() references because they are only known at runtime.
+     */
+    enum Category {
+        NUMBER, LENGTH, PERCENTAGE, ANGLE, TIME, FREQUENCY, ANY
+    }
+
+    private static final class Node {
+        private final Kind kind_;
+        private final Category category_;
+        private final double value_;
+        private final LexicalUnit unit_;
+        private final Node left_;
+        private final Node right_;
+
+        Node(final Kind kind, final Category category, final double value,
+                final LexicalUnit unit, final Node left, final Node right) {
+            kind_ = kind;
+            category_ = category;
+            value_ = value;
+            unit_ = unit;
+            left_ = left;
+            right_ = right;
+        }
+    }
+
+    private final Node root_;
+
+    private CalcExpression(final Node root) {
+        root_ = root;
+    }
+
+    /**
+     * Compiles the parameters of a calc() function.
+     *
+     * @param params the first parameter
+     * @return the compiled expression or {@link #INVALID}
+     */
+    static CalcExpression compile(final LexicalUnit params) {
+        if (params == null) {
+            return INVALID;
+        }
+        final Compiler compiler = new Compiler(params);
+        final Node root = compiler.sum();
+        if (root == null || compiler.current_ != null) {
+            return INVALID;
+        }
+        return new CalcExpression(root);
+    }
+
+    /**
+     * @return true if the expression was reduced to a constant at compile time
+     */
+    boolean isConstant() {
+        return root_ != null && root_.kind_ == Kind.CONSTANT;
+    }
+
+    /**
+     * @return true if this is a valid expression
+     */
+    boolean isValid() {
+        return root_ != null;
+    }
+
+    /**
+     * @return the category of the result
+     */
+    Category getCategory() {
+        return root_ == null ? null : root_.category_;
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param resolver the resolver used for relative units and references
+     * @param references the state of the var() references or null
+     * @return the value in the canonical unit of the category or NaN
+     */
+    double evaluate(final ValueResolver resolver, final ValueResolver.References references) {
+        if (root_ == null) {
+            return Double.NaN;
+        }
+        return evaluate(root_, resolver, references);
+    }
+
+    private static double evaluate(final Node node, final ValueResolver resolver,
+            final ValueResolver.References references) {
+        switch (node.kind_) {
+            case CONSTANT:
+                return node.value_;
+            case RELATIVE:
+            case REFERENCE:
+                return resolver.resolve(node.unit_, references);
+            case ADD:
+                return evaluate(node.left_, resolver, references) + evaluate(node.right_, resolver, references);
+            case SUBTRACT:
+                return evaluate(node.left_, resolver, references) - evaluate(node.right_, resolver, references);
+            case MULTIPLY:
+                return evaluate(node.left_, resolver, references) * evaluate(node.right_, resolver, references);
+            case DIVIDE:
+                return evaluate(node.left_, resolver, references) / evaluate(node.right_, resolver, references);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * @param type the unit type
+     * @return the category of the given unit type or null if not usable inside calc()
+     */
+    static Category category(final LexicalUnitType type) {
+        switch (type) {
+            case INTEGER:
+            case REAL:
+                return Category.NUMBER;
+            case PERCENTAGE:
+                return Category.PERCENTAGE;
+            case EM:
+            case REM:
+            case EX:
+            case CH:
+            case VW:
+            case VH:
+            case VMIN:
+            case VMAX:
+            case DVW:
+            case DVH:
+            case DVMIN:
+            case DVMAX:
+            case LVW:
+            case LVH:
+            case LVMIN:
+            case LVMAX:
+            case SVW:
+            case SVH:
+            case SVMIN:
+            case SVMAX:
+            case PIXEL:
+            case INCH:
+            case CENTIMETER:
+            case MILLIMETER:
+            case POINT:
+            case PICA:
+            case QUATER:
+                return Category.LENGTH;
+            case DEGREE:
+            case GRADIAN:
+            case RADIAN:
+            case TURN:
+                return Category.ANGLE;
+            case MILLISECOND:
+            case SECOND:
+                return Category.TIME;
+            case HERTZ:
+            case KILOHERTZ:
+                return Category.FREQUENCY;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param type the unit type
+     * @return the factor to convert into the canonical unit (px, deg, ms, Hz)
+     *         or NaN if the unit is relative
+     */
+    static double absoluteFactor(final LexicalUnitType type) {
+        switch (type) {
+            case INTEGER:
+            case REAL:
+            case PIXEL:
+            case DEGREE:
+            case MILLISECOND:
+            case HERTZ:
+                return 1d;
+            case INCH:
+                return 96d;
+            case CENTIMETER:
+                return 96d / 2.54d;
+            case MILLIMETER:
+                return 96d / 25.4d;
+            case QUATER:
+                return 96d / 101.6d;
+            case POINT:
+                return 96d / 72d;
+            case PICA:
+                return 16d;
+            case GRADIAN:
+                return 0.9d;
+            case RADIAN:
+                return 180d / Math.PI;
+            case TURN:
+                return 360d;
+            case SECOND:
+            case KILOHERTZ:
+                return 1000d;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    private static Category sumCategory(final Category left, final Category right) {
+        if (left == right) {
+            return left;
+        }
+        if (left == Category.ANY) {
+            return right;
+        }
+        if (right == Category.ANY) {
+            return left;
+        }
+        if (left == Category.PERCENTAGE && right != Category.NUMBER) {
+            return right;
+        }
+        if (right == Category.PERCENTAGE && left != Category.NUMBER) {
+            return left;
+        }
+        return null;
+    }
+
+    private static final class Compiler {
+        private LexicalUnit current_;
+
+        Compiler(final LexicalUnit start) {
+            current_ = start;
+        }
+
+        Node sum() {
+            Node left = product();
+            while (left != null && current_ != null) {
+                final LexicalUnitType type = current_.getLexicalUnitType();
+                final Kind kind;
+                if (type == LexicalUnitType.OPERATOR_PLUS) {
+                    kind = Kind.ADD;
+                }
+                else if (type == LexicalUnitType.OPERATOR_MINUS) {
+                    kind = Kind.SUBTRACT;
+                }
+                else {
+                    break;
+                }
+                current_ = current_.getNextLexicalUnit();
+                final Node right = product();
+                if (right == null) {
+                    return null;
+                }
+                final Category category = sumCategory(left.category_, right.category_);
+                if (category == null) {
+                    return null;
+                }
+                left = combine(kind, category, left, right);
+            }
+            return left;
+        }
+
+        Node product() {
+            Node left = value();
+            while (left != null && current_ != null) {
+                final LexicalUnitType type = current_.getLexicalUnitType();
+                final Kind kind;
+                if (type == LexicalUnitType.OPERATOR_MULTIPLY) {
+                    kind = Kind.MULTIPLY;
+                }
+                else if (type == LexicalUnitType.OPERATOR_SLASH) {
+                    kind = Kind.DIVIDE;
+                }
+                else {
+                    break;
+                }
+                current_ = current_.getNextLexicalUnit();
+                final Node right = value();
+                if (right == null) {
+                    return null;
+                }
+
+                final Category category;
+                if (kind == Kind.DIVIDE) {
+                    if (right.category_ != Category.NUMBER && right.category_ != Category.ANY) {
+                        return null;
+                    }
+                    category = left.category_;
+                }
+                else if (left.category_ == Category.NUMBER) {
+                    category = right.category_;
+                }
+                else if (right.category_ == Category.NUMBER
+                            || right.category_ == Category.ANY
+                            || left.category_ == Category.ANY) {
+                    category = left.category_ == Category.ANY ? right.category_ : left.category_;
+                }
+                else {
+                    return null;
+                }
+                left = combine(kind, category, left, right);
+            }
+            return left;
+        }
+
+        Node value() {
+            final LexicalUnit unit = current_;
+            if (unit == null) {
+                return null;
+            }
+            current_ = unit.getNextLexicalUnit();
+
+            final LexicalUnitType type = unit.getLexicalUnitType();
+            if (type == LexicalUnitType.FUNCTION_CALC) {
+                return nested(unit).root_;
+            }
+            if (type == LexicalUnitType.FUNCTION) {
+                final String name = unit.getFunctionName();
+                if (name == null || name.isEmpty()) {
+                    // parenthesized sub expression
+                    return nested(unit).root_;
+                }
+                if ("var".equalsIgnoreCase(name)) {
+                    return new Node(Kind.REFERENCE, Category.ANY, 0, unit, null, null);
+                }
+                return null;
+            }
+            if (type == LexicalUnitType.IDENT) {
+                return constantIdent(unit.getStringValue());
+            }
+
+            final Category category = category(type);
+            if (category == null) {
+                return null;
+            }
+            final double factor = absoluteFactor(type);
+            if (Double.isNaN(factor)) {
+                return new Node(Kind.RELATIVE, category, 0, unit, null, null);
+            }
+            return new Node(Kind.CONSTANT, category, unit.getDoubleValue() * factor, null, null, null);
+        }
+
+        private static CalcExpression nested(final LexicalUnit unit) {
+            if (unit instanceof LexicalUnitImpl) {
+                return ((LexicalUnitImpl) unit).getCalcExpression();
+            }
+            return compile(unit.getParameters());
+        }
+
+        private static Node constantIdent(final String ident) {
+            if (ident == null) {
+                return null;
+            }
+            final double value;
+            switch (ident.toLowerCase(Locale.ROOT)) {
+                case "e":
+                    value = Math.E;
+                    break;
+                case "pi":
+                    value = Math.PI;
+                    break;
+                case "infinity":
+                    value = Double.POSITIVE_INFINITY;
+                    break;
+                case "-infinity":
+                    value = Double.NEGATIVE_INFINITY;
+                    break;
+                case "nan":
+                    value = Double.NaN;
+                    break;
+                default:
+                    return null;
+            }
+            return new Node(Kind.CONSTANT, Category.NUMBER, value, null, null, null);
+        }
+
+        private static Node combine(final Kind kind, final Category category, final Node left, final Node right) {
+            if (left.kind_ == Kind.CONSTANT && right.kind_ == Kind.CONSTANT) {
+                final double value;
+                switch (kind) {
+                    case ADD:
+                        value = left.value_ + right.value_;
+                        break;
+                    case SUBTRACT:
+                        value = left.value_ - right.value_;
+                        break;
+                    case MULTIPLY:
+                        value = left.value_ * right.value_;
+                        break;
+                    default:
+                        value = left.value_ / right.value_;
+                        break;
+                }
+                return new Node(Kind.CONSTANT, category, value, null, null, null);
+            }
+            return new Node(kind, category, 0, null, left, right);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.htmlunit.cssparser.parser.javacc.CharStream;
+
+/**
+ * {@link CharStream} implementation working on the whole input as char array.
+ *
+ * <p>The token manager reads the input char by char and backs up a lot.
+ * Compared to the {@link CssCharStream} there is no ring buffer to maintain
+ * and the line/column information is not stored per char; the line starts
+ * are computed once and the line/column of a position is derived from them.
+ * Reading a char is a plain array access.</p>
+ *
+ * <p>Line and column numbers are the same as the ones reported by the
+ * {@link CssCharStream} (a line break is '\n', '\r' or '\r\n'; tabs count as
+ * one column).</p>
+ *
+ * <p>This is only the input of the tokenizer; the tokens are still produced by the
+ * generated token manager.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class CssCharArrayStream implements CharStream {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final char[] buffer_;
+    private final int begin_;
+    private final int end_;
+    private final int firstLine_;
+    private final int firstColumn_;
+
+    /** Offsets of the line starts. */
+    private int[] lineStarts_;
+    private int lineCount_;
+    /** Index of the line found last; positions are mostly requested in order. */
+    private int lineIndex_;
+
+    private int bufpos_;
+    private int tokenBegin_;
+
+    private int tabSize_ = 1;
+    private boolean trackLineColumn_ = true;
+
+    /**
+     * Ctor.
+     * @param css the input
+     */
+    public CssCharArrayStream(final String css) {
+        this(css.toCharArray(), 0, css.length(), 1, 1);
+    }
+
+    /**
+     * Ctor.
+     * All offsets used by this stream are offsets in the buffer.
+     * @param buffer the input; the array is not copied
+     * @param begin the offset of the first char to use
+     * @param end the offset after the last char to use
+     * @param startLine the line of the first char
+     * @param startColumn the column of the first char
+     */
+    public CssCharArrayStream(final char[] buffer, final int begin, final int end,
+            final int startLine, final int startColumn) {
+        buffer_ = buffer;
+        begin_ = begin;
+        end_ = end;
+        firstLine_ = startLine;
+        firstColumn_ = startColumn;
+        bufpos_ = begin - 1;
+
+        computeLineStarts();
+    }
+
+    /**
+     * Reads the whole input from the given reader.
+     * @param reader the reader
+     * @return the new stream
+     * @throws IOException in case of error
+     */
+    public static CssCharArrayStream read(final Reader reader) throws IOException {
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        int length = 0;
+        int read;
+        while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return new CssCharArrayStream(buffer, 0, length, 1, 1);
+    }
+
+    private void computeLineStarts() {
+        int[] lineStarts = new int[Math.max(16, (end_ - begin_) / 32)];
+        lineStarts[0] = begin_;
+        int count = 1;
+        final char[] buffer = buffer_;
+        final int end = end_;
+        for (int i = begin_; i < end; i++) {
+            final char c = buffer[i];
+            if (c == '\n' || (c == '\r' && (i + 1 == end || buffer[i + 1] != '\n'))) {
+                if (count == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, count * 2);
+                }
+                lineStarts[count++] = i + 1;
+            }
+        }
+        lineStarts_ = lineStarts;
+        lineCount_ = count;
+    }
+
+    private int lineIndexOf(final int pos) {
+        final int[] lineStarts = lineStarts_;
+        int index = lineIndex_;
+        while (index > 0 && pos < lineStarts[index]) {
+            index--;
+        }
+        while (index + 1 < lineCount_ && pos >= lineStarts[index + 1]) {
+            index++;
+        }
+        lineIndex_ = index;
+        return index;
+    }
+
+    /**
+     * @param offset the offset
+     * @return the line of the char at the given offset
+     */
+    public int getLine(final int offset) {
+        if (offset < begin_) {
+            return 0;
+        }
+        return firstLine_ + lineIndexOf(offset);
+    }
+
+    /**
+     * @param offset the offset
+     * @return the column of the char at the given offset
+     */
+    public int getColumn(final int offset) {
+        if (offset < begin_) {
+            return 0;
+        }
+        final int index = lineIndexOf(offset);
+        final int column = offset - lineStarts_[index] + 1;
+        if (index == 0) {
+            return column + firstColumn_ - 1;
+        }
+        return column;
+    }
+
+    /**
+     * Maps a line/column position (as reported by the tokens) to the
+     * char offset in the input.
+     * @param lineNumber the line
+     * @param columnNumber the column
+     * @return the zero based offset or -1 if the position is not part of the input
+     */
+    public int getOffset(final int lineNumber, final int columnNumber) {
+        final int index = lineNumber - firstLine_;
+        if (index < 0 || index >= lineCount_ || columnNumber < 1) {
+            return -1;
+        }
+        if (index == 0) {
+            return begin_ + columnNumber - firstColumn_;
+        }
+        return lineStarts_[index] + columnNumber - 1;
+    }
+
+    /**
+     * @return the offset of the first char of the current token
+     */
+    public int getBeginOffset() {
+        return tokenBegin_;
+    }
+
+    /**
+     * @return the offset of the last char read
+     */
+    public int getEndOffset() {
+        return bufpos_;
+    }
+
+    /**
+     * Moves the read position; the next char read is the one at the given offset.
+     * @param offset the offset
+     */
+    public void seek(final int offset) {
+        bufpos_ = offset - 1;
+    }
+
+    /**
+     * Scans the input for the end of the current block without tokenizing it.
+     * Strings, comments and escapes are respected; the scan stops after the
+     * '}' closing the block (the nesting drops to zero or below) or after
+     * a ';' outside of any nested block if stopAtSemicolon is set.
+     *
+     * @param from the offset to start with
+     * @param nesting the nesting of '{' at the start offset
+     * @param stopAtSemicolon whether to stop at a semicolon on the top level
+     * @return the offset after the last char of the skipped part
+     *         (the length of the input if the end was reached)
+     */
+    public int scanToEndOfBlock(final int from, final int nesting, final boolean stopAtSemicolon) {
+        final int pos = indexOfEndOfBlock(from, nesting, stopAtSemicolon);
+        if (pos < 0) {
+            return end_;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Like {@link #scanToEndOfBlock(int, int, boolean)} but returns the offset
+     * of the '}' or ';' ending the block.
+     *
+     * @param from the offset to start with
+     * @param nesting the nesting of '{' at the start offset
+     * @param stopAtSemicolon whether to stop at a semicolon on the top level
+     * @return the offset of the char ending the block or -1 if the end of the input was reached
+     */
+    public int indexOfEndOfBlock(final int from, final int nesting, final boolean stopAtSemicolon) {
+        final char[] buffer = buffer_;
+        final int length = end_;
+        int level = nesting;
+        int pos = from;
+        while (pos < length) {
+            final char c = buffer[pos];
+            switch (c) {
+                case '\\':
+                    pos += 2;
+                    continue;
+
+                case '"':
+                case '\'':
+                    final int stringEnd = scanString(pos + 1, c);
+                    if (stringEnd > 0) {
+                        pos = stringEnd;
+                        continue;
+                    }
+                    // like the tokenizer, a quote without the closing one is a plain char
+                    break;
+
+                case '/':
+                    if (pos + 1 < length && buffer[pos + 1] == '*') {
+                        pos = scanComment(pos + 2);
+                        continue;
+                    }
+                    break;
+
+                case '{':
+                    level++;
+                    break;
+
+                case '}':
+                    level--;
+                    if (level <= 0) {
+                        return pos;
+                    }
+                    break;
+
+                case ';':
+                    if (stopAtSemicolon && level <= 0) {
+                        return pos;
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if all blocks and comments starting between the given offset
+     * and the end of the input are closed and there are no additional '}'.
+     *
+     * @param from the offset to start with
+     * @return true if the input is complete
+     */
+    public boolean isComplete(final int from) {
+        final char[] buffer = buffer_;
+        final int length = end_;
+        int level = 0;
+        int pos = from;
+        while (pos < length) {
+            final char c = buffer[pos];
+            switch (c) {
+                case '\\':
+                    pos += 2;
+                    continue;
+
+                case '"':
+                case '\'':
+                    final int stringEnd = scanString(pos + 1, c);
+                    if (stringEnd > 0) {
+                        pos = stringEnd;
+                        continue;
+                    }
+                    break;
+
+                case '/':
+                    if (pos + 1 < length && buffer[pos + 1] == '*') {
+                        final int commentEnd = scanComment(pos + 2);
+                        if (commentEnd == length
+                                && (commentEnd - pos < 4 || buffer[length - 2] != '*' || buffer[length - 1] != '/')) {
+                            return false;
+                        }
+                        pos = commentEnd;
+                        continue;
+                    }
+                    break;
+
+                case '{':
+                    level++;
+                    break;
+
+                case '}':
+                    level--;
+                    if (level < 0) {
+                        return false;
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+            pos++;
+        }
+        return level == 0 && pos == length;
+    }
+
+    private int scanString(final int from, final char quote) {
+        final char[] buffer = buffer_;
+        final int length = end_;
+        int pos = from;
+        while (pos < length) {
+            final char c = buffer[pos];
+            if (c == quote) {
+                return pos + 1;
+            }
+            if (c == '\\') {
+                pos += 2;
+                continue;
+            }
+            if (c == '\n' || c == '\r' || c == '\f') {
+                return -1;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private int scanComment(final int from) {
+        final char[] buffer = buffer_;
+        final int end = end_ - 1;
+        for (int pos = from; pos < end; pos++) {
+            if (buffer[pos] == '*' && buffer[pos + 1] == '/') {
+                return pos + 2;
+            }
+        }
+        return end_;
+    }
+
+    /**
+     * @return the underlying buffer; do not modify
+     */
+    public char[] getBuffer() {
+        return buffer_;
+    }
+
+    /**
+     * @return the offset of the first char of the input
+     */
+    public int getBegin() {
+        return begin_;
+    }
+
+    /**
+     * @return the offset after the last char of the input
+     */
+    public int getEnd() {
+        return end_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char readChar() throws IOException {
+        final int pos = bufpos_ + 1;
+        if (pos < end_) {
+            bufpos_ = pos;
+            return buffer_[pos];
+        }
+
+        if (tokenBegin_ == -1) {
+            tokenBegin_ = bufpos_;
+        }
+        throw new EndOfInputException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char beginToken() throws IOException {
+        tokenBegin_ = -1;
+        final char c = readChar();
+        tokenBegin_ = bufpos_;
+        return c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBeginColumn() {
+        return getColumn(tokenBegin_);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBeginLine() {
+        return getLine(tokenBegin_);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndColumn() {
+        return getColumn(bufpos_);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndLine() {
+        return getLine(bufpos_);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void backup(final int amount) {
+        bufpos_ -= amount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getImage() {
+        return new String(buffer_, tokenBegin_, bufpos_ - tokenBegin_ + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char[] getSuffix(final int len) {
+        final char[] ret = new char[len];
+        System.arraycopy(buffer_, bufpos_ - len + 1, ret, 0, len);
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void done() {
+        // nothing to release, the buffer may still be used by the caller
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTabSize() {
+        return tabSize_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setTabSize(final int tabSize) {
+        tabSize_ = tabSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTrackLineColumn() {
+        return trackLineColumn_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setTrackLineColumn(final boolean trackLineColumn) {
+        trackLineColumn_ = trackLineColumn;
+    }
+
+    /**
+     * Signals the end of the input to the token manager;
+     * there is no need for a stack trace.
+     */
+    private static final class EndOfInputException extends IOException {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -15,6 +15,7 @@
 package org.htmlunit.cssparser.parser;
 
 import org.htmlunit.cssparser.parser.media.MediaQueryList;
+import org.htmlunit.cssparser.parser.selector.SelectorKey;
 import org.htmlunit.cssparser.parser.selector.SelectorList;
 
 /**
@@ -124,6 +125,84 @@ void importStyle(String uri, MediaQueryList media,
      */
     void ignorableAtRule(String atRule, Locator locator) throws CSSException;
 
+    /**
+     * Receive notification of an unknown rule t-rule not supported by this
+     * parser. The parser skips unknown at-rules without processing them and
+     * reports the part of the source containing the rule.
+     * The default implementation creates the string and calls
+     * {@link #ignorableAtRule(String, Locator)}.
+     *
+     * @param source the source; do not modify
+     * @param start the offset of the first char of the rule
+     * @param end the offset after the last char of the rule
+     * @param locator the locator
+     * @exception CSSException Any CSS exception, possibly wrapping another
+     *      exception.
+     */
+    default void ignorableAtRule(final char[] source, final int start, final int end, final Locator locator)
+            throws CSSException {
+        ignorableAtRule(new String(source, start, end - start), locator);
+    }
+
+    /**
+     * If this returns true, the parser does not parse simple selectors of style rules;
+     * for these rules {@link #deferredSelector(char[], int, int, SelectorKey[], Locator)}
+     * is called instead of {@link #startSelector(SelectorList, Locator)} and
+     * {@link #endSelector(SelectorList)} is called with null.
+     *
+     * @return true if the selectors should be deferred
+     */
+    default boolean isSelectorDeferred() {
+        return false;
+    }
+
+    /**
+     * Receive notification of the beginning of a style rule with not parsed selectors.
+     *
+     * @param source the source; do not modify
+     * @param start the offset of the first char of the selector list
+     * @param end the offset after the last char of the selector list
+     * @param keys the prefilter keys of the selectors, one per selector
+     * @param locator the locator
+     * @exception CSSException Any CSS exception, possibly wrapping another
+     *      exception.
+     * @see #isSelectorDeferred()
+     */
+    default void deferredSelector(final char[] source, final int start, final int end,
+            final SelectorKey[] keys, final Locator locator) throws CSSException {
+        startSelector(null, locator);
+    }
+
+    /**
+     * If this returns true, the parser does not parse the declarations of style rules;
+     * for every style rule with declarations
+     * {@link #deferredStyleDeclaration(char[], int, int, Locator)} is called
+     * between {@link #startSelector(SelectorList, Locator)} and
+     * {@link #endSelector(SelectorList)} instead of reporting the properties.
+     *
+     * @return true if the declarations should be deferred
+     */
+    default boolean isStyleDeclarationDeferred() {
+        return false;
+    }
+
+    /**
+     * Receive notification of the not parsed declarations of a style rule
+     * (without the surrounding braces).
+     *
+     * @param source the source; do not modify
+     * @param start the offset of the first char of the declarations
+     * @param end the offset after the last char of the declarations
+     * @param locator the locator of the first char
+     * @exception CSSException Any CSS exception, possibly wrapping another
+     *      exception.
+     * @see #isStyleDeclarationDeferred()
+     */
+    default void deferredStyleDeclaration(final char[] source, final int start, final int end,
+            final Locator locator) throws CSSException {
+        // ignore
+    }
+
     /**
      * Receive notification of the beginning of a font face statement.
      * <p>
@@ -14,6 +14,7 @@
  */
 package org.htmlunit.cssparser.parser;
 
+import java.io.CharArrayReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
@@ -29,6 +30,12 @@ public class InputSource implements Closeable {
     private String media_;
     private String title_;
 
+    private char[] chars_;
+    private int begin_;
+    private int end_;
+    private int lineNumber_ = 1;
+    private int columnNumber_ = 1;
+
     /**
      * Create a new input source backed by a reader.
      * @param reader the reader
@@ -37,6 +44,63 @@ public InputSource(final Reader reader) {
         reader_ = reader;
     }
 
+    /**
+     * Create a new input source backed by a part of a char array.
+     * The parser works directly on the array; the line and column numbers
+     * are used as start position for the locators (this allows to parse
+     * parts of a larger source later on with the correct positions).
+     *
+     * @param chars the source; the array is not copied
+     * @param begin the offset of the first char
+     * @param end the offset after the last char
+     * @param lineNumber the line of the first char
+     * @param columnNumber the column of the first char
+     */
+    public InputSource(final char[] chars, final int begin, final int end,
+            final int lineNumber, final int columnNumber) {
+        reader_ = new CharArrayReader(chars, begin, end - begin);
+        chars_ = chars;
+        begin_ = begin;
+        end_ = end;
+        lineNumber_ = lineNumber;
+        columnNumber_ = columnNumber;
+    }
+
+    /**
+     * @return the char array if this source is backed by a char array
+     */
+    public char[] getChars() {
+        return chars_;
+    }
+
+    /**
+     * @return the offset of the first char in the char array
+     */
+    public int getBegin() {
+        return begin_;
+    }
+
+    /**
+     * @return the offset after the last char in the char array
+     */
+    public int getEnd() {
+        return end_;
+    }
+
+    /**
+     * @return the line number of the first char
+     */
+    public int getLineNumber() {
+        return lineNumber_;
+    }
+
+    /**
+     * @return the column number of the first char
+     */
+    public int getColumnNumber() {
+        return columnNumber_;
+    }
+
     /**
      * <p>getReader.</p>
      *
@@ -37,6 +37,7 @@ public class LexicalUnitImpl extends AbstractLocatable implements LexicalUnit, S
 
     /** cache */
     private transient String toString_;
+    private transient CalcExpression calcExpression_;
 
     /**
      * @param next next LexicalUnit
@@ -89,6 +90,23 @@ public void setFunctionName(final String function) {
     public void setParameters(final LexicalUnit params) {
         parameters_ = params;
         toString_ = null;
+        calcExpression_ = null;
+    }
+
+    /**
+     * @return the compiled calc() expression; compiled on first access and cached
+     */
+    CalcExpression getCalcExpression() {
+        CalcExpression expression = calcExpression_;
+        final CSSParserMetrics metrics = CSSInstrumentation.getMetrics();
+        if (metrics != null) {
+            metrics.cacheAccess(CSSInstrumentation.CACHE_CALC_EXPRESSION, expression != null);
+        }
+        if (expression == null) {
+            expression = CalcExpression.compile(parameters_);
+            calcExpression_ = expression;
+        }
+        return expression;
     }
 
     /**
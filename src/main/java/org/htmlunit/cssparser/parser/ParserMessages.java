@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import static java.util.Map.entry;
+
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The messages of the parser.
+ *
+ * <p>The table is only loaded if a message is needed (usually when the message of a
+ * {@link CSSParseException} is requested), parsing valid input never touches it.
+ * The parsed {@link MessageFormat}s are cached per pattern.</p>
+ *
+ * @author Ronald Brill
+ */
+final class ParserMessages {
+
+    private static final Map<String, String> MESSAGES = Map.ofEntries(
+            entry("invalidExpectingOne", "Invalid token \"{0}\". Was expecting: {1}."),
+            entry("invalidExpectingMore", "Invalid token \"{0}\". Was expecting one of: {1}."),
+            entry("invalidColor", "Invalid color \"{0}\"."),
+            entry("invalidStyleSheet", "Error in style sheet."),
+            entry("invalidRule", "Error in rule."),
+            entry("invalidUnknownRule", "Error in unknown at-rule."),
+            entry("invalidCharsetRule", "Error in @charset rule."),
+            entry("misplacedCharsetRule", "The @charset must be the first element in the style sheet."),
+            entry("invalidImportRule", "Error in @import rule."),
+            entry("invalidImportRuleIgnored", "@import rule must occur before all other rules."),
+            entry("invalidImportRuleIgnored2",
+                    "@import rule must occur before all other rules, except the @charset rule."),
+            entry("invalidPageRule", "Error in @page rule."),
+            entry("invalidFontFaceRule", "Error in @font-face rule."),
+            entry("invalidMediaList", "Error in media list."),
+            entry("invalidMediaRule", "Error in @media rule."),
+            entry("invalidStyleRule", "Error in style rule."),
+            entry("invalidStyleDeclaration", "Error in style declaration."),
+            entry("invalidDeclaration", "Error in declaration."),
+            entry("invalidDeclarationInvalidChar", "Error in declaration; invalid character \"{0}\" found."),
+            entry("invalidDeclarationStarHack",
+                    "Error in declaration. ''*'' is not allowed as first char of a property."),
+            entry("invalidSelectorList", "Error in selector list."),
+            entry("invalidSelector", "Error in selector."),
+            entry("invalidSimpleSelector", "Error in simple selector."),
+            entry("invalidClassSelector", "Error in class selector."),
+            entry("invalidElementName", "Error in element name."),
+            entry("invalidAttrib", "Error in attribute selector."),
+            entry("invalidPseudo", "Error in pseudo class or element."),
+            entry("invalidPseudoColon", "\":{0}\" is not a valid selector."),
+            entry("duplicatePseudo", "Duplicate pseudo class \":{0}\" or pseudo class \":{0}\" not at end."),
+            entry("invalidHash", "Error in hash."),
+            entry("invalidExpr", "Error in expression."),
+            entry("invalidExprColon", "Error in expression; '':'' found after identifier \"{0}\"."),
+            entry("invalidPrio", "Error in priority."),
+            entry("invalidPagePseudoClass",
+                    "Invalid page pseudo class \"{0}\"; "
+                    + "valid values are \"blank\", \"first\", \"left\", and \"right\"."),
+            entry("invalidCaseInSensitivelyIdentifier",
+                    "Invalid case-insensitively identifier \"{0}\" found; valid values are \"i\", and \"s\"."),
+            entry("ignoringRule", "Ignoring the whole rule."),
+            entry("ignoringFollowingDeclarations", "Ignoring the following declarations in this rule."),
+            entry("tokenMgrError", "Lexical error."),
+            entry("domException", "DOM exception: ''{0}''"));
+
+    /** Patterns are only cached up to this number; subclasses of the parser may provide more. */
+    private static final int MAX_FORMATS = 256;
+    private static final Map<String, MessageFormat> FORMATS = new ConcurrentHashMap<>();
+
+    private ParserMessages() {
+    }
+
+    /**
+     * @param key the message key
+     * @return the message pattern
+     */
+    static String get(final String key) {
+        final String msg = MESSAGES.get(key);
+        if (msg == null) {
+            return "[[" + key + "]]";
+        }
+        return msg;
+    }
+
+    /**
+     * @return the keys of all messages
+     */
+    static Set<String> keys() {
+        return MESSAGES.keySet();
+    }
+
+    /**
+     * Same as {@link MessageFormat#format(String, Object...)} but the pattern
+     * is parsed only once.
+     *
+     * @param pattern the pattern
+     * @param arguments the arguments
+     * @return the formatted message
+     */
+    static String format(final String pattern, final Object... arguments) {
+        MessageFormat format = FORMATS.get(pattern);
+        if (format == null) {
+            format = new MessageFormat(pattern);
+            if (FORMATS.size() < MAX_FORMATS) {
+                FORMATS.putIfAbsent(pattern, format);
+            }
+        }
+        // MessageFormat is not thread safe; a clone is much cheaper than parsing the pattern again
+        return ((MessageFormat) format.clone()).format(arguments);
+    }
+}
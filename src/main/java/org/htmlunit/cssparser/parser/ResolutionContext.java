@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+/**
+ * The environment used by the {@link ValueResolver} to turn relative
+ * values (font relative lengths, viewport lengths, percentages and
+ * custom property references) into absolute numbers.
+ * All lengths are in css pixels.
+ *
+ * @author Ronald Brill
+ */
+public interface ResolutionContext {
+
+    /**
+     * @return the font size of the element (used for em)
+     */
+    double getFontSize();
+
+    /**
+     * @return the font size of the root element (used for rem)
+     */
+    double getRootFontSize();
+
+    /**
+     * @return the x-height of the font (used for ex); defaults to half of the font size
+     */
+    default double getXHeight() {
+        return getFontSize() / 2;
+    }
+
+    /**
+     * @return the advance of the '0' glyph (used for ch); defaults to half of the font size
+     */
+    default double getChWidth() {
+        return getFontSize() / 2;
+    }
+
+    /**
+     * @return the width of the viewport
+     */
+    double getViewportWidth();
+
+    /**
+     * @return the height of the viewport
+     */
+    double getViewportHeight();
+
+    /**
+     * @return the width of the small viewport (used for svw); defaults to the viewport width
+     */
+    default double getSmallViewportWidth() {
+        return getViewportWidth();
+    }
+
+    /**
+     * @return the height of the small viewport (used for svh); defaults to the viewport height
+     */
+    default double getSmallViewportHeight() {
+        return getViewportHeight();
+    }
+
+    /**
+     * @return the width of the large viewport (used for lvw); defaults to the viewport width
+     */
+    default double getLargeViewportWidth() {
+        return getViewportWidth();
+    }
+
+    /**
+     * @return the height of the large viewport (used for lvh); defaults to the viewport height
+     */
+    default double getLargeViewportHeight() {
+        return getViewportHeight();
+    }
+
+    /**
+     * @return the width of the dynamic viewport (used for dvw); defaults to the viewport width
+     */
+    default double getDynamicViewportWidth() {
+        return getViewportWidth();
+    }
+
+    /**
+     * @return the height of the dynamic viewport (used for dvh); defaults to the viewport height
+     */
+    default double getDynamicViewportHeight() {
+        return getViewportHeight();
+    }
+
+    /**
+     * @return the value percentages are relative to or {@link Double#NaN}
+     *         if percentages can't be resolved in this context
+     */
+    default double getPercentageBase() {
+        return Double.NaN;
+    }
+
+    /**
+     * Looks up the value of a custom property.
+     *
+     * @param name the name of the custom property including the leading '--'
+     * @return the value or null if the property is not defined
+     */
+    default LexicalUnit getCustomProperty(final String name) {
+        return null;
+    }
+}
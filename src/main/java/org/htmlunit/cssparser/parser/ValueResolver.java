@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.htmlunit.cssparser.parser.LexicalUnit.LexicalUnitType;
+
+/**
+ * Resolves lexical units (including calc() expressions, var() references
+ * and relative units) to a single number.
+ * Lengths are resolved to px, angles to deg, times to ms and frequencies to Hz.
+ * Values that can't be resolved are reported as {@link Double#NaN}.
+ *
+ * <p>The calc() expressions are compiled only once per lexical unit and
+ * constant parts are folded; only the relative parts are evaluated
+ * against the {@link ResolutionContext}.</p>
+ *
+ * <p>Every custom property is resolved at most once per resolved value; custom
+ * properties referencing themselves (directly or indirectly) are invalid.</p>
+ *
+ * @author Ronald Brill
+ */
+public class ValueResolver {
+
+    /** The max nesting of var() references; protects the stack against long reference chains. */
+    public static final int MAX_VAR_DEPTH = 32;
+
+    private final ResolutionContext context_;
+
+    /**
+     * Ctor.
+     *
+     * @param context the context used for relative values
+     */
+    public ValueResolver(final ResolutionContext context) {
+        context_ = context;
+    }
+
+    /**
+     * @return the context
+     */
+    public ResolutionContext getContext() {
+        return context_;
+    }
+
+    /**
+     * Resolves the given value.
+     *
+     * @param unit the value to resolve
+     * @return the resolved value or NaN
+     */
+    public double resolve(final LexicalUnit unit) {
+        return resolve(unit, null);
+    }
+
+    /**
+     * Checks if the given value is a calc() expression that
+     * can be resolved without any context.
+     *
+     * @param unit the value
+     * @return true if the value is a calc() expression that was folded to a constant
+     */
+    public static boolean isConstantCalc(final LexicalUnit unit) {
+        if (unit == null || unit.getLexicalUnitType() != LexicalUnitType.FUNCTION_CALC) {
+            return false;
+        }
+        return calcExpression(unit).isConstant();
+    }
+
+    /**
+     * Resolves values that don't depend on any context; these are numbers,
+     * absolute units and calc() expressions that were folded to a constant.
+     *
+     * @param unit the value to resolve
+     * @return the resolved value or NaN
+     */
+    public static double resolveAbsolute(final LexicalUnit unit) {
+        if (unit == null) {
+            return Double.NaN;
+        }
+
+        final LexicalUnitType type = unit.getLexicalUnitType();
+        final double factor = CalcExpression.absoluteFactor(type);
+        if (!Double.isNaN(factor)) {
+            return unit.getDoubleValue() * factor;
+        }
+
+        if (type == LexicalUnitType.FUNCTION_CALC) {
+            final CalcExpression expression = calcExpression(unit);
+            if (expression.isConstant()) {
+                return expression.evaluate(null, null);
+            }
+        }
+        return Double.NaN;
+    }
+
+    double resolve(final LexicalUnit unit, final References references) {
+        if (unit == null) {
+            return Double.NaN;
+        }
+
+        final LexicalUnitType type = unit.getLexicalUnitType();
+        final double factor = CalcExpression.absoluteFactor(type);
+        if (!Double.isNaN(factor)) {
+            return unit.getDoubleValue() * factor;
+        }
+
+        switch (type) {
+            case EM:
+                return unit.getDoubleValue() * context_.getFontSize();
+            case REM:
+                return unit.getDoubleValue() * context_.getRootFontSize();
+            case EX:
+                return unit.getDoubleValue() * context_.getXHeight();
+            case CH:
+                return unit.getDoubleValue() * context_.getChWidth();
+
+            case VW:
+                return percent(unit, context_.getViewportWidth());
+            case VH:
+                return percent(unit, context_.getViewportHeight());
+            case VMIN:
+                return percent(unit, Math.min(context_.getViewportWidth(), context_.getViewportHeight()));
+            case VMAX:
+                return percent(unit, Math.max(context_.getViewportWidth(), context_.getViewportHeight()));
+
+            case DVW:
+                return percent(unit, context_.getDynamicViewportWidth());
+            case DVH:
+                return percent(unit, context_.getDynamicViewportHeight());
+            case DVMIN:
+                return percent(unit,
+                        Math.min(context_.getDynamicViewportWidth(), context_.getDynamicViewportHeight()));
+            case DVMAX:
+                return percent(unit,
+                        Math.max(context_.getDynamicViewportWidth(), context_.getDynamicViewportHeight()));
+
+            case LVW:
+                return percent(unit, context_.getLargeViewportWidth());
+            case LVH:
+                return percent(unit, context_.getLargeViewportHeight());
+            case LVMIN:
+                return percent(unit,
+                        Math.min(context_.getLargeViewportWidth(), context_.getLargeViewportHeight()));
+            case LVMAX:
+                return percent(unit,
+                        Math.max(context_.getLargeViewportWidth(), context_.getLargeViewportHeight()));
+
+            case SVW:
+                return percent(unit, context_.getSmallViewportWidth());
+            case SVH:
+                return percent(unit, context_.getSmallViewportHeight());
+            case SVMIN:
+                return percent(unit,
+                        Math.min(context_.getSmallViewportWidth(), context_.getSmallViewportHeight()));
+            case SVMAX:
+                return percent(unit,
+                        Math.max(context_.getSmallViewportWidth(), context_.getSmallViewportHeight()));
+
+            case PERCENTAGE:
+                return percent(unit, context_.getPercentageBase());
+
+            case FUNCTION_CALC:
+                return calcExpression(unit).evaluate(this, references);
+
+            case FUNCTION:
+                final String name = unit.getFunctionName();
+                if (name == null || name.isEmpty()) {
+                    // parenthesized sub expression
+                    return calcExpression(unit).evaluate(this, references);
+                }
+                if ("var".equalsIgnoreCase(name)) {
+                    return resolveVar(unit, references);
+                }
+                return Double.NaN;
+
+            default:
+                return Double.NaN;
+        }
+    }
+
+    private double resolveVar(final LexicalUnit unit, final References references) {
+        final LexicalUnit nameUnit = unit.getParameters();
+        if (nameUnit == null || nameUnit.getLexicalUnitType() != LexicalUnitType.IDENT) {
+            return Double.NaN;
+        }
+
+        final References refs = references == null ? new References() : references;
+        final String name = nameUnit.getStringValue();
+        Double result = refs.resolved_.get(name);
+        if (result == null) {
+            if (refs.depth_ >= MAX_VAR_DEPTH || !refs.resolving_.add(name)) {
+                // too deep or a reference cycle; the value is invalid
+                result = Double.NaN;
+            }
+            else {
+                final LexicalUnit value = context_.getCustomProperty(name);
+                refs.depth_++;
+                result = value == null ? Double.NaN : resolve(value, refs);
+                refs.depth_--;
+                refs.resolving_.remove(name);
+                refs.resolved_.put(name, result);
+            }
+        }
+        if (!Double.isNaN(result)) {
+            return result;
+        }
+
+        final LexicalUnit comma = nameUnit.getNextLexicalUnit();
+        if (comma != null && comma.getLexicalUnitType() == LexicalUnitType.OPERATOR_COMMA) {
+            return resolve(comma.getNextLexicalUnit(), refs);
+        }
+        return Double.NaN;
+    }
+
+    private static double percent(final LexicalUnit unit, final double base) {
+        return unit.getDoubleValue() * base / 100d;
+    }
+
+    private static CalcExpression calcExpression(final LexicalUnit unit) {
+        if (unit instanceof LexicalUnitImpl) {
+            return ((LexicalUnitImpl) unit).getCalcExpression();
+        }
+        return CalcExpression.compile(unit.getParameters());
+    }
+
+    /**
+     * The state of the var() references while resolving one value; knows the
+     * custom properties currently being resolved (to detect cycles) and the
+     * results of the already resolved ones.
+     */
+    static final class References {
+        private final Set<String> resolving_ = new HashSet<>();
+        private final Map<String, Double> resolved_ = new HashMap<>();
+        private int depth_;
+    }
+}
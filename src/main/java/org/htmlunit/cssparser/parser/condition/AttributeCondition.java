@@ -67,6 +67,13 @@ public boolean isCaseInSensitive() {
         return caseInSensitive_ != null && caseInSensitive_.booleanValue();
     }
 
+    /**
+     * @return the case-sensitivity flag as given; null if not set, true/false for i/s
+     */
+    public Boolean getCaseInSensitive() {
+        return caseInSensitive_;
+    }
+
     /**
      * @return the operator '='
      */
@@ -59,6 +59,13 @@ public String getValue() {
         return value_;
     }
 
+    /**
+     * @return true if was prefixed by double colon
+     */
+    public boolean isDoubleColon() {
+        return doubleColon_;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -68,6 +68,13 @@ public String getMedia() {
         return media_;
     }
 
+    /**
+     * @return true if the media type was not given and defaults to all
+     */
+    public boolean isImplicitAll() {
+        return implicitAll_;
+    }
+
     /**
      * <p>getProperties.</p>
      *
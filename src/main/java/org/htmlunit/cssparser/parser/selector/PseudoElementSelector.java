@@ -59,6 +59,13 @@ public String getLocalName() {
         return localName_;
     }
 
+    /**
+     * @return true if was prefixed by double colon
+     */
+    public boolean isDoubleColon() {
+        return doubleColon_;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser.selector;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The prefilter key of a selector; the element name, the id and the first class
+ * of the rightmost compound selector. An element can only match the selector if
+ * it matches all the parts of the key that are not null.
+ *
+ * <p>The key is extracted by a simple scanner working on the raw selector text;
+ * this way the selectors of a style sheet can be indexed without building
+ * the selector objects.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class SelectorKey {
+
+    private final String elementName_;
+    private final String id_;
+    private final String className_;
+
+    /**
+     * Ctor.
+     * @param elementName the lower case element name or null
+     * @param id the id or null
+     * @param className the class or null
+     */
+    public SelectorKey(final String elementName, final String id, final String className) {
+        elementName_ = elementName;
+        id_ = id;
+        className_ = className;
+    }
+
+    /**
+     * @return the lower case element name or null if the selector matches any element
+     */
+    public String getElementName() {
+        return elementName_;
+    }
+
+    /**
+     * @return the id or null
+     */
+    public String getId() {
+        return id_;
+    }
+
+    /**
+     * @return the first class or null
+     */
+    public String getClassName() {
+        return className_;
+    }
+
+    /**
+     * Scans the selector list starting at the given offset up to the '{'
+     * starting the declaration block and adds the key of every selector
+     * to the given list.
+     *
+     * <p>The scanner supports only the usual selector syntax (no escapes,
+     * comments, namespaces or functional pseudo classes) and validates
+     * everything it accepts; for everything else -1 is returned and
+     * the selectors have to be parsed. This way deferring the parsing
+     * of the accepted selectors never hides a syntax error.</p>
+     *
+     * @param source the source
+     * @param start the offset of the first char of the selector list
+     * @param end the offset after the last char of the input
+     * @param keys the list to add the keys to
+     * @return the offset of the '{' or -1 if the input is not supported
+     */
+    public static int scan(final char[] source, final int start, final int end, final List<SelectorKey> keys) {
+        final int size = keys.size();
+        final int result = new Scanner(source, end).scan(start, keys);
+        if (result < 0) {
+            keys.subList(size, keys.size()).clear();
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        if (elementName_ == null) {
+            sb.append('*');
+        }
+        else {
+            sb.append(elementName_);
+        }
+        if (id_ != null) {
+            sb.append('#').append(id_);
+        }
+        if (className_ != null) {
+            sb.append('.').append(className_);
+        }
+        return sb.toString();
+    }
+
+    private static final class Scanner {
+        private final char[] source_;
+        private final int end_;
+        private int pos_;
+
+        private String elementName_;
+        private String id_;
+        private String className_;
+        private boolean empty_ = true;
+        /** a pseudo element has to be the last part of the compound selector */
+        private boolean pseudoElement_;
+
+        Scanner(final char[] source, final int end) {
+            source_ = source;
+            end_ = end;
+        }
+
+        int scan(final int start, final List<SelectorKey> keys) {
+            pos_ = start;
+            boolean afterWhitespace = false;
+            while (pos_ < end_) {
+                final char c = source_[pos_];
+                switch (c) {
+                    case ' ':
+                    case '\t':
+                    case '\r':
+                    case '\n':
+                    case '\f':
+                        afterWhitespace = true;
+                        pos_++;
+                        continue;
+
+                    case '>':
+                    case '+':
+                    case '~':
+                        if (empty_) {
+                            return -1;
+                        }
+                        reset();
+                        afterWhitespace = false;
+                        pos_++;
+                        continue;
+
+                    case ',':
+                    case '{':
+                        if (empty_) {
+                            return -1;
+                        }
+                        keys.add(new SelectorKey(elementName_, id_, className_));
+                        if (c == '{') {
+                            return pos_;
+                        }
+                        reset();
+                        afterWhitespace = false;
+                        pos_++;
+                        continue;
+
+                    default:
+                        break;
+                }
+
+                if (afterWhitespace && !empty_) {
+                    // descendant combinator
+                    reset();
+                }
+                afterWhitespace = false;
+
+                if (!simpleSelector(c)) {
+                    return -1;
+                }
+                empty_ = false;
+            }
+            return -1;
+        }
+
+        private boolean simpleSelector(final char c) {
+            if (pseudoElement_) {
+                return false;
+            }
+            switch (c) {
+                case '*':
+                    if (!empty_) {
+                        return false;
+                    }
+                    pos_++;
+                    return true;
+
+                case '#':
+                    pos_++;
+                    final String id = ident();
+                    if (id == null) {
+                        return false;
+                    }
+                    if (id_ == null) {
+                        id_ = id;
+                    }
+                    return true;
+
+                case '.':
+                    pos_++;
+                    final String className = ident();
+                    if (className == null) {
+                        return false;
+                    }
+                    if (className_ == null) {
+                        className_ = className;
+                    }
+                    return true;
+
+                case '[':
+                    return attribute();
+
+                case ':':
+                    pos_++;
+                    boolean pseudoElement = false;
+                    if (pos_ < end_ && source_[pos_] == ':') {
+                        pseudoElement = true;
+                        pos_++;
+                    }
+                    final String name = ident();
+                    if (name == null) {
+                        return false;
+                    }
+                    if (pos_ < end_ && source_[pos_] == '(') {
+                        // the arguments are not validated by the scanner
+                        return false;
+                    }
+                    pseudoElement_ = pseudoElement || isLegacyPseudoElement(name);
+                    return true;
+
+                default:
+                    if (!empty_ || !isNameStart(c)) {
+                        return false;
+                    }
+                    final String elementName = ident();
+                    if (elementName == null) {
+                        return false;
+                    }
+                    elementName_ = elementName.toLowerCase(Locale.ROOT);
+                    return true;
+            }
+        }
+
+        /**
+         * Validates the attribute selector starting at the current position:
+         * <code>[name]</code> or <code>[name op value flag?]</code>.
+         */
+        private boolean attribute() {
+            pos_++;
+            skipWhitespace();
+            if (ident() == null) {
+                return false;
+            }
+            skipWhitespace();
+            if (pos_ < end_ && source_[pos_] == ']') {
+                pos_++;
+                return true;
+            }
+
+            if (pos_ < end_ && "~|^$*".indexOf(source_[pos_]) > -1) {
+                pos_++;
+            }
+            if (pos_ >= end_ || source_[pos_] != '=') {
+                return false;
+            }
+            pos_++;
+            skipWhitespace();
+            if (pos_ < end_ && (source_[pos_] == '"' || source_[pos_] == '\'')) {
+                if (!skipString(source_[pos_])) {
+                    return false;
+                }
+            }
+            else if (ident() == null) {
+                return false;
+            }
+
+            final int beforeWhitespace = pos_;
+            skipWhitespace();
+            if (pos_ > beforeWhitespace && pos_ < end_ && (source_[pos_] == 'i' || source_[pos_] == 's')) {
+                pos_++;
+                skipWhitespace();
+            }
+            if (pos_ < end_ && source_[pos_] == ']') {
+                pos_++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos_ < end_) {
+                final char c = source_[pos_];
+                if (c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != '\f') {
+                    return;
+                }
+                pos_++;
+            }
+        }
+
+        private boolean skipString(final char quote) {
+            pos_++;
+            while (pos_ < end_) {
+                final char c = source_[pos_];
+                if (c == quote) {
+                    pos_++;
+                    return true;
+                }
+                if (c == '\\' || c == '\n' || c == '\r' || c == '\f') {
+                    return false;
+                }
+                pos_++;
+            }
+            return false;
+        }
+
+        private String ident() {
+            final int start = pos_;
+            if (pos_ < end_ && source_[pos_] == '-') {
+                pos_++;
+            }
+            if (pos_ >= end_ || !isNameStart(source_[pos_])) {
+                return null;
+            }
+            while (pos_ < end_ && isNameChar(source_[pos_])) {
+                pos_++;
+            }
+            return new String(source_, start, pos_ - start);
+        }
+
+        private void reset() {
+            elementName_ = null;
+            id_ = null;
+            className_ = null;
+            empty_ = true;
+            pseudoElement_ = false;
+        }
+
+        private static boolean isLegacyPseudoElement(final String name) {
+            return "before".equalsIgnoreCase(name) || "after".equalsIgnoreCase(name)
+                    || "first-line".equalsIgnoreCase(name) || "first-letter".equalsIgnoreCase(name);
+        }
+
+        private static boolean isNameStart(final char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c >= 0x80;
+        }
+
+        private static boolean isNameChar(final char c) {
+            return isNameStart(c) || (c >= '0' && c <= '9') || c == '-';
+        }
+    }
+}
@@ -196,6 +196,20 @@ public String toString() {
         return fromStyle_ + "," + idCount_ + "," + classCount_ + "," + typeCount_;
     }
 
+    /**
+     * Returns the specificity packed into one long; comparing the packed
+     * values gives the same order as {@link #compareTo(SelectorSpecificity)}.
+     * Every part uses 16 bits, larger counts are capped.
+     *
+     * @return the packed specificity
+     */
+    public long getPackedValue() {
+        return ((long) Math.min(fromStyle_, 0xFFFF) << 48)
+                | ((long) Math.min(idCount_, 0xFFFF) << 32)
+                | ((long) Math.min(classCount_, 0xFFFF) << 16)
+                | Math.min(typeCount_, 0xFFFF);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -19,6 +19,7 @@
  */
 module org.htmlunit.cssparser {
     requires java.xml;
+    requires static jdk.jfr;
 
     exports org.htmlunit.cssparser.dom;
     exports org.htmlunit.cssparser.parser;
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.htmlunit.cssparser.dom.CSSCascade.Origin;
+import org.htmlunit.cssparser.parser.CSSInstrumentation;
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.CSSParserStatistics;
+import org.htmlunit.cssparser.parser.InputSource;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSCascade}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSCascadeTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void specificityAndOrder() throws Exception {
+        final CSSCascade<TestElement> cascade = new CSSCascade<>(TestElement.ADAPTER);
+        cascade.addStyleSheet(parse("p { color: red; width: 1px }\n"
+                + ".a { color: green }\n"
+                + "p { width: 2px }\n"
+                + "#x { color: blue }\n"), Origin.AUTHOR);
+
+        final TestElement body = new TestElement("body");
+        final TestElement p = body.add(new TestElement("p").cls("a"));
+        final TestElement px = body.add(new TestElement("p").cls("a").id("x"));
+
+        final CSSComputedStyle style = cascade.computeStyle(p, null, null);
+        assertEquals("green", style.getPropertyValue("color"));
+        assertEquals("2px", style.getPropertyValue("width"));
+
+        assertEquals("blue", cascade.computeStyle(px, null, null).getPropertyValue("color"));
+        assertEquals(4, cascade.getMatchingEntries(px).size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void important() throws Exception {
+        final CSSCascade<TestElement> cascade = new CSSCascade<>(TestElement.ADAPTER);
+        cascade.addStyleSheet(parse("p { color: red !important; width: 1px; height: 1px }"),
+                Origin.USER_AGENT);
+        cascade.addStyleSheet(parse("p { color: green; width: 2px !important; margin: 0 !important }"),
+                Origin.USER);
+        cascade.addStyleSheet(parse("#x { color: blue; width: 3px; height: 3px;"
+                + " margin: 3px !important; top: 3px }"), Origin.AUTHOR);
+
+        final TestElement p = new TestElement("p").id("x");
+        final CSSStyleDeclarationImpl inline = new CSSOMParser().parseStyleDeclaration("top: 4px; margin: 4px");
+        final CSSComputedStyle style = cascade.computeStyle(p, inline, null);
+
+        assertEquals("red", style.getPropertyValue("color"));
+        assertEquals("2px", style.getPropertyValue("width"));
+        assertEquals("3px", style.getPropertyValue("height"));
+        assertEquals("", style.getPropertyValue("margin"));
+        assertEquals("0", style.getPropertyValue("margin-top"));
+        assertEquals("0", style.getPropertyValue("margin-left"));
+        assertEquals("4px", style.getPropertyValue("top"));
+
+        final CSSStyleDeclarationImpl importantInline =
+                new CSSOMParser().parseStyleDeclaration("top: 5px !important");
+        cascade.addStyleSheet(parse("p { top: 6px !important }"), Origin.AUTHOR);
+        assertEquals("5px", cascade.computeStyle(p, importantInline, null).getPropertyValue("top"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void inheritance() throws Exception {
+        final CSSCascade<TestElement> cascade = new CSSCascade<>(TestElement.ADAPTER);
+        cascade.addStyleSheet(parse("div { color: red; width: 10px; --gap: 4px; }\n"
+                + "span { width: inherit }\n"
+                + "em { color: initial; width: unset; --gap: inherit }\n"
+                + "b { color: unset }"), Origin.AUTHOR);
+
+        final TestElement div = new TestElement("div");
+        final TestElement span = div.add(new TestElement("span"));
+        final TestElement em = div.add(new TestElement("em"));
+        final TestElement b = div.add(new TestElement("b"));
+
+        final CSSComputedStyle divStyle = cascade.computeStyle(div, null, null);
+        final CSSComputedStyle spanStyle = cascade.computeStyle(span, null, divStyle);
+        assertEquals("red", spanStyle.getPropertyValue("color"));
+        assertEquals("10px", spanStyle.getPropertyValue("width"));
+        assertEquals("4px", spanStyle.getPropertyValue("--gap"));
+
+        final CSSComputedStyle emStyle = cascade.computeStyle(em, null, divStyle);
+        assertNull(emStyle.getPropertyCSSValue("color"));
+        assertNull(emStyle.getPropertyCSSValue("width"));
+        assertEquals("4px", emStyle.getPropertyValue("--gap"));
+
+        assertEquals("red", cascade.computeStyle(b, null, divStyle).getPropertyValue("color"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void selectors() throws Exception {
+        final CSSCascade<TestElement> cascade = new CSSCascade<>(TestElement.ADAPTER);
+        cascade.addStyleSheet(parse("ul > li:first-child { top: 1px }\n"
+                + "li:nth-child(2n+1) { left: 1px }\n"
+                + "li + li { right: 1px }\n"
+                + "li ~ li.last { bottom: 1px }\n"
+                + "[data-x^=ab] { color: red }\n"
+                + "li:not(.last) { height: 1px }\n"
+                + "ul:has(> li.last) li:last-child { width: 1px }\n"
+                + "li:lang(de) { z-index: 1 }\n"
+                + "li::before { color: blue }\n"), Origin.AUTHOR);
+
+        final TestElement ul = new TestElement("ul").attr("lang", "de-CH");
+        final TestElement li1 = ul.add(new TestElement("li").attr("data-x", "abc"));
+        final TestElement li2 = ul.add(new TestElement("li"));
+        final TestElement li3 = ul.add(new TestElement("li").cls("last"));
+
+        final CSSComputedStyle s1 = cascade.computeStyle(li1, null, null);
+        assertEquals("1px", s1.getPropertyValue("top"));
+        assertEquals("1px", s1.getPropertyValue("left"));
+        assertEquals("", s1.getPropertyValue("right"));
+        assertEquals("red", s1.getPropertyValue("color"));
+        assertEquals("1px", s1.getPropertyValue("height"));
+        assertEquals("1", s1.getPropertyValue("z-index"));
+
+        final CSSComputedStyle s2 = cascade.computeStyle(li2, null, null);
+        assertEquals("", s2.getPropertyValue("top"));
+        assertEquals("", s2.getPropertyValue("left"));
+        assertEquals("1px", s2.getPropertyValue("right"));
+        assertEquals("", s2.getPropertyValue("color"));
+
+        final CSSComputedStyle s3 = cascade.computeStyle(li3, null, null);
+        assertEquals("1px", s3.getPropertyValue("left"));
+        assertEquals("1px", s3.getPropertyValue("bottom"));
+        assertEquals("", s3.getPropertyValue("height"));
+        assertEquals("1px", s3.getPropertyValue("width"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void media() throws Exception {
+        final CSSStyleSheetImpl sheet = parse("p { color: red }\n"
+                + "@media print { p { color: green } }\n"
+                + "@media screen { p { color: blue } }\n"
+                + "@media all { p { top: 1px } }\n");
+
+        final CSSCascade<TestElement> screen = new CSSCascade<>(TestElement.ADAPTER,
+                m -> m.getMediaText().contains("screen"));
+        screen.addStyleSheet(sheet, Origin.AUTHOR);
+        assertEquals("blue", screen.computeStyle(new TestElement("p"), null, null).getPropertyValue("color"));
+        assertEquals("1px", screen.computeStyle(new TestElement("p"), null, null).getPropertyValue("top"));
+
+        final CSSCascade<TestElement> print = new CSSCascade<>(TestElement.ADAPTER,
+                m -> m.getMediaText().contains("print"));
+        print.addStyleSheet(sheet, Origin.AUTHOR);
+        assertEquals("green", print.computeStyle(new TestElement("p"), null, null).getPropertyValue("color"));
+
+        sheet.setDisabled(true);
+        final CSSCascade<TestElement> disabled = new CSSCascade<>(TestElement.ADAPTER);
+        disabled.addStyleSheet(sheet, Origin.AUTHOR);
+        assertEquals(0, disabled.computeStyle(new TestElement("p"), null, null).getLength());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void memoization() throws Exception {
+        final CSSCascade<TestElement> cascade = new CSSCascade<>(TestElement.ADAPTER);
+        cascade.addStyleSheet(parse("tr td.c { color: red }\n"
+                + "td { width: 1px }\n"), Origin.AUTHOR);
+
+        final TestElement tr = new TestElement("tr");
+        final TestElement td1 = tr.add(new TestElement("td").cls("c"));
+        final TestElement td2 = tr.add(new TestElement("td").cls("c"));
+
+        final CSSComputedStyle trStyle = cascade.computeStyle(tr, null, null);
+        final CSSComputedStyle style1 = cascade.computeStyle(td1, null, trStyle);
+        assertEquals("red", style1.getPropertyValue("color"));
+        assertSame(style1, cascade.computeStyle(td2, null, trStyle));
+
+        // other parent style
+        final CSSComputedStyle otherStyle = cascade.computeStyle(td2, null, style1);
+        assertEquals("red", otherStyle.getPropertyValue("color"));
+
+        // position dependent selectors are not shared
+        cascade.addStyleSheet(parse("td + td.c { color: green }"), Origin.AUTHOR);
+        assertEquals("red", cascade.computeStyle(td1, null, trStyle).getPropertyValue("color"));
+        assertEquals("green", cascade.computeStyle(td2, null, trStyle).getPropertyValue("color"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void styleSharing() throws Exception {
+        final CSSParserStatistics statistics = new CSSParserStatistics();
+        CSSInstrumentation.setMetrics(statistics);
+        try {
+            final CSSCascade<TestElement> cascade = new CSSCascade<>(TestElement.ADAPTER);
+            cascade.addStyleSheet(parse("tr td { color: red }\n"
+                    + "td[align=right] { text-align: right }\n"
+                    + "td:nth-child(odd) { background-color: gray }\n"
+                    + "td:hover { color: blue }"), Origin.AUTHOR);
+
+            final TestElement tr = new TestElement("tr");
+            final TestElement td1 = tr.add(new TestElement("td"));
+            final TestElement td2 = tr.add(new TestElement("td"));
+            final TestElement td3 = tr.add(new TestElement("td").attr("align", "right"));
+            final TestElement td4 = tr.add(new TestElement("td"));
+
+            final CSSComputedStyle trStyle = cascade.computeStyle(tr, null, null);
+            final CSSComputedStyle s1 = cascade.computeStyle(td1, null, trStyle);
+            assertEquals("red", s1.getPropertyValue("color"));
+            assertEquals("gray", s1.getPropertyValue("background-color"));
+
+            final CSSComputedStyle s2 = cascade.computeStyle(td2, null, trStyle);
+            assertEquals("red", s2.getPropertyValue("color"));
+            assertEquals("", s2.getPropertyValue("background-color"));
+
+            final CSSComputedStyle s3 = cascade.computeStyle(td3, null, trStyle);
+            assertEquals("right", s3.getPropertyValue("text-align"));
+            assertEquals("gray", s3.getPropertyValue("background-color"));
+
+            assertSame(s2, cascade.computeStyle(td4, null, trStyle));
+
+            // tr, td1 and td3 are misses
+            assertEquals(3, statistics.getCacheMisses(CSSInstrumentation.CACHE_STYLE_SHARING));
+            assertEquals(2, statistics.getCacheHits(CSSInstrumentation.CACHE_STYLE_SHARING));
+
+            assertEquals(1, cascade.getMatchingEntries(td2).size());
+            assertEquals(2, cascade.getMatchingEntries(td1).size());
+        }
+        finally {
+            CSSInstrumentation.setMetrics(null);
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void parseNth() throws Exception {
+        assertArrayEquals(new int[] {2, 1}, CSSCascade.parseNth("odd"));
+        assertArrayEquals(new int[] {2, 0}, CSSCascade.parseNth("even"));
+        assertArrayEquals(new int[] {0, 3}, CSSCascade.parseNth("3"));
+        assertArrayEquals(new int[] {1, 0}, CSSCascade.parseNth("n"));
+        assertArrayEquals(new int[] {-1, 3}, CSSCascade.parseNth("-n+3"));
+        assertArrayEquals(new int[] {3, -2}, CSSCascade.parseNth("3n - 2"));
+        assertArrayEquals(new int[0], CSSCascade.parseNth("2n of .a"));
+    }
+
+    static CSSStyleSheetImpl parse(final String css) throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        try (InputSource source = new InputSource(new StringReader(css))) {
+            return parser.parseStyleSheet(source, null);
+        }
+    }
+
+    /**
+     * Simple element for testing.
+     */
+    static final class TestElement {
+        static final CSSElementAdapter<TestElement> ADAPTER = new CSSElementAdapter<>() {
+            @Override
+            public String getLocalName(final TestElement element) {
+                return element.name_;
+            }
+
+            @Override
+            public String getId(final TestElement element) {
+                return element.attributes_.get("id");
+            }
+
+            @Override
+            public String[] getClassNames(final TestElement element) {
+                final String classes = element.attributes_.get("class");
+                return classes == null ? null : classes.split(" ");
+            }
+
+            @Override
+            public String getAttribute(final TestElement element, final String name) {
+                return element.attributes_.get(name);
+            }
+
+            @Override
+            public TestElement getParent(final TestElement element) {
+                return element.parent_;
+            }
+
+            @Override
+            public TestElement getPreviousSibling(final TestElement element) {
+                return element.sibling(-1);
+            }
+
+            @Override
+            public TestElement getNextSibling(final TestElement element) {
+                return element.sibling(1);
+            }
+
+            @Override
+            public TestElement getFirstChild(final TestElement element) {
+                return element.children_.isEmpty() ? null : element.children_.get(0);
+            }
+        };
+
+        private final String name_;
+        private final Map<String, String> attributes_ = new HashMap<>();
+        private final List<TestElement> children_ = new ArrayList<>();
+        private TestElement parent_;
+
+        TestElement(final String name) {
+            name_ = name;
+        }
+
+        TestElement id(final String id) {
+            return attr("id", id);
+        }
+
+        TestElement cls(final String classes) {
+            return attr("class", classes);
+        }
+
+        TestElement attr(final String name, final String value) {
+            attributes_.put(name, value);
+            return this;
+        }
+
+        TestElement add(final TestElement child) {
+            child.parent_ = this;
+            children_.add(child);
+            return child;
+        }
+
+        TestElement sibling(final int offset) {
+            if (parent_ == null) {
+                return null;
+            }
+            final int index = parent_.children_.indexOf(this) + offset;
+            if (index < 0 || index >= parent_.children_.size()) {
+                return null;
+            }
+            return parent_.children_.get(index);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.htmlunit.cssparser.dom.CSSCustomPropertyDependencyIndex.Dependency;
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.InputSource;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSCustomPropertyDependencyIndex}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSCustomPropertyDependencyIndexTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void directDependencies() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet(
+                ":root { --theme-color: red; --gap: 4px }\n"
+                + "h1 { color: var(--theme-color); margin: var(--gap) calc(var(--gap) * 2) }\n"
+                + "p { padding: 1px; border-color: rgb(var(--r, 0) 0 0) }\n"
+                + "@media print { div { color: var(--theme-color, blue) } }");
+
+        final CSSCustomPropertyDependencyIndex index = new CSSCustomPropertyDependencyIndex(ss);
+
+        assertEquals("[color, color]", names(index.getDirectDependencies("--theme-color")));
+        assertEquals("[margin]", names(index.getDirectDependencies("--gap")));
+        assertEquals("[border-color]", names(index.getDirectDependencies("--r")));
+        assertEquals("[]", names(index.getDirectDependencies("--unknown")));
+        assertEquals(2, index.getAffectedDeclarations("--theme-color").size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void transitiveDependencies() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet(
+                ":root { --base: 4px; --double: calc(var(--base) * 2); --quad: calc(var(--double) * 2) }\n"
+                + "h1 { margin: var(--quad) }\n"
+                + "h2 { margin: var(--double) }\n"
+                + "h3 { margin: var(--other, var(--base)) }\n"
+                + "h4 { margin: 1px }");
+
+        final CSSCustomPropertyDependencyIndex index = new CSSCustomPropertyDependencyIndex(ss);
+
+        assertEquals("[--double, margin, --quad, margin, margin]", names(index.getAffectedDependencies("--base")));
+        assertEquals("[margin]", names(index.getAffectedDependencies("--quad")));
+        assertEquals(4, index.getAffectedDeclarations("--base").size());
+        assertEquals(1, index.getAffectedDeclarations("--other").size());
+        assertTrue(index.getCyclicCustomProperties().isEmpty());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cycles() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet(
+                ":root { --a: var(--b); --b: var(--c); --c: var(--a); --self: var(--self); --ok: var(--a) }\n"
+                + "h1 { color: var(--a) }");
+
+        final CSSCustomPropertyDependencyIndex index = new CSSCustomPropertyDependencyIndex(ss);
+
+        assertEquals("[--a, --b, --c, --self]", new TreeSet<>(index.getCyclicCustomProperties()).toString());
+        assertTrue(index.isCyclic("--b"));
+        assertFalse(index.isCyclic("--ok"));
+
+        // the walk terminates even in the presence of cycles
+        assertEquals("[--c, --ok, color, --b, --a]", names(index.getAffectedDependencies("--a")));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void update() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet(
+                ":root { --a: 1px }\n"
+                + "h1 { margin: var(--a) }");
+
+        final CSSCustomPropertyDependencyIndex index = new CSSCustomPropertyDependencyIndex(ss);
+        assertEquals("[margin]", names(index.getDirectDependencies("--a")));
+
+        final CSSStyleDeclarationImpl style = ((CSSStyleRuleImpl) ss.getCssRules().getRules().get(1)).getStyle();
+        style.setProperty("margin", "var(--b)", null);
+        style.setProperty("padding", "var(--a)", null);
+        index.update(style);
+        assertEquals("[padding]", names(index.getDirectDependencies("--a")));
+        assertEquals("[margin]", names(index.getDirectDependencies("--b")));
+
+        final CSSStyleDeclarationImpl root = ((CSSStyleRuleImpl) ss.getCssRules().getRules().get(0)).getStyle();
+        root.setProperty("--a", "var(--a)", null);
+        index.update(root);
+        assertTrue(index.isCyclic("--a"));
+
+        index.remove(style);
+        assertEquals("[--a]", names(index.getDirectDependencies("--a")));
+        assertEquals("[]", names(index.getDirectDependencies("--b")));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cyclesAcrossRules() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet(".x { --a: var(--b) } .y { --b: var(--a) }");
+
+        // the index knows nothing about the elements; the cycle is possible
+        final CSSCustomPropertyDependencyIndex index = new CSSCustomPropertyDependencyIndex(ss);
+        assertTrue(index.isCyclic("--a"));
+        assertTrue(index.isCyclic("--b"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void longChain() throws Exception {
+        final StringBuilder css = new StringBuilder(":root {");
+        for (int i = 0; i < 50_000; i++) {
+            css.append(" --v").append(i).append(": var(--v").append(i + 1).append(");");
+        }
+        css.append(" --v50000: var(--v0) }");
+
+        final CSSCustomPropertyDependencyIndex index =
+                new CSSCustomPropertyDependencyIndex(parseStyleSheet(css.toString()));
+        assertEquals(50_001, index.getCyclicCustomProperties().size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void imports() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("@import 'a.css';\nh1 { color: var(--a) }");
+        final CSSStyleSheetImpl imported = parseStyleSheet("p { margin: var(--a) }");
+        ((CSSImportRuleImpl) ss.getCssRules().getRules().get(0)).setImportedStyleSheet(imported);
+
+        final CSSCustomPropertyDependencyIndex index = new CSSCustomPropertyDependencyIndex(ss);
+        assertEquals("[margin, color]", names(index.getDirectDependencies("--a")));
+    }
+
+    private static String names(final List<Dependency> dependencies) {
+        final List<String> names = new ArrayList<>();
+        for (final Dependency dependency : dependencies) {
+            names.add(dependency.getProperty().getName());
+        }
+        return names.toString();
+    }
+
+    private static CSSStyleSheetImpl parseStyleSheet(final String css) throws Exception {
+        final InputSource is = new InputSource(new StringReader(css));
+        return new CSSOMParser().parseStyleSheet(is, null);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.CSSParseException;
+import org.htmlunit.cssparser.parser.HandlerBase;
+import org.htmlunit.cssparser.parser.InputSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link CSSImportResolver}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSImportResolverTest {
+
+    private ExecutorService executor_;
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    public void setUp() {
+        executor_ = Executors.newFixedThreadPool(4);
+    }
+
+    /**
+     * Cleanup.
+     * @throws Exception if any error occurs
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        executor_.shutdown();
+        assertTrue(executor_.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void nestedImports() throws Exception {
+        final Map<String, String> sheets = new HashMap<>();
+        sheets.put("css/main.css", "@import 'a.css' print;\n@import url(sub/b.css);\nh1 { color: red }");
+        sheets.put("css/a.css", "@import 'sub/b.css';\np { color: blue }");
+        sheets.put("css/sub/b.css", "div { color: green }");
+
+        final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        final CSSStyleSheetLoader loader = uri -> {
+            counts.computeIfAbsent(uri, k -> new AtomicInteger()).incrementAndGet();
+            return CSSStyleSheetLoader.forMap(sheets).load(uri);
+        };
+
+        final CSSStyleSheetImpl main = new CSSImportResolver(loader, executor_).load("css/main.css").get();
+        assertEquals("css/main.css", main.getHref());
+
+        final CSSImportRuleImpl importA = (CSSImportRuleImpl) main.getCssRules().getRules().get(0);
+        final CSSStyleSheetImpl a = importA.getImportedStyleSheet();
+        assertEquals("css/a.css", a.getHref());
+        assertSame(importA, a.getOwnerRule());
+        assertEquals("print", a.getMedia().getMediaText());
+        assertEquals("p { color: blue; }", a.getCssRules().getRules().get(1).getCssText());
+
+        final CSSStyleSheetImpl b1 = ((CSSImportRuleImpl) a.getCssRules().getRules().get(0)).getImportedStyleSheet();
+        final CSSStyleSheetImpl b2 =
+                ((CSSImportRuleImpl) main.getCssRules().getRules().get(1)).getImportedStyleSheet();
+        assertEquals("css/sub/b.css", b1.getHref());
+        assertEquals("div { color: green; }", b1.getCssRules().getRules().get(0).getCssText());
+        assertEquals("div { color: green; }", b2.getCssRules().getRules().get(0).getCssText());
+
+        // fetched once, parsed for every import
+        assertEquals(1, counts.get("css/sub/b.css").get());
+        assertNotSame(b1, b2);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cycle() throws Exception {
+        final Map<String, String> sheets = new HashMap<>();
+        sheets.put("a.css", "@import 'b.css';\na { color: red }");
+        sheets.put("b.css", "@import 'a.css';\n@import 'b.css';\nb { color: red }");
+
+        final List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+        final CSSImportResolver resolver = new CSSImportResolver(CSSStyleSheetLoader.forMap(sheets), executor_);
+        resolver.setErrorHandler(new HandlerBase() {
+            @Override
+            public void warning(final CSSParseException exception) {
+                warnings.add(exception.getMessage());
+            }
+        });
+
+        final CSSStyleSheetImpl a = resolver.load("a.css").get();
+        final CSSStyleSheetImpl b = ((CSSImportRuleImpl) a.getCssRules().getRules().get(0)).getImportedStyleSheet();
+        assertEquals("b.css", b.getHref());
+        assertNull(((CSSImportRuleImpl) b.getCssRules().getRules().get(0)).getImportedStyleSheet());
+        assertNull(((CSSImportRuleImpl) b.getCssRules().getRules().get(1)).getImportedStyleSheet());
+
+        Collections.sort(warnings);
+        assertEquals("[Cyclic import of 'a.css' ignored., Cyclic import of 'b.css' ignored.]", warnings.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void missing() throws Exception {
+        final Map<String, String> sheets = new HashMap<>();
+        sheets.put("a.css", "@import 'missing.css';\na { color: red }");
+
+        final List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+        final CSSImportResolver resolver = new CSSImportResolver(CSSStyleSheetLoader.forMap(sheets), executor_);
+        resolver.setErrorHandler(new HandlerBase() {
+            @Override
+            public void warning(final CSSParseException exception) {
+                warnings.add(exception.getMessage() + " " + exception.getLineNumber());
+            }
+        });
+
+        final CSSStyleSheetImpl a = resolver.load("a.css").get();
+        assertNull(((CSSImportRuleImpl) a.getCssRules().getRules().get(0)).getImportedStyleSheet());
+        assertEquals("[Loading the import 'missing.css' failed: No style sheet found for 'missing.css'. 1]",
+                warnings.toString());
+
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> resolver.load("missing.css").get());
+        assertTrue(e.getCause() instanceof IOException, e.getCause().toString());
+    }
+
+    /**
+     * @param directory the temp dir
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void directory(@TempDir final Path directory) throws Exception {
+        Files.createDirectories(directory.resolve("sub"));
+        Files.writeString(directory.resolve("sub/b.css"), "div { content: 'ä' }", StandardCharsets.UTF_8);
+        Files.writeString(directory.resolve("outside.css"), "p { color: red }", StandardCharsets.UTF_8);
+
+        final CSSStyleSheetLoader loader = CSSStyleSheetLoader.forDirectory(directory.resolve("sub"));
+        assertEquals("div { content: 'ä' }", loader.load("b.css?v=1"));
+        assertEquals("div { content: 'ä' }", loader.load("/b.css"));
+        assertThrows(IOException.class, () -> loader.load("../outside.css"));
+        assertThrows(IOException.class, () -> loader.load("unknown.css"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void resolveImports() throws Exception {
+        final Map<String, String> sheets = new HashMap<>();
+        sheets.put("http://example.com/css/a.css", "a { color: red }");
+
+        final CSSStyleSheetImpl sheet = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader("@import '/css/a.css';")), "http://example.com/index.css");
+        final CSSImportResolver resolver = new CSSImportResolver(CSSStyleSheetLoader.forMap(sheets), executor_);
+        assertSame(sheet, resolver.resolveImports(sheet).get());
+
+        final CSSStyleSheetImpl a = ((CSSImportRuleImpl) sheet.getCssRules().getRules().get(0))
+                .getImportedStyleSheet();
+        assertEquals("http://example.com/css/a.css", a.getHref());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+
+import org.htmlunit.cssparser.dom.CSSMemoryUsage.Category;
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.InputSource;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSMemoryUsage}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSMemoryUsageTest {
+
+    private static final String CSS = "h1, div > p.intro { color: red; margin: 1px 2px }\n"
+            + "p:not(.a) { width: calc(100% - 2px) }\n"
+            + "@media print { .c { color: #fff } }\n";
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void estimate() throws Exception {
+        assertTrue(CSSMemoryUsage.isAvailable());
+
+        final CSSStyleSheetImpl sheet = parse(CSS);
+        final CSSMemoryUsage usage = CSSMemoryUsage.estimate(sheet);
+
+        assertEquals(1, usage.getCount(Category.SHEETS));
+        // 4 rules, 2 rule lists and their internal lists
+        assertTrue(usage.getCount(Category.RULES) >= 6);
+        assertTrue(usage.getCount(Category.DECLARATIONS) >= 3);
+        assertTrue(usage.getCount(Category.SELECTORS) > 4);
+        assertTrue(usage.getCount(Category.CONDITIONS) >= 2);
+        assertTrue(usage.getCount(Category.MEDIA) > 0);
+        assertTrue(usage.getCount(Category.LEXICAL_UNITS) >= 6);
+        assertTrue(usage.getCount(Category.LOCATORS) > 0);
+        assertTrue(usage.getCount(Category.STRINGS) > 0);
+        assertEquals(0, usage.getCount(Category.INDEX));
+
+        long total = 0;
+        for (final Category category : Category.values()) {
+            assertTrue(usage.getBytes(category) % 8 == 0);
+            total += usage.getBytes(category);
+        }
+        assertEquals(total, usage.getTotalBytes());
+        assertTrue(usage.toString().startsWith("total: " + total + ", sheets: "), usage.toString());
+
+        final CSSMemoryUsage doubled = CSSMemoryUsage.estimate(parse(CSS + CSS));
+        assertTrue(doubled.getTotalBytes() > usage.getTotalBytes() * 3 / 2);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void frozen() throws Exception {
+        final CSSStyleSheetImpl sheet = parse(CSS);
+        final long before = CSSMemoryUsage.estimate(sheet).getTotalBytes();
+        sheet.freeze();
+
+        final CSSMemoryUsage usage = CSSMemoryUsage.estimate(sheet);
+        assertTrue(usage.getCount(Category.INDEX) > 0);
+        assertTrue(usage.getTotalBytes() > before);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void partOfSheet() throws Exception {
+        final CSSStyleSheetImpl sheet = parse(CSS);
+        final AbstractCSSRuleImpl rule = sheet.getCssRules().getRules().get(0);
+
+        final CSSMemoryUsage usage = CSSMemoryUsage.estimate(rule);
+        assertEquals(0, usage.getCount(Category.SHEETS));
+        assertEquals(1, usage.getCount(Category.RULES));
+        assertTrue(usage.getCount(Category.DECLARATIONS) >= 1);
+        assertTrue(usage.getTotalBytes() < CSSMemoryUsage.estimate(sheet).getTotalBytes());
+
+        assertEquals(0, CSSMemoryUsage.estimate(null).getTotalBytes());
+    }
+
+    private static CSSStyleSheetImpl parse(final String css) throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        try (InputSource source = new InputSource(new StringReader(css))) {
+            return parser.parseStyleSheet(source, null);
+        }
+    }
+}
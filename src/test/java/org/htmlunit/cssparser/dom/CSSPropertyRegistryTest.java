@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSPropertyRegistry}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSPropertyRegistryTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ids() throws Exception {
+        final int id = CSSPropertyRegistry.getId("background-color");
+        assertTrue(id >= 0);
+        assertEquals("background-color", CSSPropertyRegistry.getName(id));
+        assertEquals(id, CSSPropertyRegistry.getId("Background-Color"));
+
+        assertEquals(CSSPropertyRegistry.UNKNOWN, CSSPropertyRegistry.getId("--custom"));
+        assertEquals(CSSPropertyRegistry.UNKNOWN, CSSPropertyRegistry.getId("unknown"));
+        assertEquals(CSSPropertyRegistry.UNKNOWN, CSSPropertyRegistry.getId(null));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sortedAndDense() throws Exception {
+        for (int i = 0; i < CSSPropertyRegistry.getCount(); i++) {
+            final String name = CSSPropertyRegistry.getName(i);
+            assertEquals(i, CSSPropertyRegistry.getId(name));
+            if (i > 0) {
+                assertTrue(CSSPropertyRegistry.getName(i - 1).compareTo(name) < 0, name);
+            }
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void shorthands() throws Exception {
+        assertTrue(CSSPropertyRegistry.isShorthand(CSSPropertyRegistry.getId("margin")));
+        assertTrue(CSSPropertyRegistry.isShorthand(CSSPropertyRegistry.getId("border-top")));
+        assertFalse(CSSPropertyRegistry.isShorthand(CSSPropertyRegistry.getId("margin-top")));
+        assertFalse(CSSPropertyRegistry.isShorthand(CSSPropertyRegistry.UNKNOWN));
+    }
+}
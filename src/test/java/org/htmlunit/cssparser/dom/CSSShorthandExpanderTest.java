@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSShorthandExpander}.
+ * @author Ronald Brill
+ */
+public class CSSShorthandExpanderTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void box() throws Exception {
+        assertEquals("margin-top: 1px; margin-right: 1px; margin-bottom: 1px; margin-left: 1px",
+                expand("margin", "1px"));
+        assertEquals("padding-top: 1px; padding-right: 2px; padding-bottom: 3px; padding-left: 2px",
+                expand("padding", "1px 2px 3px"));
+        assertEquals("top: 1px; right: 2px; bottom: 3px; left: 4px", expand("inset", "1px 2px 3px 4px"));
+        assertEquals("border-top-style: solid; border-right-style: none;"
+                + " border-bottom-style: solid; border-left-style: none",
+                expand("border-style", "solid none"));
+
+        assertNull(expand("margin", "1px 2px 3px 4px 5px"));
+        assertNull(expand("margin", "1px, 2px"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void border() throws Exception {
+        assertEquals("border-top-width: 2px; border-top-style: dashed; border-top-color: red",
+                expand("border-top", "dashed red 2px"));
+        assertEquals("border-left-width: medium; border-left-style: solid; border-left-color: currentcolor",
+                expand("border-left", "solid"));
+
+        final String border = expand("border", "thin solid blue");
+        assertTrue(border.startsWith("border-top-width: thin; border-right-width: thin;"), border);
+        assertTrue(border.endsWith("border-bottom-color: blue; border-left-color: blue"), border);
+
+        assertNull(expand("border", "solid dashed"));
+        assertNull(expand("border", "1px solid red blue"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void font() throws Exception {
+        assertEquals("font-style: italic; font-variant: normal; font-weight: bold; font-stretch: normal;"
+                + " font-size: 12px; line-height: 1.5; font-family: Arial, sans-serif",
+                expand("font", "italic bold 12px/1.5 Arial, sans-serif"));
+        assertEquals("font-style: normal; font-variant: normal; font-weight: 700; font-stretch: condensed;"
+                + " font-size: large; line-height: normal; font-family: serif",
+                expand("font", "normal 700 condensed large serif"));
+
+        // system font
+        assertNull(expand("font", "caption"));
+        // no family
+        assertNull(expand("font", "12px"));
+        assertNull(expand("font", "bold bold 12px serif"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void background() throws Exception {
+        assertEquals("background-image: url(\"a.png\"); background-position: center top;"
+                + " background-size: cover; background-repeat: no-repeat; background-attachment: scroll;"
+                + " background-origin: content-box; background-clip: content-box; background-color: red",
+                expand("background", "red url(a.png) center top / cover no-repeat content-box"));
+        assertEquals("background-image: none; background-position: 0% 0%;"
+                + " background-size: auto; background-repeat: repeat; background-attachment: scroll;"
+                + " background-origin: padding-box; background-clip: border-box; background-color: green",
+                expand("background", "green"));
+
+        // multiple layers
+        assertNull(expand("background", "url(a.png), red"));
+        assertNull(expand("background", "red blue"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void flex() throws Exception {
+        assertEquals("flex-grow: 0; flex-shrink: 0; flex-basis: auto", expand("flex", "none"));
+        assertEquals("flex-grow: 1; flex-shrink: 1; flex-basis: auto", expand("flex", "auto"));
+        assertEquals("flex-grow: 2; flex-shrink: 1; flex-basis: 0%", expand("flex", "2"));
+        assertEquals("flex-grow: 1; flex-shrink: 1; flex-basis: 10px", expand("flex", "10px"));
+        assertEquals("flex-grow: 1; flex-shrink: 0; flex-basis: 0", expand("flex", "1 0 0"));
+        assertNull(expand("flex", "1 2 3"));
+
+        assertEquals("flex-direction: column; flex-wrap: wrap", expand("flex-flow", "wrap column"));
+        assertEquals("flex-direction: row; flex-wrap: nowrap", expand("flex-flow", "row"));
+        assertNull(expand("flex-flow", "row column"));
+
+        assertEquals("row-gap: 1px; column-gap: 2px", expand("gap", "1px 2px"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void gridTemplate() throws Exception {
+        assertEquals("grid-template-rows: none; grid-template-columns: none; grid-template-areas: none",
+                expand("grid-template", "none"));
+        assertEquals("grid-template-rows: 100px auto; grid-template-columns: 1fr 2fr; grid-template-areas: none",
+                expand("grid-template", "100px auto / 1fr 2fr"));
+
+        assertNull(expand("grid-template", "\"a b\" 10px / 1fr 1fr"));
+        assertNull(expand("grid-template", "100px auto"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void keywordsAndVariables() throws Exception {
+        assertEquals("flex-grow: inherit; flex-shrink: inherit; flex-basis: inherit", expand("flex", "inherit"));
+        assertEquals("row-gap: unset; column-gap: unset", expand("gap", "unset"));
+
+        assertNull(expand("margin", "var(--m)"));
+        assertNull(expand("margin", "1px calc(var(--m) + 1px)"));
+        assertNull(expand("color", "red"));
+        assertNull(expand("margin", ""));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void priorityAndLocator() throws Exception {
+        final CSSStyleDeclarationImpl style = new CSSOMParser().parseStyleDeclaration("margin: 1px !important");
+        final Property margin = style.getPropertyDeclaration("margin");
+        final List<Property> longhands = CSSShorthandExpander.expand(margin);
+
+        assertEquals(4, longhands.size());
+        for (final Property longhand : longhands) {
+            assertTrue(longhand.isImportant());
+            assertEquals(margin.getLocator(), longhand.getLocator());
+            assertNotEquals(CSSPropertyRegistry.UNKNOWN, longhand.getId());
+        }
+    }
+
+    /**
+     * All the longhands have to be known to the registry.
+     */
+    @Test
+    public void longhandNames() {
+        for (final String shorthand : new String[] {"margin", "padding", "inset", "border-width", "border-style",
+            "border-color", "border", "border-top", "border-right", "border-bottom", "border-left", "gap", "font",
+            "background", "flex", "flex-flow", "grid-template"}) {
+            final List<String> names = CSSShorthandExpander.getLonghandNames(shorthand);
+            for (final String name : names) {
+                assertNotEquals(CSSPropertyRegistry.UNKNOWN, CSSPropertyRegistry.getId(name), name);
+            }
+        }
+        assertEquals(List.of("row-gap", "column-gap"), CSSShorthandExpander.getLonghandNames("GAP"));
+        assertNull(CSSShorthandExpander.getLonghandNames("color"));
+    }
+
+    private static String expand(final String name, final String value) throws Exception {
+        final CSSValueImpl cssValue = new CSSOMParser().parsePropertyValue(value);
+        final List<Property> longhands = CSSShorthandExpander.expand(new Property(name, cssValue, false));
+        if (longhands == null) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final Property longhand : longhands) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(longhand);
+        }
+        return sb.toString();
+    }
+}
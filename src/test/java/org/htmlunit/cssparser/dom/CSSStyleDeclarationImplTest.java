@@ -18,6 +18,7 @@
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -25,10 +26,12 @@
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.io.IOUtils;
 import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.InputSource;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -229,6 +232,39 @@ public void serialize() throws Exception {
         assertEquals(style, o);
     }
 
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void serializeIndexed() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            css.append("prop").append(i).append(": ").append(i).append("px; ");
+        }
+        css.append("color: red");
+        final CSSStyleDeclarationImpl style = parseStyleDeclaration(css.toString());
+        assertEquals("red", style.getPropertyValue("color"));
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(style);
+        }
+        final CSSStyleDeclarationImpl copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy = (CSSStyleDeclarationImpl) ois.readObject();
+        }
+
+        // the ids are not serialized
+        final int colorId = CSSPropertyRegistry.getId("color");
+        assertEquals("red", copy.getPropertyCSSValue(colorId).getCssText());
+
+        // renames of the properties are still detected
+        assertEquals("0px", copy.getPropertyValue("prop0"));
+        copy.getPropertyDeclaration("prop0").setName("renamed");
+        assertEquals("0px", copy.getPropertyValue("renamed"));
+        assertEquals("", copy.getPropertyValue("prop0"));
+    }
+
     /**
      * @throws Exception if any error occurs
      */
@@ -328,11 +364,234 @@ public void removePropertyBlank() throws Exception {
         assertEquals("", style.removeProperty("display"));
     }
 
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lookupManyProperties() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            css.append("prop").append(i).append(": ").append(i).append("px; ");
+        }
+        css.append("PROP7: 77px; display: block; display: inline");
+        final CSSStyleDeclarationImpl style = parseStyleDeclaration(css.toString());
+        assertEquals(43, style.getLength());
+
+        assertEquals("0px", style.getPropertyValue("prop0"));
+        assertEquals("39px", style.getPropertyValue("Prop39"));
+        // last one wins
+        assertEquals("77px", style.getPropertyValue("prop7"));
+        assertEquals("inline", style.getPropertyValue("DISPLAY"));
+        assertEquals("", style.getPropertyValue("unknown"));
+
+        // removes the first one
+        assertEquals("block", style.removeProperty("display"));
+        assertEquals("inline", style.getPropertyValue("display"));
+        assertEquals("inline", style.removeProperty("display"));
+        assertEquals("", style.getPropertyValue("display"));
+        assertEquals("", style.removeProperty("display"));
+
+        style.setProperty("Color", "red", "important");
+        assertEquals("red", style.getPropertyValue("color"));
+        assertEquals("important", style.getPropertyPriority("COLOR"));
+        style.setProperty("color", "blue", null);
+        assertEquals("blue", style.getPropertyValue("color"));
+        assertEquals(42, style.getLength());
+
+        // direct modifications of the property list
+        style.getProperties().set(0, new Property("prop0", parsePropertyValue("1em"), false));
+        assertEquals("1em", style.getPropertyValue("prop0"));
+        style.getProperties().remove(1);
+        assertEquals("", style.getPropertyValue("prop1"));
+
+        // renamed property
+        style.getPropertyDeclaration("prop2").setName("renamed");
+        assertEquals("2px", style.getPropertyValue("renamed"));
+        assertEquals("", style.getPropertyValue("prop2"));
+
+        // modifications done through a sub list
+        style.getProperties().subList(2, 4).set(0, new Property("prop3", parsePropertyValue("3em"), false));
+        assertEquals("3em", style.getPropertyValue("prop3"));
+        style.getProperties().subList(2, 10).subList(1, 3).clear();
+        assertEquals("", style.getPropertyValue("prop4"));
+        assertEquals(39, style.getLength());
+
+        // renames while iterating
+        for (final Property property : style.getProperties()) {
+            if ("prop10".equals(property.getName())) {
+                property.setName("renamed10");
+            }
+        }
+        assertEquals("10px", style.getPropertyValue("renamed10"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lookupSharedProperty() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            css.append("prop").append(i).append(": ").append(i).append("px; ");
+        }
+        final CSSStyleDeclarationImpl style1 = parseStyleDeclaration(css.toString());
+        final CSSStyleDeclarationImpl style2 = parseStyleDeclaration(css.toString());
+
+        final Property shared = new Property("shared", parsePropertyValue("1em"), false);
+        style1.addProperty(shared);
+        style2.addProperty(shared);
+        assertEquals("1em", style1.getPropertyValue("shared"));
+        assertEquals("1em", style2.getPropertyValue("shared"));
+
+        shared.setName("renamed");
+        assertEquals("1em", style1.getPropertyValue("renamed"));
+        assertEquals("1em", style2.getPropertyValue("renamed"));
+        assertEquals("", style2.getPropertyValue("shared"));
+
+        // removed properties don't notify the list any longer
+        final CSSStyleDeclarationImpl.PropertyList properties1 =
+                (CSSStyleDeclarationImpl.PropertyList) style1.getProperties();
+        style1.removeProperty("renamed");
+        final int version = properties1.version();
+        shared.setName("other");
+        assertEquals(version, properties1.version());
+        assertEquals("1em", style2.getPropertyValue("other"));
+
+        final CSSStyleDeclarationImpl.PropertyList properties2 =
+                (CSSStyleDeclarationImpl.PropertyList) style2.getProperties();
+        properties2.removeIf(p -> p == shared);
+        final int version2 = properties2.version();
+        shared.setName("again");
+        assertEquals(version2, properties2.version());
+
+        // a property contained twice stays registered until both are removed
+        style1.addProperty(shared);
+        style1.addProperty(shared);
+        properties1.remove(shared);
+        shared.setName("twice");
+        assertEquals("1em", style1.getPropertyValue("twice"));
+        properties1.clear();
+        final int version3 = properties1.version();
+        shared.setName("gone");
+        assertEquals(version3, properties1.version());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lookupById() throws Exception {
+        final int colorId = CSSPropertyRegistry.getId("color");
+        final int marginId = CSSPropertyRegistry.getId("margin-top");
+
+        CSSStyleDeclarationImpl style = parseStyleDeclaration("color: red; --x: 1px; COLOR: blue");
+        assertEquals("blue", style.getPropertyCSSValue(colorId).getCssText());
+        assertNull(style.getPropertyDeclaration(marginId));
+        assertNull(style.getPropertyDeclaration(CSSPropertyRegistry.UNKNOWN));
+
+        final StringBuilder css = new StringBuilder("color: red; ");
+        for (int i = 0; i < 20; i++) {
+            css.append("prop").append(i).append(": ").append(i).append("px; ");
+        }
+        css.append("color: green");
+        style = parseStyleDeclaration(css.toString());
+        assertEquals("green", style.getPropertyCSSValue(colorId).getCssText());
+
+        style.removeProperty("color");
+        assertEquals("green", style.getPropertyCSSValue(colorId).getCssText());
+        style.removeProperty("color");
+        assertNull(style.getPropertyDeclaration(colorId));
+
+        style.setProperty("margin-top", "2px", null);
+        assertEquals("2px", style.getPropertyCSSValue(marginId).getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void longhands() throws Exception {
+        final int marginTopId = CSSPropertyRegistry.getId("margin-top");
+        final int marginLeftId = CSSPropertyRegistry.getId("margin-left");
+        final int colorId = CSSPropertyRegistry.getId("color");
+
+        final CSSStyleDeclarationImpl style =
+                parseStyleDeclaration("margin: 1px 2px !important; color: red; margin-left: 3px; color: blue");
+        assertEquals("margin: 1px 2px !important; color: red; margin-left: 3px; color: blue", style.getCssText());
+        assertEquals(7, style.getLonghandProperties().size());
+        assertEquals("1px", style.getLonghandCSSValue(marginTopId).getCssText());
+        // important wins
+        assertEquals("2px", style.getLonghandCSSValue(marginLeftId).getCssText());
+        assertEquals("blue", style.getLonghandCSSValue(colorId).getCssText());
+        assertNull(style.getLonghandDeclaration(CSSPropertyRegistry.getId("margin")));
+        assertNull(style.getLonghandDeclaration(CSSPropertyRegistry.UNKNOWN));
+
+        // changes are detected
+        style.getPropertyDeclaration("margin").setImportant(false);
+        assertEquals("3px", style.getLonghandCSSValue(marginLeftId).getCssText());
+        style.setProperty("margin", "5px", null);
+        assertEquals("5px", style.getLonghandCSSValue(marginTopId).getCssText());
+        style.removeProperty("margin");
+        assertNull(style.getLonghandDeclaration(marginTopId));
+        assertEquals(3, style.getLonghandProperties().size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void longhandsParser() throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setExpandShorthands(true);
+        final CSSStyleSheetImpl sheet;
+        try (InputSource source = new InputSource(new StringReader("p { border: 1px solid; padding: 0 }"))) {
+            sheet = parser.parseStyleSheet(source, null);
+        }
+        sheet.freeze();
+
+        final CSSStyleDeclarationImpl style = ((CSSStyleRuleImpl) sheet.getCssRules().getRules().get(0)).getStyle();
+        assertEquals("border: 1px solid; padding: 0", style.getCssText());
+        assertEquals(16, style.getLonghandProperties().size());
+        assertEquals("solid", style.getLonghandCSSValue(CSSPropertyRegistry.getId("border-left-style")).getCssText());
+        assertEquals("currentcolor",
+                style.getLonghandCSSValue(CSSPropertyRegistry.getId("border-top-color")).getCssText());
+        assertTrue(style.getLonghandDeclaration(CSSPropertyRegistry.getId("padding-top")).isFrozen());
+    }
+
     private CSSStyleDeclarationImpl parseStyleDeclaration(final String value) throws IOException {
         final CSSOMParser parser = new CSSOMParser();
         return parser.parseStyleDeclaration(value);
     }
 
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void modified() throws Exception {
+        final CSSStyleDeclarationImpl style = new CSSStyleDeclarationImpl(null);
+        style.setCssText("color: red; top: 0");
+        assertTrue(style.isModified());
+
+        style.setModified(false);
+        assertFalse(style.isModified());
+
+        style.getPropertyDeclaration("top").setImportant(true);
+        assertTrue(style.isModified());
+        style.setModified(false);
+
+        style.getPropertyDeclaration("top").getValue().setDoubleValue(1);
+        assertTrue(style.isModified());
+        style.setModified(false);
+        assertFalse(style.getPropertyDeclaration("top").isModified());
+
+        style.getProperties().remove(0);
+        assertTrue(style.isModified());
+        style.setModified(false);
+
+        style.setModified(true);
+        assertTrue(style.isModified());
+    }
+
     private CSSValueImpl parsePropertyValue(final String value) throws IOException {
         final CSSOMParser parser = new CSSOMParser();
         return parser.parsePropertyValue(value);
@@ -15,12 +15,23 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.htmlunit.cssparser.ErrorHandler;
 import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.InputSource;
+import org.htmlunit.cssparser.parser.Locator;
+import org.htmlunit.cssparser.util.ThrowCssExceptionErrorHandler;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -109,4 +120,182 @@ public void getCssTextFormated() throws Exception {
         assertEquals("h1 { color: blue; }", value.toString());
         assertEquals("h1 { color: blue; }", value.getCssText());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lazyStyle() throws Exception {
+        final String css = "h1 { color: blue; background: url('x{}.png') }\n"
+                + "p { }\n"
+                + "@media print { div { content: \"}\"; /* } */ margin: 1px !important } }\n"
+                + "span{}\n"
+                + "b { width: 1px";
+
+        final CSSStyleSheetImpl eager = parse(css, false);
+        final CSSStyleSheetImpl lazy = parse(css, true);
+
+        assertEquals(eager.getCssRules().getLength(), lazy.getCssRules().getLength());
+        assertEquals(eager.toString(), lazy.toString());
+
+        final CSSStyleRuleImpl div = (CSSStyleRuleImpl) ((CSSMediaRuleImpl) lazy.getCssRules().getRules().get(2))
+                .getCssRules().getRules().get(0);
+        assertEquals("div { content: \"}\"; margin: 1px !important; }", div.getCssText());
+        assertEquals(div, div.getStyle().getParentRule());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lazyStyleLocator() throws Exception {
+        final String css = "h1 {\n"
+                + "  color: blue;\n"
+                + "    background: green }\n"
+                + "p { margin: 0 }";
+
+        final CSSStyleSheetImpl lazy = parse(css, true);
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) lazy.getCssRules().getRules().get(0);
+        final List<Property> properties = h1.getStyle().getProperties();
+        assertEquals(new Locator(null, 2, 3), properties.get(0).getLocator());
+        assertEquals(new Locator(null, 3, 5), properties.get(1).getLocator());
+
+        final CSSStyleRuleImpl p = (CSSStyleRuleImpl) lazy.getCssRules().getRules().get(1);
+        assertEquals(new Locator(null, 4, 1), p.getLocator());
+        assertEquals(new Locator(null, 4, 5), p.getStyle().getProperties().get(0).getLocator());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lazyStyleErrors() throws Exception {
+        final ErrorHandler errorHandler = new ErrorHandler();
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setErrorHandler(errorHandler);
+        parser.setLazyStyleDeclarations(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(
+                new InputSource(new StringReader("h1 { color: ; background: red } p { }")), null);
+
+        // errors inside the declarations are reported on first access
+        assertEquals(0, errorHandler.getErrorCount());
+        assertEquals(2, sheet.getCssRules().getLength());
+        assertEquals("h1 { background: red; }", sheet.getCssRules().getRules().get(0).getCssText());
+        assertEquals(1, errorHandler.getErrorCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lazyStyleThrowingErrorHandler() throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
+        parser.setLazyStyleDeclarations(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(
+                new InputSource(new StringReader("h1 { color: ; background: red } p { top: 0 }")), null);
+
+        // the access does not fail, the declarations parsed so far are kept
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) sheet.getCssRules().getRules().get(0);
+        assertEquals(0, h1.getStyle().getLength());
+        assertFalse(h1.isModified());
+        assertEquals("p { top: 0; }", sheet.getCssRules().getRules().get(1).getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lazyStyleConcurrent() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            css.append(".c").append(i).append(" { margin: ").append(i).append("px; color: red }\n");
+        }
+        final CSSStyleSheetImpl lazy = parse(css.toString(), true);
+        final List<AbstractCSSRuleImpl> rules = lazy.getCssRules().getRules();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<CSSStyleDeclarationImpl>>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    final List<CSSStyleDeclarationImpl> styles = new ArrayList<>();
+                    for (final AbstractCSSRuleImpl rule : rules) {
+                        styles.add(((CSSStyleRuleImpl) rule).getStyle());
+                    }
+                    return styles;
+                }));
+            }
+
+            final List<CSSStyleDeclarationImpl> first = futures.get(0).get();
+            for (final Future<List<CSSStyleDeclarationImpl>> future : futures) {
+                final List<CSSStyleDeclarationImpl> styles = future.get();
+                for (int i = 0; i < styles.size(); i++) {
+                    assertSame(first.get(i), styles.get(i));
+                    assertEquals(i + "px", styles.get(i).getPropertyValue("margin"));
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lazySelectors() throws Exception {
+        final String css = "h1, div > P.x { color: blue }\n"
+                + "@media print { a:hover, #id { margin: 0 } }\n"
+                + ".x\\:y { }\n"
+                + "  b\n  c { width: 1px }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazySelectors(true);
+        parser.setLazyStyleDeclarations(true);
+        final CSSStyleSheetImpl lazy = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final CSSStyleSheetImpl eager = parse(css, false);
+        assertEquals(eager.toString(), lazy.toString());
+
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) lazy.getCssRules().getRules().get(0);
+        assertEquals("[h1, p.x]", Arrays.toString(h1.getSelectorKeys()));
+        assertEquals("h1, div > P.x", h1.getSelectorText());
+
+        // not supported by the scanner, parsed directly
+        final CSSStyleRuleImpl escaped = (CSSStyleRuleImpl) lazy.getCssRules().getRules().get(2);
+        assertNull(escaped.getSelectorKeys());
+
+        // the locators of the selectors point into the original input
+        final CSSStyleRuleImpl bc = (CSSStyleRuleImpl) lazy.getCssRules().getRules().get(3);
+        assertEquals(new Locator(null, 4, 3), bc.getLocator());
+        assertEquals(new Locator(null, 4, 3), bc.getSelectors().get(0).getLocator());
+        assertEquals(new Locator(null, 4, 3), eager.getCssRules().getRules().get(3).getLocator());
+    }
+
+    /**
+     * Invalid selectors are dropped the same way with and without lazy selectors.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lazySelectorsInvalid() throws Exception {
+        final String css = "a[=b] { color: red }\n"
+                + "a::before:hover { color: red }\n"
+                + "h1 { top: 0 }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazySelectors(true);
+        final CSSStyleSheetImpl lazy = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final CSSStyleSheetImpl eager = parse(css, false);
+
+        assertEquals(1, eager.getCssRules().getLength());
+        assertEquals(1, lazy.getCssRules().getLength());
+        assertEquals(eager.toString(), lazy.toString());
+    }
+
+    private static CSSStyleSheetImpl parse(final String css, final boolean lazy) throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazyStyleDeclarations(lazy);
+        return parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+    }
 }
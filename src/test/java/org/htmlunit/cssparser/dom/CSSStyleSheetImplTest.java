@@ -15,6 +15,12 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -23,10 +29,17 @@
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.InputSource;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.SelectorEntry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
 import org.w3c.dom.DOMException;
 
 /**
@@ -218,4 +231,412 @@ public void getCssTextFormated() throws Exception {
 
         assertEquals("h1 { color: blue; }", value.toString());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexDeferredSelectors() throws Exception {
+        final String css = "h1 { color: red }\n"
+                + "div p, .a { color: red }\n"
+                + "#main.a { color: red }\n"
+                + "span.a:hover { color: red }\n"
+                + "*:first-child { color: red }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazySelectors(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+
+        final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex();
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            index.addDeferredStyleRule((CSSStyleRuleImpl) rule);
+        }
+
+        assertEquals("[*:first-child, h1]", selectors(index.getSelectorEntriesIteratorFor("h1", null, null)));
+        assertEquals("[*:first-child, *.a, span.a:hover]",
+                selectors(index.getSelectorEntriesIteratorFor("span", null, new String[] {"a"})));
+        assertEquals("[*#main.a, *:first-child, *.a]",
+                selectors(index.getSelectorEntriesIteratorFor("div", "main", new String[] {"a"})));
+
+        // without id the id selectors without element name are candidates
+        assertEquals("[*#main.a, *:first-child, div p]",
+                selectors(index.getSelectorEntriesIteratorFor("p", new String[0])));
+
+        // the keys are still available after the selectors are parsed
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) sheet.getCssRules().getRules().get(0);
+        assertEquals("h1", h1.getSelectorKeys()[0].toString());
+        assertEquals("h1 { color: red; }", h1.getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexDeferredIdSelectors() throws Exception {
+        final String css = "#x { color: red }\n"
+                + "div#y { color: red }\n"
+                + "span#z { color: red }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazySelectors(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+
+        final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex();
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            index.addDeferredStyleRule((CSSStyleRuleImpl) rule);
+        }
+
+        // without id only the id selectors matching the element name are candidates
+        assertEquals("[*#x, div#y]", selectors(index.getSelectorEntriesIteratorFor("div", new String[0])));
+        assertEquals("[*#x, span#z]", selectors(index.getSelectorEntriesIteratorFor("span", new String[0])));
+        assertEquals("[*#x]", selectors(index.getSelectorEntriesIteratorFor("p", new String[0])));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void getCssTextUnmodifiedRules() throws Exception {
+        final String css = "h1{color:red}\n"
+                + "@media print {\n  p { margin:0 }\n  div{top:0}\n}\n"
+                + "span { left : 1px }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final List<AbstractCSSRuleImpl> rules = sheet.getCssRules().getRules();
+        for (final AbstractCSSRuleImpl rule : rules) {
+            assertFalse(rule.isModified());
+        }
+
+        assertEquals("h1{color:red}\r\n"
+                + "@media print {\n  p { margin:0 }\n  div{top:0}\n}\r\n"
+                + "span { left : 1px }", sheet.getCssText());
+
+        // change a property value
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) rules.get(0);
+        h1.getStyle().getPropertyDeclaration("color").getValue().setCssText("blue");
+        assertTrue(h1.isModified());
+        assertEquals("h1 { color: blue; }\r\n"
+                + "@media print {\n  p { margin:0 }\n  div{top:0}\n}\r\n"
+                + "span { left : 1px }", sheet.getCssText());
+
+        // change a nested rule
+        final CSSMediaRuleImpl media = (CSSMediaRuleImpl) rules.get(1);
+        ((CSSStyleRuleImpl) media.getCssRules().getRules().get(1)).getStyle().removeProperty("top");
+        assertTrue(media.isModified());
+        assertEquals("h1 { color: blue; }\r\n"
+                + "@media print {\n  p { margin: 0; }\n  div { }\n}\r\n"
+                + "span { left : 1px }", sheet.getCssText());
+
+        // new rules are serialized
+        sheet.insertRule("b { top: 0 }", 3);
+        sheet.deleteRule(0);
+        assertEquals("@media print {\n  p { margin: 0; }\n  div { }\n}\r\n"
+                + "span { left : 1px }\r\n"
+                + "b { top: 0; }", sheet.getCssText());
+
+        // reset the flags
+        rules.get(0).setModified(false);
+        assertFalse(media.getCssRules().getRules().get(1).isModified());
+        assertTrue(sheet.getCssText().startsWith("@media print {\n  p { margin:0 }\n  div{top:0}\n}\r\n"));
+
+        // without source tracking the object model is serialized
+        final CSSStyleSheetImpl untracked = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader(css)), null);
+        assertEquals(untracked.toString(), untracked.getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void getCssTextLazyStyle() throws Exception {
+        final String css = "h1 {color:red}\np {margin:0}";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        parser.setLazyStyleDeclarations(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        assertEquals("h1 {color:red}\r\np {margin:0}", sheet.getCssText());
+
+        // parsing the deferred declarations does not modify the rule
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) sheet.getCssRules().getRules().get(0);
+        assertEquals("red", h1.getStyle().getPropertyValue("color"));
+        assertFalse(h1.isModified());
+        assertEquals("h1 {color:red}\r\np {margin:0}", sheet.getCssText());
+
+        h1.getStyle().setProperty("color", "green", "important");
+        assertEquals("h1 { color: green !important; }\r\np {margin:0}", sheet.getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void freeze() throws Exception {
+        final String css = "h1 { color: red; margin: 1px 2px }\n"
+                + "p.intro, div > p { color: blue }\n"
+                + "@media print { p { color: black } }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazyStyleDeclarations(true);
+        parser.setLazySelectors(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final String text = sheet.toString();
+
+        sheet.freeze();
+        assertTrue(sheet.isFrozen());
+        assertTrue(sheet.getCssRules().isFrozen());
+        assertEquals(text, sheet.toString());
+
+        // the rule index is built and resolved upfront
+        final CSSStyleSheetRuleIndex index = sheet.getRuleIndex();
+        assertEquals("[div > p, p.intro]",
+                selectors(index.getSelectorEntriesIteratorFor("p", null, new String[] {"intro"})));
+
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) sheet.getCssRules().getRules().get(0);
+        final CSSStyleDeclarationImpl style = h1.getStyle();
+        final Property color = style.getPropertyDeclaration("color");
+        assertTrue(h1.isFrozen());
+        assertTrue(style.isFrozen());
+        assertTrue(color.isFrozen());
+        assertTrue(color.getValue().isFrozen());
+        assertTrue(((CSSMediaRuleImpl) sheet.getCssRules().getRules().get(2)).getMediaList().isFrozen());
+
+        assertReadOnly(() -> sheet.insertRule("a { color: red }", 0));
+        assertReadOnly(() -> sheet.deleteRule(0));
+        assertReadOnly(() -> sheet.setDisabled(true));
+        assertReadOnly(() -> sheet.setRuleIndex(null));
+        assertReadOnly(() -> sheet.getCssRules().delete(0));
+        assertReadOnly(() -> h1.setSelectorText("h2"));
+        assertReadOnly(() -> h1.setCssText("h2 { color: red }"));
+        assertReadOnly(() -> style.setProperty("color", "green", null));
+        assertReadOnly(() -> style.removeProperty("color"));
+        assertReadOnly(() -> color.setImportant(true));
+        assertReadOnly(() -> color.getValue().setCssText("green"));
+        assertReadOnly(() -> ((CSSMediaRuleImpl) sheet.getCssRules().getRules().get(2)).deleteRule(0));
+        assertReadOnly(() -> new CSSOMParser().reparseStyleSheet(sheet, 0, 0, " "));
+
+        try {
+            sheet.getCssRules().getRules().clear();
+            fail("UnsupportedOperationException expected");
+        }
+        catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            style.getProperties().clear();
+            fail("UnsupportedOperationException expected");
+        }
+        catch (final UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertEquals(text, sheet.toString());
+        assertEquals("red", style.getPropertyValue("color"));
+
+        // freezing twice does no harm
+        sheet.freeze();
+        assertTrue(sheet.isFrozen());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void freezeSharedByThreads() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            css.append(".c").append(i).append(", div > p").append(i).append(" { margin: ").append(i)
+                .append("px; color: red; padding: 1px 2px 3px 4px; border: 1px solid rgb(1, 2, 3); ")
+                .append("width: calc(100% - 2px) }\n");
+        }
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazyStyleDeclarations(true);
+        parser.setLazySelectors(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css.toString())),
+                null);
+        sheet.freeze();
+        final String expected = sheet.toString();
+
+        final Thread[] threads = new Thread[8];
+        final List<String> results = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                final StringBuilder result = new StringBuilder();
+                for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+                    final CSSStyleDeclarationImpl style = ((CSSStyleRuleImpl) rule).getStyle();
+                    result.append(rule.getCssText()).append(style.getPropertyValue("margin"));
+                }
+                results.add(result.toString());
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.length, results.size());
+        final String first = results.get(0);
+        for (final String result : results) {
+            assertEquals(first, result);
+        }
+        assertEquals(expected, sheet.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void overlay() throws Exception {
+        final String css = "h1 { color: red }\n"
+                + "p { color: blue }\n"
+                + "@media print { p { color: black } div { color: white } }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        final CSSStyleSheetImpl base = parser.parseStyleSheet(new InputSource(new StringReader(css)), "base.css");
+        final String text = base.toString();
+
+        final CSSStyleSheetImpl page1 = base.createOverlay();
+        final CSSStyleSheetImpl page2 = base.createOverlay();
+        assertTrue(base.isFrozen());
+        assertSame(base, page1.getBase());
+        assertFalse(page1.isFrozen());
+        assertEquals("base.css", page1.getHref());
+        assertSame(base.getRuleIndex(), page1.getRuleIndex());
+
+        // the rules are shared until changed
+        final List<AbstractCSSRuleImpl> baseRules = base.getCssRules().getRules();
+        final CSSStyleRuleImpl h1 = (CSSStyleRuleImpl) page1.getCssRules().getRules().get(0);
+        assertSame(baseRules.get(0), h1);
+        assertReadOnly(() -> h1.getStyle().setProperty("color", "green", null));
+
+        final CSSStyleRuleImpl h1Copy = page1.materializeRule(h1);
+        assertNotSame(h1, h1Copy);
+        assertSame(h1Copy, page1.materializeRule(h1Copy));
+        assertSame(page1, h1Copy.getParentStyleSheet());
+        assertNotSame(base.getRuleIndex(), page1.getRuleIndex());
+        h1Copy.getStyle().setProperty("color", "green", null);
+        assertSame(h1Copy, page1.getCssRules().getRules().get(0));
+        assertSame(baseRules.get(1), page1.getCssRules().getRules().get(1));
+
+        // nested rules; only the media rule and the changed rule are copied
+        final CSSMediaRuleImpl media = (CSSMediaRuleImpl) baseRules.get(2);
+        final CSSStyleRuleImpl div = (CSSStyleRuleImpl) media.getCssRules().getRules().get(1);
+        page2.materializeRule(div).getStyle().setProperty("color", "gray", null);
+        final CSSMediaRuleImpl mediaCopy = (CSSMediaRuleImpl) page2.getCssRules().getRules().get(2);
+        assertNotSame(media, mediaCopy);
+        assertSame(media.getCssRules().getRules().get(0), mediaCopy.getCssRules().getRules().get(0));
+        assertSame(mediaCopy, mediaCopy.getCssRules().getRules().get(1).getParentRule());
+
+        page2.deleteRule(0);
+        page2.insertRule("a { color: red }", 0);
+        assertEquals(3, base.getCssRules().getLength());
+        assertEquals(text, base.toString());
+
+        assertEquals("h1 { color: green; }\r\np { color: blue }\r\n"
+                + "@media print { p { color: black } div { color: white } }", page1.getCssText());
+        assertEquals("a { color: red; }\r\np { color: blue }\r\n"
+                + "@media print {\n  p { color: black; }\n  div { color: gray; }\n}", page2.getCssText());
+
+        // the rule has to be part of the sheet
+        final CSSStyleSheetImpl empty = new CSSStyleSheetImpl().createOverlay();
+        final DOMException e = assertThrows(DOMException.class, () -> empty.materializeRule(baseRules.get(1)));
+        assertEquals(DOMException.NOT_FOUND_ERR, e.code);
+        assertReadOnly(() -> new CSSOMParser().reparseStyleSheet(page1, 0, 0, " "));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void overlayRuleIndex() throws Exception {
+        final CSSStyleSheetImpl base = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader("h1 { color: red } p { color: blue }")), null);
+        final CSSStyleSheetRuleIndex baseIndex = base.getOrCreateRuleIndex();
+
+        final CSSStyleSheetImpl page = base.createOverlay();
+        assertSame(baseIndex, page.getRuleIndex());
+
+        // the view gets an own index holding only the changes, the shared index stays as it is
+        page.deleteRule(0);
+        final CSSStyleSheetRuleIndex pageIndex = page.getRuleIndex();
+        assertNotNull(pageIndex);
+        assertNotSame(baseIndex, pageIndex);
+        assertTrue(pageIndex.isOverlay());
+        assertEquals("[]", selectors(pageIndex.getSelectorEntriesIteratorFor("h1", null)));
+        assertEquals("[p]", selectors(pageIndex.getSelectorEntriesIteratorFor("p", null)));
+        assertTrue(pageIndex.getElementSelectors().isEmpty());
+
+        page.insertRule("a { color: red }", 0);
+        page.insertRule("p { color: green }", 2);
+        assertSame(pageIndex, page.getRuleIndex());
+        assertEquals("[a]", selectors(pageIndex.getSelectorEntriesIteratorFor("a", null)));
+        assertEquals("[p, p]", selectors(pageIndex.getSelectorEntriesIteratorFor("p", null)));
+        final Iterator<SelectorEntry> p = pageIndex.getSelectorEntriesIteratorFor("p", null);
+        assertSame(base.getCssRules().getRules().get(1), p.next().getRule());
+        assertSame(page.getCssRules().getRules().get(2), p.next().getRule());
+
+        assertSame(baseIndex, base.getRuleIndex());
+        assertEquals("[h1]", selectors(baseIndex.getSelectorEntriesIteratorFor("h1", null)));
+        assertEquals("[p]", selectors(baseIndex.getSelectorEntriesIteratorFor("p", null)));
+        assertNull(baseIndex.getElementSelectors().get("a"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void overlayRuleIndexMaterialize() throws Exception {
+        final CSSStyleSheetImpl base = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader("div { color: red }"
+                        + " @media print { div { color: blue } p { color: red } }"
+                        + " div.x { color: green }")), null);
+        final CSSStyleSheetRuleIndex baseIndex = base.getOrCreateRuleIndex();
+        final List<AbstractCSSRuleImpl> baseRules = base.getCssRules().getRules();
+        final CSSMediaRuleImpl media = (CSSMediaRuleImpl) baseRules.get(1);
+
+        final CSSStyleSheetImpl page = base.createOverlay();
+        final CSSStyleRuleImpl div = page.materializeRule((CSSStyleRuleImpl) baseRules.get(0));
+        final CSSStyleRuleImpl printDiv = page.materializeRule(
+                (CSSStyleRuleImpl) media.getCssRules().getRules().get(0));
+        final CSSStyleRuleImpl printP = page.materializeRule((CSSStyleRuleImpl) media.getCssRules().getRules().get(1));
+
+        // the copies replace the shared rules in source order
+        final CSSStyleSheetRuleIndex pageIndex = page.getRuleIndex();
+        final Iterator<SelectorEntry> divs = pageIndex.getSelectorEntriesIteratorFor("div", new String[] {"x"});
+        assertSame(div, divs.next().getRule());
+        assertSame(baseRules.get(2), divs.next().getRule());
+        assertFalse(divs.hasNext());
+
+        final List<CSSStyleSheetRuleIndex> children = pageIndex.getChildren();
+        assertEquals(1, children.size());
+        assertEquals("print", children.get(0).getMediaList().getMediaText());
+        final Iterator<SelectorEntry> print = children.get(0).getSelectorEntriesIteratorFor("div", null);
+        assertSame(printDiv, print.next().getRule());
+        assertFalse(print.hasNext());
+        assertSame(printP, children.get(0).getSelectorEntriesIteratorFor("p", null).next().getRule());
+
+        // the shared index still refers to the shared rules
+        assertSame(baseRules.get(0), baseIndex.getSelectorEntriesIteratorFor("div", null).next().getRule());
+        assertSame(media.getCssRules().getRules().get(0),
+                baseIndex.getChildren().get(0).getSelectorEntriesIteratorFor("div", null).next().getRule());
+    }
+
+    private static void assertReadOnly(final Executable executable) {
+        final DOMException e = assertThrows(DOMException.class, executable);
+        assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        assertTrue(e.getMessage().startsWith("This style sheet is read only"), e.getMessage());
+    }
+
+    private static String selectors(final Iterator<SelectorEntry> iterator) {
+        final List<String> result = new ArrayList<>();
+        while (iterator.hasNext()) {
+            result.add(iterator.next().getSelector().toString());
+        }
+        return result.toString();
+    }
 }
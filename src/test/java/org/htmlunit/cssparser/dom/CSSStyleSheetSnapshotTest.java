@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.dom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.SelectorEntry;
+import org.htmlunit.cssparser.parser.CSSOMParser;
+import org.htmlunit.cssparser.parser.InputSource;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSStyleSheetSnapshot}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSStyleSheetSnapshotTest {
+
+    private static final String CSS = "@charset \"utf-8\";\n"
+            + "@import url(base.css) screen and (min-width: 100px);\n"
+            + "h1, div > p.intro, a[href^='http' i] + span ~ em { color: red; margin: 1px -2.5em 0 auto !important }\n"
+            + "#main::before { content: \"x\\\"y\"; background: url(img.png) no-repeat rgb(1 2 3 / 50%) }\n"
+            + "p:not(.a, .b):is(:hover, :focus-within) { width: calc(100% - 2px); --x: var(--y, 4px) }\n"
+            + "div:has(> img, + p) [lang|=en] { color: hsl(120deg 50% 50%); clip: rect(1px, 2px, 3px, 4px) }\n"
+            + "li::marker { content: counters(item, '.', decimal) }\n"
+            + "@media print, not screen and (max-width: 600px) {\n"
+            + "  .c { color: #fff; font: 12px/1.5 \"Helvetica Neue\", serif }\n"
+            + "  @media (orientation: landscape) { .d { top: -0.0px; opacity: .125 } }\n"
+            + "}\n"
+            + "@page :first { margin: 1in }\n"
+            + "@font-face { font-family: x; src: url(x.woff2) format('woff2') }\n"
+            + "@unknown foo { bar }\n";
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void roundTrip() throws Exception {
+        final CSSStyleSheetImpl sheet = parse(CSS, false, false);
+        sheet.setTitle("title");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CSSStyleSheetSnapshot.write(sheet, out, true);
+        final CSSStyleSheetImpl copy = CSSStyleSheetSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(sheet.toString(), copy.toString());
+        assertEquals("base.css", copy.getHref());
+        assertEquals("title", copy.getTitle());
+        assertNull(copy.getRuleIndex());
+
+        final List<AbstractCSSRuleImpl> rules = copy.getCssRules().getRules();
+        assertEquals(sheet.getCssRules().getLength(), rules.size());
+        for (final AbstractCSSRuleImpl rule : rules) {
+            assertSame(copy, rule.getParentStyleSheet());
+            assertFalse(rule.isModified());
+        }
+
+        final CSSMediaRuleImpl media = (CSSMediaRuleImpl) rules.get(7);
+        assertSame(media, media.getCssRules().getRules().get(0).getParentRule());
+
+        // locators of the rules and properties
+        final CSSStyleRuleImpl rule = (CSSStyleRuleImpl) rules.get(2);
+        assertEquals(3, rule.getLocator().getLineNumber());
+        assertEquals(1, rule.getLocator().getColumnNumber());
+        assertEquals(3, rule.getStyle().getProperties().get(1).getLocator().getLineNumber());
+
+        // the values still work
+        assertEquals(-2.5, rule.getStyle().getPropertyCSSValue("margin").item(1).getDoubleValue(), 0.0001);
+        final CSSValueImpl color = ((CSSStyleRuleImpl) rules.get(5)).getStyle().getPropertyCSSValue("color");
+        assertEquals(sheet.getCssRules().getRules().get(5).toString(), rules.get(5).toString());
+        assertEquals(0xFF40BF40, ((HSLColorImpl) color.getValue()).getARGB());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void roundTripLazy() throws Exception {
+        final CSSStyleSheetImpl sheet = parse(CSS, false, false);
+        final CSSStyleSheetImpl lazy = parse(CSS, true, true);
+
+        final CSSStyleSheetImpl copy = CSSStyleSheetSnapshot.read(CSSStyleSheetSnapshot.toByteArray(lazy, false));
+        assertEquals(sheet.toString(), copy.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndex() throws Exception {
+        final String css = "p { color: red }\n"
+                + ".a { color: blue }\n"
+                + "p.a, #id { color: green }\n"
+                + "div > * { color: black }\n"
+                + "@media print { p { color: white } }";
+
+        for (final boolean lazy : new boolean[] {false, true}) {
+            final CSSStyleSheetImpl sheet = parse(css, false, lazy);
+            final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex();
+            for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+                index.addRule(rule);
+            }
+            sheet.setRuleIndex(index);
+
+            final CSSStyleSheetImpl copy = CSSStyleSheetSnapshot.read(CSSStyleSheetSnapshot.toByteArray(sheet, true));
+            final CSSStyleSheetRuleIndex copyIndex = copy.getRuleIndex();
+
+            assertEquals(entries(index, "p", "id", "a"), entries(copyIndex, "p", "id", "a"));
+            assertEquals(entries(index, "div", null, null), entries(copyIndex, "div", null, null));
+            assertEquals("[*#id { color: green }, div > * { color: black }, p { color: red }, "
+                    + "*.a { color: blue }, p.a { color: green }]", entries(copyIndex, "p", "id", "a").toString());
+
+            assertEquals(1, copyIndex.getChildren().size());
+            final CSSStyleSheetRuleIndex printIndex = copyIndex.getChildren().get(0);
+            assertEquals("print", printIndex.getMediaList().getMediaText());
+            final Iterator<SelectorEntry> iter = printIndex.getSelectorEntriesIteratorFor("p", null, null);
+            assertTrue(iter.hasNext());
+            final SelectorEntry entry = iter.next();
+            assertSame(((CSSMediaRuleImpl) copy.getCssRules().getRules().get(4)).getCssRules().getRules().get(0),
+                    entry.getRule());
+            assertEquals("p", entry.getSelector().toString());
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void compact() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            css.append(".item").append(i).append(" { color: red; margin: 0 auto; display: block }\n");
+        }
+        final CSSStyleSheetImpl sheet = parse(css.toString(), false, false);
+        final byte[] snapshot = CSSStyleSheetSnapshot.toByteArray(sheet, false);
+
+        // the property names and values are written only once
+        assertTrue(snapshot.length < css.length(), "size " + snapshot.length);
+        assertEquals(sheet.toString(), CSSStyleSheetSnapshot.read(snapshot).toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void invalid() throws Exception {
+        final byte[] snapshot = CSSStyleSheetSnapshot.toByteArray(parse(CSS, false, false), false);
+
+        final byte[] wrongMagic = snapshot.clone();
+        wrongMagic[0] = 'X';
+        assertEquals("Not a style sheet snapshot.",
+                assertThrows(IOException.class, () -> CSSStyleSheetSnapshot.read(wrongMagic)).getMessage());
+
+        final byte[] wrongVersion = snapshot.clone();
+        wrongVersion[4] = (byte) (CSSStyleSheetSnapshot.VERSION + 1);
+        assertEquals("Unsupported style sheet snapshot version 2 (expected 1).",
+                assertThrows(IOException.class, () -> CSSStyleSheetSnapshot.read(wrongVersion)).getMessage());
+
+        final byte[] truncated = new byte[snapshot.length / 2];
+        System.arraycopy(snapshot, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> CSSStyleSheetSnapshot.read(truncated));
+
+        assertThrows(IOException.class, () -> CSSStyleSheetSnapshot.read(new byte[0]));
+    }
+
+    private static List<String> entries(final CSSStyleSheetRuleIndex index, final String elementName,
+            final String id, final String className) {
+        final List<String> result = new ArrayList<>();
+        final Iterator<SelectorEntry> iter = index.getSelectorEntriesIteratorFor(elementName, id,
+                className == null ? null : new String[] {className});
+        while (iter.hasNext()) {
+            final SelectorEntry entry = iter.next();
+            result.add(entry.getSelector() + " { " + entry.getRule().getStyle() + " }");
+        }
+        return result;
+    }
+
+    private static CSSStyleSheetImpl parse(final String css, final boolean lazyStyle, final boolean lazySelectors)
+            throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setLazyStyleDeclarations(lazyStyle);
+        parser.setLazySelectors(lazySelectors);
+        final InputSource source = new InputSource(new StringReader(css));
+        return parser.parseStyleSheet(source, "base.css");
+    }
+}
@@ -15,12 +15,20 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.InputSource;
 import org.junit.jupiter.api.Test;
+import org.w3c.dom.DOMException;
 
 /**
  * Unit tests for {@link CSSUnknownRuleImpl}.
@@ -36,8 +44,8 @@ public class CSSUnknownRuleImplTest {
     public void getCssText() throws Exception {
         final CSSUnknownRuleImpl value = parseUnknownRule("@foo \"text\";");
 
-        assertEquals("@foo text;", value.getCssText());
-        assertEquals("@foo text;", value.toString());
+        assertEquals("@foo \"text\";", value.getCssText());
+        assertEquals("@foo \"text\";", value.toString());
     }
 
     /**
@@ -47,12 +55,12 @@ public void getCssText() throws Exception {
     public void setCssText() throws Exception {
         final CSSUnknownRuleImpl value = parseUnknownRule("@foo \"text\";");
 
-        assertEquals("@foo text;", value.getCssText());
-        assertEquals("@foo text;", value.toString());
+        assertEquals("@foo \"text\";", value.getCssText());
+        assertEquals("@foo \"text\";", value.toString());
 
         value.setCssText("@foo { key: 'value' };");
-        assertEquals("@foo { key: value }", value.getCssText());
-        assertEquals("@foo { key: value }", value.toString());
+        assertEquals("@foo { key: 'value' }", value.getCssText());
+        assertEquals("@foo { key: 'value' }", value.toString());
 
     }
 
@@ -107,7 +115,109 @@ private CSSUnknownRuleImpl parseUnknownRule(final String rule) throws Exception
     public void getCssTextFormated() throws Exception {
         final CSSUnknownRuleImpl value = parseUnknownRule("@foo \"text\";");
 
-        assertEquals("@foo text;", value.toString());
-        assertEquals("@foo text;", value.getCssText());
+        assertEquals("@foo \"text\";", value.toString());
+        assertEquals("@foo \"text\";", value.getCssText());
+    }
+
+    /**
+     * The source of unknown rules is kept as is.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void source() throws Exception {
+        final CSSUnknownRuleImpl value = parseUnknownRule("@supports (display: grid) {\n"
+                + "  /* } */ div { content: \"}\"; background: url('{') }\n"
+                + "  p\\}\\{ { color: red }\n"
+                + "}");
+
+        assertEquals("@supports (display: grid) {\n"
+                + "  /* } */ div { content: \"}\"; background: url('{') }\n"
+                + "  p\\}\\{ { color: red }\n"
+                + "}", value.getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sourceFollowedByRules() throws Exception {
+        final InputSource is = new InputSource(new StringReader(
+                "@layer base { h1 { color: red } } @layer x; h2 { color: blue }"));
+        final CSSStyleSheetImpl ss = new CSSOMParser().parseStyleSheet(is, null);
+
+        assertEquals(3, ss.getCssRules().getLength());
+        assertEquals("@layer base { h1 { color: red } }", ss.getCssRules().getRules().get(0).getCssText());
+        assertEquals("@layer x;", ss.getCssRules().getRules().get(1).getCssText());
+        assertEquals("h2 { color: blue; }", ss.getCssRules().getRules().get(2).getCssText());
+        assertEquals(1, ss.getCssRules().getRules().get(2).getLocator().getLineNumber());
+        assertEquals(45, ss.getCssRules().getRules().get(2).getLocator().getColumnNumber());
+    }
+
+    /**
+     * Unknown rules do not keep the input of the whole sheet.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void noSourceRetained() throws Exception {
+        final InputSource is = new InputSource(new StringReader(
+                "@keyframes x { from { top: 0 } } h1 { color: red }"));
+        final CSSStyleSheetImpl ss = new CSSOMParser().parseStyleSheet(is, null);
+
+        assertEquals("@keyframes x { from { top: 0 } }", ss.getCssRules().getRules().get(0).getCssText());
+        assertEquals(0, CSSMemoryUsage.estimate(ss).getCount(CSSMemoryUsage.Category.SOURCE));
+    }
+
+    /**
+     * Reading the text of a frozen rule and copying the rule for an overlay
+     * do not change the shared rule.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void frozen() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            css.append("@keyframes k").append(i).append(" { from { top: 0 } }\n");
+        }
+        final CSSStyleSheetImpl base = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader(css.toString())), null);
+        base.freeze();
+        final List<AbstractCSSRuleImpl> rules = base.getCssRules().getRules();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    final List<String> texts = new ArrayList<>();
+                    for (final AbstractCSSRuleImpl rule : rules) {
+                        texts.add(rule.getCssText());
+                    }
+                    return texts;
+                }));
+            }
+            for (final Future<List<String>> future : futures) {
+                final List<String> texts = future.get();
+                for (int i = 0; i < texts.size(); i++) {
+                    assertEquals("@keyframes k" + i + " { from { top: 0 } }", texts.get(i));
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        final CSSUnknownRuleImpl shared = (CSSUnknownRuleImpl) rules.get(0);
+        final CSSStyleSheetImpl overlay = base.createOverlay();
+        final CSSUnknownRuleImpl copy = overlay.materializeRule(shared);
+        assertNotSame(shared, copy);
+        copy.setCssText("@foo bar;");
+        assertEquals("@foo bar;", copy.getCssText());
+        assertEquals("@keyframes k0 { from { top: 0 } }", shared.getCssText());
+
+        final DOMException e = assertThrows(DOMException.class, () -> shared.setCssText("@foo bar;"));
+        assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
     }
 }
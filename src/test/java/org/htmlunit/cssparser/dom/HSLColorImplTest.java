@@ -15,7 +15,10 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.LexicalUnit;
 import org.htmlunit.cssparser.parser.LexicalUnitImpl;
 import org.junit.jupiter.api.Test;
@@ -43,4 +46,30 @@ public void getCssText() throws Exception {
 
         assertEquals("hsl(235, 20%, 30%)", hsl.toString());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void packed() throws Exception {
+        HSLColorImpl hsl = parse("hsl(0, 100%, 50%)");
+        assertTrue(hsl.isResolved());
+        assertEquals(0xFFFF0000, hsl.getARGB());
+
+        hsl = parse("hsl(120deg 100% 25%)");
+        assertEquals(0xFF008000, hsl.getARGB());
+
+        hsl = parse("hsla(0.5turn, 100%, 50%, 0.5)");
+        assertEquals(0x8000FFFF, hsl.getARGB());
+
+        hsl = parse("hsl(-120 100% 50%)");
+        assertEquals(0xFF0000FF, hsl.getARGB());
+
+        hsl = parse("hsl(var(--h) 100% 50%)");
+        assertFalse(hsl.isResolved());
+    }
+
+    private static HSLColorImpl parse(final String color) throws Exception {
+        return (HSLColorImpl) new CSSOMParser().parsePropertyValue(color).getValue();
+    }
 }
@@ -15,7 +15,9 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.LexicalUnit;
 import org.htmlunit.cssparser.parser.LexicalUnitImpl;
 import org.junit.jupiter.api.Test;
@@ -40,4 +42,24 @@ public void getCssText() throws Exception {
 
         assertEquals("hwb(235 20% 30%)", hwb.toString());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void packed() throws Exception {
+        HWBColorImpl hwb = parse("hwb(0 0% 0%)");
+        assertTrue(hwb.isResolved());
+        assertEquals(0xFFFF0000, hwb.getARGB());
+
+        hwb = parse("hwb(240 20% 40%)");
+        assertEquals(0xFF333399, hwb.getARGB());
+
+        hwb = parse("hwb(0 60% 60%)");
+        assertEquals(0xFF808080, hwb.getARGB());
+    }
+
+    private static HWBColorImpl parse(final String color) throws Exception {
+        return (HWBColorImpl) new CSSOMParser().parsePropertyValue(color).getValue();
+    }
 }
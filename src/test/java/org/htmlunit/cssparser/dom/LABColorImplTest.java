@@ -15,7 +15,10 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.LexicalUnit;
 import org.htmlunit.cssparser.parser.LexicalUnitImpl;
 import org.junit.jupiter.api.Test;
@@ -40,4 +43,34 @@ public void getCssText() throws Exception {
 
         assertEquals("lab(10 20 30)", lab.toString());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void packed() throws Exception {
+        LABColorImpl lab = parse("lab(100 0 0)");
+        assertTrue(lab.isResolved());
+        assertEquals(0xFFFFFFFF, lab.getARGB());
+
+        lab = parse("lab(50 0 0)");
+        assertEquals(0xFF777777, lab.getARGB());
+
+        lab = parse("lab(54.29 80.8 69.89)");
+        assertEquals(0xFFFF0000, lab.getARGB());
+
+        lab = parse("oklab(62.8% 0.225 0.126)");
+        assertEquals(0xFFFF0000, lab.getARGB());
+
+        // out of sRGB gamut
+        lab = parse("lab(50 120 0)");
+        assertTrue(lab.getRedComponent() > 1f || lab.getBlueComponent() > 1f || lab.getGreenComponent() < 0f);
+
+        lab = parse("lab(var(--l) 0 0)");
+        assertFalse(lab.isResolved());
+    }
+
+    private static LABColorImpl parse(final String color) throws Exception {
+        return (LABColorImpl) new CSSOMParser().parsePropertyValue(color).getValue();
+    }
 }
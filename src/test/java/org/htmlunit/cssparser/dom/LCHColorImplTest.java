@@ -15,7 +15,9 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.LexicalUnit;
 import org.htmlunit.cssparser.parser.LexicalUnitImpl;
 import org.junit.jupiter.api.Test;
@@ -40,4 +42,24 @@ public void getCssText() throws Exception {
 
         assertEquals("lch(235 20% 30rad)", lch.toString());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void packed() throws Exception {
+        LCHColorImpl lch = parse("lch(54.29 106.84 40.85deg)");
+        assertTrue(lch.isResolved());
+        assertEquals(0xFFFF0000, lch.getARGB());
+
+        lch = parse("oklch(62.8% 0.2577 29.23deg / 0.5)");
+        assertEquals(0x80FF0000, lch.getARGB());
+
+        lch = parse("lch(50 0 none)");
+        assertEquals(0xFF777777, lch.getARGB());
+    }
+
+    private static LCHColorImpl parse(final String color) throws Exception {
+        return (LCHColorImpl) new CSSOMParser().parsePropertyValue(color).getValue();
+    }
 }
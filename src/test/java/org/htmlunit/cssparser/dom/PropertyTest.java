@@ -19,6 +19,11 @@
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.htmlunit.cssparser.parser.LexicalUnit;
 import org.htmlunit.cssparser.parser.LexicalUnitImpl;
 import org.junit.jupiter.api.Test;
@@ -172,4 +177,37 @@ public void hashCodeConsistency() throws Exception {
 
         assertEquals(hash1, hash2);
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void id() throws Exception {
+        final Property prop = new Property("Color", null, false);
+        assertEquals(CSSPropertyRegistry.getId("color"), prop.getId());
+
+        prop.setName("--custom");
+        assertEquals(CSSPropertyRegistry.UNKNOWN, prop.getId());
+
+        prop.setName(null);
+        assertEquals(CSSPropertyRegistry.UNKNOWN, prop.getId());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void serializeId() throws Exception {
+        final Property prop = new Property("Color", null, false);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(prop);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            final Property copy = (Property) ois.readObject();
+            assertEquals("Color", copy.getName());
+            assertEquals(CSSPropertyRegistry.getId("color"), copy.getId());
+        }
+    }
 }
@@ -15,7 +15,10 @@
 package org.htmlunit.cssparser.dom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import org.htmlunit.cssparser.parser.CSSOMParser;
 import org.htmlunit.cssparser.parser.LexicalUnit;
 import org.htmlunit.cssparser.parser.LexicalUnitImpl;
 import org.junit.jupiter.api.Test;
@@ -42,4 +45,58 @@ public void getCssText() throws Exception {
 
         assertEquals("rgb(10, 20, 30)", rgb.toString());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void packed() throws Exception {
+        RGBColorImpl rgb = parse("rgb(10, 20, 30)");
+        assertTrue(rgb.isResolved());
+        assertEquals(0xFF0A141E, rgb.getARGB());
+        assertEquals(10, rgb.getRed());
+        assertEquals(20, rgb.getGreen());
+        assertEquals(30, rgb.getBlue());
+        assertEquals(1f, rgb.getAlpha());
+
+        rgb = parse("rgb(100% 0% 50% / 50%)");
+        assertEquals(0x80FF0080, rgb.getARGB());
+        assertEquals(0.5f, rgb.getAlpha());
+
+        rgb = parse("rgba(300, -20, none, 0.25)");
+        assertEquals(0x40FF0000, rgb.getARGB());
+        assertEquals(300f / 255f, rgb.getRedComponent(), 0.0001);
+
+        rgb = parse("rgb(calc(10 + 5) 0 0)");
+        assertEquals(0xFF0F0000, rgb.getARGB());
+
+        // hex colors
+        rgb = parse("#0a141e");
+        assertEquals(0xFF0A141E, rgb.getARGB());
+        rgb = parse("#abc");
+        assertEquals(0xFFAABBCC, rgb.getARGB());
+        rgb = parse("#0a141e80");
+        assertEquals(0x800A141E, rgb.getARGB());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void packedNotResolved() throws Exception {
+        RGBColorImpl rgb = parse("rgb(var(--r) 0 0)");
+        assertFalse(rgb.isResolved());
+        assertEquals(0, rgb.getARGB());
+        assertTrue(Float.isNaN(rgb.getAlpha()));
+
+        rgb = parse("rgb(calc(1em) 0 0)");
+        assertFalse(rgb.isResolved());
+
+        rgb = parse("rgb(from red r g b)");
+        assertFalse(rgb.isResolved());
+    }
+
+    private static RGBColorImpl parse(final String color) throws Exception {
+        return (RGBColorImpl) new CSSOMParser().parsePropertyValue(color).getValue();
+    }
 }
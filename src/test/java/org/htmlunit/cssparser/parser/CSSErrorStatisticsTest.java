@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.htmlunit.cssparser.ErrorHandler;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSErrorStatistics} and the {@link CSSDiagnosticsSink}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSErrorStatisticsTest {
+
+    private static final String CSS = "h1 { *zoom: 1; color: red }\n"
+            + "p { color: ; }\r\n"
+            + "div { background: red }\n"
+            + "h2 { color: blue; $ }";
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void counts() throws Exception {
+        final CSSErrorStatistics statistics = new CSSErrorStatistics();
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setDiagnosticsSink(statistics);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(CSS)), null);
+        assertEquals(4, sheet.getCssRules().getLength());
+
+        assertEquals(3, statistics.getErrorCount());
+        assertEquals(1, statistics.getWarningCount());
+        assertEquals(1, statistics.getCount("invalidDeclarationStarHack"));
+        assertEquals(1, statistics.getCount("invalidExpr"));
+        assertEquals(1, statistics.getCount("invalidStyleRule"));
+        assertEquals(1, statistics.getCount("ignoringRule"));
+        assertEquals(0, statistics.getCount("invalidRule"));
+        assertEquals(0, statistics.getCount("unknown"));
+        assertEquals("{ignoringRule=1, invalidDeclarationStarHack=1, invalidExpr=1, invalidStyleRule=1}",
+                statistics.getCounts().toString());
+
+        // the counts are summed up
+        parser.parseStyleSheet(new InputSource(new StringReader("h1 { color: red } }")), null);
+        assertEquals(4, statistics.getErrorCount());
+        assertEquals(2, statistics.getWarningCount());
+        assertEquals(1, statistics.getCount("invalidRule"));
+        assertEquals(2, statistics.getCount("ignoringRule"));
+
+        statistics.reset();
+        assertEquals(0, statistics.getErrorCount());
+        assertEquals(0, statistics.getWarningCount());
+        assertEquals("{}", statistics.getCounts().toString());
+
+        assertEquals("Ignoring the whole rule.", CSSErrorStatistics.getMessage("ignoringRule"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void invalidHexColor() throws Exception {
+        final CSSErrorStatistics statistics = new CSSErrorStatistics();
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setDiagnosticsSink(statistics);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(
+                new InputSource(new StringReader("p { color: #ggg } h1 { top: 0 }")), null);
+        assertEquals(2, sheet.getCssRules().getLength());
+
+        assertEquals(1, statistics.getErrorCount());
+        assertEquals(1, statistics.getCount("invalidColor"));
+
+        // codes without message key
+        statistics.error(null, 1, 1, 0);
+        assertEquals(1, statistics.getCount(CSSDiagnosticsSink.UNKNOWN_CODE));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void positions() throws Exception {
+        final List<String> events = new ArrayList<>();
+        final CSSDiagnosticsSink sink = new CSSDiagnosticsSink() {
+            @Override
+            public void error(final String code, final int line, final int column, final int offset) {
+                events.add("E " + code + " " + line + ":" + column + " @" + offset);
+            }
+
+            @Override
+            public void warning(final String code, final int line, final int column, final int offset) {
+                events.add("W " + code + " " + line + ":" + column + " @" + offset);
+            }
+        };
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setDiagnosticsSink(sink);
+        parser.parseStyleSheet(new InputSource(new StringReader(CSS)), null);
+
+        assertEquals("[E invalidDeclarationStarHack 1:6 @5, "
+                + "E invalidExpr 2:12 @39, "
+                + "E invalidStyleRule 4:19 @86, "
+                + "W ignoringRule 4:19 @86]", events.toString());
+        assertEquals('*', CSS.charAt(5));
+        assertEquals(';', CSS.charAt(39));
+        assertEquals('$', CSS.charAt(86));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sinkAndErrorHandler() throws Exception {
+        final CSSErrorStatistics statistics = new CSSErrorStatistics();
+        final ErrorHandler errorHandler = new ErrorHandler();
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setDiagnosticsSink(statistics);
+        parser.setErrorHandler(errorHandler);
+        parser.parseStyleSheet(new InputSource(new StringReader(CSS)), null);
+
+        assertEquals(3, statistics.getErrorCount());
+        assertEquals(3, errorHandler.getErrorCount());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSInstrumentation}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSInstrumentationTest {
+
+    /**
+     * Cleanup.
+     */
+    @AfterEach
+    public void tearDown() {
+        CSSInstrumentation.setMetrics(null);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void metrics() throws Exception {
+        final CSSParserStatistics statistics = new CSSParserStatistics();
+        CSSInstrumentation.setMetrics(statistics);
+
+        final String css = "h1 { color: red; width: calc(1px + 2px) } p { color: } div { top: 0 }";
+        final CSSOMParser parser = new CSSOMParser();
+        final CSSStyleSheetImpl sheet;
+        try (InputSource source = new InputSource(new StringReader(css))) {
+            sheet = parser.parseStyleSheet(source, null);
+        }
+        parser.parseStyleDeclaration("color: blue");
+        parser.parseSelectors("h1, h2 > p");
+        sheet.freeze();
+
+        assertEquals(1, statistics.getStyleSheets().getCount());
+        assertEquals(css.length(), statistics.getStyleSheets().getChars());
+        assertEquals(1, statistics.getStyleDeclarations().getCount());
+        assertEquals("color: blue".length(), statistics.getStyleDeclarations().getChars());
+        assertEquals(1, statistics.getSelectors().getCount());
+        assertEquals(1, statistics.getRuleIndexes().getCount());
+
+        assertEquals(1, statistics.getErrorCount());
+        assertEquals(1, statistics.getProblemCount("invalidExpr"));
+        assertEquals(0, statistics.getProblemCount("invalidRule"));
+
+        long histogram = 0;
+        for (final long count : statistics.getStyleSheets().getHistogram()) {
+            histogram += count;
+        }
+        assertEquals(1, histogram);
+        assertTrue(statistics.getStyleSheets().getCharsPerSecond() > 0);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void metricsInvalidHexColor() throws Exception {
+        final CSSParserStatistics statistics = new CSSParserStatistics();
+        CSSInstrumentation.setMetrics(statistics);
+
+        final CSSStyleSheetImpl sheet = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader("p { color: #ggg; } h1 { top: 0 }")), null);
+        assertEquals(2, sheet.getCssRules().getLength());
+        assertEquals(1, statistics.getErrorCount());
+        assertEquals(1, statistics.getProblemCount("invalidColor"));
+
+        // problems without message key
+        statistics.problem(null, false);
+        assertEquals(1, statistics.getProblemCount(CSSDiagnosticsSink.UNKNOWN_CODE));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void flightRecorderEvents() throws Exception {
+        assertTrue(CSSInstrumentation.isFlightRecorderAvailable());
+
+        final Path file = Files.createTempFile("cssparser", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("org.htmlunit.cssparser.StyleSheetParse");
+                recording.enable("org.htmlunit.cssparser.StyleDeclarationParse");
+                recording.enable("org.htmlunit.cssparser.SelectorsParse");
+                recording.enable("org.htmlunit.cssparser.RuleIndexBuild");
+                recording.start();
+
+                final CSSOMParser parser = new CSSOMParser();
+                final CSSStyleSheetImpl sheet;
+                try (InputSource source = new InputSource(new StringReader("h1 { color: } p { top: 0 }"))) {
+                    sheet = parser.parseStyleSheet(source, "test.css");
+                }
+                parser.parseStyleDeclaration("color: blue");
+                parser.parseSelectors("h1");
+                sheet.freeze();
+
+                recording.stop();
+                recording.dump(file);
+            }
+
+            final Map<String, RecordedEvent> events = new HashMap<>();
+            final List<RecordedEvent> recorded = RecordingFile.readAllEvents(file);
+            for (final RecordedEvent event : recorded) {
+                events.put(event.getEventType().getName(), event);
+            }
+
+            final RecordedEvent sheetEvent = events.get("org.htmlunit.cssparser.StyleSheetParse");
+            assertEquals("test.css", sheetEvent.getString("href"));
+            assertEquals(26, sheetEvent.getInt("chars"));
+            assertEquals(2, sheetEvent.getInt("rules"));
+            assertEquals(1, sheetEvent.getInt("errors"));
+
+            assertEquals(11, events.get("org.htmlunit.cssparser.StyleDeclarationParse").getInt("chars"));
+            assertEquals(2, events.get("org.htmlunit.cssparser.SelectorsParse").getInt("chars"));
+            assertEquals(2, events.get("org.htmlunit.cssparser.RuleIndexBuild").getInt("rules"));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
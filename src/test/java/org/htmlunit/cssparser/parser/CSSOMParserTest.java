@@ -16,17 +16,28 @@
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import org.htmlunit.cssparser.dom.AbstractCSSRuleImpl;
+import org.htmlunit.cssparser.dom.CSSFontFaceRuleImpl;
+import org.htmlunit.cssparser.dom.CSSMediaRuleImpl;
 import org.htmlunit.cssparser.dom.CSSPageRuleImpl;
 import org.htmlunit.cssparser.dom.CSSRuleListImpl;
 import org.htmlunit.cssparser.dom.CSSStyleDeclarationImpl;
 import org.htmlunit.cssparser.dom.CSSStyleRuleImpl;
 import org.htmlunit.cssparser.dom.CSSStyleSheetImpl;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl.SelectorEntry;
 import org.htmlunit.cssparser.dom.CSSValueImpl;
 import org.htmlunit.cssparser.dom.Property;
 import org.htmlunit.cssparser.parser.javacc.CSS3Parser;
@@ -533,4 +544,318 @@ public void overwriteProperties() throws Exception {
         assertEquals("background-size", prop.getName());
         assertEquals("190px 48px", prop.getValue().getCssText());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cheapErrors() throws Exception {
+        final List<CSSParseException> errors = new ArrayList<>();
+        final CSSErrorHandler handler = new CSSErrorHandler() {
+            @Override
+            public void warning(final CSSParseException exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public void error(final CSSParseException exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public void fatalError(final CSSParseException exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public boolean isStackTraceRequired() {
+                return false;
+            }
+        };
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setErrorHandler(handler);
+        parser.parseStyleSheet(new InputSource(new StringReader("h1 { *zoom: 1; color: red }\np { color: ; }")),
+                null);
+
+        assertEquals(2, errors.size());
+
+        CSSParseException e = errors.get(0);
+        assertEquals("invalidDeclarationStarHack", e.getMessageKey());
+        assertEquals(0, e.getStackTrace().length);
+        assertEquals(1, e.getLineNumber());
+        assertEquals(6, e.getColumnNumber());
+        assertEquals("Error in declaration. '*' is not allowed as first char of a property.", e.getMessage());
+
+        e = errors.get(1);
+        assertEquals("invalidExpr", e.getMessageKey());
+        assertEquals(0, e.getStackTrace().length);
+        assertEquals(2, e.getLineNumber());
+        assertEquals(12, e.getColumnNumber());
+        final String message = e.getMessage();
+        assertTrue(message.startsWith("Error in expression. (Invalid token \";\". Was expecting one of: <S>, "),
+                message);
+        // formatted only once
+        assertTrue(message == e.getMessage());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void reparseStyleSheet() throws Exception {
+        final String css = "h1 { color: red }\n"
+                + "@media print { p { margin: 0 } }\n"
+                + "div { color: blue }\n"
+                + "span { color: green }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final List<AbstractCSSRuleImpl> rules = new ArrayList<>(sheet.getCssRules().getRules());
+        assertEquals("[0, 18, 51, 71]", starts(sheet));
+
+        // edit a property of the div rule
+        final int offset = css.indexOf("blue");
+        assertTrue(parser.reparseStyleSheet(sheet, offset, 4, "yellow"));
+        String expected = css.substring(0, offset) + "yellow" + css.substring(offset + 4);
+        assertReparsed(expected, sheet);
+        assertSame(rules.get(0), sheet.getCssRules().getRules().get(0));
+        assertSame(rules.get(1), sheet.getCssRules().getRules().get(1));
+        assertFalse(rules.get(2) == sheet.getCssRules().getRules().get(2));
+        assertSame(rules.get(3), sheet.getCssRules().getRules().get(3));
+        assertEquals("[0, 18, 51, 73]", starts(sheet));
+
+        // append a rule
+        assertTrue(parser.reparseStyleSheet(sheet, expected.length(), 0, "\nb { top: 0 }"));
+        expected = expected + "\nb { top: 0 }";
+        assertReparsed(expected, sheet);
+        assertSame(rules.get(1), sheet.getCssRules().getRules().get(1));
+        assertEquals(5, sheet.getCssRules().getLength());
+
+        // remove the first rule
+        assertTrue(parser.reparseStyleSheet(sheet, 0, 18, ""));
+        expected = expected.substring(18);
+        assertReparsed(expected, sheet);
+        assertSame(rules.get(1), sheet.getCssRules().getRules().get(0));
+        assertEquals("[0, 33, 55, 77]", starts(sheet));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void reparseStyleSheetFallback() throws Exception {
+        final String css = "h1 { color: red }\n"
+                + "div { color: blue }\n"
+                + "span { color: green }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final AbstractCSSRuleImpl span = sheet.getCssRules().getRules().get(2);
+
+        // the removed brace makes the next rule part of the div rule
+        final int offset = css.indexOf(" }\nspan");
+        assertFalse(parser.reparseStyleSheet(sheet, offset, 2, ""));
+        String expected = css.substring(0, offset) + css.substring(offset + 2);
+        assertReparsed(expected, sheet);
+        assertFalse(span == sheet.getCssRules().getRules().get(1));
+
+        // an open comment swallows the rest
+        assertFalse(parser.reparseStyleSheet(sheet, 0, 0, "/* "));
+        expected = "/* " + expected;
+        assertReparsed(expected, sheet);
+        assertEquals(0, sheet.getCssRules().getLength());
+
+        final CSSStyleSheetImpl notTracked = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader(css)), null);
+        assertThrows(CSSException.class, () -> parser.reparseStyleSheet(notTracked, 0, 0, " "));
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.reparseStyleSheet(sheet, 1, 1000, " "));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void reparseStyleSheetRuleIndex() throws Exception {
+        final String css = "p { color: red }\n"
+                + "div { color: blue }\n"
+                + "p.x { color: green }\n"
+                + "p { color: black }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex();
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            index.addRule(rule);
+        }
+        sheet.setRuleIndex(index);
+        assertEquals("[p { color: red; }, p { color: black; }, p.x { color: green; }]",
+                entries(index.getSelectorEntriesIteratorFor("p", new String[] {"x"})));
+
+        // replace the div rule by a p rule; the order of the entries is the source order
+        final int offset = css.indexOf("div");
+        assertTrue(parser.reparseStyleSheet(sheet, offset, 3, "p"));
+        assertSame(index, sheet.getRuleIndex());
+        assertEquals("[p { color: red; }, p { color: blue; }, p { color: black; }, p.x { color: green; }]",
+                entries(index.getSelectorEntriesIteratorFor("p", new String[] {"x"})));
+        assertEquals("[]", entries(index.getSelectorEntriesIteratorFor("div", null)));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void reparseStyleSheetUnterminatedRule() throws Exception {
+        final String css = "a { b: c }\n@foo bar;\ng { h: i }\nk { l: m }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final List<AbstractCSSRuleImpl> rules = new ArrayList<>(sheet.getCssRules().getRules());
+        final CSSStyleSheetRuleIndex index = sheet.getOrCreateRuleIndex();
+
+        // without the ';' the unknown rule swallows the next rule
+        final int offset = css.indexOf(';');
+        assertTrue(parser.reparseStyleSheet(sheet, offset, 1, ""));
+        final String expected = css.substring(0, offset) + css.substring(offset + 1);
+        assertReparsed(expected, sheet);
+        assertEquals(3, sheet.getCssRules().getLength());
+        assertSame(rules.get(0), sheet.getCssRules().getRules().get(0));
+        assertSame(rules.get(3), sheet.getCssRules().getRules().get(2));
+        assertSame(index, sheet.getRuleIndex());
+        assertEquals("[]", entries(index.getSelectorEntriesIteratorFor("g", null)));
+
+        // at the end of the sheet
+        final String last = "a { b: c }\n@foo bar;\ng { h: i }";
+        final CSSStyleSheetImpl sheet2 = parser.parseStyleSheet(new InputSource(new StringReader(last)), null);
+        assertTrue(parser.reparseStyleSheet(sheet2, last.indexOf(';'), 1, ""));
+        assertReparsed("a { b: c }\n@foo bar\ng { h: i }", sheet2);
+        assertEquals(2, sheet2.getCssRules().getLength());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sourceRanges() throws Exception {
+        final String css = "@charset \"utf-8\";\n"
+                + "@import url(x.css) print ;\n"
+                + "h1, h2 {\n  color: red ;\n  margin: 1px 2px !important\n}\n"
+                + "@media print { p { /* c */ top: 0 } @foo bar; }\n"
+                + "@page :first { margin: 1in; }\n"
+                + "@font-face { font-family: x }\n"
+                + "div {}";
+        final String expected = "[@charset \"utf-8\";, "
+                + "@import url(x.css) print ;, "
+                + "h1, h2 {\n  color: red ;\n  margin: 1px 2px !important\n} "
+                    + "{color: red ;\n  margin: 1px 2px !important} (color: red) (margin: 1px 2px !important), "
+                + "@media print { p { /* c */ top: 0 } @foo bar; }, "
+                + "p { /* c */ top: 0 } {top: 0} (top: 0), "
+                + "@foo bar;, "
+                + "@page :first { margin: 1in; } {margin: 1in;} (margin: 1in), "
+                + "@font-face { font-family: x } {font-family: x} (font-family: x), "
+                + "div {} {}]";
+
+        assertEquals(expected, ranges(css, false, false));
+        assertEquals(expected, ranges(css, true, true));
+
+        // without tracking nothing is recorded
+        final CSSStyleSheetImpl sheet = new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final CSSStyleRuleImpl rule = (CSSStyleRuleImpl) sheet.getCssRules().getRules().get(2);
+        assertEquals(-1, rule.getSourceStart());
+        assertEquals(-1, rule.getSourceEnd());
+        assertEquals(-1, rule.getStyle().getSourceStart());
+        assertEquals(-1, rule.getStyle().getProperties().get(0).getSourceEnd());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sourceRangesReparse() throws Exception {
+        final String css = "h1 { color: red }\n"
+                + "@media print { p { margin: 0 } }\n"
+                + "div { color: blue }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        parser.setLazyStyleDeclarations(true);
+        final CSSStyleSheetImpl sheet = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+
+        assertTrue(parser.reparseStyleSheet(sheet, 5, 10, "top: 1px; left: 2px"));
+        final String edited = new String(sheet.getSource(), 0, sheet.getSourceLength());
+        assertEquals("[h1 { top: 1px; left: 2px } {top: 1px; left: 2px} (top: 1px) (left: 2px), "
+                + "@media print { p { margin: 0 } }, p { margin: 0 } {margin: 0} (margin: 0), "
+                + "div { color: blue } {color: blue} (color: blue)]", ranges(sheet, edited));
+    }
+
+    private static String ranges(final String css, final boolean lazyStyle, final boolean lazySelectors)
+            throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setSourceTracking(true);
+        parser.setLazyStyleDeclarations(lazyStyle);
+        parser.setLazySelectors(lazySelectors);
+        return ranges(parser.parseStyleSheet(new InputSource(new StringReader(css)), null), css);
+    }
+
+    private static String ranges(final CSSStyleSheetImpl sheet, final String css) {
+        final List<String> result = new ArrayList<>();
+        ranges(sheet.getCssRules(), css, result);
+        return result.toString();
+    }
+
+    private static void ranges(final CSSRuleListImpl rules, final String css, final List<String> result) {
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            final StringBuilder sb = new StringBuilder(css.substring(rule.getSourceStart(), rule.getSourceEnd()));
+            CSSStyleDeclarationImpl style = null;
+            if (rule instanceof CSSStyleRuleImpl sr) {
+                style = sr.getStyle();
+            }
+            else if (rule instanceof CSSPageRuleImpl pr) {
+                style = pr.getStyle();
+            }
+            else if (rule instanceof CSSFontFaceRuleImpl fr) {
+                style = fr.getStyle();
+            }
+            if (style != null) {
+                sb.append(" {").append(css, style.getSourceStart(), style.getSourceEnd()).append('}');
+                for (final Property property : style.getProperties()) {
+                    sb.append(" (").append(css, property.getSourceStart(), property.getSourceEnd()).append(')');
+                }
+            }
+            result.add(sb.toString());
+            if (rule instanceof CSSMediaRuleImpl mr) {
+                ranges(mr.getCssRules(), css, result);
+            }
+        }
+    }
+
+    private static String starts(final CSSStyleSheetImpl sheet) {
+        final List<Integer> starts = new ArrayList<>();
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            starts.add(rule.getSourceStart());
+        }
+        return starts.toString();
+    }
+
+    private static String entries(final Iterator<SelectorEntry> iterator) {
+        final List<String> result = new ArrayList<>();
+        while (iterator.hasNext()) {
+            result.add(iterator.next().getRule().getCssText());
+        }
+        return result.toString();
+    }
+
+    private static void assertReparsed(final String expected, final CSSStyleSheetImpl sheet) throws Exception {
+        final CSSStyleSheetImpl full = new CSSOMParser().parseStyleSheet(
+                new InputSource(new StringReader(expected)), null);
+        assertEquals(full.toString(), sheet.toString());
+        assertEquals(expected, new String(sheet.getSource(), 0, sheet.getSourceLength()));
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            assertSame(sheet, rule.getParentStyleSheet());
+        }
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple throughput benchmark for {@link CSSParserService}; not run as part
+ * of the tests. Parses the same set of style sheets with an increasing number
+ * of threads (1 up to the number of cores) and prints the sheets per second.
+ *
+ * <p>Usage: <code>java CSSParserServiceBenchmark [sheets] [rounds]</code></p>
+ *
+ * @author Ronald Brill
+ */
+public final class CSSParserServiceBenchmark {
+
+    private CSSParserServiceBenchmark() {
+    }
+
+    /**
+     * @param args the number of sheets and rounds (optional)
+     * @throws Exception if any error occurs
+     */
+    public static void main(final String[] args) throws Exception {
+        final int sheets = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            css.append(".item").append(i).append(" > a:hover, #id").append(i)
+                .append(" { color: rgb(1, 2, 3); margin: 0 auto; padding: 1px 2px 3px 4px; ")
+                .append("font: 12px/1.5 'Helvetica Neue', serif; width: calc(100% - 2px) }\n");
+        }
+        final String text = css.toString();
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final CSSParserService service = new CSSParserService(executor, threads * 4);
+                double best = 0;
+                for (int round = 0; round < rounds; round++) {
+                    final List<InputSource> sources = new ArrayList<>(sheets);
+                    for (int i = 0; i < sheets; i++) {
+                        sources.add(new InputSource(text.toCharArray(), 0, text.length(), 1, 1));
+                    }
+
+                    final long start = System.nanoTime();
+                    service.parseAll(sources);
+                    final double seconds = (System.nanoTime() - start) / 1e9;
+                    best = Math.max(best, sheets / seconds);
+                }
+                System.out.printf("threads %3d: %10.0f sheets/s%n", threads, best);
+            }
+            finally {
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            if (threads < cores && threads * 2 > cores) {
+                threads = cores / 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.htmlunit.cssparser.dom.CSSStyleDeclarationImpl;
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl;
+import org.htmlunit.cssparser.parser.CSSParserService.Result;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CSSParserService}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSParserServiceTest {
+
+    private ExecutorService executor_;
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    public void setUp() {
+        executor_ = Executors.newFixedThreadPool(4);
+    }
+
+    /**
+     * Cleanup.
+     * @throws Exception if any error occurs
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        executor_.shutdown();
+        assertTrue(executor_.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void parseAll() throws Exception {
+        final List<InputSource> sources = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final InputSource source = new InputSource(new StringReader(".c" + i + " { margin: " + i + "px }"
+                    + (i % 10 == 0 ? " p { color: }" : "")));
+            source.setURI("sheet" + i + ".css");
+            sources.add(source);
+        }
+
+        final CSSParserService service = new CSSParserService(executor_, 8);
+        final List<Result<CSSStyleSheetImpl>> results = service.parseAll(sources);
+        assertEquals(100, results.size());
+        for (int i = 0; i < 100; i++) {
+            final Result<CSSStyleSheetImpl> result = results.get(i);
+            assertNull(result.getException());
+            assertEquals("sheet" + i + ".css", result.getValue().getHref());
+            assertEquals("*.c" + i + " { margin: " + i + "px; }",
+                    result.getValue().getCssRules().getRules().get(0).getCssText());
+            assertEquals(i % 10 == 0 ? 1 : 0, result.getErrors().size());
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void parseStyleDeclarations() throws Exception {
+        final List<String> declarations = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            declarations.add("color: red; width: " + i + "px");
+        }
+        declarations.add("color: ; top: 1px");
+
+        final List<Result<CSSStyleDeclarationImpl>> results =
+                new CSSParserService(executor_, 4).parseStyleDeclarations(declarations);
+        assertEquals(51, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("color: red; width: " + i + "px", results.get(i).getValue().getCssText());
+            assertTrue(results.get(i).getErrors().isEmpty());
+        }
+        assertEquals("top: 1px", results.get(50).getValue().getCssText());
+        assertEquals(1, results.get(50).getErrors().size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void backpressure() throws Exception {
+        final AtomicInteger consumed = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final Iterator<String> declarations = new Iterator<>() {
+            private int count_;
+
+            @Override
+            public boolean hasNext() {
+                return count_ < 1000;
+            }
+
+            @Override
+            public String next() {
+                maxAhead.accumulateAndGet(count_ - consumed.get(), Math::max);
+                return "width: " + count_++ + "px";
+            }
+        };
+
+        final List<String> texts = new ArrayList<>();
+        new CSSParserService(executor_, 5).parseStyleDeclarations(declarations, result -> {
+            consumed.incrementAndGet();
+            texts.add(result.getValue().getCssText());
+        });
+
+        assertEquals(1000, texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals("width: " + i + "px", texts.get(i));
+        }
+        assertTrue(maxAhead.get() <= 5, "ahead " + maxAhead.get());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void failure() throws Exception {
+        final List<InputSource> sources = new ArrayList<>();
+        sources.add(new InputSource(new Reader() {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                throw new IOException("broken");
+            }
+
+            @Override
+            public void close() {
+                // nothing
+            }
+        }));
+        sources.add(new InputSource(new StringReader("p { color: red }")));
+
+        final List<Result<CSSStyleSheetImpl>> results = new CSSParserService(executor_, 2).parseAll(sources);
+        assertNull(results.get(0).getValue());
+        assertEquals("broken", results.get(0).getException().getMessage());
+        assertEquals(1, results.get(1).getValue().getCssRules().getLength());
+
+        assertThrows(IllegalArgumentException.class, () -> new CSSParserService(executor_, 0));
+    }
+}
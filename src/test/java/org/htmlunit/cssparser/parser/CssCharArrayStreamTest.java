@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+
+import org.htmlunit.cssparser.parser.javacc.CSS3ParserTokenManager;
+import org.htmlunit.cssparser.parser.javacc.CharStream;
+import org.htmlunit.cssparser.parser.javacc.Token;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CssCharArrayStream}.
+ *
+ * @author Ronald Brill
+ */
+public class CssCharArrayStreamTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sameTokensAsCssCharStream() throws Exception {
+        assertSameTokens("");
+        assertSameTokens(" ");
+        assertSameTokens("h1 { color: red }");
+        assertSameTokens("h1 {\n  color: red;\r\n  margin: 1px 2em\r}\n\n");
+        assertSameTokens("@media screen and (max-width: 100px) { p::before { content: \"\\\"x\\\"\" } }");
+        assertSameTokens("/* comment\n over lines */ a[href^='http'] > b ~ c + d:not(.e) { width: calc(100% - 2px) }");
+        assertSameTokens("p { color: rgb(1 2 3 / 50%); background: url(x.png) no-repeat; --x: var(--y, 4px) }");
+        assertSameTokens("\tp\t{\tcolor:\tred\t}\t");
+        assertSameTokens("h1 { color: red } } { ; @unknown foo { bar } $ äöü");
+        assertSameTokens("p { content: 'unterminated");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void largeInput() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            css.append(".c").append(i).append(" { margin: ").append(i).append("px }\r\n");
+        }
+        assertSameTokens(css.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void offset() throws Exception {
+        final String css = "a\nbc\r\nd\re";
+        final CssCharArrayStream stream = new CssCharArrayStream(css);
+        assertEquals(0, stream.getOffset(1, 1));
+        assertEquals(3, stream.getOffset(2, 2));
+        assertEquals(6, stream.getOffset(3, 1));
+        assertEquals(8, stream.getOffset(4, 1));
+        assertEquals('e', css.charAt(stream.getOffset(4, 1)));
+        assertEquals(-1, stream.getOffset(5, 1));
+        assertEquals(-1, stream.getOffset(0, 1));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void isComplete() throws Exception {
+        assertTrue(new CssCharArrayStream("").isComplete(0));
+        assertTrue(new CssCharArrayStream("a { b: '}' } /* { */ c { d { } }").isComplete(0));
+        assertTrue(new CssCharArrayStream("a { content: \"\\\"{\" }").isComplete(0));
+        assertTrue(new CssCharArrayStream("a { } /**/").isComplete(0));
+
+        assertFalse(new CssCharArrayStream("a { b: c").isComplete(0));
+        assertFalse(new CssCharArrayStream("a { } }").isComplete(0));
+        assertFalse(new CssCharArrayStream("a { } /* b { }").isComplete(0));
+        assertFalse(new CssCharArrayStream("a { } /*/").isComplete(0));
+
+        // only the given part is checked
+        assertTrue(new CssCharArrayStream("a { b { }").isComplete(3));
+    }
+
+    private static void assertSameTokens(final String css) {
+        final CSS3ParserTokenManager expected = tokenManager(new CssCharStream(new StringReader(css), 1, 1));
+        final CSS3ParserTokenManager actual = tokenManager(new CssCharArrayStream(css));
+
+        while (true) {
+            final Token e = expected.getNextToken();
+            final Token a = actual.getNextToken();
+            assertEquals(describe(e), describe(a), css);
+            if (e.kind == 0) {
+                return;
+            }
+        }
+    }
+
+    private static CSS3ParserTokenManager tokenManager(final CharStream stream) {
+        return new CSS3ParserTokenManager(stream);
+    }
+
+    private static String describe(final Token t) {
+        return t.kind + " '" + t.image + "' " + t.beginLine + ":" + t.beginColumn
+                + "-" + t.endLine + ":" + t.endColumn;
+    }
+}
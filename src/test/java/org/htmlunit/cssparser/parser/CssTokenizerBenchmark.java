@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.htmlunit.cssparser.parser.javacc.CSS3ParserTokenManager;
+import org.htmlunit.cssparser.parser.javacc.CharStream;
+import org.htmlunit.cssparser.parser.javacc.Token;
+
+/**
+ * Compares the time spent in the generated token manager (fed by {@link CssCharStream}
+ * and by {@link CssCharArrayStream}) with the time of a complete parse of the same
+ * style sheet; not run as part of the tests. The share of the tokenizing shows what a
+ * hand written tokenizer could gain at most.
+ *
+ * <p>Usage: <code>java CssTokenizerBenchmark [file] [rounds]</code>; without a file
+ * the bootstrap style sheet from the test resources is used. This is a simple timing
+ * loop (no JMH), the numbers are only a rough guide.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class CssTokenizerBenchmark {
+
+    /** the errors are not part of the measurement. */
+    private static final CSSErrorHandler SILENT = new CSSErrorHandler() {
+        @Override
+        public void warning(final CSSParseException exception) {
+        }
+
+        @Override
+        public void error(final CSSParseException exception) {
+        }
+
+        @Override
+        public void fatalError(final CSSParseException exception) {
+        }
+    };
+
+    private CssTokenizerBenchmark() {
+    }
+
+    /**
+     * @param args the file and the number of rounds (optional)
+     * @throws Exception if any error occurs
+     */
+    public static void main(final String[] args) throws Exception {
+        final String css;
+        if (args.length > 0) {
+            css = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+        }
+        else {
+            try (InputStream is = CssTokenizerBenchmark.class.getClassLoader()
+                    .getResourceAsStream("realworld/bootstrap_5_3_8.css")) {
+                css = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        long bestStream = Long.MAX_VALUE;
+        long bestArray = Long.MAX_VALUE;
+        long bestParse = Long.MAX_VALUE;
+        int tokens = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            tokens = tokenize(new CssCharStream(new StringReader(css), 1, 1));
+            bestStream = Math.min(bestStream, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            tokenize(new CssCharArrayStream(css));
+            bestArray = Math.min(bestArray, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (InputSource source = new InputSource(css.toCharArray(), 0, css.length(), 1, 1)) {
+                final CSSOMParser parser = new CSSOMParser();
+                parser.setErrorHandler(SILENT);
+                parser.parseStyleSheet(source, null);
+            }
+            bestParse = Math.min(bestParse, System.nanoTime() - start);
+        }
+
+        System.out.printf("input: %d chars, %d tokens%n", css.length(), tokens);
+        print("token manager (CssCharStream)", bestStream, bestParse, css.length());
+        print("token manager (CssCharArrayStream)", bestArray, bestParse, css.length());
+        print("complete parse", bestParse, bestParse, css.length());
+    }
+
+    private static int tokenize(final CharStream stream) {
+        final CSS3ParserTokenManager tokenManager = new CSS3ParserTokenManager(stream);
+        int count = 0;
+        Token token = tokenManager.getNextToken();
+        while (token.kind != 0) {
+            count++;
+            token = tokenManager.getNextToken();
+        }
+        return count;
+    }
+
+    private static void print(final String name, final long nanos, final long parseNanos, final int chars) {
+        System.out.printf("%-36s %8.3f ms %8.1f Mchars/s %5.1f%% of the parse%n",
+                name, nanos / 1e6, chars / (nanos / 1e9) / 1e6, nanos * 100.0 / parseNanos);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ParserMessages}.
+ *
+ * @author Ronald Brill
+ */
+public class ParserMessagesTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void messages() throws Exception {
+        assertEquals(39, ParserMessages.keys().size());
+        assertTrue(ParserMessages.keys().contains("invalidDeclaration"));
+        assertEquals("Error in declaration.", ParserMessages.get("invalidDeclaration"));
+        assertEquals("[[unknownKey]]", ParserMessages.get("unknownKey"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void format() throws Exception {
+        for (final String key : ParserMessages.keys()) {
+            final String pattern = ParserMessages.get(key);
+            assertEquals(MessageFormat.format(pattern, "a", "b"), ParserMessages.format(pattern, "a", "b"));
+            // the second call uses the cached format
+            assertEquals(MessageFormat.format(pattern, "c", "d"), ParserMessages.format(pattern, "c", "d"));
+        }
+        assertEquals("DOM exception: 'x'", ParserMessages.format(ParserMessages.get("domException"), "x"));
+    }
+
+    /**
+     * The classes named in the native image configuration have to exist.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void nativeImageConfig() throws Exception {
+        final Properties properties = new Properties();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(
+                "META-INF/native-image/org.htmlunit/htmlunit-cssparser/native-image.properties")) {
+            properties.load(in);
+        }
+
+        int classes = 0;
+        for (final String arg : properties.getProperty("Args").split(" ")) {
+            final String names = arg.substring(arg.indexOf('=') + 1);
+            for (final String name : names.split(",")) {
+                Class.forName(name, false, getClass().getClassLoader());
+                classes++;
+            }
+        }
+        assertEquals(7, classes);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import java.io.StringReader;
+
+import org.htmlunit.cssparser.dom.CSSStyleSheetImpl;
+
+/**
+ * Measures the time to the first parse in a fresh JVM; not run as part of the tests.
+ * Start it several times (e.g. in a loop in the shell or as native image) to get
+ * stable numbers; the class loading and initialization of the parser dominate.
+ *
+ * <p>Usage: <code>java ParserStartupBenchmark</code></p>
+ *
+ * @author Ronald Brill
+ */
+public final class ParserStartupBenchmark {
+
+    private ParserStartupBenchmark() {
+    }
+
+    /**
+     * @param args ignored
+     * @throws Exception if any error occurs
+     */
+    public static void main(final String[] args) throws Exception {
+        final long start = System.nanoTime();
+
+        final CSSOMParser parser = new CSSOMParser();
+        final long created = System.nanoTime();
+
+        final CSSStyleSheetImpl sheet;
+        try (InputSource source = new InputSource(new StringReader(
+                "h1, .intro > p { color: red; margin: 0 auto } @media print { p { display: none } }"))) {
+            sheet = parser.parseStyleSheet(source, null);
+        }
+        final long parsed = System.nanoTime();
+
+        try (InputSource source = new InputSource(new StringReader("p { color: } div { top: 1px }"))) {
+            parser.parseStyleSheet(source, null);
+        }
+        final long firstError = System.nanoTime();
+
+        System.out.printf("parser created:     %8.3f ms%n", (created - start) / 1e6);
+        System.out.printf("first parse:        %8.3f ms%n", (parsed - created) / 1e6);
+        System.out.printf("first parse error:  %8.3f ms%n", (firstError - parsed) / 1e6);
+        System.out.printf("time to first parse %8.3f ms (%d rules)%n",
+                (parsed - start) / 1e6, sheet.getCssRules().getLength());
+    }
+}
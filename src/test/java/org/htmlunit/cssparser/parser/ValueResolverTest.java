@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.htmlunit.cssparser.parser.javacc.CSS3Parser;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ValueResolver}.
+ *
+ * @author Ronald Brill
+ */
+public class ValueResolverTest {
+
+    private final Map<String, LexicalUnit> customProperties_ = new HashMap<>();
+
+    private final ResolutionContext context_ = new ResolutionContext() {
+        @Override
+        public double getFontSize() {
+            return 20;
+        }
+
+        @Override
+        public double getRootFontSize() {
+            return 16;
+        }
+
+        @Override
+        public double getViewportWidth() {
+            return 1000;
+        }
+
+        @Override
+        public double getViewportHeight() {
+            return 500;
+        }
+
+        @Override
+        public double getPercentageBase() {
+            return 200;
+        }
+
+        @Override
+        public LexicalUnit getCustomProperty(final String name) {
+            return customProperties_.get(name);
+        }
+    };
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void absoluteUnits() throws Exception {
+        assertResolved(10, "10px");
+        assertResolved(96, "1in");
+        assertResolved(16, "12pt");
+        assertResolved(16, "1pc");
+        assertResolved(90, "100grad");
+        assertResolved(180, "0.5turn");
+        assertResolved(1500, "1.5s");
+        assertResolved(2000, "2kHz");
+        assertResolved(7, "7");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void relativeUnits() throws Exception {
+        assertResolved(40, "2em");
+        assertResolved(32, "2rem");
+        assertResolved(10, "1ex");
+        assertResolved(100, "10vw");
+        assertResolved(50, "10vh");
+        assertResolved(50, "10vmin");
+        assertResolved(100, "10vmax");
+        assertResolved(100, "10dvw");
+        assertResolved(50, "10svh");
+        assertResolved(50, "25%");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void calc() throws Exception {
+        assertResolved(30, "calc(10px + 20px)");
+        assertResolved(106, "calc(1in + 10px)");
+        assertResolved(70, "calc(10px + 3 * 20px)");
+        assertResolved(90, "calc((10px + 20px) * 3)");
+        assertResolved(15, "calc(30px / 2)");
+        assertResolved(60, "calc(2em + 20px)");
+        assertResolved(50, "calc(100% - 150px)");
+        assertResolved(45, "calc(calc(10px + 5px) * 3)");
+        assertResolved(Math.PI * 2, "calc(pi * 2)");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void calcInvalid() throws Exception {
+        assertResolved(Double.NaN, "calc(10px + 2)");
+        assertResolved(Double.NaN, "calc(10px * 2px)");
+        assertResolved(Double.NaN, "calc(10px / 2px)");
+        assertResolved(Double.NaN, "calc(10px + 2s)");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void calcConstantFolding() throws Exception {
+        assertTrue(ValueResolver.isConstantCalc(parse("calc(1in + 10px * 2)")));
+        assertTrue(ValueResolver.isConstantCalc(parse("calc((1s + 500ms) / 2)")));
+        assertFalse(ValueResolver.isConstantCalc(parse("calc(1em + 10px)")));
+        assertFalse(ValueResolver.isConstantCalc(parse("calc(var(--x) + 10px)")));
+        assertFalse(ValueResolver.isConstantCalc(parse("10px")));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void calcCached() throws Exception {
+        final LexicalUnitImpl calc = (LexicalUnitImpl) parse("calc(2em + 4px)");
+        final CalcExpression expression = calc.getCalcExpression();
+        assertTrue(expression == calc.getCalcExpression());
+
+        final ValueResolver resolver = new ValueResolver(context_);
+        assertEquals(44, resolver.resolve(calc), 0.0001);
+        assertEquals(44, resolver.resolve(calc), 0.0001);
+
+        calc.setParameters(parse("3px"));
+        assertEquals(3, resolver.resolve(calc), 0.0001);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void var() throws Exception {
+        customProperties_.put("--gap", parse("12px"));
+        customProperties_.put("--double", parse("calc(var(--gap) * 2)"));
+
+        assertResolved(12, "var(--gap)");
+        assertResolved(24, "var(--double)");
+        assertResolved(34, "calc(var(--double) + 10px)");
+        assertResolved(5, "var(--unknown, 5px)");
+        assertResolved(Double.NaN, "var(--unknown)");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void varCycle() throws Exception {
+        customProperties_.put("--a", parse("var(--b)"));
+        customProperties_.put("--b", parse("var(--a)"));
+
+        assertResolved(Double.NaN, "var(--a)");
+        assertResolved(7, "var(--a, 7px)");
+
+        customProperties_.put("--self", parse("calc(var(--self) + var(--self))"));
+        assertResolved(Double.NaN, "var(--self)");
+        assertResolved(3, "var(--self, 3px)");
+    }
+
+    /**
+     * Every custom property is resolved only once; without this the
+     * work doubles with every level.
+     *
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void varReferencedTwice() throws Exception {
+        customProperties_.put("--v0", parse("1px"));
+        for (int i = 1; i < 31; i++) {
+            customProperties_.put("--v" + i, parse("calc(var(--v" + (i - 1) + ") + var(--v" + (i - 1) + "))"));
+        }
+
+        assertResolved(1 << 30, "var(--v30)");
+        assertResolved(1 << 30, "calc(var(--v30) + var(--v0) - 1px)");
+    }
+
+    private void assertResolved(final double expected, final String value) throws Exception {
+        final ValueResolver resolver = new ValueResolver(context_);
+        assertEquals(expected, resolver.resolve(parse(value)), 0.0001, value);
+    }
+
+    private static LexicalUnit parse(final String value) throws Exception {
+        return new CSS3Parser().parsePropertyValue(new InputSource(new StringReader(value)));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019-2024 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.htmlunit.cssparser.parser.selector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link SelectorKey}.
+ *
+ * @author Ronald Brill
+ */
+public class SelectorKeyTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void scan() throws Exception {
+        assertKeys("[h1]", "h1 { color: red }");
+        assertKeys("[h1, p, *]", "h1, P ,*{}");
+        assertKeys("[a, span.x, *#main.first]", "div > a,\nul li span.x:hover, .first.second#main { }");
+        assertKeys("[*.b]", "a + .b ~ .b::before { }");
+        assertKeys("[input]", "form input[type=\"text\" i] { }");
+        assertKeys("[*.-x_1]", ".-x_1 { }");
+        assertKeys("[*]", ":root { }");
+        assertKeys("[div.äö]", "div.äö { }");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void scanUnsupported() throws Exception {
+        assertKeys(null, "a\\:b { }");
+        assertKeys(null, "a /* comment */ b { }");
+        assertKeys(null, "svg|a { }");
+        assertKeys(null, "a, { }");
+        assertKeys(null, "> a { }");
+        assertKeys(null, "a[title='x\\'y'] { }");
+        assertKeys(null, "a ");
+        assertKeys(null, "@media print { }");
+        assertKeys(null, ".1a { }");
+        assertKeys(null, "a; b { }");
+
+        // only selectors the parser accepts are deferred
+        assertKeys(null, "a[=b] { }");
+        assertKeys(null, "a[b=c x] { }");
+        assertKeys(null, "a[b c] { }");
+        assertKeys(null, "a[b=c i i] { }");
+        assertKeys(null, "a::before:hover { }");
+        assertKeys(null, "a:after.x { }");
+        assertKeys(null, ".--x { }");
+        // functional pseudo classes are not validated by the scanner
+        assertKeys(null, "div.x a:not(.y, [title='{']) { }");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void scanOffsets() throws Exception {
+        final char[] css = "h1 { color: red } p.x { }".toCharArray();
+        final List<SelectorKey> keys = new ArrayList<>();
+        assertEquals(22, SelectorKey.scan(css, 18, css.length, keys));
+        assertEquals("[p.x]", keys.toString());
+
+        // nothing added on failure
+        assertEquals(-1, SelectorKey.scan(css, 5, css.length, keys));
+        assertEquals("[p.x]", keys.toString());
+    }
+
+    private static void assertKeys(final String expected, final String css) {
+        final List<SelectorKey> keys = new ArrayList<>();
+        final int brace = SelectorKey.scan(css.toCharArray(), 0, css.length(), keys);
+        if (expected == null) {
+            assertEquals(-1, brace, css);
+            assertEquals(0, keys.size(), css);
+            return;
+        }
+        assertEquals(css.indexOf('{', css.indexOf(']') + 1), brace, css);
+        assertEquals(expected, keys.toString(), css);
+    }
+}